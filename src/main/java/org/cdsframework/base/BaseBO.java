@@ -29,18 +29,26 @@ package org.cdsframework.base;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.annotation.PostConstruct;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
@@ -48,15 +56,18 @@ import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.ejb.TransactionManagement;
 import javax.ejb.TransactionManagementType;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
 import javax.validation.ValidatorFactory;
 import javax.validation.groups.Default;
+import javax.validation.metadata.ConstraintDescriptor;
 import org.apache.commons.io.IOUtils;
 import org.cdsframework.annotation.Cached;
 import org.cdsframework.annotation.GeneratedValue;
 import org.cdsframework.annotation.ParentChildRelationship;
 import org.cdsframework.annotation.RowsReturnCountBehavior;
+import org.cdsframework.callback.QueryCallback;
 import org.cdsframework.dto.PropertyBagDTO;
 import org.cdsframework.dto.SessionDTO;
 import org.cdsframework.ejb.local.AppLogMGRLocal;
@@ -76,24 +87,31 @@ import org.cdsframework.exceptions.ConstraintViolationException;
 import org.cdsframework.exceptions.MtsException;
 import org.cdsframework.exceptions.NotFoundException;
 import org.cdsframework.exceptions.ValidationException;
+import org.cdsframework.group.Add;
 import org.cdsframework.group.CacheAll;
 import org.cdsframework.group.Delete;
 import org.cdsframework.group.FindAll;
 import org.cdsframework.group.None;
 import org.cdsframework.group.PrimaryKey;
+import org.cdsframework.group.Update;
 import org.cdsframework.rs.support.CoreRsConstants;
 import org.cdsframework.util.AuthenticationUtils;
+import org.cdsframework.util.AuthorizationCache;
 import org.cdsframework.util.BrokenRule;
+import org.cdsframework.util.CacheStatistics;
 import org.cdsframework.util.ClassUtils;
 import org.cdsframework.util.DTOCopy;
+import org.cdsframework.util.DTODescriptor;
 import org.cdsframework.util.DTOUtils;
 import org.cdsframework.util.EJBUtils;
+import org.cdsframework.util.IdentityMapUtils;
 import org.cdsframework.util.LogUtils;
 import org.cdsframework.util.ObjectUtils;
+import org.cdsframework.util.ProjectionUtils;
+import org.cdsframework.util.ReferenceSnapshotUtils;
 import org.cdsframework.util.StringUtils;
+import org.cdsframework.util.TraceUtils;
 import org.cdsframework.util.comparator.ChildDTOListStateComparator;
-import org.cdsframework.util.comparator.ParentChildRelationshipAddUpdateOrderComparator;
-import org.cdsframework.util.comparator.ParentChildRelationshipDeleteOrderComparator;
 import org.cdsframework.util.support.CoreConstants;
 
 @TransactionManagement(TransactionManagementType.CONTAINER)
@@ -105,6 +123,18 @@ public abstract class BaseBO<T extends BaseDTO> {
     private PropertyMGRLocal propertyMGRLocal;
     // Validation factory
     private ValidatorFactory validatorFactory;
+    // Validator - thread safe, obtained once per BO
+    private Validator validator;
+    // set flag to validate only the changed properties of an updated DTO - see validate
+    private boolean validateChangedPropertiesOnly = false;
+    // set flag to read the ancestor chain of a self referencing DTO with one hierarchy query - see findAncestorsMain
+    private boolean hierarchyQuery = false;
+    // maximum number of levels read by a hierarchy query
+    private int hierarchyMaxDepth = 100;
+    // number of child types of a parent queried at the same time outside of a transaction - 1 queries them one after the other
+    private int childFetchConcurrency = 1;
+    // set flag to keep the child collections saved and refreshed by addOrUpdate instead of re-reading them - see findChildrenMain
+    private boolean skipSavedChildRefresh = false;
     // Security Manager Local
     private BaseSecurityMGR securityMGRLocal;
     // BO Configuration
@@ -129,6 +159,19 @@ public abstract class BaseBO<T extends BaseDTO> {
     private boolean selfReferencing = false;
     // set flag to determine if the dto typed object should be refreshed after an Add or Update
     private boolean refreshOnAddOrUpdate = false;
+    // set when the DTOs of this BO can be deleted set based - see isBulkDeleteEligible
+    private Boolean bulkDeleteEligible = null;
+    // set when the adds and updates of this BO's children can be written in DAO batches - see isBatchWriteEligible
+    private Boolean batchWriteEligible = null;
+    // set when the BO overrides preQuery - see findByPrimaryKeysMain
+    private Boolean preQueryOverridden = null;
+    private DTODescriptor dtoDescriptor;
+    private final static Set<String> DELETE_HOOKS = new HashSet<String>(Arrays.asList(
+            "checkAuthority", "processBegin", "preDelete", "validate", "validateFindOrDelete", "postDelete", "processEnd",
+            "deleteMain", "deleteChildren", "processRowsReturned"));
+    private final static Set<String> WRITE_HOOKS = new HashSet<String>(Arrays.asList(
+            "checkAuthority", "preAddOrUpdate", "preProcessDTOAutoKey", "processBegin", "preAdd", "preUpdate", "validate",
+            "validateAddOrUpdate", "postAdd", "postUpdate", "processEnd", "processRowsReturned", "addChildren", "updateChildren"));
     private Comparator dtoComparator = null;
     private Map<Class, Comparator> parentChildComparatorMap = new HashMap<Class, Comparator>();
     @EJB
@@ -144,8 +187,7 @@ public abstract class BaseBO<T extends BaseDTO> {
 
         logger = LogUtils.getLogger(this.getClass());
 
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         try {
             preInitialize();
@@ -165,6 +207,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             if (validatorFactory == null) {
                 throw new IllegalStateException(METHODNAME + "Uninitialized validatorFactory");
             }
+            validator = validatorFactory.getValidator();
 
 //            if (securityMGRLocal == null) {
 //                throw new IllegalStateException(METHODNAME + "Uninitialized securityManagerLocal");
@@ -179,6 +222,38 @@ public abstract class BaseBO<T extends BaseDTO> {
 
             logExceptions = ObjectUtils.objectToBoolean(propertyMGRLocal.get(CoreConstants.LOG_EXCEPTIONS));
             logger.debug(METHODNAME, "logExceptions=", logExceptions);
+            Boolean changedPropertiesOnly = propertyMGRLocal.get("VALIDATE_CHANGED_PROPERTIES_ONLY", Boolean.class);
+            if (changedPropertiesOnly != null) {
+                validateChangedPropertiesOnly = changedPropertiesOnly;
+            }
+            Boolean hierarchyQueryProperty = propertyMGRLocal.get("HIERARCHY_QUERY", Boolean.class);
+            if (hierarchyQueryProperty != null) {
+                hierarchyQuery = hierarchyQueryProperty;
+            }
+            Integer hierarchyMaxDepthProperty = propertyMGRLocal.get("HIERARCHY_MAX_DEPTH", Integer.class);
+            if (hierarchyMaxDepthProperty != null && hierarchyMaxDepthProperty > 0) {
+                hierarchyMaxDepth = hierarchyMaxDepthProperty;
+            }
+            Integer childFetchConcurrencyProperty = propertyMGRLocal.get("CHILD_FETCH_CONCURRENCY", Integer.class);
+            if (childFetchConcurrencyProperty != null && childFetchConcurrencyProperty > 0) {
+                childFetchConcurrency = childFetchConcurrencyProperty;
+            }
+            Boolean skipSavedChildRefreshProperty = propertyMGRLocal.get("SKIP_SAVED_CHILD_REFRESH", Boolean.class);
+            if (skipSavedChildRefreshProperty != null) {
+                skipSavedChildRefresh = skipSavedChildRefreshProperty;
+            }
+            // the authorization cache is shared by every BO - configured by the first one constructed
+            if (!AuthorizationCache.isConfigured()) {
+                String invalidatingClasses = propertyMGRLocal.get("AUTHORIZATION_CACHE_INVALIDATING_CLASSES", String.class);
+                String keyProperties = propertyMGRLocal.get("AUTHORIZATION_CACHE_KEY_PROPERTIES", String.class);
+                AuthorizationCache.configure(propertyMGRLocal.get("AUTHORIZATION_CACHE_SECONDS", Integer.class),
+                        propertyMGRLocal.get("AUTHORIZATION_CACHE_MAX_ENTRIES", Integer.class),
+                        invalidatingClasses != null ? Arrays.asList(invalidatingClasses.split(",")) : null,
+                        keyProperties != null ? Arrays.asList(keyProperties.split(",")) : null);
+            }
+            String traceDtoClasses = propertyMGRLocal.get("TRACE_DTO_CLASSES", String.class);
+            TraceUtils.configure(propertyMGRLocal.get("TRACE_ENABLED", Boolean.class), propertyMGRLocal.get("TRACE_SAMPLE_RATE", Integer.class),
+                    traceDtoClasses != null ? Arrays.asList(traceDtoClasses.split(",")) : null);
             // Call initializeMain
             this.initializeMain();
 
@@ -193,8 +268,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             logger.error(METHODNAME, "An MtsException has occurred, Message:", e.getMessage(), e);
             //appLogMGRLocal.queueAppErrorLog(e, null);
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -214,8 +288,7 @@ public abstract class BaseBO<T extends BaseDTO> {
     // The map contains a list of childDTOs with there appropriate Query classes
     protected void initializeMain() throws MtsException {
         final String METHODNAME = "initializeMain ";
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         try {
             if (dtoClass == null) {
@@ -225,11 +298,12 @@ public abstract class BaseBO<T extends BaseDTO> {
                 configuration = new Configuration<T>(dtoClass, this, debugBO);
             }
             dao = EJBUtils.getDtoDao(dtoClass);
-            cached = DTOUtils.isCached(dtoClass);
+            dtoDescriptor = DTODescriptor.getInstance(dtoClass);
+            cached = dtoDescriptor.isCached();
             if (cached) {
-                selfReferencing = DTOUtils.getCached(dtoClass).isSelfReferencing();
+                selfReferencing = dtoDescriptor.getCached().isSelfReferencing();
             }
-            refreshOnAddOrUpdate = DTOUtils.isRefreshOnAddOrUpdate(dtoClass);
+            refreshOnAddOrUpdate = dtoDescriptor.isRefreshOnAddOrUpdate();
             dtoComparator = DTOUtils.getDtoComparator(dtoClass);
 
             for (Entry<Class<? extends BaseDTO>, Class> entry : configuration.getChildQueryMap().entrySet()) {
@@ -246,7 +320,7 @@ public abstract class BaseBO<T extends BaseDTO> {
                 logConfig();
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -278,8 +352,7 @@ public abstract class BaseBO<T extends BaseDTO> {
     private <C extends BaseDTO> void registerChildConfiguration(Class<C> childDto, Class queryClass) {
         final String METHODNAME = "registerChildBO ";
 
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             if (logger.isDebugEnabled()) {
                 logger.debug(METHODNAME + " queryClass=" + queryClass);
@@ -295,13 +368,13 @@ public abstract class BaseBO<T extends BaseDTO> {
             }
             childConfigurations.put(queryClass, childConfiguration);
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
     protected void processDTOCreateLastModDateId(T baseDTO, Operation operation, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO) {
         final String METHODNAME = "processDTOCreateLastModDateId ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
 
             // If its new or updated set the LastModId
@@ -324,7 +397,7 @@ public abstract class BaseBO<T extends BaseDTO> {
                 }
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -352,7 +425,7 @@ public abstract class BaseBO<T extends BaseDTO> {
     private void processDTOAutoKeyMain(T baseDTO, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "processDTOPrimaryKeyMain ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             if (baseDTO != null && baseDTO.isNew()) {
                 if (!baseDTO.isNoId()) {
@@ -361,11 +434,15 @@ public abstract class BaseBO<T extends BaseDTO> {
                     // Set by other source, client etc
                     if (!baseDTO.hasPrimaryKey()) {
                         if (baseDTO.isPKGeneratedSourceAuto()) {
-                            logger.debug(METHODNAME, " before autoSetPrimaryKeys(), name=", baseDTO.getClass().getName());
+                            if (logger.isDebugEnabled()) {
+                                logger.debug(METHODNAME, " before autoSetPrimaryKeys(), name=", baseDTO.getClass().getName());
+                            }
                             boolean result = baseDTO.autoSetPrimaryKeys();
-                            logger.debug(METHODNAME, "Evaluating auto id generation: ", result, " - ", baseDTO.getClass().getSimpleName());
+                            if (logger.isDebugEnabled()) {
+                                logger.debug(METHODNAME, "Evaluating auto id generation: ", result, " - ", baseDTO.getClass().getSimpleName());
+                            }
                         } else if (baseDTO.isPKGeneratedSourceSequence()) {
-                            List<Field> fields = DTOUtils.getPKGeneratedSourceSequenceFields(baseDTO.getClass());
+                            List<Field> fields = DTODescriptor.getInstance(baseDTO.getClass()).getPKGeneratedSourceSequenceFields();
                             if (fields.size() == 1) {
                                 Field field = fields.get(0);
                                 GeneratedValue generatedValue = field.getAnnotation(GeneratedValue.class);
@@ -377,7 +454,7 @@ public abstract class BaseBO<T extends BaseDTO> {
                                     }
                                 }
                             } else {
-                                for (Field field : DTOUtils.getPKGeneratedSourceSequenceFields(baseDTO.getClass())) {
+                                for (Field field : DTODescriptor.getInstance(baseDTO.getClass()).getPKGeneratedSourceSequenceFields()) {
                                     GeneratedValue generatedValue = field.getAnnotation(GeneratedValue.class);
                                     if (generatedValue != null) {
                                         String dataSource = generatedValue.dataSource();
@@ -407,7 +484,7 @@ public abstract class BaseBO<T extends BaseDTO> {
                 }
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -424,7 +501,7 @@ public abstract class BaseBO<T extends BaseDTO> {
     private void processBeginMain(T baseDTO, Operation operation, Class queryClass, List<Class> validationClasses, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "processBeginMain ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             // Process the DTOState
             processDTOState(baseDTO, operation, sessionDTO);
@@ -435,7 +512,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             // Call descendant level processing
             processBegin(baseDTO, operation, queryClass, validationClasses, sessionDTO, propertyBagDTO);
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -450,12 +527,13 @@ public abstract class BaseBO<T extends BaseDTO> {
             throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "processDTOState ";
 
-        // Log begin
-        logger.logBegin(METHODNAME, baseDTO);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
 
             if (baseDTO != null) {
-                logger.debug(METHODNAME, "baseDTO.getClass().getName()=", baseDTO.getClass().getName());
+                if (logger.isDebugEnabled()) {
+                    logger.debug(METHODNAME, "baseDTO.getClass().getName()=", baseDTO.getClass().getName());
+                }
                 // Find DTO's may have isNew, the reset will take care of it
                 if (operation == Operation.FIND) {
 //                    baseDTO.resetDTOState();
@@ -494,15 +572,14 @@ public abstract class BaseBO<T extends BaseDTO> {
             }
 
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME, baseDTO);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
     protected void processRowsReturned(T baseDTO, Operation operation, Class queryClass,
             SessionDTO sessionDTO, int rowsReturned, PropertyBagDTO propertyBagDTO) throws MtsException {
         if (rowsReturned == 0) {
-            RowsReturnCountBehavior rowsReturnCountBehaviorValue = DTOUtils.getRowsReturnCountBehaviorValue(baseDTO.getClass());
+            RowsReturnCountBehavior rowsReturnCountBehaviorValue = DTODescriptor.getInstance(baseDTO.getClass()).getRowsReturnCountBehavior();
             boolean ignoreException = false;
             if (rowsReturnCountBehaviorValue != null) {
                 switch (operation) {
@@ -532,20 +609,119 @@ public abstract class BaseBO<T extends BaseDTO> {
     }
 
     private T addOrUpdate(T baseDTO, List<Class> childClassDTOs, Operation operation, Class queryClass, List<Class> validationClasses,
-            boolean skipCheckAuthority, List<T> childrenDTOs, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            boolean skipCheckAuthority, ChildReferences<T> childReferences, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws ValidationException, NotFoundException, ConstraintViolationException, MtsException,
             AuthenticationException, AuthorizationException {
 
         long start = System.nanoTime();
         final String METHODNAME = "addOrUpdate ";
 
-        logger.logBegin(METHODNAME);
-        if (baseDTO == null) {
-            throw new MtsException(METHODNAME + "baseDTO is null!");
-        }
+        final long traceStart = TraceUtils.start(dtoClass);
         T resultDTO = null;
 
         try {
+            PendingWrite<T> pendingWrite = prepareAddOrUpdate(baseDTO, operation, queryClass, validationClasses, skipCheckAuthority,
+                    sessionDTO, propertyBagDTO);
+            // If UNSET return
+            if (pendingWrite.unset) {
+                return pendingWrite.baseDTO;
+            }
+            writeAddOrUpdate(pendingWrite, sessionDTO, propertyBagDTO);
+            resultDTO = completeAddOrUpdate(pendingWrite, childClassDTOs, validationClasses, childReferences, sessionDTO, propertyBagDTO);
+        } finally {
+            logger.logDuration(LogLevel.DEBUG, METHODNAME, start);                                                
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
+        }
+        return resultDTO;
+    }
+
+    //
+    // Add or update a list of children of the same state with one DAO batch. Every child runs the per row steps of addOrUpdate
+    // before the batch (authority, auto keys, pre add/update, validation and reference DTOs) and after it (refresh, post add/update,
+    // its own children, cache and processEnd) - only the DAO writes are grouped.
+    //
+    private void addOrUpdateAll(List<T> baseDTOs, List<Class> childClassDTOs, Operation operation, Class queryClass, List<Class> validationClasses,
+            ChildReferences<T> childReferences, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ValidationException, NotFoundException, ConstraintViolationException, MtsException,
+            AuthenticationException, AuthorizationException {
+        long start = System.nanoTime();
+        final String METHODNAME = "addOrUpdateAll ";
+
+        final long traceStart = TraceUtils.start(dtoClass);
+        try {
+            List<PendingWrite<T>> pendingWrites = new ArrayList<PendingWrite<T>>(baseDTOs.size());
+            for (T baseDTO : baseDTOs) {
+                PendingWrite<T> pendingWrite = prepareAddOrUpdate(baseDTO, operation, queryClass, validationClasses, false,
+                        sessionDTO, propertyBagDTO);
+                if (!pendingWrite.unset) {
+                    pendingWrites.add(pendingWrite);
+                }
+            }
+
+            List<T> addDTOs = new ArrayList<T>();
+            List<T> updateDTOs = new ArrayList<T>();
+            for (PendingWrite<T> pendingWrite : pendingWrites) {
+                if (pendingWrite.baseDTO.isNew()) {
+                    addDTOs.add(pendingWrite.baseDTO);
+                } else if (pendingWrite.baseDTO.isUpdated()) {
+                    updateDTOs.add(pendingWrite.baseDTO);
+                }
+            }
+            if (logger.isDebugEnabled() || debugBO) {
+                logger.debug(METHODNAME, "adds: ", addDTOs.size(), " updates: ", updateDTOs.size(), " queryClass: ", queryClass);
+            }
+            int[] addCounts = addDTOs.isEmpty() ? new int[0] : dao.addAll(addDTOs, queryClass, sessionDTO, propertyBagDTO);
+            int[] updateCounts = updateDTOs.isEmpty() ? new int[0] : dao.updateAll(updateDTOs, queryClass, sessionDTO, propertyBagDTO);
+
+            // Reads of this class earlier in the call are now stale
+            IdentityMapUtils.evict(dtoClass, propertyBagDTO);
+            ReferenceSnapshotUtils.evict(dtoClass, propertyBagDTO);
+            AuthorizationCache.invalidate(dtoClass);
+
+            int addIndex = 0;
+            int updateIndex = 0;
+            Object generatedValuesDTO = propertyBagDTO.get(QueryCallback.GENERATED_VALUES_DTO);
+            propertyBagDTO.remove(QueryCallback.GENERATED_VALUES_DTO);
+            for (PendingWrite<T> pendingWrite : pendingWrites) {
+                if (pendingWrite.baseDTO.isNew()) {
+                    pendingWrite.rowsReturned = addCounts[addIndex++];
+                } else if (pendingWrite.baseDTO.isUpdated()) {
+                    pendingWrite.rowsReturned = updateCounts[updateIndex++];
+                } else {
+                    // Force a refresh
+                    pendingWrite.rowsReturned = 1;
+                }
+                pendingWrite.generatedValuesApplied = generatedValuesDTO == pendingWrite.baseDTO && !dao.isRefreshAfterWriteRequired();
+            }
+
+            for (PendingWrite<T> pendingWrite : pendingWrites) {
+                completeAddOrUpdate(pendingWrite, childClassDTOs, validationClasses, childReferences, sessionDTO, propertyBagDTO);
+            }
+        } finally {
+            logger.logDuration(LogLevel.DEBUG, METHODNAME, start);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
+        }
+    }
+
+    //
+    // The steps of addOrUpdate that run before the DAO write - returns the DTO, operation and query class to write, which a
+    // descendant preAddOrUpdate may have changed.
+    //
+    private PendingWrite<T> prepareAddOrUpdate(T baseDTO, Operation operation, Class queryClass, List<Class> validationClasses,
+            boolean skipCheckAuthority, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ValidationException, NotFoundException, ConstraintViolationException, MtsException,
+            AuthenticationException, AuthorizationException {
+        final String METHODNAME = "prepareAddOrUpdate ";
+
+        final long traceStart = TraceUtils.start(dtoClass);
+        try {
+            if (baseDTO == null) {
+                throw new MtsException(METHODNAME + "baseDTO is null!");
+            }
+            if (ProjectionUtils.isPartial(baseDTO)) {
+                throw new MtsException(logger.error(METHODNAME, baseDTO.getClass().getSimpleName(),
+                        " was returned by a projection query and only holds part of its properties - it can not be saved."));
+            }
 
             // Perform all the standard processing, each of these execute descendant level calls
             if (!skipCheckAuthority) {
@@ -558,7 +734,9 @@ public abstract class BaseBO<T extends BaseDTO> {
                 // RSClient indicates that a rest client is aware of both the DTOState and the PropertyChangeEventMap
                 boolean rsClient = ObjectUtils.objectToBoolean(propertyBagDTO.get(CoreRsConstants.RS_CLIENT));
 
-                logger.debug(METHODNAME, "baseDTO.getClass().getSimpleName()=", baseDTO.getClass().getSimpleName(), " refreshDTO=", refreshDTO, " rsClient=", rsClient);
+                if (logger.isDebugEnabled()) {
+                    logger.debug(METHODNAME, "baseDTO.getClass().getSimpleName()=", baseDTO.getClass().getSimpleName(), " refreshDTO=", refreshDTO, " rsClient=", rsClient);
+                }
                 if (rsClient || refreshDTO) {
                     if (logger.isDebugEnabled()) {                    
                         logger.debug(METHODNAME, "incoming baseDTO.getDTOStates()=",  baseDTO.getDTOStates(), 
@@ -641,7 +819,7 @@ public abstract class BaseBO<T extends BaseDTO> {
                 baseDTO = (T) operationInfo.get("baseDTO");
                 // If UNSET return
                 if (baseDTO.getOperationDTOState() == DTOState.UNSET) {
-                    return baseDTO;
+                    return new PendingWrite<T>(baseDTO, operation, queryClass, true);
                 }
             }
 
@@ -686,21 +864,60 @@ public abstract class BaseBO<T extends BaseDTO> {
                 referenceMGRLocal.addOrUpdateReferenceDTO(baseDTO, queryClass, validationClasses, sessionDTO, propertyBagDTO);
             }
 
-            // Track rows returned from dao
-            int rowsReturned = 0;
-            if (baseDTO.isNew()) {
-                // Perform the add
-                rowsReturned = dao.add(baseDTO, queryClass, sessionDTO, propertyBagDTO);
-            } else if (baseDTO.isUpdated()) {
-                // Perform the update
-                rowsReturned = dao.update(baseDTO, queryClass, sessionDTO, propertyBagDTO);
-            } else {
-                // Force a refresh
-                rowsReturned = 1;
-            }
-            
-//            logger.debug(METHODNAME, "rowsReturned=", rowsReturned);
+            return new PendingWrite<T>(baseDTO, operation, queryClass, false);
+        } finally {
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
+        }
+    }
+
+    //
+    // The DAO write of addOrUpdate
+    //
+    private void writeAddOrUpdate(PendingWrite<T> pendingWrite, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws NotFoundException, ConstraintViolationException, MtsException {
+        T baseDTO = pendingWrite.baseDTO;
+        Class queryClass = pendingWrite.queryClass;
+
+        // Track rows returned from dao
+        int rowsReturned = 0;
+        if (baseDTO.isNew()) {
+            // Perform the add
+            rowsReturned = dao.add(baseDTO, queryClass, sessionDTO, propertyBagDTO);
+        } else if (baseDTO.isUpdated()) {
+            // Perform the update
+            rowsReturned = dao.update(baseDTO, queryClass, sessionDTO, propertyBagDTO);
+        } else {
+            // Force a refresh
+            rowsReturned = 1;
+        }
+        // Reads of this class earlier in the call are now stale
+        IdentityMapUtils.evict(dtoClass, propertyBagDTO);
+        ReferenceSnapshotUtils.evict(dtoClass, propertyBagDTO);
+        AuthorizationCache.invalidate(dtoClass);
+        pendingWrite.rowsReturned = rowsReturned;
+        // The write returned every database side value - the row does not need to be re-read
+        pendingWrite.generatedValuesApplied = propertyBagDTO.get(QueryCallback.GENERATED_VALUES_DTO) == baseDTO && !dao.isRefreshAfterWriteRequired();
+        propertyBagDTO.remove(QueryCallback.GENERATED_VALUES_DTO);
+    }
+
+    //
+    // The steps of addOrUpdate that run after the DAO write - returns the saved DTO
+    //
+    private T completeAddOrUpdate(PendingWrite<T> pendingWrite, List<Class> childClassDTOs, List<Class> validationClasses,
+            ChildReferences<T> childReferences, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ValidationException, NotFoundException, ConstraintViolationException, MtsException,
+            AuthenticationException, AuthorizationException {
+        final String METHODNAME = "completeAddOrUpdate ";
+
+        final long traceStart = TraceUtils.start(dtoClass);
+        T baseDTO = pendingWrite.baseDTO;
+        Operation operation = pendingWrite.operation;
+        Class queryClass = pendingWrite.queryClass;
+        int rowsReturned = pendingWrite.rowsReturned;
+        boolean generatedValuesApplied = pendingWrite.generatedValuesApplied;
+        T resultDTO = null;
 
+        try {
             // rowsReturned = 0 indicates that the add or updated failed
             if (rowsReturned > 0) {
                 // Set the resultDTO
@@ -715,18 +932,21 @@ public abstract class BaseBO<T extends BaseDTO> {
                 //
                 // Called only if the dtoType is cached or requires a refreshAfterUpdate
                 if (refreshOnAddOrUpdate || cached) {
-                    T latestDTO = dao.findByPrimaryKey(baseDTO, sessionDTO, propertyBagDTO);
+                    // The re-read is skipped when the write returned every database side value
+                    if (!generatedValuesApplied) {
+                        T latestDTO = dao.findByPrimaryKey(baseDTO, sessionDTO, propertyBagDTO);
 
-                    // This step transfers the childrenDTOs from the dto that is being processed,
-                    // to the latestDTO.
-                    //
-                    // Note: This was always done for the top level dto (ie. parentDTO)
-                    // and due to the unification of add/update the childDTO will now inherit
-                    // this behavior.
-                    //
-                    // If it becomes necessary a flag can be added in the argument list to
-                    // control this behavior when executed from the child level processing.
-                    resultDTO = transferChildren(latestDTO, operation, queryClass, baseDTO, propertyBagDTO);
+                        // This step transfers the childrenDTOs from the dto that is being processed,
+                        // to the latestDTO.
+                        //
+                        // Note: This was always done for the top level dto (ie. parentDTO)
+                        // and due to the unification of add/update the childDTO will now inherit
+                        // this behavior.
+                        //
+                        // If it becomes necessary a flag can be added in the argument list to
+                        // control this behavior when executed from the child level processing.
+                        resultDTO = transferChildren(latestDTO, operation, queryClass, baseDTO, propertyBagDTO);
+                    }
 
                     //
                     // Locate any referenceDTO that exists on the resultDTO
@@ -766,17 +986,21 @@ public abstract class BaseBO<T extends BaseDTO> {
                     postUpdateMain(resultDTO, queryClass, sessionDTO, propertyBagDTO);
                 }
 
+                // Child collections saved by the child processes whose saved children are current in memory
+                Set<Class> savedChildQueryClasses = new HashSet<Class>();
+
                 // Based on the operation call the appropriate child process
                 if (operation == Operation.ADD) {
                     // Add the children
-                    addChildrenMain(resultDTO, childClassDTOs, queryClass, validationClasses, sessionDTO, propertyBagDTO);
+                    addChildrenMain(resultDTO, childClassDTOs, queryClass, validationClasses, savedChildQueryClasses, sessionDTO, propertyBagDTO);
                 } else if (operation == Operation.UPDATE) {
                     // Update the children
-                    updateChildrenMain(resultDTO, childClassDTOs, queryClass, validationClasses, sessionDTO, propertyBagDTO);
+                    updateChildrenMain(resultDTO, childClassDTOs, queryClass, validationClasses, savedChildQueryClasses, sessionDTO, propertyBagDTO);
                 }
 
                 // Refresh autoRetrieve flagged childDTOs or RefreshChildClassDTOs in the propertyBagDTO
-                findChildrenMain(resultDTO, queryClass, validationClasses, new ArrayList<Class>(), sessionDTO, propertyBagDTO);
+                findChildrenMain(resultDTO, queryClass, validationClasses, new ArrayList<Class>(),
+                        skipSavedChildRefresh ? savedChildQueryClasses : null, sessionDTO, propertyBagDTO);
 
                 // If it cached, refresh the cache with the new instance
                 if (cached) {
@@ -799,15 +1023,13 @@ public abstract class BaseBO<T extends BaseDTO> {
             }
 
             // Update the childDTO reference in the childrenDTOs list
-            if (childrenDTOs != null) {
-                updateChildReference(baseDTO, resultDTO, childrenDTOs);
+            if (childReferences != null) {
+                updateChildReference(baseDTO, resultDTO, childReferences);
             }
 
             processEndMain(resultDTO, childClassDTOs, operation, queryClass, sessionDTO, propertyBagDTO);
-
         } finally {
-            logger.logDuration(LogLevel.DEBUG, METHODNAME, start);                                                
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
         return resultDTO;
     }
@@ -864,8 +1086,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             throw new MtsException("queryClass cannot be null");
         }
 
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         T resultDTO = null;
 
         try {
@@ -883,7 +1104,7 @@ public abstract class BaseBO<T extends BaseDTO> {
         } finally {
             // Log end
             logger.logDuration(LogLevel.DEBUG, METHODNAME, start);                                                
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
         return resultDTO;
     }
@@ -947,13 +1168,13 @@ public abstract class BaseBO<T extends BaseDTO> {
     //
     // Method used to add children, delegates to ChildBO's addChildren
     //
-    private void addChildrenMain(T parentDTO, List<Class> childClassDTOs, Class queryClass, List<Class> validationClasses, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+    private void addChildrenMain(T parentDTO, List<Class> childClassDTOs, Class queryClass, List<Class> validationClasses,
+            Set<Class> savedChildQueryClasses, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws ConstraintViolationException, NotFoundException, MtsException, ValidationException, AuthenticationException,
             AuthorizationException {
         long start = System.nanoTime();
         final String METHODNAME = "addChildrenMain ";
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             if (logger.isDebugEnabled() || debugBO) {
                 logger.debug(METHODNAME, " childBOs size: ", configuration.getChildQueryClassAddUpdateOrder().size());
@@ -992,20 +1213,23 @@ public abstract class BaseBO<T extends BaseDTO> {
                     if (!childrenDTOs.isEmpty()) {
                         // Call ChildBO.addChildren
                         childBO.addChildren(parentDTO, childrenDTOs, childClassDTOs, queryClass, childBOQueryClass, validationClasses, sessionDTO, propertyBagDTO);
+                        if (childBO.isSavedChildrenCurrent()) {
+                            savedChildQueryClasses.add(childBOQueryClass);
+                        }
                     }
                 }
             }
         } finally {
             // Log end
             logger.logDuration(LogLevel.DEBUG, METHODNAME, start);                                                
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
-    private void updateChildReference(T originalDTO, T latestDTO, List<T> childrenDTOs)
+    private void updateChildReference(T originalDTO, T latestDTO, ChildReferences<T> childReferences)
             throws MtsException {
         final String METHODNAME = "updateChildReference ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         try {
             //
@@ -1014,20 +1238,19 @@ public abstract class BaseBO<T extends BaseDTO> {
             // with the resultDTO
             //
             if (refreshOnAddOrUpdate || cached) {
-                int index = childrenDTOs.indexOf(originalDTO);
+                int index = childReferences.replace(originalDTO, latestDTO);
                 if (index >= 0) {
                     if (logger.isDebugEnabled()) {
                         logger.debug(METHODNAME, "index= ", index, " originalDTO.getUuid()= ", originalDTO != null ? originalDTO.getUuid() : null,
-                                "childrenDTOs.get(", index, ").getUuid()= ", index > -1 ? childrenDTOs.get(index).getUuid() : null);
+                                " latestDTO.getUuid()= ", latestDTO != null ? latestDTO.getUuid() : null);
                     }
-                    childrenDTOs.set(index, latestDTO);
                 } else {
                     throw new MtsException(METHODNAME + "Could not locate originalDTO to transfer, index="
                             + index + " originalDTO.getPrimaryKey()=" + originalDTO.getPrimaryKey());
                 }
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -1039,8 +1262,7 @@ public abstract class BaseBO<T extends BaseDTO> {
         long start = System.nanoTime();
         final String METHODNAME = "addChildren ";
 
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             if (configuration.isAddsChild()) {
 
@@ -1058,6 +1280,12 @@ public abstract class BaseBO<T extends BaseDTO> {
                         logger.debug(METHODNAME, "PARENT PRIMARY KEY: ", parentPrimaryKey);
                     }
 
+                    // The saved children replace the originals in the parent's list - read the list once for all children
+                    ChildReferences<T> childReferences = new ChildReferences<T>((List<T>) parentDTO.getChildrenDTOs(childBOQueryClass));
+
+                    // Several children are written with one DAO batch
+                    boolean batchWrite = childrenDTOs.size() > 1 && isBatchWriteEligible(queryClass, true);
+
                     while (iterator.hasNext()) {
                         // Get the child
                         T childDTO = iterator.next();
@@ -1067,8 +1295,14 @@ public abstract class BaseBO<T extends BaseDTO> {
                             // Set the ForeignKey on the childDTO
                             childDTO.setForeignKey(parentDTO.getClass(), parentPrimaryKey);
                         }
-                        addOrUpdate(childDTO, childClassDTOs, Operation.ADD, queryClass, validationClasses, false,
-                                (List<T>) parentDTO.getChildrenDTOs(childBOQueryClass), sessionDTO, propertyBagDTO);
+                        if (!batchWrite) {
+                            addOrUpdate(childDTO, childClassDTOs, Operation.ADD, queryClass, validationClasses, false,
+                                    childReferences, sessionDTO, propertyBagDTO);
+                        }
+                    }
+                    if (batchWrite) {
+                        addOrUpdateAll(childrenDTOs, childClassDTOs, Operation.ADD, queryClass, validationClasses,
+                                childReferences, sessionDTO, propertyBagDTO);
                     }
                 }
             } else {
@@ -1078,7 +1312,7 @@ public abstract class BaseBO<T extends BaseDTO> {
         } finally {
             // Log end
             logger.logDuration(LogLevel.DEBUG, METHODNAME, start);                                                
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -1100,8 +1334,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             throw new MtsException("queryClass cannot be null");
         }
 
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         T resultDTO = null;
 
         try {
@@ -1118,8 +1351,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             throw e;            
             
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
         return resultDTO;
     }
@@ -1127,13 +1359,13 @@ public abstract class BaseBO<T extends BaseDTO> {
     //
     // Method used to update children, delegates to ChildBO's updateChild
     //
-    private void updateChildrenMain(T parentDTO, List<Class> childClassDTOs, Class queryClass, List<Class> validationClasses, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+    private void updateChildrenMain(T parentDTO, List<Class> childClassDTOs, Class queryClass, List<Class> validationClasses,
+            Set<Class> savedChildQueryClasses, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws ConstraintViolationException, NotFoundException, MtsException, ValidationException, AuthenticationException,
             AuthorizationException {
         final String METHODNAME = "updateChildren ";
 
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         try {
             for (Class childQueryClass : configuration.getChildQueryClassAddUpdateOrder()) {
@@ -1167,13 +1399,15 @@ public abstract class BaseBO<T extends BaseDTO> {
                     // Call ChildBO.updateChildren
                     if (!childrenDTOs.isEmpty()) {
                         childBO.updateChildren(parentDTO, childrenDTOs, childClassDTOs, queryClass, childBOQueryClass, validationClasses, sessionDTO, propertyBagDTO);
+                        if (childBO.isSavedChildrenCurrent()) {
+                            savedChildQueryClasses.add(childBOQueryClass);
+                        }
                     }
 
                 }
             }
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -1184,8 +1418,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             AuthenticationException, AuthorizationException {
         final String METHODNAME = "updateChildren ";
 
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         try {
 
@@ -1198,7 +1431,6 @@ public abstract class BaseBO<T extends BaseDTO> {
                 if (childrenDTOs.size() > 0) {
                     // set the parent on the propertyBag in the event a child needs access to the parent
                     propertyBagDTO.setParentDTO((Class<BaseDTO>) parentDTO.getClass(), parentDTO);
-                    Collections.sort(childrenDTOs, new ChildDTOListStateComparator());
 
                     // Set the childs foreign from the parents primary key
                     Object parentPrimaryKey = parentDTO.getPrimaryKey();
@@ -1206,29 +1438,50 @@ public abstract class BaseBO<T extends BaseDTO> {
                         logger.debug(METHODNAME, "PARENT PRIMARY KEY: ", parentPrimaryKey);
                     }
 
-                    // Process the children
-                    Iterator<T> iterator = childrenDTOs.iterator();
-                    while (iterator.hasNext()) {
-                        // Get the child
-                        T childDTO = iterator.next();
+                    // Group the children by state in one pass, in the order the ChildDTOListStateComparator sort produced
+                    List<List<T>> partitions = getStatePartitions(childrenDTOs);
+                    childrenDTOs.clear();
+                    for (List<T> partition : partitions) {
+                        childrenDTOs.addAll(partition);
+                    }
 
-                        // Handle setting the primary key
-                        if (childDTO.isNew()) {
-                            // Set the ForeignKey on the childDTO
-                            childDTO.setForeignKey(parentDTO.getClass(), parentPrimaryKey);
-                        }
+                    // The saved children replace the originals in the parent's list - read the list once for all children
+                    ChildReferences<T> childReferences = new ChildReferences<T>((List<T>) parentDTO.getChildrenDTOs(childBOQueryClass));
 
-                        // If its NOT DELETED
-                        if (!childDTO.isDeleted()) {
-                            // If the child isNew or isUpdated or (NOT deleted (Called to refresh if flag is set))
-                            addOrUpdate(childDTO, childClassDTOs, Operation.UPDATE, queryClass, validationClasses, false,
-                                    (List<T>) parentDTO.getChildrenDTOs(childBOQueryClass), sessionDTO, propertyBagDTO);
-                        } else {
-                            // It's been deleted, call deleteMain so that the baseDTO is processed following remove logic.
+                    // Process the children
+                    for (List<T> partition : partitions) {
+                        if (partition.get(0).isDeleted()) {
                             // Delete logic ensures that the childDTOs are deleted before there parents.
-                            // Since this object is a child its children will be deleted first if they exist
-                            deleteMain(childDTO, Delete.class, sessionDTO, propertyBagDTO);
-                            iterator.remove();
+                            // Since these objects are children their children will be deleted first if they exist
+                            if (partition.size() > 1 && isBulkDeleteEligible(Delete.class) && !isReferenceDTOsExist(partition)) {
+                                bulkDeleteMain(partition, null, Delete.class, sessionDTO, propertyBagDTO);
+                            } else {
+                                for (T childDTO : partition) {
+                                    deleteMain(childDTO, Delete.class, sessionDTO, propertyBagDTO);
+                                }
+                            }
+                            removeAllByIdentity(childrenDTOs, partition);
+                        } else {
+                            T firstDTO = partition.get(0);
+                            // Several new or updated children are written with one DAO batch
+                            boolean batchWrite = partition.size() > 1 && (firstDTO.isNew() || firstDTO.isUpdated())
+                                    && isBatchWriteEligible(queryClass, firstDTO.isNew());
+                            for (T childDTO : partition) {
+                                // Handle setting the primary key
+                                if (childDTO.isNew()) {
+                                    // Set the ForeignKey on the childDTO
+                                    childDTO.setForeignKey(parentDTO.getClass(), parentPrimaryKey);
+                                }
+                                // If the child isNew or isUpdated or (NOT deleted (Called to refresh if flag is set))
+                                if (!batchWrite) {
+                                    addOrUpdate(childDTO, childClassDTOs, Operation.UPDATE, queryClass, validationClasses, false,
+                                            childReferences, sessionDTO, propertyBagDTO);
+                                }
+                            }
+                            if (batchWrite) {
+                                addOrUpdateAll(partition, childClassDTOs, Operation.UPDATE, queryClass, validationClasses,
+                                        childReferences, sessionDTO, propertyBagDTO);
+                            }
                         }
                     }
                 }
@@ -1238,9 +1491,50 @@ public abstract class BaseBO<T extends BaseDTO> {
             }
 
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
+        }
+    }
+
+    //
+    // Splits the children into one list per DTO state, keeping the order of the children within a state. The lists are ordered
+    // the way ChildDTOListStateComparator orders their states, which makes the result the same as a stable sort of the children.
+    //
+    private List<List<T>> getStatePartitions(List<T> childrenDTOs) {
+        Map<DTOState, List<T>> partitionMap = new LinkedHashMap<DTOState, List<T>>();
+        for (T childDTO : childrenDTOs) {
+            List<T> partition = partitionMap.get(childDTO.getDTOState());
+            if (partition == null) {
+                partition = new ArrayList<T>();
+                partitionMap.put(childDTO.getDTOState(), partition);
+            }
+            partition.add(childDTO);
+        }
+        List<List<T>> partitions = new ArrayList<List<T>>(partitionMap.values());
+        if (partitions.size() > 1) {
+            final Comparator stateComparator = new ChildDTOListStateComparator();
+            Collections.sort(partitions, new Comparator<List<T>>() {
+                @Override
+                public int compare(List<T> o1, List<T> o2) {
+                    return stateComparator.compare(o1.get(0), o2.get(0));
+                }
+            });
         }
+        return partitions;
+    }
+
+    private static <S extends BaseDTO> void removeAllByIdentity(List<S> baseDTOs, List<S> removedDTOs) {
+        Map<S, Boolean> removed = new IdentityHashMap<S, Boolean>();
+        for (S removedDTO : removedDTOs) {
+            removed.put(removedDTO, Boolean.TRUE);
+        }
+        List<S> remaining = new ArrayList<S>(baseDTOs.size());
+        for (S baseDTO : baseDTOs) {
+            if (!removed.containsKey(baseDTO)) {
+                remaining.add(baseDTO);
+            }
+        }
+        baseDTOs.clear();
+        baseDTOs.addAll(remaining);
     }
 
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
@@ -1263,8 +1557,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             throw new MtsException("queryClass cannot be null");
         }
 
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             if (configuration.isDeleteAllowed()) {
 
@@ -1303,6 +1596,9 @@ public abstract class BaseBO<T extends BaseDTO> {
                 int rowsReturned = 0;
                 if (primaryKey != null) {
                     rowsReturned = dao.delete(baseDTO, queryClass, sessionDTO, propertyBagDTO);
+                    IdentityMapUtils.evict(dtoClass, propertyBagDTO);
+                    ReferenceSnapshotUtils.evict(dtoClass, propertyBagDTO);
+                    AuthorizationCache.invalidate(dtoClass);
                 }
                 if (logger.isDebugEnabled()) {
                     logger.debug(METHODNAME, "rowsReturned=", rowsReturned);
@@ -1339,8 +1635,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             throw e;            
             
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -1350,43 +1645,63 @@ public abstract class BaseBO<T extends BaseDTO> {
     private void deleteChildrenMain(T parentDTO, Class queryClass, List<Class> validationClasses, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws NotFoundException, MtsException, ValidationException, AuthenticationException, AuthorizationException,
             ConstraintViolationException {
+        List<T> parentDTOs = new ArrayList<T>();
+        parentDTOs.add(parentDTO);
+        deleteChildrenMain(parentDTOs, queryClass, validationClasses, sessionDTO, propertyBagDTO);
+    }
+
+    //
+    // Removes the children of a set of parents level by level. The parents are handed to the child BO together when the child BO
+    // can delete their children set based, otherwise parent by parent.
+    //
+    private void deleteChildrenMain(List<T> parentDTOs, Class queryClass, List<Class> validationClasses, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws NotFoundException, MtsException, ValidationException, AuthenticationException, AuthorizationException,
+            ConstraintViolationException {
         final String METHODNAME = "deleteChildrenMain ";
 
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         try {
+            if (parentDTOs.isEmpty()) {
+                return;
+            }
             for (Class childQueryClass : configuration.getChildQueryClassDeleteOrder()) {
                 Configuration registeredChildBO = childConfigurations.get(childQueryClass);
                 BaseBO childBO = registeredChildBO.getDtoBo();
-
-                if (logger.isDebugEnabled()) {
-                    logger.debug(METHODNAME, "childBO", childBO, " childBO.getConfiguration().isDeletesChild()= ", childBO.getConfiguration().isDeletesChild());
-                }
-
-                // Get the child configuration
                 Configuration childConfiguration = childBO.getConfiguration();
-
-                // Can the Delete the children ?
-                if (childConfiguration.isDeletesChild() && !childConfiguration.isVanity(parentDTO.getClass())) {
-                    Class childBOQueryClass = registeredChildBO.getQueryClass();
-                    //List<BaseDTO> childrenDTOs = parentDTO.getChildrenDTOs(childBOQueryClass);
-                    List<BaseDTO> childrenDTOs = parentDTO.getChildrenDTOs(childBOQueryClass, DTOState.DELETED);
-
-                    if (logger.isDebugEnabled()) {
-                        logChildren(METHODNAME, parentDTO, childBO, childrenDTOs, childBOQueryClass);
-                    }
-
-                    // Is Empty
-                    if (!childrenDTOs.isEmpty()) {
-                        // Call ChildBO.deleteChildren
-                        childBO.deleteChildren(parentDTO, childrenDTOs, queryClass, validationClasses, sessionDTO, propertyBagDTO);
-                    }
+                if (!childConfiguration.isDeletesChild() || childConfiguration.isVanity(parentDTOs.get(0).getClass())) {
+                    continue;
+                }
+                Class childBOQueryClass = registeredChildBO.getQueryClass();
+                if (parentDTOs.size() > 1 && childBO.isBulkDeleteEligible(queryClass)) {
+                    childBO.deleteChildrenOfParents(parentDTOs, childBOQueryClass, queryClass, validationClasses, sessionDTO, propertyBagDTO);
+                    continue;
+                }
+                for (T parentDTO : parentDTOs) {
+                    deleteChildrenMain(parentDTO, childBO, childBOQueryClass, queryClass, validationClasses, sessionDTO, propertyBagDTO);
                 }
             }
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
+        }
+    }
+
+    private void deleteChildrenMain(T parentDTO, BaseBO childBO, Class childBOQueryClass, Class queryClass, List<Class> validationClasses,
+            SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws NotFoundException, MtsException, ValidationException, AuthenticationException, AuthorizationException,
+            ConstraintViolationException {
+        final String METHODNAME = "deleteChildrenMain ";
+        //List<BaseDTO> childrenDTOs = parentDTO.getChildrenDTOs(childBOQueryClass);
+        List<BaseDTO> childrenDTOs = parentDTO.getChildrenDTOs(childBOQueryClass, DTOState.DELETED);
+
+        if (logger.isDebugEnabled()) {
+            logChildren(METHODNAME, parentDTO, childBO, childrenDTOs, childBOQueryClass);
+        }
+
+        // Is Empty
+        if (!childrenDTOs.isEmpty()) {
+            // Call ChildBO.deleteChildren
+            childBO.deleteChildren(parentDTO, childrenDTOs, queryClass, validationClasses, sessionDTO, propertyBagDTO);
         }
     }
 
@@ -1397,13 +1712,17 @@ public abstract class BaseBO<T extends BaseDTO> {
             AuthenticationException, AuthorizationException, ConstraintViolationException {
         final String METHODNAME = "deleteChildren ";
 
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         try {
             if (configuration.isDeletesChild()) {
 
-                if (childrenDTOs.size() > 0) {
+                if (childrenDTOs.size() > 1 && isBulkDeleteEligible(queryClass) && !isReferenceDTOsExist(childrenDTOs)) {
+                    // set the parent on the propertyBag in the event a child needs access to the parent
+                    propertyBagDTO.setParentDTO((Class<BaseDTO>) parentDTO.getClass(), parentDTO);
+                    bulkDeleteMain(childrenDTOs, null, queryClass, sessionDTO, propertyBagDTO);
+                    childrenDTOs.clear();
+                } else if (childrenDTOs.size() > 0) {
                     // set the parent on the propertyBag in the event a child needs access to the parent
                     propertyBagDTO.setParentDTO((Class<BaseDTO>) parentDTO.getClass(), parentDTO);
                     Iterator<T> iterator = childrenDTOs.iterator();
@@ -1422,89 +1741,338 @@ public abstract class BaseBO<T extends BaseDTO> {
             }
 
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
-    public Map<Object, T> getCachedMap() throws MtsException, NotFoundException {
-        final String METHODNAME = "getCachedMap ";
-        logger.logBegin(METHODNAME);
-        Map<Object, T> cachedMap = new LinkedHashMap<Object, T>();
+    // deleteChildrenOfParents called by ParentBO EJB
+    @TransactionAttribute(TransactionAttributeType.MANDATORY)
+    public void deleteChildrenOfParents(List<? extends BaseDTO> parentDTOs, Class childBOQueryClass, Class queryClass, List<Class> validationClasses,
+            SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ValidationException, NotFoundException, MtsException,
+            AuthenticationException, AuthorizationException, ConstraintViolationException {
+        final String METHODNAME = "deleteChildrenOfParents ";
+
+        final long traceStart = TraceUtils.start(dtoClass);
+
         try {
-            if (cached) {
-                initializeCache();
-                cachedMap = cacheMgrLocal.getCachedMap(dtoClass);
+            if (configuration.isDeletesChild()) {
+                // the deleted children of every parent, each mapped to its own parent
+                List<List<T>> parentChildrenDTOs = new ArrayList<List<T>>();
+                List<T> childrenDTOs = new ArrayList<T>();
+                Map<T, BaseDTO> childParentMap = new IdentityHashMap<T, BaseDTO>();
+                for (BaseDTO parentDTO : parentDTOs) {
+                    List<T> parentChildren = (List<T>) parentDTO.getChildrenDTOs(childBOQueryClass, DTOState.DELETED);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug(METHODNAME, "parentDTO=", parentDTO, " childBOQueryClass=", childBOQueryClass, " size=", parentChildren.size());
+                    }
+                    parentChildrenDTOs.add(parentChildren);
+                    for (T childDTO : parentChildren) {
+                        childrenDTOs.add(childDTO);
+                        childParentMap.put(childDTO, parentDTO);
+                    }
+                }
+                if (childrenDTOs.size() > 1 && isBulkDeleteEligible(queryClass) && !isReferenceDTOsExist(childrenDTOs)) {
+                    bulkDeleteMain(childrenDTOs, childParentMap, queryClass, sessionDTO, propertyBagDTO);
+                } else {
+                    for (T childDTO : childrenDTOs) {
+                        BaseDTO parentDTO = childParentMap.get(childDTO);
+                        // set the parent on the propertyBag in the event a child needs access to the parent
+                        propertyBagDTO.setParentDTO((Class<BaseDTO>) parentDTO.getClass(), parentDTO);
+                        deleteMain(childDTO, queryClass, sessionDTO, propertyBagDTO);
+                    }
+                }
+                for (List<T> parentChildren : parentChildrenDTOs) {
+                    parentChildren.clear();
+                }
             } else {
-                throw new MtsException("DtoClass " + dtoClass.getSimpleName() + " is not cached, this should only be called for cached DTO's");
+                logger.error(METHODNAME, "was called on ", this, " and should not have been.",
+                        " See this.configuration.isDeletesChild()=", this.configuration.isDeletesChild());
             }
 
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
-        return cachedMap;
     }
 
-    public T getCachedDTOByPrimaryKey(T baseDTO) throws MtsException, NotFoundException {
-        final String METHODNAME = "getCachedDTOByPrimaryKey ";
-        logger.logBegin(METHODNAME, baseDTO);
-        T resultDTO = null;
+    //
+    // Set based equivalent of deleteMain for a list of children. The per row steps that only touch the DTOs still run for each
+    // child, the children of the children are removed level by level and the rows of this level are removed with one DELETE per
+    // chunk of primary keys. parentMap holds the parent of each child when the children belong to more than one parent.
+    //
+    private void bulkDeleteMain(List<T> baseDTOs, Map<T, BaseDTO> parentMap, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ValidationException, NotFoundException, MtsException,
+            AuthenticationException, AuthorizationException, ConstraintViolationException {
+        final String METHODNAME = "bulkDeleteMain ";
+        Operation operation = Operation.DELETE;
+        List<Class> validationClasses = new ArrayList();
+        validationClasses.add(PrimaryKey.class);
+
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
-            if (cached) {
-                initializeCache();
-                try {
-                    resultDTO = cacheMgrLocal.getCachedDTOByPrimaryKey(baseDTO);
-                    Object primaryKey = baseDTO.getPrimaryKey();
-                    if (resultDTO == null && primaryKey != null && !"".equals(primaryKey)) {
-                        logger.debug(METHODNAME, "Could not find the primaryKey=", primaryKey, " in the cache for ", dtoClass.getSimpleName());
-                    }
-                } catch (EJBException e) {
-                    logger.warn(METHODNAME + e.getMessage());
-                } catch (CacheLoadException e) {
-                    logger.warn(METHODNAME + e.getMessage());
+            if (!configuration.isDeleteAllowed()) {
+                return;
+            }
+            // checkAuthority is not overridden - the permission check is the same for every row
+            this.checkAuthorityMain(baseDTOs.get(0), operation, queryClass, sessionDTO, propertyBagDTO);
+
+            List<T> keyedDTOs = new ArrayList<T>();
+            for (T baseDTO : baseDTOs) {
+                setParentDTO(baseDTO, parentMap, propertyBagDTO);
+                checkChildrenDTOs(baseDTO, operation);
+                processAuditId(baseDTO);
+                processBeginMain(baseDTO, operation, queryClass, validationClasses, sessionDTO, propertyBagDTO);
+                preDeleteMain(baseDTO, queryClass, sessionDTO, propertyBagDTO);
+                validateMain(baseDTO, operation, queryClass, validationClasses, sessionDTO, propertyBagDTO);
+                if (baseDTO.getPrimaryKey() != null) {
+                    keyedDTOs.add(baseDTO);
                 }
-            } else {
-                throw new MtsException("DtoClass " + baseDTO.getClass().getSimpleName() + " is not cached, this should only be called for cached DTO's");
             }
+
+            // Delete the children first
+            deleteChildrenMain(baseDTOs, queryClass, validationClasses, sessionDTO, propertyBagDTO);
+
+            Map<T, Boolean> deletedDTOs = new IdentityHashMap<T, Boolean>();
+            if (!keyedDTOs.isEmpty()) {
+                for (T deletedDTO : dao.deleteByPrimaryKeys(keyedDTOs, sessionDTO, propertyBagDTO)) {
+                    deletedDTOs.put(deletedDTO, Boolean.TRUE);
+                }
+                IdentityMapUtils.evict(dtoClass, propertyBagDTO);
+                ReferenceSnapshotUtils.evict(dtoClass, propertyBagDTO);
+                AuthorizationCache.invalidate(dtoClass);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug(METHODNAME, "deleted ", deletedDTOs.size(), " of ", keyedDTOs.size(), " ", dtoClass.getSimpleName());
+            }
+
+            for (T baseDTO : baseDTOs) {
+                setParentDTO(baseDTO, parentMap, propertyBagDTO);
+                if (deletedDTOs.containsKey(baseDTO)) {
+                    // Call any postDeleteMain processing
+                    postDeleteMain(baseDTO, queryClass, sessionDTO, propertyBagDTO);
+                } else if (baseDTO.getPrimaryKey() != null) {
+                    // Process rowsReturned, contains error logic which can be overriden in descendant BO
+                    processRowsReturned(baseDTO, operation, queryClass, sessionDTO, 0, propertyBagDTO);
+                }
+                if (cached) {
+                    cacheMgrLocal.save(baseDTO, operation);
+                }
+                processEndMain(baseDTO, new ArrayList(), operation, queryClass, sessionDTO, propertyBagDTO);
+            }
+        } catch (ValidationException | NotFoundException | ConstraintViolationException | MtsException | AuthenticationException | AuthorizationException e) {
+            logException(METHODNAME, e, baseDTOs.get(0), sessionDTO, propertyBagDTO);
+            throw e;
         } finally {
-            logger.logEnd(METHODNAME, baseDTO);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
+        }
+    }
+
+    private static <S extends BaseDTO> void setParentDTO(S baseDTO, Map<S, BaseDTO> parentMap, PropertyBagDTO propertyBagDTO) {
+        if (parentMap != null) {
+            BaseDTO parentDTO = parentMap.get(baseDTO);
+            propertyBagDTO.setParentDTO((Class<BaseDTO>) parentDTO.getClass(), parentDTO);
         }
-        return resultDTO;
     }
 
     /**
-     * If this BO's DTO is cached then this method is called to prime the cache manager with the data.
+     * Whether deletes of this BO's DTOs can be executed set based - the DAO supports a single column primary key delete, the
+     * query class is the standard delete and no per row delete hook is overridden by the BO.
      *
-     * @throws MtsException
-     * @throws NotFoundException
+     * @param queryClass
+     * @return
      */
-    protected void primeCache() throws MtsException, NotFoundException {
-        final String METHODNAME = "primeCache ";
-        try {
-            T queryDTO = null;
-            try {
-                queryDTO = dtoClass.newInstance();
-            } catch (InstantiationException e) {
-                logger.error("InstantiationException - this shouldn't happen: ", this.getClass().getSimpleName(), e);
-            } catch (IllegalAccessException e) {
-                logger.error("IllegalAccessException - this shouldn't happen: ", this.getClass().getSimpleName(), e);
+    public boolean isBulkDeleteEligible(Class queryClass) {
+        if (queryClass != Delete.class && queryClass != Update.class) {
+            return false;
+        }
+        if (bulkDeleteEligible == null) {
+            boolean eligible = dao != null && dao.isBulkDeleteSupported();
+            Class boClass = getClass();
+            while (eligible && boClass != null && boClass != BaseBO.class) {
+                for (Method method : boClass.getDeclaredMethods()) {
+                    if (DELETE_HOOKS.contains(method.getName())) {
+                        logger.debug("isBulkDeleteEligible ", boClass.getSimpleName(), " overrides ", method.getName());
+                        eligible = false;
+                        break;
+                    }
+                }
+                boClass = boClass.getSuperclass();
             }
-            DTOUtils.unsetDTOState(queryDTO);
+            bulkDeleteEligible = eligible;
+        }
+        return bulkDeleteEligible;
+    }
+
+    /**
+     * Whether the adds or updates of a list of this BO's children can be written with one DAO batch - the DAO runs the query class
+     * DML as a JDBC batch and no per row write hook is overridden by the BO, so no hook can depend on a sibling written before it.
+     *
+     * @param queryClass
+     * @param add
+     * @return
+     */
+    public boolean isBatchWriteEligible(Class queryClass, boolean add) {
+        if (add && queryClass == Update.class) {
+            queryClass = Add.class;
+        }
+        if (dao == null || !dao.isBatchSupported(queryClass)) {
+            return false;
+        }
+        if (batchWriteEligible == null) {
+            boolean eligible = true;
+            Class boClass = getClass();
+            while (eligible && boClass != null && boClass != BaseBO.class) {
+                for (Method method : boClass.getDeclaredMethods()) {
+                    if (WRITE_HOOKS.contains(method.getName())) {
+                        logger.debug("isBatchWriteEligible ", boClass.getSimpleName(), " overrides ", method.getName());
+                        eligible = false;
+                        break;
+                    }
+                }
+                boClass = boClass.getSuperclass();
+            }
+            batchWriteEligible = eligible;
+        }
+        return batchWriteEligible;
+    }
+
+    /**
+     * Whether the BO overrides preQuery, which may reroute a lookup depending on the key - findByPrimaryKeysMain then goes key
+     * by key.
+     *
+     * @return
+     */
+    private boolean isPreQueryOverridden() {
+        if (preQueryOverridden == null) {
+            boolean overridden = false;
+            Class boClass = getClass();
+            while (!overridden && boClass != null && boClass != BaseBO.class) {
+                for (Method method : boClass.getDeclaredMethods()) {
+                    if ("preQuery".equals(method.getName())) {
+                        overridden = true;
+                        break;
+                    }
+                }
+                boClass = boClass.getSuperclass();
+            }
+            preQueryOverridden = overridden;
+        }
+        return preQueryOverridden;
+    }
+
+    private static boolean isReferenceDTOsExist(List<? extends BaseDTO> baseDTOs) {
+        for (BaseDTO baseDTO : baseDTOs) {
+            if (baseDTO.isReferenceDTOsExist()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Map<Object, T> getCachedMap() throws MtsException, NotFoundException {
+        final String METHODNAME = "getCachedMap ";
+        final long traceStart = TraceUtils.start(dtoClass);
+        Map<Object, T> cachedMap = new LinkedHashMap<Object, T>();
+        try {
+            if (cached) {
+                initializeCache();
+                cachedMap = cacheMgrLocal.getCachedMap(dtoClass);
+            } else {
+                throw new MtsException("DtoClass " + dtoClass.getSimpleName() + " is not cached, this should only be called for cached DTO's");
+            }
+
+        } finally {
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
+        }
+        return cachedMap;
+    }
+
+    public T getCachedDTOByPrimaryKey(T baseDTO) throws MtsException, NotFoundException {
+        final String METHODNAME = "getCachedDTOByPrimaryKey ";
+        final long traceStart = TraceUtils.start(dtoClass);
+        T resultDTO = null;
+        try {
+            if (cached) {
+                initializeCache();
+                try {
+                    resultDTO = cacheMgrLocal.getCachedDTOByPrimaryKey(baseDTO);
+                    Object primaryKey = baseDTO.getPrimaryKey();
+                    if (resultDTO == null && primaryKey != null && !"".equals(primaryKey)) {
+                        if (logger.isDebugEnabled()) {
+                            logger.debug(METHODNAME, "Could not find the primaryKey=", primaryKey, " in the cache for ", dtoClass.getSimpleName());
+                        }
+                    }
+                } catch (EJBException e) {
+                    logger.warn(METHODNAME + e.getMessage());
+                } catch (CacheLoadException e) {
+                    logger.warn(METHODNAME + e.getMessage());
+                }
+            } else {
+                throw new MtsException("DtoClass " + baseDTO.getClass().getSimpleName() + " is not cached, this should only be called for cached DTO's");
+            }
+        } finally {
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
+        }
+        return resultDTO;
+    }
+
+    /**
+     * Returns whether the cache still holds every entry it was loaded with. Bounded or expiring caches fall back to the database.
+     *
+     * @return
+     * @throws MtsException
+     * @throws NotFoundException
+     */
+    protected boolean isCacheComplete() throws MtsException, NotFoundException {
+        initializeCache();
+        return cacheMgrLocal.isCacheComplete(dtoClass);
+    }
+
+    /**
+     * If this BO's DTO is cached then this method is called to prime the cache manager with the data.
+     *
+     * @throws MtsException
+     * @throws NotFoundException
+     */
+    protected void primeCache() throws MtsException, NotFoundException {
+        final String METHODNAME = "primeCache ";
+        long start = System.nanoTime();
+        try {
+            // A snapshot that still matches the database avoids the CacheAll query
+            List<T> snapshotDTOs = cacheMgrLocal.loadSnapshot(dtoClass);
+            if (snapshotDTOs != null) {
+                cacheMgrLocal.initializeCache(dtoClass, snapshotDTOs);
+                CacheStatistics.get(dtoClass).recordLoad(System.nanoTime() - start, true);
+                return;
+            }
+            T queryDTO = null;
+            try {
+                queryDTO = dtoClass.newInstance();
+            } catch (InstantiationException e) {
+                logger.error("InstantiationException - this shouldn't happen: ", this.getClass().getSimpleName(), e);
+            } catch (IllegalAccessException e) {
+                logger.error("IllegalAccessException - this shouldn't happen: ", this.getClass().getSimpleName(), e);
+            }
+            DTOUtils.unsetDTOState(queryDTO);
             try {
                 // Determine if the cached object has the auto cache feature set. If it does then the child classes are derived.
                 List<Class> childClasses;
-                Cached cachedAnnotation = DTOUtils.getCached(dtoClass);
+                Cached cachedAnnotation = dtoDescriptor.getCached();
                 if (cachedAnnotation != null && cachedAnnotation.isAutoCached()) {
                     // Derive child classes - this allows a DTO to have a child autoretrieve set to false
                     // but when the DTO is cached you can specify a child to be cached as well.
-                    childClasses = DTOUtils.getDtoChildClasses(dtoClass);
+                    childClasses = getDtoChildClasses();
                     logger.debug(METHODNAME, "auto added childclasses: ", childClasses);
                     logger.debug(METHODNAME, "about to call findMain ", dtoClass.getSimpleName());
                 } else {
                     childClasses = new ArrayList<Class>();
                 }
-                List<T> baseDTOs = findMain(QueryType.QUERY_LIST, queryDTO, CacheAll.class, childClasses, AuthenticationUtils.getInternalSessionDTO(), new PropertyBagDTO());
+                // the cache is loaded from the primary, children included
+                PropertyBagDTO propertyBagDTO = new PropertyBagDTO();
+                propertyBagDTO.put(BaseDAO.PRIMARY_ONLY, true);
+                List<T> baseDTOs = findMain(QueryType.QUERY_LIST, queryDTO, CacheAll.class, childClasses, AuthenticationUtils.getInternalSessionDTO(), propertyBagDTO);
                 cacheMgrLocal.initializeCache(dtoClass, baseDTOs);
+                CacheStatistics.get(dtoClass).recordLoad(System.nanoTime() - start, false);
             } catch (ValidationException e) {
                 logger.error("ValidationException - this shouldn't happen: ", e);
             } catch (AuthenticationException e) {
@@ -1526,7 +2094,8 @@ public abstract class BaseBO<T extends BaseDTO> {
      */
     public void initializeCache() throws MtsException, NotFoundException {
         final String METHODNAME = "initializeCache ";
-        boolean cacheInitialized = cacheMgrLocal.isCacheInitialized(dtoClass);
+        // isCacheInitialized is write locked - it records the wait for the lock
+        boolean cacheInitialized = cacheMgrLocal.isCacheInitialized(dtoClass, System.nanoTime());
         //logger.debug(METHODNAME, "cacheInitialized=", cacheInitialized, " dtoClass=", dtoClass.getSimpleName() );
         if (!cacheInitialized) {
             primeCache();
@@ -1536,13 +2105,14 @@ public abstract class BaseBO<T extends BaseDTO> {
     private List<T> findMain(QueryType queryType, T parentDTO, Class queryClass, List<Class> childClassDTOs, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "findMain ";
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             return queryListMain(queryType, parentDTO, queryClass, childClassDTOs, sessionDTO, propertyBagDTO);
         } catch (ConstraintViolationException e) {
             logger.error("A ConstraintViolationException has occurred, Message: ", e.getMessage(), e);
             throw new MtsException(METHODNAME, "A ConstraintViolationException has occurred", e);
         } finally {
-            logger.logEnd(METHODNAME, parentDTO);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -1550,7 +2120,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException,
             ConstraintViolationException {
         final String METHODNAME = "queryListMain ";
-        logger.logBegin(METHODNAME, parentDTO);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         final Operation operation;
         if (queryType == QueryType.CUSTOM_SAVE) {
@@ -1579,7 +2149,8 @@ public abstract class BaseBO<T extends BaseDTO> {
                 baseDTOs.add(dao.findByQuery(parentDTO, queryClass, sessionDTO, propertyBagDTO));
                 
             } else if (queryType == QueryType.QUERY_LIST) {
-                if (!DTOUtils.isQueryLazy(parentDTO) && cached && queryClass == FindAll.class) {
+                // Only serve FindAll from the cache when it is fully resident
+                if (!DTOUtils.isQueryLazy(parentDTO) && cached && queryClass == FindAll.class && isCacheComplete()) {
                     baseDTOs.addAll(getCachedMap().values());
                 } else {
                     baseDTOs = dao.findByQueryList(parentDTO, queryClass, sessionDTO, propertyBagDTO);
@@ -1613,16 +2184,14 @@ public abstract class BaseBO<T extends BaseDTO> {
             }
             this.processBaseDTOs(parentDTO, baseDTOs, operation, queryClass, null, validationClasses, childClassDTOs, sessionDTO, propertyBagDTO);
         } finally {
-            logger.logEnd(METHODNAME, parentDTO);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
         return baseDTOs;
     }
     
     public QueryType preQuery(QueryType queryType, T parentDTO, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
         throws ValidationException, NotFoundException, ConstraintViolationException, MtsException,AuthenticationException, AuthorizationException {
-        Boolean isNoDAO = DTOUtils.isNoDAO(dtoClass);
-        
-        if (isNoDAO) {
+        if (DTODescriptor.getInstance(dtoClass).isNoDAO()) {
             // Reroute
             if (queryType == QueryType.PRIMARY_KEY || queryType == QueryType.QUERY) {
                 queryType = QueryType.CUSTOM_QUERY;
@@ -1645,6 +2214,7 @@ public abstract class BaseBO<T extends BaseDTO> {
     public <S> S findObjectByQueryMain(T baseDTO, Class queryClass, SessionDTO sessionDTO, Class<S> requiredType, PropertyBagDTO propertyBagDTO)
             throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "findStringByQueryMain ";
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             List<Class> validationClasses = new ArrayList();
             validationClasses.add(queryClass);
@@ -1661,13 +2231,14 @@ public abstract class BaseBO<T extends BaseDTO> {
             logException(METHODNAME, e, baseDTO, sessionDTO, propertyBagDTO);
             throw e;            
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
     public <S> List<S> findObjectByQueryListMain(T baseDTO, Class queryClass, SessionDTO sessionDTO, Class<S> requiredType, PropertyBagDTO propertyBagDTO)
             throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "findObjectByQueryListMain ";
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             List<Class> validationClasses = new ArrayList();
             validationClasses.add(queryClass);
@@ -1684,20 +2255,20 @@ public abstract class BaseBO<T extends BaseDTO> {
             logException(METHODNAME, e, baseDTO, sessionDTO, propertyBagDTO);
             throw e;            
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
     private HashMap<Object, T> getBaseDTOHashMap(List<T> baseDTOs) throws MtsException {
         HashMap<Object, T> baseDTOMap = new HashMap<Object, T>();
         final String METHODNAME = "getBaseDTOHashMap ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             for (T baseDTO : baseDTOs) {
                 baseDTOMap.put(baseDTO.getPrimaryKey(), baseDTO);
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
         return baseDTOMap;
     }
@@ -1707,27 +2278,31 @@ public abstract class BaseBO<T extends BaseDTO> {
             throws MtsException, ValidationException, NotFoundException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "processBaseDTOs ";
 
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             this.preProcessBaseDTOsMain(parentDTO, baseDTOs, operation, queryClass, childBOQueryClass, validationClasses, childClassDTOs, sessionDTO, propertyBagDTO);
             for (T baseDTO : baseDTOs) {
                 // It is not necessary to call checkAuthority and validateMain for every childDTO
                 this.processBeginMain(baseDTO, operation, queryClass, validationClasses, sessionDTO, propertyBagDTO);
                 this.preFindByMain(baseDTO, queryClass, childClassDTOs, sessionDTO, propertyBagDTO);
+                // Partial DTOs of a projection query are returned without reference DTOs and children
+                boolean partial = ProjectionUtils.isPartial(baseDTO);
                 // Do we have any reference DTO's annotated on the BaseDTO
-                if (executeFindReferenceDTOMain(baseDTO, queryClass, childClassDTOs, sessionDTO, propertyBagDTO)) {
+                if (!partial && executeFindReferenceDTOMain(baseDTO, queryClass, childClassDTOs, sessionDTO, propertyBagDTO)) {
                     // Call the Reference MGR Local
                     referenceMGRLocal.findReferenceDTO(baseDTO, queryClass, childClassDTOs, sessionDTO, propertyBagDTO);
                 } else {
                     propertyBagDTO.getPropertyMap().remove("recursiveNodeEncountered");
                 }
-                this.findChildrenMain(baseDTO, queryClass, validationClasses, childClassDTOs, sessionDTO, propertyBagDTO);
+                if (!partial) {
+                    this.findChildrenMain(baseDTO, queryClass, validationClasses, childClassDTOs, null, sessionDTO, propertyBagDTO);
+                }
                 this.postFindByMain(baseDTO, queryClass, childClassDTOs, sessionDTO, propertyBagDTO);
                 this.processEndMain(baseDTO, childClassDTOs, operation, queryClass, sessionDTO, propertyBagDTO);
             }
             this.postProcessBaseDTOsMain(parentDTO, baseDTOs, operation, queryClass, childBOQueryClass, validationClasses, childClassDTOs, sessionDTO, propertyBagDTO);
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -1750,6 +2325,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException,
             ConstraintViolationException {
         final String METHODNAME = "customQueryListMain ";
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             return queryListMain(QueryType.CUSTOM_QUERY_LIST, baseDTO, queryClass, childClassDTOs, sessionDTO, propertyBagDTO);
         }
@@ -1757,7 +2333,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             logException(METHODNAME, e, baseDTO, sessionDTO, propertyBagDTO);
             throw e;            
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -1806,14 +2382,14 @@ public abstract class BaseBO<T extends BaseDTO> {
     private T findByQueryMain(QueryType queryType, T baseDTO, Class queryClass, List<Class> childClassDTOs, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "findByQueryMain ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             return queryMain(queryType, baseDTO, queryClass, childClassDTOs, sessionDTO, propertyBagDTO);
         } catch (ConstraintViolationException e) {
             logger.error(e);
             throw new MtsException(logger.error("ConstraintViolationException should not happen on a find: ", e.getMessage()));
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -1821,7 +2397,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException,
             ConstraintViolationException {
         final String METHODNAME = "queryMain ";
-        logger.logBegin(METHODNAME, baseDTO);
+        final long traceStart = TraceUtils.start(dtoClass);
         T result = null;
         List<T> results;
         try {
@@ -1836,7 +2412,7 @@ public abstract class BaseBO<T extends BaseDTO> {
                 throw new MtsException("Unexpected null returned by findMain method.");
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
         return result;
     }
@@ -1844,18 +2420,32 @@ public abstract class BaseBO<T extends BaseDTO> {
     public T findByPrimaryKeyMain(T baseDTO, List<Class> childClassDTOs, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws MtsException, ValidationException, NotFoundException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "findByPrimaryKeyMain ";
-        logger.logBegin(METHODNAME, baseDTO);
+        final long traceStart = TraceUtils.start(dtoClass);
         T resultDTO = null;
         try {
             // If checked check cache first
             if (cached) {
                 initializeCache();
                 resultDTO = getCachedDTOByPrimaryKey(baseDTO);
+                // Known missing key - skip the database
+                if (resultDTO == null && cacheMgrLocal.isNegativeLookup(baseDTO)) {
+                    throw new NotFoundException("resultDTO could not be located!");
+                }
             }
             // Normally flow here if not cached OR if cached object is null
             if (resultDTO == null) {
-                resultDTO = findByQueryMain(QueryType.PRIMARY_KEY, baseDTO, PrimaryKey.class, childClassDTOs, sessionDTO, propertyBagDTO);
+                try {
+                    resultDTO = findByQueryMain(QueryType.PRIMARY_KEY, baseDTO, PrimaryKey.class, childClassDTOs, sessionDTO, propertyBagDTO);
+                } catch (NotFoundException e) {
+                    if (cached) {
+                        cacheMgrLocal.recordNegativeLookup(baseDTO);
+                    }
+                    throw e;
+                }
                 if (resultDTO == null) {
+                    if (cached) {
+                        cacheMgrLocal.recordNegativeLookup(baseDTO);
+                    }
                     throw new NotFoundException("resultDTO could not be located!");
                 }
             }
@@ -1864,11 +2454,202 @@ public abstract class BaseBO<T extends BaseDTO> {
             logException(METHODNAME, e, baseDTO, sessionDTO, propertyBagDTO);
             throw e;            
         } finally {
-            logger.logEnd(METHODNAME, baseDTO);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
         return resultDTO;
     }
 
+    /**
+     * Multi key equivalent of findByPrimaryKeyMain. Keys held in the cache are served from it, the rest are read by the DAO with
+     * chunked IN queries and enriched as one list. The authority check is done once for the whole request. Keys that are not
+     * found are left out, the result follows the order of the requested keys.
+     *
+     * @param primaryKeys
+     * @param childClassDTOs
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return
+     * @throws MtsException
+     * @throws ValidationException
+     * @throws NotFoundException
+     * @throws AuthenticationException
+     * @throws AuthorizationException
+     */
+    public List<T> findByPrimaryKeysMain(Collection primaryKeys, List<Class> childClassDTOs, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws MtsException, ValidationException, NotFoundException, AuthenticationException, AuthorizationException {
+        final String METHODNAME = "findByPrimaryKeysMain ";
+        final long traceStart = TraceUtils.start(dtoClass);
+        Operation operation = Operation.FIND;
+        List<Class> validationClasses = new ArrayList();
+        validationClasses.add(PrimaryKey.class);
+        Map<Object, T> resultMap = new HashMap<Object, T>();
+        List<T> keyDTOs = new ArrayList<T>();
+        T keyDTO = null;
+        try {
+            for (Object primaryKey : new LinkedHashSet<Object>(primaryKeys)) {
+                keyDTO = dtoClass.newInstance();
+                keyDTO.setPrimaryKey(primaryKey);
+                keyDTOs.add(keyDTO);
+            }
+            if (keyDTOs.isEmpty()) {
+                return new ArrayList<T>();
+            }
+            keyDTO = keyDTOs.get(0);
+            this.checkAuthorityMain(keyDTO, operation, PrimaryKey.class, sessionDTO, propertyBagDTO);
+
+            if (isPreQueryOverridden()
+                    || preQuery(QueryType.PRIMARY_KEY, keyDTO, PrimaryKey.class, sessionDTO, propertyBagDTO) != QueryType.PRIMARY_KEY) {
+                // rerouted queries and overridden preQuery hooks go key by key so that preQuery sees every key
+                for (T item : keyDTOs) {
+                    try {
+                        resultMap.put(item.getPrimaryKey(), findByPrimaryKeyMain(item, childClassDTOs, sessionDTO, propertyBagDTO));
+                    } catch (NotFoundException e) {
+                        if (logger.isDebugEnabled() || debugBO) {
+                            logger.debug(METHODNAME, "not found: ", item.getPrimaryKey());
+                        }
+                    }
+                }
+            } else {
+                List<T> missingDTOs = new ArrayList<T>();
+                if (cached) {
+                    initializeCache();
+                }
+                for (T item : keyDTOs) {
+                    keyDTO = item;
+                    T cachedDTO = cached ? getCachedDTOByPrimaryKey(item) : null;
+                    if (cachedDTO != null) {
+                        resultMap.put(item.getPrimaryKey(), cachedDTO);
+                    } else if (!cached || !cacheMgrLocal.isNegativeLookup(item)) {
+                        this.processBeginMain(item, operation, PrimaryKey.class, validationClasses, sessionDTO, propertyBagDTO);
+                        this.validateMain(item, operation, PrimaryKey.class, validationClasses, sessionDTO, propertyBagDTO);
+                        missingDTOs.add(item);
+                    }
+                }
+                if (logger.isDebugEnabled() || debugBO) {
+                    logger.debug(METHODNAME, "cached: ", resultMap.size(), " - to load: ", missingDTOs.size());
+                }
+                if (!missingDTOs.isEmpty()) {
+                    keyDTO = missingDTOs.get(0);
+                    List<T> loadedDTOs = dao.findByPrimaryKeys(missingDTOs, sessionDTO, propertyBagDTO);
+                    this.processBaseDTOs(keyDTO, loadedDTOs, operation, PrimaryKey.class, null, validationClasses, childClassDTOs, sessionDTO, propertyBagDTO);
+                    for (T item : loadedDTOs) {
+                        resultMap.put(item.getPrimaryKey(), item);
+                    }
+                    if (cached) {
+                        for (T item : missingDTOs) {
+                            if (!resultMap.containsKey(item.getPrimaryKey())) {
+                                cacheMgrLocal.recordNegativeLookup(item);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new MtsException(logger.error(METHODNAME, e.getClass().getSimpleName(), " - ", e.getMessage()), e);
+        } catch (ConstraintViolationException e) {
+            logger.error(e);
+            throw new MtsException(logger.error("ConstraintViolationException should not happen on a find: ", e.getMessage()));
+        } catch (ValidationException | NotFoundException | MtsException | AuthenticationException | AuthorizationException e) {
+            logException(METHODNAME, e, keyDTO, sessionDTO, propertyBagDTO);
+            throw e;
+        } finally {
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
+        }
+        List<T> results = new ArrayList<T>();
+        for (T item : keyDTOs) {
+            T resultDTO = resultMap.get(item.getPrimaryKey());
+            if (resultDTO != null) {
+                results.add(resultDTO);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Read a DTO and the chain of its ancestors along a self referencing field with one hierarchy query and assemble the chain
+     * in memory: while the DTOs are enriched the references between them are resolved from a primary key map in the
+     * propertyBag instead of one findByPrimaryKeyMain per level. Returns null when the hierarchy mode is off, the DTO is cached,
+     * the DAO can't read the hierarchy in one query or the chain read is incomplete (deeper than HIERARCHY_MAX_DEPTH) - the
+     * caller then falls back to the level by level lookup. The result is keyed by primary key and is empty when the key is not
+     * found.
+     *
+     * @param baseDTO
+     * @param referenceField
+     * @param childClassDTOs
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return
+     * @throws MtsException
+     * @throws ValidationException
+     * @throws NotFoundException
+     * @throws AuthenticationException
+     * @throws AuthorizationException
+     */
+    public Map<Object, T> findAncestorsMain(T baseDTO, Field referenceField, List<Class> childClassDTOs, SessionDTO sessionDTO,
+            PropertyBagDTO propertyBagDTO)
+            throws MtsException, ValidationException, NotFoundException, AuthenticationException, AuthorizationException {
+        final String METHODNAME = "findAncestorsMain ";
+        final long traceStart = TraceUtils.start(dtoClass);
+        Operation operation = Operation.FIND;
+        List<Class> validationClasses = new ArrayList();
+        validationClasses.add(PrimaryKey.class);
+        try {
+            if (!hierarchyQuery || cached || baseDTO == null || baseDTO.getPrimaryKey() == null) {
+                return null;
+            }
+            this.checkAuthorityMain(baseDTO, operation, PrimaryKey.class, sessionDTO, propertyBagDTO);
+            if (preQuery(QueryType.PRIMARY_KEY, baseDTO, PrimaryKey.class, sessionDTO, propertyBagDTO) != QueryType.PRIMARY_KEY) {
+                return null;
+            }
+            List<T> ancestors = dao.findAncestors(baseDTO, referenceField, hierarchyMaxDepth, sessionDTO, propertyBagDTO);
+            if (ancestors == null) {
+                return null;
+            }
+            HashMap<Object, T> ancestorMap = getBaseDTOHashMap(ancestors);
+            // every reference must resolve within the chain, otherwise the walk was cut off by the depth limit
+            for (T ancestor : ancestors) {
+                BaseDTO referenceKeyDTO = (BaseDTO) referenceField.get(ancestor);
+                if (referenceKeyDTO != null && !ancestorMap.containsKey(referenceKeyDTO.getPrimaryKey())) {
+                    logger.debug(METHODNAME, "incomplete hierarchy at: ", referenceKeyDTO.getPrimaryKey());
+                    return null;
+                }
+            }
+            Set<Object> visited = new HashSet<Object>();
+            T node = ancestorMap.get(baseDTO.getPrimaryKey());
+            while (node != null && visited.add(node.getPrimaryKey())) {
+                BaseDTO referenceKeyDTO = (BaseDTO) referenceField.get(node);
+                node = referenceKeyDTO != null ? ancestorMap.get(referenceKeyDTO.getPrimaryKey()) : null;
+            }
+            if (node != null) {
+                logger.warn(METHODNAME, "cycle in the hierarchy of ", dtoClass.getSimpleName(), " at: ", node.getPrimaryKey());
+            }
+            // resolve the references of the chain from the map while the DTOs are enriched
+            String mapKey = dtoClass.getName();
+            Object previous = propertyBagDTO.get(mapKey);
+            propertyBagDTO.put(mapKey, ancestorMap);
+            try {
+                this.processBaseDTOs(baseDTO, ancestors, operation, PrimaryKey.class, null, validationClasses, childClassDTOs, sessionDTO, propertyBagDTO);
+            } finally {
+                if (previous != null) {
+                    propertyBagDTO.put(mapKey, previous);
+                } else {
+                    propertyBagDTO.remove(mapKey);
+                }
+            }
+            return ancestorMap;
+        } catch (IllegalArgumentException | IllegalAccessException e) {
+            throw new MtsException(logger.error(METHODNAME, e.getClass().getSimpleName(), " - ", e.getMessage()), e);
+        } catch (ConstraintViolationException e) {
+            logger.error(e);
+            throw new MtsException(logger.error("ConstraintViolationException should not happen on a find: ", e.getMessage()));
+        } catch (ValidationException | NotFoundException | MtsException | AuthenticationException | AuthorizationException e) {
+            logException(METHODNAME, e, baseDTO, sessionDTO, propertyBagDTO);
+            throw e;
+        } finally {
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
+        }
+    }
+
     /**
      * Main routine for calling locally implemented export routine.
      *
@@ -1969,8 +2750,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             throws NotFoundException, MtsException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "checkAuthority ";
 
-        // Log begin
-        logger.logBegin(METHODNAME, baseDTO);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         // don't allow null DTOs...
         if (baseDTO == null) {
@@ -1982,16 +2762,29 @@ public abstract class BaseBO<T extends BaseDTO> {
             // Set permission type
             PermissionType permissionType = PermissionType.getPermissionTypeByOperation(operation, baseDTO.getDTOState());
 
-            // Call Security Manager
+            // Call Security Manager - unless the session was granted the permission on the DTO class recently and is still valid
             if (securityMGRLocal != null) {
                 propertyBagDTO.put("checkAuthSrc", getClass().getSimpleName());
-                securityMGRLocal.checkAuthority(permissionType, dtoClass, sessionDTO, propertyBagDTO);
+                String authorizationKey = AuthorizationCache.getKey(sessionDTO, dtoClass, permissionType, propertyBagDTO);
+                boolean granted = AuthorizationCache.isGranted(authorizationKey);
+                // The session validity is held for the cache period as well
+                if (granted && !AuthorizationCache.isSessionValid(sessionDTO)) {
+                    granted = securityMGRLocal.isSessionValid(sessionDTO);
+                    if (granted) {
+                        AuthorizationCache.sessionValid(sessionDTO);
+                    } else {
+                        AuthorizationCache.invalidateSession(sessionDTO.getSessionId());
+                    }
+                }
+                if (!granted) {
+                    securityMGRLocal.checkAuthority(permissionType, dtoClass, sessionDTO, propertyBagDTO);
+                    AuthorizationCache.grant(authorizationKey);
+                }
             }
 
             this.checkAuthority(baseDTO, operation, queryClass, sessionDTO, propertyBagDTO);
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME, baseDTO);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -2006,8 +2799,7 @@ public abstract class BaseBO<T extends BaseDTO> {
             ConstraintViolationException {
         final String METHODNAME = "validateMain ";
 
-        // Log begin
-        logger.logBegin(METHODNAME, baseDTO);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         try {
             validate(baseDTO, operation, queryClass, validationClasses, sessionDTO, propertyBagDTO);
@@ -2017,8 +2809,7 @@ public abstract class BaseBO<T extends BaseDTO> {
                 validateAddOrUpdate(baseDTO, operation, queryClass, validationClasses, sessionDTO, propertyBagDTO);
             }
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME, baseDTO);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -2026,15 +2817,28 @@ public abstract class BaseBO<T extends BaseDTO> {
             throws ValidationException {
         final String METHODNAME = "validate ";
 
-        // Log begin
-        logger.logBegin(METHODNAME, baseDTO);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             if (baseDTO != null) {
-                logger.debug(METHODNAME + "Validating baseDTO: ", baseDTO.getClass().getSimpleName());
+                if (logger.isDebugEnabled()) {
+                    logger.debug(METHODNAME + "Validating baseDTO: ", baseDTO.getClass().getSimpleName());
+                }
                 // For all operations validate the DTO ( as constraints are added to the DTO this may change )
                 if (!validationClasses.isEmpty()) {
-                    Validator validator = validatorFactory.getValidator();
-                    Set<ConstraintViolation<T>> violations = validator.validate(baseDTO, validationClasses.toArray(new Class[0]));
+                    Class[] groups = validationClasses.toArray(new Class[0]);
+                    Set<ConstraintViolation<T>> violations;
+                    if (isChangedPropertyValidation(baseDTO, operation)) {
+                        violations = new HashSet<ConstraintViolation<T>>();
+                        Map<String, Set<ConstraintDescriptor<?>>> propertyConstraints
+                                = DTODescriptor.getInstance(baseDTO.getClass()).getPropertyConstraints(validator);
+                        for (String propertyName : baseDTO.getPropertyChangeEventMap().keySet()) {
+                            if (propertyConstraints.containsKey(propertyName)) {
+                                violations.addAll(validator.validateProperty(baseDTO, propertyName, groups));
+                            }
+                        }
+                    } else {
+                        violations = validator.validate(baseDTO, groups);
+                    }
 
                     // Any violations ?
                     if (violations.size() > 0) {
@@ -2049,11 +2853,92 @@ public abstract class BaseBO<T extends BaseDTO> {
                 }
             }
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME, baseDTO);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
+    /**
+     * Returns whether only the changed properties of the DTO are validated - an UPDATE of an updated DTO that tracks its changes,
+     * when the BO validates changed properties only (VALIDATE_CHANGED_PROPERTIES_ONLY) and the DTO class has neither class level
+     * nor cascaded constraints.
+     *
+     * @param baseDTO
+     * @param operation
+     * @return
+     */
+    private boolean isChangedPropertyValidation(T baseDTO, Operation operation) {
+        return validateChangedPropertiesOnly
+                && operation == Operation.UPDATE
+                && baseDTO.isUpdated()
+                && baseDTO.getPropertyChangeEventMap() != null
+                && !baseDTO.getPropertyChangeEventMap().isEmpty()
+                && DTODescriptor.getInstance(baseDTO.getClass()).isChangedPropertyValidationSupported(validator);
+    }
+
+    /**
+     * Enable or disable the changed property validation of updated DTOs - overrides the VALIDATE_CHANGED_PROPERTIES_ONLY property.
+     *
+     * @param validateChangedPropertiesOnly
+     */
+    protected void setValidateChangedPropertiesOnly(boolean validateChangedPropertiesOnly) {
+        this.validateChangedPropertiesOnly = validateChangedPropertiesOnly;
+    }
+
+    public boolean isValidateChangedPropertiesOnly() {
+        return validateChangedPropertiesOnly;
+    }
+
+    /**
+     * Enable or disable the hierarchy query of self referencing DTOs - overrides the HIERARCHY_QUERY property.
+     *
+     * @param hierarchyQuery
+     */
+    protected void setHierarchyQuery(boolean hierarchyQuery) {
+        this.hierarchyQuery = hierarchyQuery;
+    }
+
+    public boolean isHierarchyQuery() {
+        return hierarchyQuery;
+    }
+
+    /**
+     * Set the number of child types of a parent queried at the same time outside of a transaction - overrides the
+     * CHILD_FETCH_CONCURRENCY property, 1 queries them one after the other.
+     *
+     * @param childFetchConcurrency
+     */
+    protected void setChildFetchConcurrency(int childFetchConcurrency) {
+        this.childFetchConcurrency = Math.max(1, childFetchConcurrency);
+    }
+
+    public int getChildFetchConcurrency() {
+        return childFetchConcurrency;
+    }
+
+    /**
+     * Keep the child collections saved and refreshed by addOrUpdate instead of re-reading them - overrides the
+     * SKIP_SAVED_CHILD_REFRESH property.
+     *
+     * @param skipSavedChildRefresh
+     */
+    protected void setSkipSavedChildRefresh(boolean skipSavedChildRefresh) {
+        this.skipSavedChildRefresh = skipSavedChildRefresh;
+    }
+
+    public boolean isSkipSavedChildRefresh() {
+        return skipSavedChildRefresh;
+    }
+
+    /**
+     * Whether the children this BO has just saved for a parent match the database: each saved child was refreshed after its
+     * write (refreshOnAddOrUpdate or cached) and the DAO declares no collection side effects.
+     *
+     * @return
+     */
+    public boolean isSavedChildrenCurrent() {
+        return (refreshOnAddOrUpdate || cached) && !dao.isCollectionSideEffects();
+    }
+
     // Allow for descendant level override
     protected void validateAddOrUpdate(T baseDTO, Operation operation, Class queryClass, List<Class> validationClasses, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws ValidationException, NotFoundException, ConstraintViolationException, MtsException, AuthenticationException,
@@ -2127,14 +3012,15 @@ public abstract class BaseBO<T extends BaseDTO> {
     //
     // Method used to load the childClassDTOs upon request, required call to registerChildConfiguration
     // Delegate to ChildBO's
+    // savedChildQueryClasses: child collections just saved by addOrUpdate and current in memory - kept instead of re-read
+    // unless requested through the RefreshChildClassDTOs of the propertyBagDTO
     //
     private void findChildrenMain(T parentDTO, Class queryClass, List<Class> validationClasses, List<Class> childClassDTOs,
-            SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            Set<Class> savedChildQueryClasses, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws ValidationException, MtsException, AuthenticationException, AuthorizationException, NotFoundException {
         final String METHODNAME = "findChildrenMain ";
 
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         T result = parentDTO;
 
         try {
@@ -2146,44 +3032,238 @@ public abstract class BaseBO<T extends BaseDTO> {
 
             // Determine if findChildren should execute?
             if (executeFindChildrenMain(result, queryClass, validationClasses, childClassDTOs, sessionDTO, propertyBagDTO)) {
+                List<Configuration<? extends BaseDTO>> retrieveConfigurations = new ArrayList<Configuration<? extends BaseDTO>>();
                 for (Configuration<? extends BaseDTO> childConfiguration : childConfigurations.values()) {
                     if (logger.isDebugEnabled() || debugBO) {
                         logger.debug("ACCESSING CHILD CONFIG: ", childConfiguration.getDtoClass().getCanonicalName());
                     }
                     Class childClassDTO = childConfiguration.getDtoClass();
+                    if (savedChildQueryClasses != null && savedChildQueryClasses.contains(childConfiguration.getQueryClass())
+                            && !refreshChildClassDTOs.contains(childClassDTO)) {
+                        if (logger.isDebugEnabled() || debugBO) {
+                            logger.debug(METHODNAME, "keeping the saved children of ", childClassDTO.getSimpleName());
+                        }
+                        continue;
+                    }
                     if ((childClassDTOs.contains(childClassDTO) && !childConfiguration.isVanity(parentDTO.getClass()))
                             || childConfiguration.isAutoRetrieve(parentDTO.getClass())
                             || refreshChildClassDTOs.contains(childClassDTO)) {
-                        try {
-                            BaseBO childBO = childConfiguration.getDtoBo();
-                            if (logger.isDebugEnabled()) {
-                                logger.debug(METHODNAME, "calling ", childBO, ".findChildren");
-                            }
-                            // Call the ChildBO
-                            boolean rollbackOnNotFound = false;
-                            if (!childConfiguration.isChildNotFoundAllowed(parentDTO.getClass())) {
-                                rollbackOnNotFound = true;
+                        retrieveConfigurations.add(childConfiguration);
+                    }
+                }
+                // Query the child types at the same time when allowed, the children are still assembled one type after the other
+                Map<Configuration<? extends BaseDTO>, Object> prefetchMap = prefetchChildTypes(result, queryClass, retrieveConfigurations, sessionDTO, propertyBagDTO);
+                for (Configuration<? extends BaseDTO> childConfiguration : retrieveConfigurations) {
+                    try {
+                        BaseBO childBO = childConfiguration.getDtoBo();
+                        if (logger.isDebugEnabled()) {
+                            logger.debug(METHODNAME, "calling ", childBO, ".findChildren");
+                        }
+                        // Call the ChildBO
+                        boolean rollbackOnNotFound = false;
+                        if (!childConfiguration.isChildNotFoundAllowed(parentDTO.getClass())) {
+                            rollbackOnNotFound = true;
+                        }
+                        if (prefetchMap.containsKey(childConfiguration)) {
+                            Object prefetched = prefetchMap.get(childConfiguration);
+                            if (prefetched instanceof NotFoundException) {
+                                throw (NotFoundException) prefetched;
                             }
+                            result = (T) childBO.findPrefetchedChildren(result, (List) prefetched, queryClass, childConfiguration.getQueryClass(),
+                                    validationClasses, childClassDTOs, sessionDTO, propertyBagDTO);
+                        } else {
                             result = (T) childBO.findChildren(result, queryClass, childConfiguration.getQueryClass(),
                                     validationClasses, childClassDTOs, rollbackOnNotFound, sessionDTO, propertyBagDTO);
-                        } catch (NotFoundException ex) {
-                            // Its acceptable to have a NotFoundException as a ParentDTO may not have any childDTO's unless
-                            // AutoRetrieve mode indicates that it is not acceptable
-                            if (logger.isDebugEnabled()) {
-                                logger.debug(METHODNAME, "A NotFoundException has occurred when attempting to find the children of the BO ",
-                                        childConfiguration.getDtoBo(), " with the queryClass ", queryClass);
+                        }
+                    } catch (NotFoundException ex) {
+                        // Its acceptable to have a NotFoundException as a ParentDTO may not have any childDTO's unless
+                        // AutoRetrieve mode indicates that it is not acceptable
+                        if (logger.isDebugEnabled()) {
+                            logger.debug(METHODNAME, "A NotFoundException has occurred when attempting to find the children of the BO ",
+                                    childConfiguration.getDtoBo(), " with the queryClass ", queryClass);
+                        }
+                        if (childConfiguration.isAutoRetrieve(parentDTO.getClass()) && !childConfiguration.isChildNotFoundAllowed(parentDTO.getClass())) {
+                            throw new MtsException("A NotFoundException has occurred, wrapped in an MtsException for rollback control.", ex);
+                        }
+                    }
+                }
+            }
+        } finally {
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
+        }
+    }
+
+    /**
+     * Query the children of several child types of a parent at the same time on the container's managed executor, up to
+     * childFetchConcurrency queries per batch, each on its own connection. Only done outside of a transaction, for more than one
+     * child type and when CHILD_FETCH_CONCURRENCY is above 1 - otherwise the map is empty and the children are read one type
+     * after the other. The map holds the child list or the NotFoundException of each child configuration; the tasks get a
+     * private copy of the propertyBag.
+     *
+     * @param parentDTO
+     * @param queryClass
+     * @param configurations
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return
+     * @throws MtsException
+     */
+    private Map<Configuration<? extends BaseDTO>, Object> prefetchChildTypes(final BaseDTO parentDTO, final Class queryClass,
+            List<Configuration<? extends BaseDTO>> configurations, final SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws MtsException {
+        final String METHODNAME = "prefetchChildTypes ";
+        Map<Configuration<? extends BaseDTO>, Object> prefetchMap = new HashMap<Configuration<? extends BaseDTO>, Object>();
+        if (childFetchConcurrency < 2 || configurations.size() < 2 || DTOUtils.isQueryLazy(parentDTO)) {
+            return prefetchMap;
+        }
+        ManagedExecutorService executor;
+        try {
+            if (EJBUtils.isTransactionActive()) {
+                return prefetchMap;
+            }
+            executor = EJBUtils.getManagedExecutorService();
+        } catch (MtsException | IllegalStateException e) {
+            logger.warn(METHODNAME, "reading the children serially - ", e.getMessage());
+            return prefetchMap;
+        }
+        if (executor == null) {
+            return prefetchMap;
+        }
+        final long traceStart = TraceUtils.start(dtoClass);
+        try {
+            for (int i = 0; i < configurations.size(); i += childFetchConcurrency) {
+                Map<Configuration<? extends BaseDTO>, Future<List>> futures = new LinkedHashMap<Configuration<? extends BaseDTO>, Future<List>>();
+                try {
+                    for (Configuration<? extends BaseDTO> childConfiguration : configurations.subList(i, Math.min(i + childFetchConcurrency, configurations.size()))) {
+                        final BaseBO childBO = childConfiguration.getDtoBo();
+                        final Class childQueryClass = childConfiguration.getQueryClass();
+                        final boolean rollbackOnNotFound = !childConfiguration.isChildNotFoundAllowed(parentDTO.getClass());
+                        if (!childBO.isPrefetchSupported(parentDTO, queryClass, childQueryClass)) {
+                            continue;
+                        }
+                        final PropertyBagDTO taskPropertyBagDTO = getTaskPropertyBagDTO(parentDTO, propertyBagDTO);
+                        futures.put(childConfiguration, executor.submit(new Callable<List>() {
+                            @Override
+                            public List call() throws Exception {
+                                return childBO.prefetchChildren(parentDTO, queryClass, childQueryClass, rollbackOnNotFound, sessionDTO, taskPropertyBagDTO);
                             }
-                            if (childConfiguration.isAutoRetrieve(parentDTO.getClass()) && !childConfiguration.isChildNotFoundAllowed(parentDTO.getClass())) {
-                                throw new MtsException("A NotFoundException has occurred, wrapped in an MtsException for rollback control.", ex);
+                        }));
+                    }
+                    for (Entry<Configuration<? extends BaseDTO>, Future<List>> entry : futures.entrySet()) {
+                        try {
+                            prefetchMap.put(entry.getKey(), entry.getValue().get());
+                        } catch (ExecutionException e) {
+                            if (e.getCause() instanceof NotFoundException) {
+                                prefetchMap.put(entry.getKey(), e.getCause());
+                            } else if (e.getCause() instanceof MtsException) {
+                                throw (MtsException) e.getCause();
+                            } else {
+                                throw new MtsException(logger.error(METHODNAME, e.getCause().getClass().getSimpleName(), " - ", e.getCause().getMessage()), e.getCause());
                             }
                         }
                     }
+                } finally {
+                    for (Future<List> future : futures.values()) {
+                        future.cancel(true);
+                    }
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MtsException(logger.error(METHODNAME, "interrupted while reading the children of ", parentDTO.getClass().getSimpleName()), e);
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
+        return prefetchMap;
+    }
+
+    /**
+     * Returns the propertyBag of a prefetch task as findChildren would see it on the calling thread: a shallow copy with the parent
+     * set on it. The collection and map entries are shared with the caller and the other tasks as read only views, so that a child
+     * query can't change what they read. The identity map and reference snapshots of the caller are not shared with the task.
+     *
+     * @param parentDTO
+     * @param propertyBagDTO
+     * @return
+     */
+    private PropertyBagDTO getTaskPropertyBagDTO(BaseDTO parentDTO, PropertyBagDTO propertyBagDTO) {
+        PropertyBagDTO taskPropertyBagDTO = new PropertyBagDTO();
+        taskPropertyBagDTO.getPropertyMap().putAll(propertyBagDTO.getPropertyMap());
+        IdentityMapUtils.clear(taskPropertyBagDTO);
+        ReferenceSnapshotUtils.clear(taskPropertyBagDTO);
+        for (Entry<String, Object> entry : taskPropertyBagDTO.getPropertyMap().entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof List) {
+                entry.setValue(Collections.unmodifiableList((List) value));
+            } else if (value instanceof Set) {
+                entry.setValue(Collections.unmodifiableSet((Set) value));
+            } else if (value instanceof Map) {
+                entry.setValue(Collections.unmodifiableMap((Map) value));
+            } else if (value instanceof Collection) {
+                entry.setValue(Collections.unmodifiableCollection((Collection) value));
+            }
+        }
+        taskPropertyBagDTO.setParentDTO((Class<BaseDTO>) parentDTO.getClass(), parentDTO);
+        return taskPropertyBagDTO;
+    }
+
+    /**
+     * Whether the children of the parent DTO can be read apart from their assembly (see prefetchChildren) - false when the DAO
+     * registered its own parent setter operation for the parent class.
+     *
+     * @param parentDTO
+     * @param queryClass
+     * @param childBOQueryClass
+     * @return
+     * @throws MtsException
+     */
+    public boolean isPrefetchSupported(BaseDTO parentDTO, Class queryClass, Class childBOQueryClass) throws MtsException {
+        return dao.isPrefetchSupported(parentDTO, queryClass, childBOQueryClass);
+    }
+
+    /**
+     * Query half of findChildren - used by the parent BO to run the child queries of several child types at the same time.
+     *
+     * @param parentDTO
+     * @param queryClass
+     * @param childBOQueryClass
+     * @param rollbackOnNotFound
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return
+     * @throws NotFoundException
+     * @throws MtsException
+     */
+    public List<T> prefetchChildren(BaseDTO parentDTO, Class queryClass, Class childBOQueryClass, boolean rollbackOnNotFound,
+            SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws NotFoundException, MtsException {
+        return dao.findParentsChildren(parentDTO, queryClass, childBOQueryClass, rollbackOnNotFound, sessionDTO, propertyBagDTO);
+    }
+
+    /**
+     * Assembly half of findChildren - sets the children read by prefetchChildren on the parent and processes them as
+     * findChildren does.
+     *
+     * @param parentDTO
+     * @param childDTOs
+     * @param queryClass
+     * @param childBOQueryClass
+     * @param validationClasses
+     * @param childClassDTOs
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return
+     * @throws ValidationException
+     * @throws NotFoundException
+     * @throws MtsException
+     * @throws AuthenticationException
+     * @throws AuthorizationException
+     */
+    public BaseDTO findPrefetchedChildren(BaseDTO parentDTO, List<T> childDTOs, Class queryClass, Class childBOQueryClass,
+            List<Class> validationClasses, List<Class> childClassDTOs, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ValidationException, NotFoundException, MtsException,
+            AuthenticationException, AuthorizationException {
+        return findChildren(parentDTO, true, childDTOs, queryClass, childBOQueryClass, validationClasses, childClassDTOs, false, sessionDTO, propertyBagDTO);
     }
 
     //
@@ -2194,11 +3274,17 @@ public abstract class BaseBO<T extends BaseDTO> {
             List<Class> childClassDTOs, boolean rollbackOnNotFound, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws ValidationException, NotFoundException, MtsException,
             AuthenticationException, AuthorizationException {
+        return findChildren(parentDTO, false, null, queryClass, childBOQueryClass, validationClasses, childClassDTOs, rollbackOnNotFound, sessionDTO, propertyBagDTO);
+    }
+
+    private BaseDTO findChildren(BaseDTO parentDTO, boolean prefetched, List<T> prefetchedDTOs, Class queryClass, Class childBOQueryClass,
+            List<Class> validationClasses, List<Class> childClassDTOs, boolean rollbackOnNotFound, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ValidationException, NotFoundException, MtsException,
+            AuthenticationException, AuthorizationException {
         final String METHODNAME = "findChildren ";
         final Operation operation = Operation.FIND;
 
-        // Log begin
-        logger.logBegin(METHODNAME, parentDTO);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         try {
             // It is not necessary to call validateMain on the parentDTO as it was already called on the Parent BO
@@ -2217,7 +3303,9 @@ public abstract class BaseBO<T extends BaseDTO> {
                 propertyBagDTO.setParentDTO((Class<BaseDTO>) parentDTO.getClass(), parentDTO);
 
                 // Set the Parents children
-                int childCount = dao.setParentsChildren(parentDTO, queryClass, childBOQueryClass, rollbackOnNotFound, sessionDTO, propertyBagDTO);
+                int childCount = prefetched
+                        ? dao.setParentsChildren(parentDTO, queryClass, childBOQueryClass, prefetchedDTOs)
+                        : dao.setParentsChildren(parentDTO, queryClass, childBOQueryClass, rollbackOnNotFound, sessionDTO, propertyBagDTO);
                 logger.debug(METHODNAME, childBOQueryClass, " child query class count: ", childCount);
 
                 // Set the Parent Child Comparator
@@ -2238,26 +3326,24 @@ public abstract class BaseBO<T extends BaseDTO> {
                 logger.error("parentDTO was null!!!");
             }
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME, parentDTO);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
         return parentDTO;
     }
 
     private void setParentChildComparator(BaseDTO parentDTO, Class queryClass, Class childBOQueryClass) {
         final String METHODNAME = "setParentChildComparator ";
-        // Log begin
-        logger.logBegin(METHODNAME, parentDTO);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         try {
 
             if (!parentChildComparatorMap.containsKey(childBOQueryClass)) {
-                Class childQueryClass = DTOUtils.getQueryClassFromDtoQueryMap(parentDTO.getClass(), dtoClass);
+                Class childQueryClass = DTODescriptor.getInstance(parentDTO.getClass()).getChildQueryClass(dtoClass);
                 if (childBOQueryClass == childQueryClass) {
                     // create a comparator for sorting this set of children if a parentchild comparator is registered
                     if (!parentChildComparatorMap.containsKey(childBOQueryClass)) {
                         Comparator lComparator = null;
-                        ParentChildRelationship parentChildRelationship = DTOUtils.getParentChildRelationshipMapByQueryClass(parentDTO.getClass()).get(childBOQueryClass);
+                        ParentChildRelationship parentChildRelationship = DTODescriptor.getInstance(parentDTO.getClass()).getParentChildRelationship(childBOQueryClass);
                         if (parentChildRelationship != null) {
                             if (parentChildRelationship.comparatorClass() != null && parentChildRelationship.comparatorClass() != None.class) {
                                 try {
@@ -2275,8 +3361,7 @@ public abstract class BaseBO<T extends BaseDTO> {
                 }
             }
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME, parentDTO);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -2402,14 +3487,12 @@ public abstract class BaseBO<T extends BaseDTO> {
             throws NotFoundException, MtsException, ValidationException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "preFindByMain ";
 
-        // Log begin
-        logger.logBegin(METHODNAME, baseDTO);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             // call descendant level preFindBy
             this.preFindBy(baseDTO, queryClass, childClassDTOs, sessionDTO, propertyBagDTO);
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME, baseDTO);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
 
     }
@@ -2491,7 +3574,7 @@ public abstract class BaseBO<T extends BaseDTO> {
     private void processEndMain(T baseDTO, List<Class> childClassDTOs, Operation operation, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws MtsException, ValidationException, NotFoundException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "processEndMain ";
-        logger.logBegin(METHODNAME, baseDTO);
+        final long traceStart = TraceUtils.start(dtoClass);
         try {
             if (baseDTO != null) {
                 // Call descendant override
@@ -2502,8 +3585,7 @@ public abstract class BaseBO<T extends BaseDTO> {
                 }
             }
         } finally {
-            // Log end
-            logger.logEnd(METHODNAME, baseDTO);
+            TraceUtils.end(traceStart, "BaseBO", METHODNAME, dtoClass);
         }
     }
 
@@ -2517,9 +3599,11 @@ public abstract class BaseBO<T extends BaseDTO> {
         logger.debug(methodName, "parentDTO=", parentDTO.toString());
         logger.debug(methodName, "childBO=", childBO.toString());
         logger.debug(methodName, "childBOQueryClass=", childBOQueryClass.toString());
-        logger.debug(methodName, "childrenDTOs=", "" + childrenDTOs.size());
-        if (childrenDTOs.size() > 0) {
-            logger.debug(methodName, "childrenDTOs.get(0)=", childrenDTOs.get(0).toString());
+        if (logger.isDebugEnabled()) {
+            logger.debug(methodName, "childrenDTOs=", "" + childrenDTOs.size());
+            if (childrenDTOs.size() > 0) {
+                logger.debug(methodName, "childrenDTOs.get(0)=", childrenDTOs.get(0).toString());
+            }
         }
     }
 
@@ -2531,7 +3615,9 @@ public abstract class BaseBO<T extends BaseDTO> {
         boolean queryMapEmpty = true;
         for (Entry<String, Object> entry : baseDTO.getQueryMap().entrySet()) {
             String key = entry.getKey();
-            logger.debug("key=" + entry.getKey() + " value=" + entry.getValue());
+            if (logger.isDebugEnabled()) {
+                logger.debug("key=" + entry.getKey() + " value=" + entry.getValue());
+            }
             if (!(key.equalsIgnoreCase(CoreConstants.LAZY) || key.equalsIgnoreCase(CoreConstants.FILTERS)
                     || key.equalsIgnoreCase(CoreConstants.LAZY_ROW_OFFSET) || key.equalsIgnoreCase(CoreConstants.LAZY_PAGE_SIZE)
                     || key.equalsIgnoreCase(CoreConstants.LAZY_ROWCOUNT) || key.equalsIgnoreCase(CoreConstants.SORT_FIELD)
@@ -2550,7 +3636,7 @@ public abstract class BaseBO<T extends BaseDTO> {
     }
 
     public List<Class> getDtoChildClasses() {
-        return DTOUtils.getDtoChildClasses(dtoClass);
+        return new ArrayList<Class>(DTODescriptor.getInstance(dtoClass).getDtoChildClasses());
     }
 
     public boolean isSelfReferencing() {
@@ -2662,16 +3748,76 @@ public abstract class BaseBO<T extends BaseDTO> {
         return appLogMGRLocal;
     }
 
+    //
+    // The list of children a saved child is replaced in. Positions are tracked by identity and built once, so replacing every
+    // child of a large list does not scan the list for each child. Falls back to the equals based scan when the list was
+    // changed outside of replace.
+    //
+    // A DTO between the steps of addOrUpdate - what to write and, once written, the DAO result
+    private static class PendingWrite<S extends BaseDTO> {
+
+        private final S baseDTO;
+        private final Operation operation;
+        private final Class queryClass;
+        private final boolean unset;
+        private int rowsReturned;
+        private boolean generatedValuesApplied;
+
+        private PendingWrite(S baseDTO, Operation operation, Class queryClass, boolean unset) {
+            this.baseDTO = baseDTO;
+            this.operation = operation;
+            this.queryClass = queryClass;
+            this.unset = unset;
+        }
+    }
+
+    private static class ChildReferences<S extends BaseDTO> {
+
+        private final List<S> childrenDTOs;
+        private Map<S, Integer> positions;
+
+        private ChildReferences(List<S> childrenDTOs) {
+            this.childrenDTOs = childrenDTOs;
+        }
+
+        /**
+         * Replaces the original DTO with the latest DTO and returns its index or -1 when the original is not in the list.
+         *
+         * @param originalDTO
+         * @param latestDTO
+         * @return
+         */
+        private int replace(S originalDTO, S latestDTO) {
+            if (childrenDTOs == null) {
+                return -1;
+            }
+            if (positions == null) {
+                positions = new IdentityHashMap<S, Integer>();
+                for (int i = 0; i < childrenDTOs.size(); i++) {
+                    positions.put(childrenDTOs.get(i), i);
+                }
+            }
+            Integer index = positions.remove(originalDTO);
+            if (index == null || index >= childrenDTOs.size() || childrenDTOs.get(index) != originalDTO) {
+                index = childrenDTOs.indexOf(originalDTO);
+                if (index < 0) {
+                    return -1;
+                }
+            }
+            childrenDTOs.set(index, latestDTO);
+            positions.put(latestDTO, index);
+            return index;
+        }
+    }
+
     // Inner Class used to store Parent and Child DTO Configurations and BOs
     public static class Configuration<S extends BaseDTO> {
 
         private Class<S> dtoClass;
         private BaseBO<S> dtoBo;
         private Class queryClass;
-        private Map<Class<? extends BaseDTO>, Class> childQueryMap;
         private boolean debug = false;
-        private List<Class> childQueryClassDeleteOrder;
-        private List<Class> childQueryClassAddUpdateOrder;
+        private DTODescriptor dtoDescriptor;
 
         public Configuration(Class<S> dtoClass, BaseBO<S> dtoBo, boolean debug) {
             this.dtoClass = dtoClass;
@@ -2705,34 +3851,27 @@ public abstract class BaseBO<T extends BaseDTO> {
         }
 
         public Map<Class<? extends BaseDTO>, Class> getChildQueryMap() {
-            if (childQueryMap == null) {
-                childQueryMap = DTOUtils.getDtoQueryMap(dtoClass);
-            }
-            return childQueryMap;
+            return getDtoDescriptor().getDtoQueryMap();
         }
 
         public List<Class> getChildQueryClassDeleteOrder() {
-            if (childQueryClassDeleteOrder == null) {
-                childQueryClassDeleteOrder = new LinkedList<Class>();
-                List<ParentChildRelationship> parentChildRelationships = new ArrayList<ParentChildRelationship>(DTOUtils.getParentChildRelationshipMapByDTO(dtoClass).values());
-                Collections.sort(parentChildRelationships, new ParentChildRelationshipDeleteOrderComparator());
-                for (ParentChildRelationship parentChildRelationship : parentChildRelationships) {
-                    childQueryClassDeleteOrder.add(parentChildRelationship.childQueryClass());
-                }
-            }
-            return childQueryClassDeleteOrder;
+            return getDtoDescriptor().getChildQueryClassDeleteOrder();
         }
 
         public List<Class> getChildQueryClassAddUpdateOrder() {
-            if (childQueryClassAddUpdateOrder == null) {
-                childQueryClassAddUpdateOrder = new LinkedList<Class>();
-                List<ParentChildRelationship> parentChildRelationships = new ArrayList<ParentChildRelationship>(DTOUtils.getParentChildRelationshipMapByDTO(dtoClass).values());
-                Collections.sort(parentChildRelationships, new ParentChildRelationshipAddUpdateOrderComparator());
-                for (ParentChildRelationship parentChildRelationship : parentChildRelationships) {
-                    childQueryClassAddUpdateOrder.add(parentChildRelationship.childQueryClass());
-                }
+            return getDtoDescriptor().getChildQueryClassAddUpdateOrder();
+        }
+
+        /**
+         * The metadata descriptor of the DTO class - built once per DTO class.
+         *
+         * @return
+         */
+        public DTODescriptor getDtoDescriptor() {
+            if (dtoDescriptor == null) {
+                dtoDescriptor = DTODescriptor.getInstance(dtoClass);
             }
-            return childQueryClassAddUpdateOrder;
+            return dtoDescriptor;
         }
 
         public Class getQueryClass() {
@@ -2740,43 +3879,43 @@ public abstract class BaseBO<T extends BaseDTO> {
         }
 
         public boolean isAutoRetrieve(Class<? extends BaseDTO> foreignKeyClass) throws MtsException {
-            return DTOUtils.isAutoRetrieve(dtoClass, foreignKeyClass);
+            return getDtoDescriptor().isAutoRetrieve(foreignKeyClass);
         }
 
         public boolean isReadOnly() {
-            return DTOUtils.isReadOnly(dtoClass);
+            return getDtoDescriptor().isReadOnly();
         }
 
         public boolean isAddAllowed() {
-            return DTOUtils.isAddAllowed(dtoClass);
+            return getDtoDescriptor().isAddAllowed();
         }
 
         public boolean isDeleteAllowed() {
-            return DTOUtils.isDeleteAllowed(dtoClass);
+            return getDtoDescriptor().isDeleteAllowed();
         }
 
         public boolean isUpdateAllowed() {
-            return DTOUtils.isUpdateAllowed(dtoClass);
+            return getDtoDescriptor().isUpdateAllowed();
         }
 
         public boolean isChildNotFoundAllowed(Class<? extends BaseDTO> foreignKeyClass) throws MtsException {
-            return DTOUtils.isChildNotFoundAllowed(dtoClass, foreignKeyClass);
+            return getDtoDescriptor().isChildNotFoundAllowed(foreignKeyClass);
         }
 
         public boolean isDeletesChild() {
-            return DTOUtils.deletesChild(dtoClass);
+            return getDtoDescriptor().isDeletesChild();
         }
 
         public boolean isAddsChild() {
-            return DTOUtils.addsChild(dtoClass);
+            return getDtoDescriptor().isAddsChild();
         }
 
         public boolean isUpdatesChild() {
-            return DTOUtils.updatesChild(dtoClass);
+            return getDtoDescriptor().isUpdatesChild();
         }
 
         public boolean isVanity(Class<? extends BaseDTO> foreignKeyClass) throws MtsException {
-            return DTOUtils.isVanity(dtoClass, foreignKeyClass);
+            return getDtoDescriptor().isVanity(foreignKeyClass);
         }
     }
 
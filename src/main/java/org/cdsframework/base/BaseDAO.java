@@ -26,15 +26,27 @@
  */
 package org.cdsframework.base;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.annotation.PostConstruct;
 import javax.ejb.EJB;
 import javax.ejb.TransactionAttribute;
@@ -43,6 +55,7 @@ import javax.ejb.TransactionManagement;
 import javax.ejb.TransactionManagementType;
 import javax.sql.DataSource;
 import org.cdsframework.annotation.Audit;
+import org.cdsframework.annotation.Column;
 import org.cdsframework.callback.ParentSetterOperation;
 import org.cdsframework.callback.QueryCallback;
 import org.cdsframework.dto.AuditTransactionDTO;
@@ -50,6 +63,7 @@ import org.cdsframework.dto.PropertyBagDTO;
 import org.cdsframework.dto.SessionDTO;
 import org.cdsframework.ejb.dao.AuditTransactionDAO;
 import org.cdsframework.ejb.local.DbMGRLocal;
+import org.cdsframework.ejb.local.PropertyMGRLocal;
 import org.cdsframework.enumeration.DatabaseType;
 import org.cdsframework.enumeration.LogLevel;
 import org.cdsframework.enumeration.Operation;
@@ -57,6 +71,7 @@ import org.cdsframework.enumeration.Operator;
 import org.cdsframework.enumeration.QueryType;
 import org.cdsframework.enumeration.StringCase;
 import org.cdsframework.exceptions.ConstraintViolationException;
+import org.cdsframework.exceptions.IntegrityViolationException;
 import org.cdsframework.exceptions.MtsException;
 import org.cdsframework.exceptions.NotFoundException;
 import org.cdsframework.exceptions.RuntimeJdbcException;
@@ -68,25 +83,62 @@ import org.cdsframework.group.PrimaryKey;
 import org.cdsframework.group.Update;
 import org.cdsframework.util.ClassUtils;
 import org.cdsframework.util.Constants;
+import org.cdsframework.util.DTOProperty;
+import org.cdsframework.util.DTOTable;
 import org.cdsframework.util.DTOUtils;
 import org.cdsframework.util.DatabaseResource;
 import org.cdsframework.util.DateUtils;
 import org.cdsframework.util.EJBUtils;
+import org.cdsframework.util.IdentityMapUtils;
 import org.cdsframework.util.LogUtils;
+import org.cdsframework.util.ObjectUtils;
+import org.cdsframework.util.ProjectionUtils;
+import org.cdsframework.util.ReplicaDataSource;
+import org.cdsframework.util.RowCountCache;
 import org.cdsframework.util.StringUtils;
+import org.cdsframework.util.TraceUtils;
+import org.cdsframework.util.support.CorePropertyChangeEvent;
 import org.cdsframework.util.table.QueryOperation;
 import org.cdsframework.util.table.XmlTableResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcCall;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
 
 @TransactionManagement(TransactionManagementType.CONTAINER)
 @TransactionAttribute(TransactionAttributeType.SUPPORTS)
 public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T> {
 
+    /**
+     * Query class of the multi key select of findByPrimaryKeys.
+     */
+    private interface PrimaryKeys {
+    }
+
+    /**
+     * Query class of the hierarchy select of findAncestors.
+     */
+    private interface Ancestors {
+    }
+
+    /**
+     * Property bag key that keeps the queries of an operation on the primary, e.g. the reads of a cache load.
+     */
+    public static final String PRIMARY_ONLY = "primaryOnly";
+    private static final String PRIMARY_KEYS_PARAMETER = "primaryKeys";
+    private static final String ANCESTORS_KEY_PARAMETER = "ancestorsKey";
+    private static final String ANCESTORS_PARENT_COLUMN = "ancestorsParentColumn";
+    private static final String ANCESTORS_MAX_DEPTH = "ancestorsMaxDepth";
+    private static final Pattern clausePattern = Pattern.compile("\\b(?:where|group\\s+by|order\\s+by|union)\\b", Pattern.CASE_INSENSITIVE);
+
     @EJB
     private DbMGRLocal dbMGRLocal;
+    @EJB
+    private PropertyMGRLocal propertyMGRLocal;
     protected LogUtils logger;
     private String dtoTableName;
     private String databaseId;
@@ -114,6 +166,40 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
     private boolean debugDAO = false;
     private XmlTableResource xmlTableResource;
     private int globalRowLimit = 0;
+    // column name -> maintained lower cased shadow column
+    private final Map<String, String> caseInsensitiveLookups = new HashMap<String, String>();
+    private boolean prefixRangeScan = false;
+    // null until the hierarchy select of findAncestors is known to work on the database, false once it failed
+    private Boolean hierarchyQuerySupported = null;
+    private static final Pattern prefixRangePattern = Pattern.compile(":(\\w+)_prefix_start\\b");
+    private boolean lazyRowCountInline = true;
+    private boolean lazyRowCountCached = false;
+    private int lazyRowCountSeconds = 60;
+    private int defaultFetchSize = 0;
+    private int defaultQueryTimeout = 0;
+    private int defaultMaxRows = 0;
+    // query classes running with the JDBC_MAX_ROWS default - it is taken back when they turn out to be child queries
+    private final Set<Class> maxRowsDefaulted = new HashSet<Class>();
+    private String[] generatedColumns = new String[0];
+    private boolean refreshAfterWriteRequired = true;
+    private boolean collectionSideEffects = false;
+    private boolean dynamicUpdate = false;
+    private String primaryKeyColumn;
+    private Boolean projectionSupported;
+    private int dynamicUpdateMaxShapes = 32;
+    private int dynamicUpdateMaxChangedPercent = 50;
+    private String parsedUpdateDML;
+    private String updateDMLPrefix;
+    private String updateDMLWhere;
+    // lower cased column name -> "column = expression" of the full update set clause
+    private Map<String, String> updateDMLAssignments;
+    private Map<String, List<String>> propertyColumnMap;
+    private final Map<String, String> dynamicUpdateShapes = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > dynamicUpdateMaxShapes;
+        }
+    };
 
     // For Auditing see Audit Annotation
     private AuditTransactionDAO auditTransactionDao;
@@ -168,8 +254,10 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
                 auditDelete = audit.delete();
             }
 
+            initializeQuerySettings();
             registerDML();
             initializeDataSource();
+            initializeCaseInsensitiveLookups();
             initialize();
         } catch (MtsException e) {
             logger.error(e);
@@ -226,6 +314,7 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
                 }
                 preProcessNamedParameters(getDatabaseType(), namedParameters, baseDTO, queryClass, sessionDTO, propertyBagDTO);
                 addStdParameters(queryClass, getDatabaseType(), namedParameters, baseDTO);
+                addCaseInsensitiveLookupParameters(namedParameters);
                 postProcessNamedParameters(getDatabaseType(), namedParameters, baseDTO, queryClass, sessionDTO, propertyBagDTO);
                 return namedParameters;
             }
@@ -244,9 +333,57 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
                     throw new IllegalStateException(e);
                 }
             }
+
+            @Override
+            public Set<String> getProjectedColumns(Set<String> properties) {
+                return isProjectionSupported() ? ProjectionUtils.getProjectedColumns(DTOUtils.getDTOTable(dtoClass), properties) : null;
+            }
+
+            @Override
+            public String getProjectedDML(String dml, Set<String> columns) {
+                return isProjectionSupported() ? ProjectionUtils.getProjectedDML(dml, getSelectDML(), tableAlias, columns) : null;
+            }
+
+            @Override
+            public T mapProjectedRow(ResultSet rs, int rowNum, Set<String> columns) throws SQLException {
+                try {
+                    T row = (T) dtoClass.newInstance();
+                    mapStdProperties(getDatabaseType(), rs, row, columns);
+                    ProjectionUtils.setPartial(row, columns);
+                    return row;
+                } catch (InstantiationException e) {
+                    throw new IllegalStateException(e);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
         });
     }
 
+    /**
+     * Whether the default entity mapper can serve projection queries - the select DML is the generated one and the DAO does not
+     * map extra values in preProcessMapRow or postProcessMapRow, which could read columns the projection left out.
+     *
+     * @return
+     */
+    private boolean isProjectionSupported() {
+        if (projectionSupported == null) {
+            boolean supported = DTOUtils.isEntity(dtoClass) && getSelectDML() != null
+                    && DTOUtils.getDTOTable(dtoClass).getSelectDML().trim().equalsIgnoreCase(getSelectDML().trim());
+            Class daoClass = getClass();
+            while (supported && daoClass != null && daoClass != BaseDAO.class) {
+                for (Method method : daoClass.getDeclaredMethods()) {
+                    if ("preProcessMapRow".equals(method.getName()) || "postProcessMapRow".equals(method.getName())) {
+                        supported = false;
+                    }
+                }
+                daoClass = daoClass.getSuperclass();
+            }
+            projectionSupported = supported;
+        }
+        return projectionSupported;
+    }
+
     protected void preProcessMapRow(
             T row,
             ResultSet rs,
@@ -287,6 +424,38 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
         return dtoClass;
     }
 
+    /**
+     * Returns a cheap change stamp of the DTO table - the row count followed by the latest last_mod_datetime in milliseconds - or
+     * null when the table has no last_mod_datetime values to stamp with, since a row count alone does not see updates. Used to
+     * reconcile cache snapshots against the database, which are not written for tables without a stamp. Runs outside the caller's
+     * transaction since the probe of the missing column fails the statement, which aborts the enclosing transaction on PostgreSQL.
+     *
+     * @return
+     * @throws MtsException
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long[] getTableChangeStamp() throws MtsException {
+        final String METHODNAME = "getTableChangeStamp ";
+        long[] result = null;
+        String tableName = getDtoTableName();
+        try {
+            Map<String, Object> row = jdbcTemplate.queryForMap("select count(*) row_count, max(last_mod_datetime) last_mod_datetime from " + tableName);
+            Object rowCount = row.get("row_count");
+            Object lastModDatetime = row.get("last_mod_datetime");
+            long count = rowCount instanceof Number ? ((Number) rowCount).longValue() : 0L;
+            if (lastModDatetime instanceof Date) {
+                result = new long[]{count, ((Date) lastModDatetime).getTime()};
+            } else if (count == 0) {
+                result = new long[]{0L, 0L};
+            } else {
+                logger.debug(METHODNAME, "no last_mod_datetime values on ", tableName);
+            }
+        } catch (DataAccessException e) {
+            logger.debug(METHODNAME, "last_mod_datetime not available on ", tableName, ": ", e.getMessage());
+        }
+        return result;
+    }
+
     /**
      * Get the value of globalRowLimit
      *
@@ -326,7 +495,7 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
             throws ConstraintViolationException, MtsException, NotFoundException {
         long start = System.nanoTime();
         final String METHODNAME = "add ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         int rowsReturned = 0;
         try {
             if (logger.isDebugEnabled() || debugDAO) {
@@ -344,10 +513,12 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
                 auditTransactionDao.audit(baseDTO, Operation.ADD, queryClass, sessionDTO, propertyBagDTO);
             }
             rowsReturned = performDML(QueryType.ADD, false, baseDTO, queryClass, sessionDTO, Integer.class, propertyBagDTO);
+            RowCountCache.invalidateAfterCompletion(databaseId, dtoTableName);
+            IdentityMapUtils.written(dtoClass);
 
         } finally {
             logger.logDuration(LogLevel.DEBUG, METHODNAME, start);                                                
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
         }
         return rowsReturned;
     }
@@ -356,7 +527,7 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
     public int update(T baseDTO, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws ConstraintViolationException, NotFoundException, MtsException {
         final String METHODNAME = "update ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         int rowsReturned = 0;
         try {
             if (logger.isDebugEnabled() || debugDAO) {
@@ -366,17 +537,107 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
                 auditTransactionDao.audit(baseDTO, Operation.UPDATE, queryClass, sessionDTO, propertyBagDTO);
             }
             rowsReturned = performDML(QueryType.UPDATE, false, baseDTO, queryClass, sessionDTO, Integer.class, propertyBagDTO);
+            RowCountCache.invalidateAfterCompletion(databaseId, dtoTableName);
+            IdentityMapUtils.written(dtoClass);
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
         }
         return rowsReturned;
     }
 
+    /**
+     * Add a list of DTOs with JDBC batches of the query class DML. The DTOs are audited in bulk as with add. When the query class
+     * returns generated column values the DTOs are added one at a time through add.
+     *
+     * @param baseDTOs
+     * @param queryClass
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return the update count of each DTO in list order
+     * @throws ConstraintViolationException
+     * @throws MtsException
+     * @throws NotFoundException
+     */
+    public int[] addAll(List<T> baseDTOs, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ConstraintViolationException, MtsException, NotFoundException {
+        final String METHODNAME = "addAll ";
+        final long traceStart = TraceUtils.start(dtoClass);
+        int[] result = new int[baseDTOs.size()];
+        try {
+            if (queryClass == Update.class) {
+                queryClass = Add.class;
+            }
+            if (!isBatchSupported(queryClass)) {
+                for (int i = 0; i < baseDTOs.size(); i++) {
+                    result[i] = add(baseDTOs.get(i), queryClass, sessionDTO, propertyBagDTO);
+                }
+                return result;
+            }
+            if (auditTransactionDao != null && auditAdd) {
+                auditTransactionDao.auditAll(baseDTOs, Operation.ADD, queryClass, sessionDTO, propertyBagDTO);
+            }
+            result = performBatchDML(QueryType.ADD, baseDTOs, queryClass, sessionDTO, propertyBagDTO);
+            RowCountCache.invalidateAfterCompletion(databaseId, dtoTableName);
+            IdentityMapUtils.written(dtoClass);
+        } finally {
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
+        }
+        return result;
+    }
+
+    /**
+     * Update a list of DTOs with JDBC batches of the query class DML. The DTOs are audited in bulk as with update. When the query
+     * class returns generated column values the DTOs are updated one at a time through update.
+     *
+     * @param baseDTOs
+     * @param queryClass
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return the update count of each DTO in list order
+     * @throws ConstraintViolationException
+     * @throws MtsException
+     * @throws NotFoundException
+     */
+    public int[] updateAll(List<T> baseDTOs, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ConstraintViolationException, MtsException, NotFoundException {
+        final String METHODNAME = "updateAll ";
+        final long traceStart = TraceUtils.start(dtoClass);
+        int[] result = new int[baseDTOs.size()];
+        try {
+            if (!isBatchSupported(queryClass)) {
+                for (int i = 0; i < baseDTOs.size(); i++) {
+                    result[i] = update(baseDTOs.get(i), queryClass, sessionDTO, propertyBagDTO);
+                }
+                return result;
+            }
+            if (auditTransactionDao != null && auditUpdate) {
+                auditTransactionDao.auditAll(baseDTOs, Operation.UPDATE, queryClass, sessionDTO, propertyBagDTO);
+            }
+            result = performBatchDML(QueryType.UPDATE, baseDTOs, queryClass, sessionDTO, propertyBagDTO);
+            RowCountCache.invalidateAfterCompletion(databaseId, dtoTableName);
+            IdentityMapUtils.written(dtoClass);
+        } finally {
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
+        }
+        return result;
+    }
+
+    /**
+     * Whether the DML of a query class can run as a JDBC batch - it is registered and returns no generated column values.
+     *
+     * @param queryClass
+     * @return
+     */
+    public boolean isBatchSupported(Class queryClass) {
+        QueryCallback queryCallback = dmlMap.get(queryClass);
+        return queryCallback != null && queryCallback.getGeneratedColumns().length == 0;
+    }
+
     @Override
     public int delete(T baseDTO, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO) throws NotFoundException,
             ConstraintViolationException, MtsException {
         final String METHODNAME = "delete ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         int rowsReturned = 0;
         try {
             if (logger.isDebugEnabled() || debugDAO) {
@@ -389,14 +650,197 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
                 auditTransactionDao.audit(baseDTO, Operation.DELETE, queryClass, sessionDTO, propertyBagDTO);
             }
             rowsReturned = performDML(QueryType.DELETE, false, baseDTO, queryClass, sessionDTO, Integer.class, propertyBagDTO);
+            RowCountCache.invalidateAfterCompletion(databaseId, dtoTableName);
+            IdentityMapUtils.written(dtoClass);
 
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
         }
 
         return rowsReturned;
     }
 
+    /**
+     * Whether deleteByPrimaryKeys can be used - the DTO is an entity whose standard delete DML is the generated single column
+     * primary key delete.
+     *
+     * @return
+     */
+    public boolean isBulkDeleteSupported() {
+        return getBulkDeleteColumn() != null;
+    }
+
+    /**
+     * Delete a list of DTOs with one DELETE ... WHERE key IN (...) per chunk of primary keys. The rows of each chunk are selected
+     * for update first, which locks them against concurrent deletes and tells apart the DTOs whose rows were not found - those
+     * are neither audited nor deleted and are left out of the result. The locked rows are audited in bulk, as with delete, and
+     * then deleted.
+     *
+     * @param baseDTOs
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return the DTOs whose rows were deleted
+     * @throws ConstraintViolationException
+     * @throws MtsException
+     * @throws NotFoundException
+     */
+    public List<T> deleteByPrimaryKeys(List<T> baseDTOs, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ConstraintViolationException, MtsException, NotFoundException {
+        final String METHODNAME = "deleteByPrimaryKeys ";
+        final long traceStart = TraceUtils.start(dtoClass);
+        List<T> result = new ArrayList<T>();
+        try {
+            String keyColumn = getBulkDeleteColumn();
+            BaseRowMapper<? extends BaseDTO> mapper = tableMapperMap.get(getDtoTableName());
+            if (keyColumn == null || mapper == null) {
+                throw new MtsException(logger.error(METHODNAME, dtoClass.getSimpleName(), " does not support set based deletes"));
+            }
+            List<Object> keys = new ArrayList<Object>();
+            for (T baseDTO : baseDTOs) {
+                MapSqlParameterSource namedParameters = mapper.getNamedParametersMain(baseDTO, Delete.class, sessionDTO, propertyBagDTO);
+                String originalKey = DTOTable.ORIGINAL_PREFIX + keyColumn;
+                keys.add(namedParameters.hasValue(originalKey) ? namedParameters.getValue(originalKey) : namedParameters.getValue(keyColumn));
+            }
+            String selectDml = getLockingKeySelectDML(keyColumn);
+            String dml = "delete from " + getDtoTableName() + " where " + keyColumn + " in (:keys)";
+            int chunkSize = getInListChunkSize();
+            for (int i = 0; i < keys.size(); i += chunkSize) {
+                int end = Math.min(i + chunkSize, keys.size());
+                try {
+                    // lock the rows that still exist - rows deleted concurrently are neither audited nor returned
+                    Set<String> existingKeys = getKeyValues(namedParameterJdbcTemplate.queryForList(selectDml,
+                            new MapSqlParameterSource("keys", keys.subList(i, end)), Object.class));
+                    List<T> chunkDTOs = new ArrayList<T>();
+                    List<Object> chunkKeys = new ArrayList<Object>();
+                    for (int j = i; j < end; j++) {
+                        if (existingKeys.contains(getKeyValue(keys.get(j)))) {
+                            chunkDTOs.add(baseDTOs.get(j));
+                            chunkKeys.add(keys.get(j));
+                        }
+                    }
+                    if (chunkDTOs.isEmpty()) {
+                        continue;
+                    }
+                    if (auditTransactionDao != null && auditDelete) {
+                        auditTransactionDao.auditAll(chunkDTOs, Operation.DELETE, Delete.class, sessionDTO, propertyBagDTO);
+                    }
+                    int rowsReturned = namedParameterJdbcTemplate.update(dml, new MapSqlParameterSource("keys", chunkKeys));
+                    if (rowsReturned != chunkDTOs.size()) {
+                        logger.warn(METHODNAME, "deleted ", rowsReturned, " of ", chunkDTOs.size(), " locked ", dtoClass.getSimpleName(), " rows");
+                    }
+                    result.addAll(chunkDTOs);
+                } catch (DataIntegrityViolationException e) {
+                    IntegrityViolationException integrityViolationException = new IntegrityViolationException(e.getMessage());
+                    throw new ConstraintViolationException(databaseId,
+                            getDtoTableName(),
+                            logger.error(METHODNAME, integrityViolationException.getClass().getSimpleName(), " - ",
+                                    integrityViolationException.getMessage()),
+                            integrityViolationException);
+                } catch (DataAccessException e) {
+                    throw new MtsException(logger.error(METHODNAME, e.getClass().getSimpleName(), " - ", e.getMessage()), e);
+                }
+            }
+            RowCountCache.invalidateAfterCompletion(databaseId, dtoTableName);
+            IdentityMapUtils.written(dtoClass);
+        } finally {
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
+        }
+        return result;
+    }
+
+    /**
+     * The select of the existing keys of an IN list which locks their rows until the end of the transaction.
+     *
+     * @param keyColumn
+     * @return
+     */
+    private String getLockingKeySelectDML(String keyColumn) {
+        if (databaseType == DatabaseType.SQLSERVER) {
+            return "select " + keyColumn + " from " + getDtoTableName() + " with (updlock, rowlock) where " + keyColumn + " in (:keys)";
+        }
+        return "select " + keyColumn + " from " + getDtoTableName() + " where " + keyColumn + " in (:keys) for update";
+    }
+
+    private static Set<String> getKeyValues(List<Object> keys) {
+        Set<String> result = new HashSet<String>();
+        for (Object key : keys) {
+            result.add(getKeyValue(key));
+        }
+        return result;
+    }
+
+    //
+    // Compares keys bound by the mapper and keys read back by the driver, whose numeric types may differ
+    //
+    private static String getKeyValue(Object key) {
+        if (key instanceof Number) {
+            return new BigDecimal(key.toString()).stripTrailingZeros().toPlainString();
+        }
+        return String.valueOf(key);
+    }
+
+    /**
+     * The number of values bound in one IN list - kept under the per statement limits (Oracle 1000 expressions, SQL Server
+     * 2100 parameters).
+     *
+     * @return
+     */
+    protected int getInListChunkSize() {
+        return databaseType == DatabaseType.SQLSERVER ? 2000 : 1000;
+    }
+
+    private String getBulkDeleteColumn() {
+        String keyColumn = getPrimaryKeyColumn();
+        if (keyColumn != null && getDeleteDML() != null
+                && DTOUtils.getDTOTable(dtoClass).getDeleteDML().trim().equalsIgnoreCase(getDeleteDML().trim())) {
+            return keyColumn;
+        }
+        return null;
+    }
+
+    /**
+     * The key column of the multi key select - only when the select and select by primary key DML are the generated ones and
+     * the select DML can take a where clause, otherwise null.
+     *
+     * @return
+     */
+    private String getMultiKeySelectColumn() {
+        String keyColumn = getPrimaryKeyColumn();
+        if (keyColumn != null && getSelectByPrimaryKeyDML() != null && getSelectDML() != null
+                && DTOUtils.getDTOTable(dtoClass).getSelectByPrimaryKeyDML().trim().equalsIgnoreCase(getSelectByPrimaryKeyDML().trim())
+                && DTOUtils.getDTOTable(dtoClass).getSelectDML().trim().equalsIgnoreCase(getSelectDML().trim())
+                && !clausePattern.matcher(getSelectDML()).find()) {
+            return keyColumn;
+        }
+        return null;
+    }
+
+    /**
+     * The primary key column of an entity DTO keyed on a single column, otherwise null.
+     *
+     * @return
+     */
+    private String getPrimaryKeyColumn() {
+        if (primaryKeyColumn == null) {
+            primaryKeyColumn = "";
+            if (DTOUtils.isEntity(dtoClass)) {
+                int keyColumns = 0;
+                for (DTOProperty dtoProperty : DTOUtils.getDTOTable(dtoClass).getDtoPropertyMap().values()) {
+                    for (Column column : dtoProperty.getColumns()) {
+                        if (column.addToWhereDelete()) {
+                            primaryKeyColumn = column.name();
+                            keyColumns++;
+                        }
+                    }
+                }
+                if (keyColumns != 1) {
+                    primaryKeyColumn = "";
+                }
+            }
+        }
+        return primaryKeyColumn.isEmpty() ? null : primaryKeyColumn;
+    }
+
     @Override
     public int setParentsChildren(
             BaseDTO baseDTO,
@@ -407,7 +851,7 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
             PropertyBagDTO propertyBagDTO)
             throws NotFoundException, MtsException {
         final String METHODNAME = "setParentsChildren ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         int childCount = 0;
         try {
             if (logger.isDebugEnabled() || debugDAO) {
@@ -417,58 +861,124 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
                         baseDTO == null ? baseDTO : baseDTO.getClass().getCanonicalName());
             }
             if (baseDTO != null) {
-                if (dtoClass == baseDTO.getClass()) {
-                    logger.debug("Parent class and DAO argument type are the same: ", dtoClass.getCanonicalName());
-                }
-                Class parentDTOClass = baseDTO.getClass();
-                ParentSetterOperation pso = psoMap.get(parentDTOClass);
-                if (pso == null) {
-                    Class childQueryClass = DTOUtils.getQueryClassFromDtoQueryMap(parentDTOClass, dtoClass);
-                    if (logger.isDebugEnabled() || debugDAO) {
-                        logger.debug(METHODNAME,
-                                "looking up: ",
-                                dtoClass == null ? dtoClass : dtoClass.getCanonicalName(),
-                                " in ",
-                                parentDTOClass == null ? parentDTOClass : parentDTOClass.getCanonicalName(),
-                                ": ",
-                                childQueryClass == null ? childQueryClass : childQueryClass.getCanonicalName(),
-                                " - incoming QC: ",
-                                childBOQueryClass == null ? childBOQueryClass : childBOQueryClass.getCanonicalName());
-                    }
-                    if (childBOQueryClass == childQueryClass) {
-                        if (logger.isDebugEnabled() || debugDAO) {
-                            logger.debug(METHODNAME,
-                                    "Registering parent child operation: ",
-                                    parentDTOClass == null ? parentDTOClass : parentDTOClass.getCanonicalName(),
-                                    " - ",
-                                    childBOQueryClass == null ? childBOQueryClass : childBOQueryClass.getCanonicalName());
-                        }
-                        registerParentSetter(parentDTOClass, childBOQueryClass);
-                        pso = psoMap.get(parentDTOClass);
-                    }
-                }
-                if (pso != null) {
-                    childCount = pso.setChildrenOnParent(baseDTO, queryClass, childBOQueryClass, rollbackOnNotFound, sessionDTO, propertyBagDTO);
-                } else {
-                    throw new MtsException(logger.error(
-                            "DTO parent class not registered: ",
-                            baseDTO.getClass().getCanonicalName(),
-                            " - query class: ",
-                            queryClass == null ? queryClass : queryClass.getCanonicalName(),
-                            " - childBOQueryClass: ",
-                            childBOQueryClass == null ? childBOQueryClass : childBOQueryClass.getCanonicalName(),
-                            " - dtoClass: ",
-                            dtoClass == null ? dtoClass : dtoClass.getCanonicalName()));
-                }
+                childCount = getParentSetterOperation(baseDTO, queryClass, childBOQueryClass)
+                        .setChildrenOnParent(baseDTO, queryClass, childBOQueryClass, rollbackOnNotFound, sessionDTO, propertyBagDTO);
             } else {
                 logger.error(METHODNAME, "baseDTO was null...");
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
         }
         return childCount;
     }
 
+    /**
+     * Query half of setParentsChildren - returns the children of the parent DTO without setting them on the parent so that the
+     * query can run apart from the assembly (see BaseBO CHILD_FETCH_CONCURRENCY). Pass the result to setParentsChildren.
+     *
+     * @param baseDTO
+     * @param queryClass
+     * @param childBOQueryClass
+     * @param rollbackOnNotFound
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return
+     * @throws NotFoundException
+     * @throws MtsException
+     */
+    public List<T> findParentsChildren(
+            BaseDTO baseDTO,
+            Class queryClass,
+            Class childBOQueryClass,
+            boolean rollbackOnNotFound,
+            SessionDTO sessionDTO,
+            PropertyBagDTO propertyBagDTO)
+            throws NotFoundException, MtsException {
+        final String METHODNAME = "findParentsChildren ";
+        final long traceStart = TraceUtils.start(dtoClass);
+        try {
+            return (List<T>) getParentSetterOperation(baseDTO, queryClass, childBOQueryClass)
+                    .findChildren(baseDTO, queryClass, childBOQueryClass, rollbackOnNotFound, sessionDTO, propertyBagDTO);
+        } finally {
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
+        }
+    }
+
+    /**
+     * Assembly half of setParentsChildren - sets the children returned by findParentsChildren on the parent DTO through the
+     * registered parent setter operation.
+     *
+     * @param baseDTO
+     * @param queryClass
+     * @param childBOQueryClass
+     * @param childDTOs
+     * @return
+     * @throws MtsException
+     */
+    public int setParentsChildren(BaseDTO baseDTO, Class queryClass, Class childBOQueryClass, List<T> childDTOs) throws MtsException {
+        return getParentSetterOperation(baseDTO, queryClass, childBOQueryClass).setChildrenOnParent(baseDTO, childDTOs);
+    }
+
+    /**
+     * Whether the parent setter operation of the parent DTO can split the child query from the assembly - false for operations
+     * registered by extenders in psoMap.
+     *
+     * @param baseDTO
+     * @param queryClass
+     * @param childBOQueryClass
+     * @return
+     * @throws MtsException
+     */
+    public boolean isPrefetchSupported(BaseDTO baseDTO, Class queryClass, Class childBOQueryClass) throws MtsException {
+        return getParentSetterOperation(baseDTO, queryClass, childBOQueryClass).isPrefetchSupported();
+    }
+
+    private ParentSetterOperation getParentSetterOperation(BaseDTO baseDTO, Class queryClass, Class childBOQueryClass) throws MtsException {
+        final String METHODNAME = "getParentSetterOperation ";
+        if (dtoClass == baseDTO.getClass()) {
+            logger.debug("Parent class and DAO argument type are the same: ", dtoClass.getCanonicalName());
+        }
+        Class parentDTOClass = baseDTO.getClass();
+        ParentSetterOperation pso = psoMap.get(parentDTOClass);
+        if (pso == null) {
+            Class childQueryClass = DTOUtils.getQueryClassFromDtoQueryMap(parentDTOClass, dtoClass);
+            if (logger.isDebugEnabled() || debugDAO) {
+                logger.debug(METHODNAME,
+                        "looking up: ",
+                        dtoClass == null ? dtoClass : dtoClass.getCanonicalName(),
+                        " in ",
+                        parentDTOClass == null ? parentDTOClass : parentDTOClass.getCanonicalName(),
+                        ": ",
+                        childQueryClass == null ? childQueryClass : childQueryClass.getCanonicalName(),
+                        " - incoming QC: ",
+                        childBOQueryClass == null ? childBOQueryClass : childBOQueryClass.getCanonicalName());
+            }
+            if (childBOQueryClass == childQueryClass) {
+                if (logger.isDebugEnabled() || debugDAO) {
+                    logger.debug(METHODNAME,
+                            "Registering parent child operation: ",
+                            parentDTOClass == null ? parentDTOClass : parentDTOClass.getCanonicalName(),
+                            " - ",
+                            childBOQueryClass == null ? childBOQueryClass : childBOQueryClass.getCanonicalName());
+                }
+                registerParentSetter(parentDTOClass, childBOQueryClass);
+                pso = psoMap.get(parentDTOClass);
+            }
+        }
+        if (pso == null) {
+            throw new MtsException(logger.error(
+                    "DTO parent class not registered: ",
+                    baseDTO.getClass().getCanonicalName(),
+                    " - query class: ",
+                    queryClass == null ? queryClass : queryClass.getCanonicalName(),
+                    " - childBOQueryClass: ",
+                    childBOQueryClass == null ? childBOQueryClass : childBOQueryClass.getCanonicalName(),
+                    " - dtoClass: ",
+                    dtoClass == null ? dtoClass : dtoClass.getCanonicalName()));
+        }
+        return pso;
+    }
+
     protected void preFindBy(QueryType queryType, BaseDTO baseDTO, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO) {
         // extender overriddable
     }
@@ -481,7 +991,7 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
     public T findByPrimaryKey(T baseDTO, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws NotFoundException, MtsException {
         final String METHODNAME = "findByPrimaryKey ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         T result = null;
         try {
             preFindBy(QueryType.PRIMARY_KEY, baseDTO, PrimaryKey.class, sessionDTO, propertyBagDTO);
@@ -489,43 +999,279 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
                 logger.debug(METHODNAME + "calling performDML(QueryType.PRIMARY_KEY, ", baseDTO.getPrimaryKey());
             }
             result = performDML(QueryType.PRIMARY_KEY, false, baseDTO, PrimaryKey.class, sessionDTO, getDtoClass(), propertyBagDTO);
-            logger.debug(METHODNAME + "made it through performDML...", result);
+            if (logger.isDebugEnabled()) {
+                logger.debug(METHODNAME + "made it through performDML...", result);
+            }
             // pass in the result as the first arg...
             postFindBy(QueryType.PRIMARY_KEY, result, baseDTO, PrimaryKey.class, sessionDTO, propertyBagDTO);
         } catch (ConstraintViolationException de) {
             throw new MtsException("ConstraintViolationException: this should not happen on a find.", de);
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
         }
         return result;
     }
 
-    @Override
-    public List<T> findByQueryList(BaseDTO baseDTO, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
-            throws NotFoundException, MtsException {
-        return findByQueryList(baseDTO, false, queryClass, sessionDTO, propertyBagDTO);
-    }
-
-    private List<T> findByQueryList(BaseDTO baseDTO, boolean rollbackOnNotFound, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
-            throws NotFoundException, MtsException {
-        final String METHODNAME = "findByQueryList ";
-        logger.debug(METHODNAME, " method called for class: ", queryClass.getSimpleName());
-        List<T> result = null;
-        preFindBy(QueryType.QUERY_LIST, baseDTO, queryClass, sessionDTO, propertyBagDTO);
+    /**
+     * Find the DTOs of a list of primary key DTOs. Entity DTOs keyed on a single column with the generated select and select by
+     * primary key DML are read with one SELECT ... WHERE key IN (...) per chunk of keys through the PrimaryKeys query callback,
+     * so the query tuning, replica routing, projection and logging of the callbacks apply. Anything else falls back to
+     * findByPrimaryKey per key. Keys that are not found are left out - the result is in no particular order.
+     *
+     * @param baseDTOs
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return
+     * @throws MtsException
+     */
+    public List<T> findByPrimaryKeys(List<T> baseDTOs, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws MtsException {
+        final String METHODNAME = "findByPrimaryKeys ";
+        final long traceStart = TraceUtils.start(dtoClass);
+        List<T> result = new ArrayList<T>();
         try {
-            result = performDML(QueryType.QUERY_LIST, rollbackOnNotFound, baseDTO, queryClass, sessionDTO, List.class, propertyBagDTO);
-        } catch (ConstraintViolationException de) {
-            throw new MtsException("ConstraintViolationException: this should not happen on a find.", de);
+            String keyColumn = getMultiKeySelectColumn();
+            BaseRowMapper<? extends BaseDTO> mapper = tableMapperMap.get(getDtoTableName());
+            if (keyColumn == null || mapper == null || !dmlMap.containsKey(PrimaryKeys.class)) {
+                for (T baseDTO : baseDTOs) {
+                    try {
+                        result.add(findByPrimaryKey(baseDTO, sessionDTO, propertyBagDTO));
+                    } catch (NotFoundException e) {
+                        if (logger.isDebugEnabled() || debugDAO) {
+                            logger.debug(METHODNAME, "not found: ", baseDTO.getPrimaryKey());
+                        }
+                    }
+                }
+                return result;
+            }
+            List<Object> keys = new ArrayList<Object>();
+            for (T baseDTO : baseDTOs) {
+                preFindBy(QueryType.PRIMARY_KEY, baseDTO, PrimaryKey.class, sessionDTO, propertyBagDTO);
+                keys.add(mapper.getNamedParametersMain(baseDTO, PrimaryKey.class, sessionDTO, propertyBagDTO).getValue(keyColumn));
+            }
+            int chunkSize = getInListChunkSize();
+            Object skipLimit = propertyBagDTO.get("skipLimit");
+            propertyBagDTO.put("skipLimit", true);
+            try {
+                for (int i = 0; i < keys.size(); i += chunkSize) {
+                    // the query DTO carries the query map of the first key DTO, e.g. the projected properties
+                    T queryDTO = dtoClass.newInstance();
+                    queryDTO.getQueryMap().putAll(baseDTOs.get(i).getQueryMap());
+                    queryDTO.getQueryMap().put(PRIMARY_KEYS_PARAMETER, new ArrayList<Object>(keys.subList(i, Math.min(i + chunkSize, keys.size()))));
+                    try {
+                        result.addAll(performDML(QueryType.QUERY_LIST, false, queryDTO, PrimaryKeys.class, sessionDTO, List.class, propertyBagDTO));
+                    } catch (NotFoundException e) {
+                        if (logger.isDebugEnabled() || debugDAO) {
+                            logger.debug(METHODNAME, "not found: ", queryDTO.getQueryMap().get(PRIMARY_KEYS_PARAMETER));
+                        }
+                    }
+                }
+            } finally {
+                if (skipLimit != null) {
+                    propertyBagDTO.put("skipLimit", skipLimit);
+                } else {
+                    propertyBagDTO.remove("skipLimit");
+                }
+            }
+            Map<Object, T> resultMap = new HashMap<Object, T>();
+            for (T item : result) {
+                resultMap.put(item.getPrimaryKey(), item);
+            }
+            for (T baseDTO : baseDTOs) {
+                T item = resultMap.get(baseDTO.getPrimaryKey());
+                if (item != null) {
+                    postFindBy(QueryType.PRIMARY_KEY, item, baseDTO, PrimaryKey.class, sessionDTO, propertyBagDTO);
+                }
+            }
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new MtsException(logger.error(METHODNAME, e.getClass().getSimpleName(), " - ", e.getMessage()), e);
+        } catch (ConstraintViolationException e) {
+            throw new MtsException("ConstraintViolationException: this should not happen on a find.", e);
+        } finally {
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
         }
-        postFindBy(QueryType.QUERY_LIST, result, baseDTO, queryClass, sessionDTO, propertyBagDTO);
         return result;
     }
 
-    @Override
-    public T findByQuery(BaseDTO baseDTO, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
-            throws NotFoundException, MtsException {
-        logger.debug("BaseDAO.findByQuery method called for class: ", queryClass.getSimpleName());
-        T result = null;
+    /**
+     * Find the DTO of a primary key DTO and the chain of its ancestors along a self referencing field with one recursive query
+     * through the Ancestors query callback (WITH RECURSIVE on PostgreSQL/MySQL 8, WITH on SQL Server, CONNECT BY on Oracle).
+     * The walk stops after maxDepth levels and on cycles. Returns null when the hierarchy can't be read in one query (Derby,
+     * MySQL before 8, PostgreSQL within a transaction, composite keys, custom DML, an unmapped reference column or a failed
+     * hierarchy query) - the caller falls back to findByPrimaryKey per level.
+     *
+     * @param baseDTO
+     * @param referenceField
+     * @param maxDepth
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return
+     * @throws MtsException
+     */
+    public List<T> findAncestors(T baseDTO, Field referenceField, int maxDepth, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws MtsException {
+        final String METHODNAME = "findAncestors ";
+        final long traceStart = TraceUtils.start(dtoClass);
+        try {
+            String keyColumn = getMultiKeySelectColumn();
+            String parentColumn = getReferenceColumn(referenceField);
+            BaseRowMapper<? extends BaseDTO> mapper = tableMapperMap.get(getDtoTableName());
+            if (keyColumn == null || parentColumn == null || mapper == null || !dmlMap.containsKey(Ancestors.class) || !isHierarchyQuerySupported()) {
+                return null;
+            }
+            preFindBy(QueryType.PRIMARY_KEY, baseDTO, PrimaryKey.class, sessionDTO, propertyBagDTO);
+            T queryDTO = dtoClass.newInstance();
+            queryDTO.getQueryMap().put(ANCESTORS_KEY_PARAMETER, mapper.getNamedParametersMain(baseDTO, PrimaryKey.class, sessionDTO, propertyBagDTO).getValue(keyColumn));
+            queryDTO.getQueryMap().put(ANCESTORS_PARENT_COLUMN, parentColumn);
+            queryDTO.getQueryMap().put(ANCESTORS_MAX_DEPTH, maxDepth);
+            List<T> result;
+            Object skipLimit = propertyBagDTO.get("skipLimit");
+            propertyBagDTO.put("skipLimit", true);
+            try {
+                result = performDML(QueryType.QUERY_LIST, false, queryDTO, Ancestors.class, sessionDTO, List.class, propertyBagDTO);
+            } catch (NotFoundException e) {
+                result = new ArrayList<T>();
+            } catch (MtsException e) {
+                // the per level walk still works - stop issuing a statement the database rejects
+                hierarchyQuerySupported = false;
+                logger.warn(METHODNAME, "hierarchy query failed for ", dtoClass.getSimpleName(), " - falling back to findByPrimaryKey per level: ", e.getMessage());
+                return null;
+            } finally {
+                if (skipLimit != null) {
+                    propertyBagDTO.put("skipLimit", skipLimit);
+                } else {
+                    propertyBagDTO.remove("skipLimit");
+                }
+            }
+            hierarchyQuerySupported = true;
+            for (T item : result) {
+                postFindBy(QueryType.PRIMARY_KEY, item, item, PrimaryKey.class, sessionDTO, propertyBagDTO);
+            }
+            return result;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new MtsException(logger.error(METHODNAME, e.getClass().getSimpleName(), " - ", e.getMessage()), e);
+        } catch (ConstraintViolationException e) {
+            throw new MtsException("ConstraintViolationException: this should not happen on a find.", e);
+        } finally {
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
+        }
+    }
+
+    /**
+     * Whether the hierarchy select of findAncestors can be issued now. It is never issued on PostgreSQL within a transaction
+     * since a failed statement aborts the whole transaction there, and on MySQL only when the server supports WITH RECURSIVE
+     * (8 and later).
+     *
+     * @return
+     * @throws MtsException
+     */
+    private boolean isHierarchyQuerySupported() throws MtsException {
+        final String METHODNAME = "isHierarchyQuerySupported ";
+        if (hierarchyQuerySupported != null && !hierarchyQuerySupported) {
+            return false;
+        }
+        switch (databaseType) {
+            case POSTGRESQL:
+                return hierarchyQuerySupported != null || !EJBUtils.isTransactionActive();
+            case MYSQL:
+                if (hierarchyQuerySupported == null) {
+                    try {
+                        Object majorVersion = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(), "getDatabaseMajorVersion");
+                        if (!(majorVersion instanceof Integer) || (Integer) majorVersion < 8) {
+                            logger.info(METHODNAME, "WITH RECURSIVE not supported by MySQL ", majorVersion, " - ", dtoClass.getSimpleName());
+                            hierarchyQuerySupported = false;
+                        }
+                    } catch (MetaDataAccessException e) {
+                        logger.warn(METHODNAME, "database version not available for ", dtoClass.getSimpleName(), ": ", e.getMessage());
+                        hierarchyQuerySupported = false;
+                    }
+                }
+                return hierarchyQuerySupported == null || hierarchyQuerySupported;
+            case ORACLE:
+            case SQLSERVER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * The hierarchy select of findAncestors - the DTOs of the key and its ancestors along the parent column up to maxDepth levels.
+     *
+     * @param keyColumn
+     * @param parentColumn
+     * @param maxDepth
+     * @return
+     */
+    private String getAncestorsDML(String keyColumn, String parentColumn, int maxDepth) {
+        String keyReference = (tableAlias == null ? "" : tableAlias) + keyColumn;
+        if (databaseType == DatabaseType.ORACLE) {
+            return getSelectDML() + " where " + keyReference + " in ("
+                    + "select mts_h." + keyColumn + " from " + getDtoTableName() + " mts_h"
+                    + " start with mts_h." + keyColumn + " = :key"
+                    + " connect by nocycle mts_h." + keyColumn + " = prior mts_h." + parentColumn + " and level <= :maxDepth)";
+        }
+        String dml = (databaseType == DatabaseType.SQLSERVER ? "with" : "with recursive")
+                + " mts_hierarchy (node_key, parent_key, depth) as ("
+                + "select " + keyColumn + ", " + parentColumn + ", 1 from " + getDtoTableName() + " where " + keyColumn + " = :key"
+                + " union all select mts_h." + keyColumn + ", mts_h." + parentColumn + ", h.depth + 1 from " + getDtoTableName() + " mts_h"
+                + " inner join mts_hierarchy h on mts_h." + keyColumn + " = h.parent_key where h.depth < :maxDepth) "
+                + getSelectDML() + " where " + keyReference + " in (select node_key from mts_hierarchy)";
+        if (databaseType == DatabaseType.SQLSERVER) {
+            // the default recursion limit of 100 would fail deeper walks - the depth predicate bounds the recursion
+            dml += " option (maxrecursion " + Math.min(Math.max(maxDepth, 1), 32767) + ")";
+        }
+        return dml;
+    }
+
+    /**
+     * The single selectable column mapped to a reference field of the DTO, otherwise null.
+     *
+     * @param referenceField
+     * @return
+     */
+    private String getReferenceColumn(Field referenceField) {
+        if (referenceField == null || !DTOUtils.isEntity(dtoClass)) {
+            return null;
+        }
+        DTOProperty dtoProperty = DTOUtils.getDTOTable(dtoClass).getDtoPropertyMap().get(referenceField);
+        if (dtoProperty == null || dtoProperty.getColumns().length != 1) {
+            return null;
+        }
+        Column column = dtoProperty.getColumns()[0];
+        return column.selectable() ? column.name() : null;
+    }
+
+    @Override
+    public List<T> findByQueryList(BaseDTO baseDTO, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws NotFoundException, MtsException {
+        return findByQueryList(baseDTO, false, queryClass, sessionDTO, propertyBagDTO);
+    }
+
+    private List<T> findByQueryList(BaseDTO baseDTO, boolean rollbackOnNotFound, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws NotFoundException, MtsException {
+        final String METHODNAME = "findByQueryList ";
+        if (logger.isDebugEnabled()) {
+            logger.debug(METHODNAME, " method called for class: ", queryClass.getSimpleName());
+        }
+        List<T> result = null;
+        preFindBy(QueryType.QUERY_LIST, baseDTO, queryClass, sessionDTO, propertyBagDTO);
+        try {
+            result = performDML(QueryType.QUERY_LIST, rollbackOnNotFound, baseDTO, queryClass, sessionDTO, List.class, propertyBagDTO);
+        } catch (ConstraintViolationException de) {
+            throw new MtsException("ConstraintViolationException: this should not happen on a find.", de);
+        }
+        postFindBy(QueryType.QUERY_LIST, result, baseDTO, queryClass, sessionDTO, propertyBagDTO);
+        return result;
+    }
+
+    @Override
+    public T findByQuery(BaseDTO baseDTO, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws NotFoundException, MtsException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("BaseDAO.findByQuery method called for class: ", queryClass.getSimpleName());
+        }
+        T result = null;
         preFindBy(QueryType.QUERY, baseDTO, queryClass, sessionDTO, propertyBagDTO);
         try {
             result = performDML(QueryType.QUERY, false, baseDTO, queryClass, sessionDTO, getDtoClass(), propertyBagDTO);
@@ -539,7 +1285,9 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
     @Override
     public <S> S findObjectByQuery(BaseDTO baseDTO, Class queryClass, SessionDTO sessionDTO, Class<S> requiredType, PropertyBagDTO propertyBagDTO)
             throws MtsException, NotFoundException {
-        logger.debug("Generic BaseDAO.findObjectByQuery method called for class: ", queryClass.getSimpleName());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Generic BaseDAO.findObjectByQuery method called for class: ", queryClass.getSimpleName());
+        }
         S result = null;
         try {
             // requiredType drops into the first position of findMain propertyBag and the incoming propertyBag becomes the second argument
@@ -557,7 +1305,9 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
     @Override
     public <S> List<S> findObjectByQueryList(BaseDTO baseDTO, Class queryClass, SessionDTO sessionDTO, Class<S> requiredType, PropertyBagDTO propertyBagDTO)
             throws MtsException, NotFoundException {
-        logger.debug("Generic BaseDAO.findObjectByQueryList method called for class: ", queryClass.getSimpleName());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Generic BaseDAO.findObjectByQueryList method called for class: ", queryClass.getSimpleName());
+        }
         List<S> result = null;
         try {
             // requiredType drops into the first position of findMain propertyBag and the incoming propertyBag becomes the second argument
@@ -576,32 +1326,52 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
     public void registerParentSetter(final Class<? extends BaseDTO> parentDTO, final Class childRegistrationClass) {
         final String METHODNAME = "registerParentSetter ";
 
-        // Log begin
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         logger.debug("Attempting to register ", childRegistrationClass, " for the parentDTO class: ", parentDTO);
 
         try {
             parentChildMap.put(parentDTO, childRegistrationClass);
+            // children are always read in full
+            if (maxRowsDefaulted.remove(childRegistrationClass) && dmlMap.containsKey(childRegistrationClass)) {
+                dmlMap.get(childRegistrationClass).setMaxRows(0);
+            }
             psoMap.put(parentDTO, new ParentSetterOperation() {
                 @Override
                 public int setChildrenOnParent(BaseDTO baseDTO, Class queryClass, Class childBOQueryClass, boolean rollbackOnNotFound, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
                         throws NotFoundException, MtsException {
                     final String METHODNAME = "setChildrenOnParent";
                     List<T> results;
-                    results = findByQueryList(baseDTO, rollbackOnNotFound, childBOQueryClass, sessionDTO, propertyBagDTO);
+                    results = findChildren(baseDTO, queryClass, childBOQueryClass, rollbackOnNotFound, sessionDTO, propertyBagDTO);
                     //                logger.debug("registerParentSetterDML queryClass: ",queryClass);
                     //                logger.debug("registerParentSetterDML childBOQueryClass: ",childBOQueryClass);
                     //                logger.debug("registerParentSetterDML childRegistrationClass: ",childRegistrationClass);
                     //                logger.debug("registerParentSetterDML baseDTO children: ", baseDTO.getChildrenDTOs(childRegistrationClass));
                     logger.debug(METHODNAME, "results.size()=", results != null ? results.size() : null);
-                    baseDTO.setChildrenDTOs(childRegistrationClass, (List<BaseDTO>) results);
+                    setChildrenOnParent(baseDTO, results);
                     //                logger.debug("registerParentSetterDML baseDTO children: ", baseDTO.getChildrenDTOs(childRegistrationClass));
                     //                logger.debug("registerParentSetterDML baseDTO children size: ", baseDTO.getChildrenDTOs(childRegistrationClass) != null ? baseDTO.getChildrenDTOs(childRegistrationClass).size() : null);
                     return results != null ? results.size() : 0;
                 }
+
+                @Override
+                public boolean isPrefetchSupported() {
+                    return true;
+                }
+
+                @Override
+                public List<T> findChildren(BaseDTO baseDTO, Class queryClass, Class childBOQueryClass, boolean rollbackOnNotFound, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+                        throws NotFoundException, MtsException {
+                    return findByQueryList(baseDTO, rollbackOnNotFound, childBOQueryClass, sessionDTO, propertyBagDTO);
+                }
+
+                @Override
+                public int setChildrenOnParent(BaseDTO baseDTO, List<? extends BaseDTO> childDTOs) {
+                    baseDTO.setChildrenDTOs(childRegistrationClass, (List<BaseDTO>) childDTOs);
+                    return childDTOs != null ? childDTOs.size() : 0;
+                }
             });
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
         }
     }
 
@@ -619,31 +1389,52 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
             queryCallback.setRowLimit(globalRowLimit);
         }
         queryCallback.setDatabaseType(databaseType);
+        queryCallback.setDatabaseId(databaseId);
         queryCallback.setQueryClass(queryClass);
         queryCallback.setDebugDML(debugDAO);
+        queryCallback.setLazyRowCountInline(lazyRowCountInline);
+        queryCallback.setLazyRowCountSeconds(lazyRowCountCached ? lazyRowCountSeconds : 0);
+        if (queryCallback.getGeneratedColumns().length == 0) {
+            queryCallback.setGeneratedColumns(generatedColumns);
+        }
+        // defaults only - settings made on the callback before registration win
+        if (queryCallback.getFetchSize() <= 0) {
+            queryCallback.setFetchSize(defaultFetchSize);
+        }
+        if (queryCallback.getQueryTimeout() <= 0) {
+            queryCallback.setQueryTimeout(defaultQueryTimeout);
+        }
+        if (queryCallback.getMaxRows() <= 0 && isMaxRowsDefaulted(queryClass)) {
+            queryCallback.setMaxRows(defaultMaxRows);
+            maxRowsDefaulted.add(queryClass);
+        }
         queryCallback.setTableAlias(tableAlias);
         dmlMap.put(queryClass, queryCallback);
     }
 
-    protected <S> S performDML(QueryType queryType, boolean rollbackOnNotFound, BaseDTO baseDTO, Class queryClass, SessionDTO sessionDTO, Class<S> requiredType, PropertyBagDTO propertyBagDTO)
-            throws MtsException, NotFoundException, ConstraintViolationException {
-        final String METHODNAME = "performDML ";
-        logger.logBegin(METHODNAME);
-        if (logger.isDebugEnabled() || debugDAO) {
-            logger.debug(METHODNAME, "performing queryType: ", queryType, " - queryClass: ", queryClass, " - requiredType: ", requiredType);
-            logger.debug(METHODNAME, "queryType: " + queryType);
-            logger.debug(METHODNAME, "rollbackOnNotFound: " + rollbackOnNotFound);
-            logger.debug(METHODNAME, "baseDTO: " + baseDTO);
-            logger.debug(METHODNAME, "queryClass: " + queryClass == null ? queryClass : queryClass.getCanonicalName());
-            logger.debug("dmlMap.containsKey(queryClass) = ", dmlMap.containsKey(queryClass));
-        }
-        if (dmlMap.containsKey(queryClass)) {
-            QueryCallback dmlOperation = dmlMap.get(queryClass);
-            if (logger.isDebugEnabled() || debugDAO) {
-                logger.warn("is dmlOperation not null: ", dmlOperation != null);
+    /**
+     * Runs the write DML of a query class for a list of DTOs as JDBC batches on the primary.
+     *
+     * @param queryType
+     * @param baseDTOs
+     * @param queryClass
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return the update count of each DTO in list order
+     * @throws ConstraintViolationException
+     * @throws MtsException
+     */
+    protected int[] performBatchDML(QueryType queryType, List<? extends BaseDTO> baseDTOs, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ConstraintViolationException, MtsException {
+        final String METHODNAME = "performBatchDML ";
+        final long traceStart = TraceUtils.start(dtoClass);
+        try {
+            if (baseDTOs.isEmpty()) {
+                return new int[0];
             }
-            if (rollbackOnNotFound) {
-                dmlOperation.setRollbackOnNotFound(rollbackOnNotFound);
+            QueryCallback dmlOperation = dmlMap.get(queryClass);
+            if (dmlOperation == null) {
+                throw new MtsException(logger.error(queryClass, " not found in ", this.getClass().getCanonicalName(), " dmlMap."));
             }
             BaseRowMapper<? extends BaseDTO> mapper = tableMapperMap.get(dmlOperation.getTableName());
             if (mapper == null) {
@@ -653,10 +1444,123 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
                         this.getClass().getCanonicalName(),
                         " tableMapperMap. A mapper must be mapped to this table value."));
             }
-            return (S) dmlOperation.execute(namedParameterJdbcTemplate, queryType, baseDTO, queryClass, sessionDTO, requiredType, mapper, propertyBagDTO);
-        } else {
-            throw new MtsException(logger.error(queryClass, " not found in ", this.getClass().getCanonicalName(), " dmlMap."));
+            return dmlOperation.executeBatch(namedParameterJdbcTemplate, queryType, baseDTOs, queryClass, sessionDTO, mapper, propertyBagDTO);
+        } finally {
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
+        }
+    }
+
+    protected <S> S performDML(QueryType queryType, boolean rollbackOnNotFound, BaseDTO baseDTO, Class queryClass, SessionDTO sessionDTO, Class<S> requiredType, PropertyBagDTO propertyBagDTO)
+            throws MtsException, NotFoundException, ConstraintViolationException {
+        final String METHODNAME = "performDML ";
+        final long traceStart = TraceUtils.start(dtoClass);
+        try {
+            if (logger.isDebugEnabled() || debugDAO) {
+                logger.debug(METHODNAME, "performing queryType: ", queryType, " - queryClass: ", queryClass, " - requiredType: ", requiredType);
+                logger.debug(METHODNAME, "queryType: " + queryType);
+                logger.debug(METHODNAME, "rollbackOnNotFound: " + rollbackOnNotFound);
+                logger.debug(METHODNAME, "baseDTO: " + baseDTO);
+                logger.debug(METHODNAME, "queryClass: " + queryClass == null ? queryClass : queryClass.getCanonicalName());
+                logger.debug("dmlMap.containsKey(queryClass) = ", dmlMap.containsKey(queryClass));
+            }
+            if (dmlMap.containsKey(queryClass)) {
+                QueryCallback dmlOperation = dmlMap.get(queryClass);
+                if (logger.isDebugEnabled() || debugDAO) {
+                    logger.warn("is dmlOperation not null: ", dmlOperation != null);
+                }
+                if (rollbackOnNotFound) {
+                    dmlOperation.setRollbackOnNotFound(rollbackOnNotFound);
+                }
+                BaseRowMapper<? extends BaseDTO> mapper = tableMapperMap.get(dmlOperation.getTableName());
+                if (mapper == null) {
+                    throw new MtsException(logger.error(
+                            dmlOperation.getTableName(),
+                            " not found in ",
+                            this.getClass().getCanonicalName(),
+                            " tableMapperMap. A mapper must be mapped to this table value."));
+                }
+                ReplicaDataSource replica = getReplica(queryType, queryClass, propertyBagDTO);
+                if (replica == null) {
+                    return (S) dmlOperation.execute(namedParameterJdbcTemplate, queryType, baseDTO, queryClass, sessionDTO, requiredType, mapper, propertyBagDTO);
+                }
+                replica.begin();
+                try {
+                    return (S) dmlOperation.execute(replica.getNamedParameterJdbcTemplate(namedParameterJdbcTemplate), queryType, baseDTO, queryClass, sessionDTO, requiredType, mapper, propertyBagDTO);
+                } finally {
+                    replica.end();
+                }
+            } else {
+                throw new MtsException(logger.error(queryClass, " not found in ", this.getClass().getCanonicalName(), " dmlMap."));
+            }
+        } finally {
+            TraceUtils.end(traceStart, "BaseDAO", METHODNAME, dtoClass);
+        }
+    }
+
+    /**
+     * Returns the read only replica a query is routed to - QUERY, QUERY_LIST and HASH queries on a database resource with
+     * replicas issued outside a transaction. Everything else, including every read of a transaction, uses the primary (null) so
+     * that a transaction always sees its own writes and a consistent view of the database. The cache load (CacheAll and the
+     * queries of a PRIMARY_ONLY property bag) also uses the primary so that a lagging replica is never cached as the table.
+     *
+     * @param queryType
+     * @param queryClass
+     * @param propertyBagDTO
+     * @return
+     */
+    private ReplicaDataSource getReplica(QueryType queryType, Class queryClass, PropertyBagDTO propertyBagDTO) {
+        final String METHODNAME = "getReplica ";
+        if (!isReplicaQuery(databaseResource, queryType, queryClass, propertyBagDTO)) {
+            return null;
         }
+        try {
+            ReplicaDataSource replica = getReplica(databaseResource, namedParameterJdbcTemplate, EJBUtils.isTransactionActive());
+            if (replica != null && (logger.isDebugEnabled() || debugDAO)) {
+                logger.debug(METHODNAME, queryType, " routed to ", replica.getJndiName());
+            }
+            return replica;
+        } catch (MtsException | IllegalStateException e) {
+            logger.warn(METHODNAME, "routing to the primary - ", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Whether a query may be routed to a replica of the database resource.
+     *
+     * @param databaseResource
+     * @param queryType
+     * @param queryClass
+     * @param propertyBagDTO
+     * @return
+     */
+    static boolean isReplicaQuery(DatabaseResource databaseResource, QueryType queryType, Class queryClass, PropertyBagDTO propertyBagDTO) {
+        return databaseResource != null && !databaseResource.getReplicas().isEmpty()
+                && (queryType == QueryType.QUERY || queryType == QueryType.QUERY_LIST || queryType == QueryType.HASH)
+                && queryClass != CacheAll.class
+                && (propertyBagDTO == null || !ObjectUtils.objectToBoolean(propertyBagDTO.get(PRIMARY_ONLY)));
+    }
+
+    /**
+     * Returns the replica the routing policy of the database resource picks - null for the primary, always inside a transaction.
+     *
+     * @param databaseResource
+     * @param primary the primary template
+     * @param transactionActive
+     * @return
+     * @throws MtsException
+     */
+    static ReplicaDataSource getReplica(DatabaseResource databaseResource, NamedParameterJdbcTemplate primary, boolean transactionActive)
+            throws MtsException {
+        if (transactionActive) {
+            return null;
+        }
+        ReplicaDataSource replica = databaseResource.getReplica();
+        if (replica != null) {
+            // look up the data source before the query so that a failed lookup falls back to the primary
+            replica.getNamedParameterJdbcTemplate(primary);
+        }
+        return replica;
     }
 
     protected void registerStandardDMLInterfaces(String tableName) throws MtsException {
@@ -681,7 +1585,7 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
         this.registerDML(Update.class, new QueryCallback<T>(tableName) {
             @Override
             protected String getQueryDML(BaseDTO baseDTO, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO) {
-                return getUpdateDML();
+                return dynamicUpdate ? getDynamicUpdateDML(baseDTO) : getUpdateDML();
             }
         }, false);
 
@@ -693,6 +1597,40 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
             }
         }, false);
 
+        // Find the instances of a chunk of primary keys - see findByPrimaryKeys
+        this.registerDML(PrimaryKeys.class, new QueryCallback<T>(getDtoTableName()) {
+            @Override
+            protected String getQueryDML(BaseDTO baseDTO, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO) {
+                return getSelectDML() + " where " + (tableAlias == null ? "" : tableAlias) + getMultiKeySelectColumn() + " in (:" + PRIMARY_KEYS_PARAMETER + ")";
+            }
+
+            @Override
+            protected void getCallbackNamedParameters(MapSqlParameterSource namedParameters, BaseDTO baseDTO, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO) {
+                namedParameters.addValue(PRIMARY_KEYS_PARAMETER, baseDTO.getQueryMap().get(PRIMARY_KEYS_PARAMETER));
+            }
+        }, false);
+
+        // Find the instance of a key and its ancestors - see findAncestors
+        this.registerDML(Ancestors.class, new QueryCallback<T>(getDtoTableName()) {
+            @Override
+            protected String getQueryDML(BaseDTO baseDTO, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO) {
+                return getAncestorsDML(getMultiKeySelectColumn(), (String) baseDTO.getQueryMap().get(ANCESTORS_PARENT_COLUMN),
+                        (Integer) baseDTO.getQueryMap().get(ANCESTORS_MAX_DEPTH));
+            }
+
+            @Override
+            protected void getCallbackNamedParameters(MapSqlParameterSource namedParameters, BaseDTO baseDTO, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO) {
+                namedParameters.addValue("key", baseDTO.getQueryMap().get(ANCESTORS_KEY_PARAMETER));
+                namedParameters.addValue("maxDepth", baseDTO.getQueryMap().get(ANCESTORS_MAX_DEPTH));
+            }
+
+            @Override
+            protected String getSQLOrderBy(String sortField, Boolean sortOrder) {
+                // the chain is keyed by the caller - an order by would also land after the SQL Server query option
+                return null;
+            }
+        }, false);
+
         this.registerDML(FindAll.class, new QueryCallback<T>(getDtoTableName()) {
             @Override
             protected String getQueryDML(BaseDTO baseDTO, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO) {
@@ -821,6 +1759,10 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
                         result = predicate.toLowerCase().replaceAll("(?:like)", "=");
                     }
 
+                    if (!caseInsensitiveLookups.isEmpty()) {
+                        result = getCaseInsensitiveLookupPredicate(result, wildcardSet ? getLikePrefix(criteria) : null);
+                    }
+
                     valueSet = true;
                     logger.debug("Criteria Set: ", criteria);
                     baseDTO.getQueryMap().put(key, criteria);
@@ -888,7 +1830,9 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
             while (it.hasNext()) {
                 String key = (String) it.next();
                 Object value = outputParms.get(key);
-                logger.debug(methodName + "key= " + key + " value=" + value);
+                if (logger.isDebugEnabled()) {
+                    logger.debug(methodName + "key= " + key + " value=" + value);
+                }
             }
         }
     }
@@ -923,6 +1867,531 @@ public abstract class BaseDAO<T extends BaseDTO> implements BaseDAOInterface<T>
         setQueryMapValue(baseDTO, parameter, key, namedParameters, StringCase.Insenstive);
     }
 
+    /**
+     * Reads the query settings applied to each registered query callback. LAZY_ROWCOUNT_CACHE_SECONDS (default 60) is how long a
+     * lazy row count is reused before it is counted again by DAOs that call registerLazyRowCountCache and LAZY_ROWCOUNT_INLINE
+     * (default true) has the lazy page queries of those DAOs return the total row count in the same statement where supported.
+     * JDBC_FETCH_SIZE, JDBC_QUERY_TIMEOUT_SECONDS and JDBC_MAX_ROWS are the statement defaults of query classes not tuned via
+     * setQueryTuning (default 0 - the driver default), JDBC_MAX_ROWS only for caller lists.
+     */
+    private void initializeQuerySettings() {
+        if (propertyMGRLocal == null) {
+            return;
+        }
+        Boolean inline = propertyMGRLocal.get("LAZY_ROWCOUNT_INLINE", Boolean.class);
+        if (inline != null) {
+            lazyRowCountInline = inline;
+        }
+        Integer seconds = propertyMGRLocal.get("LAZY_ROWCOUNT_CACHE_SECONDS", Integer.class);
+        if (seconds != null) {
+            lazyRowCountSeconds = seconds;
+        }
+        Integer fetchSize = propertyMGRLocal.get("JDBC_FETCH_SIZE", Integer.class);
+        if (fetchSize != null) {
+            defaultFetchSize = fetchSize;
+        }
+        Integer queryTimeout = propertyMGRLocal.get("JDBC_QUERY_TIMEOUT_SECONDS", Integer.class);
+        if (queryTimeout != null) {
+            defaultQueryTimeout = queryTimeout;
+        }
+        Integer maxRows = propertyMGRLocal.get("JDBC_MAX_ROWS", Integer.class);
+        if (maxRows != null) {
+            defaultMaxRows = maxRows;
+        }
+        Boolean dynamicUpdateProperty = propertyMGRLocal.get("DYNAMIC_UPDATE", Boolean.class);
+        if (dynamicUpdateProperty != null) {
+            dynamicUpdate = dynamicUpdateProperty;
+        }
+        Integer maxShapes = propertyMGRLocal.get("DYNAMIC_UPDATE_MAX_SHAPES", Integer.class);
+        if (maxShapes != null && maxShapes > 0) {
+            dynamicUpdateMaxShapes = maxShapes;
+        }
+        Integer maxChangedPercent = propertyMGRLocal.get("DYNAMIC_UPDATE_MAX_CHANGED_PERCENT", Integer.class);
+        if (maxChangedPercent != null) {
+            dynamicUpdateMaxChangedPercent = maxChangedPercent;
+        }
+    }
+
+    /**
+     * Enable or disable the dynamic update mode of the standard Update DML of this DAO - overrides the DYNAMIC_UPDATE property.
+     *
+     * @param dynamicUpdate
+     */
+    protected void setDynamicUpdate(boolean dynamicUpdate) {
+        this.dynamicUpdate = dynamicUpdate;
+    }
+
+    /**
+     * Returns an update that only sets the columns of the changed properties of the DTO, plus the last_mod columns and any set
+     * expressions that do not belong to a DTO property. The statements are cached per changed column set (bounded by
+     * DYNAMIC_UPDATE_MAX_SHAPES). Falls back to the full update DML when the DTO tracks no changes, a change cannot be mapped to a
+     * column or more than DYNAMIC_UPDATE_MAX_CHANGED_PERCENT of the property columns changed.
+     *
+     * @param baseDTO
+     * @return
+     */
+    protected String getDynamicUpdateDML(BaseDTO baseDTO) {
+        final String METHODNAME = "getDynamicUpdateDML ";
+        String fullUpdateDML = getUpdateDML();
+        if (!parseUpdateDML(fullUpdateDML)) {
+            return fullUpdateDML;
+        }
+        Map<String, CorePropertyChangeEvent> propertyChangeEventMap = baseDTO.getPropertyChangeEventMap();
+        if (propertyChangeEventMap == null || propertyChangeEventMap.isEmpty()) {
+            return fullUpdateDML;
+        }
+        Set<String> changedColumns = new TreeSet<String>();
+        for (String propertyName : propertyChangeEventMap.keySet()) {
+            List<String> columns = propertyColumnMap.get(propertyName);
+            if (columns == null) {
+                if (propertyName.equalsIgnoreCase("lastModDatetime") || propertyName.equalsIgnoreCase("lastModId")) {
+                    continue;
+                }
+                logger.debug(METHODNAME, "unmapped changed property ", propertyName, " - using the full update");
+                return fullUpdateDML;
+            }
+            changedColumns.addAll(columns);
+        }
+        int propertyColumnCount = 0;
+        for (List<String> columns : propertyColumnMap.values()) {
+            propertyColumnCount += columns.size();
+        }
+        if (changedColumns.size() * 100 > propertyColumnCount * dynamicUpdateMaxChangedPercent) {
+            return fullUpdateDML;
+        }
+        String shapeKey = changedColumns.toString();
+        String result = dynamicUpdateShapes.get(shapeKey);
+        if (result == null) {
+            Set<String> propertyColumns = new HashSet<String>();
+            for (List<String> columns : propertyColumnMap.values()) {
+                propertyColumns.addAll(columns);
+            }
+            List<String> assignments = new ArrayList<String>();
+            for (Map.Entry<String, String> assignment : updateDMLAssignments.entrySet()) {
+                if (changedColumns.contains(assignment.getKey()) || !propertyColumns.contains(assignment.getKey())) {
+                    assignments.add(assignment.getValue());
+                }
+            }
+            if (assignments.isEmpty()) {
+                return fullUpdateDML;
+            }
+            result = updateDMLPrefix + " " + StringUtils.getStringFromArray(assignments, ", ") + " " + updateDMLWhere;
+            dynamicUpdateShapes.put(shapeKey, result);
+            logger.debug(METHODNAME, "new update shape ", shapeKey, ": ", result);
+        }
+        return result;
+    }
+
+    /**
+     * Splits the full update DML into its "update ... set" prefix, its set assignments and its where clause and maps the DTO
+     * properties to their updateable columns.
+     *
+     * @param fullUpdateDML
+     * @return false if the DML could not be split
+     */
+    private boolean parseUpdateDML(String fullUpdateDML) {
+        if (fullUpdateDML == null) {
+            return false;
+        }
+        if (fullUpdateDML.equals(parsedUpdateDML)) {
+            return updateDMLAssignments != null;
+        }
+        parsedUpdateDML = fullUpdateDML;
+        updateDMLAssignments = null;
+        dynamicUpdateShapes.clear();
+        DTOTable dtoTable = DTOUtils.isEntity(dtoClass) ? DTOUtils.getDTOTable(dtoClass) : null;
+        Matcher setMatcher = Pattern.compile("^\\s*update\\s+\\S+(?:\\s+\\w+)?\\s+set\\s+", Pattern.CASE_INSENSITIVE).matcher(fullUpdateDML);
+        if (dtoTable == null || !setMatcher.find()) {
+            return false;
+        }
+        // split the set clause on top level commas up to the top level where
+        List<String> assignments = new ArrayList<String>();
+        int depth = 0;
+        int start = setMatcher.end();
+        int whereIndex = -1;
+        String lowerDML = fullUpdateDML.toLowerCase();
+        for (int i = start; i < fullUpdateDML.length() && whereIndex < 0; i++) {
+            char c = fullUpdateDML.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && c == ',') {
+                assignments.add(fullUpdateDML.substring(start, i).trim());
+                start = i + 1;
+            } else if (depth == 0 && Character.isWhitespace(c) && lowerDML.startsWith("where", i + 1)
+                    && (i + 6 >= lowerDML.length() || !Character.isLetterOrDigit(lowerDML.charAt(i + 6)))) {
+                whereIndex = i + 1;
+            }
+        }
+        if (whereIndex < 0) {
+            return false;
+        }
+        assignments.add(fullUpdateDML.substring(start, whereIndex).trim());
+        Map<String, String> assignmentMap = new LinkedHashMap<String, String>();
+        for (String assignment : assignments) {
+            int equalsIndex = assignment.indexOf('=');
+            if (equalsIndex <= 0) {
+                return false;
+            }
+            String column = assignment.substring(0, equalsIndex).trim().toLowerCase();
+            column = column.substring(column.lastIndexOf('.') + 1);
+            assignmentMap.put(column, assignment);
+        }
+        Map<String, List<String>> columnMap = new HashMap<String, List<String>>();
+        for (Map.Entry<Field, DTOProperty> entry : dtoTable.getDtoPropertyMap().entrySet()) {
+            List<String> columns = new ArrayList<String>();
+            for (Column column : entry.getValue().getColumns()) {
+                if (column.updateable() && assignmentMap.containsKey(column.name().toLowerCase())) {
+                    columns.add(column.name().toLowerCase());
+                }
+            }
+            if (!columns.isEmpty()) {
+                columnMap.put(entry.getKey().getName(), columns);
+            }
+        }
+        updateDMLPrefix = fullUpdateDML.substring(0, setMatcher.end()).trim();
+        updateDMLWhere = fullUpdateDML.substring(whereIndex).trim();
+        propertyColumnMap = columnMap;
+        updateDMLAssignments = assignmentMap;
+        return true;
+    }
+
+    /**
+     * Set the JDBC fetch size, statement timeout in seconds and max rows of a registered query class. A value of 0 falls back to
+     * the JDBC_FETCH_SIZE, JDBC_QUERY_TIMEOUT_SECONDS and JDBC_MAX_ROWS defaults - the max rows default only for the query
+     * classes of caller lists (see isMaxRowsDefaulted).
+     *
+     * @param queryClass
+     * @param fetchSize
+     * @param queryTimeout
+     * @param maxRows
+     * @throws MtsException
+     */
+    protected void setQueryTuning(Class queryClass, int fetchSize, int queryTimeout, int maxRows) throws MtsException {
+        QueryCallback queryCallback = dmlMap.get(queryClass);
+        if (queryCallback == null) {
+            throw new MtsException(logger.error(queryClass, " not found in ", this.getClass().getCanonicalName(), " dmlMap."));
+        }
+        queryCallback.setFetchSize(fetchSize > 0 ? fetchSize : defaultFetchSize);
+        queryCallback.setQueryTimeout(queryTimeout > 0 ? queryTimeout : defaultQueryTimeout);
+        if (maxRows <= 0 && isMaxRowsDefaulted(queryClass)) {
+            queryCallback.setMaxRows(defaultMaxRows);
+            maxRowsDefaulted.add(queryClass);
+        } else {
+            queryCallback.setMaxRows(maxRows);
+            maxRowsDefaulted.remove(queryClass);
+        }
+        // the multi key select of findByPrimaryKeys and the hierarchy select of findAncestors follow the primary key tuning,
+        // less the row limit
+        if (queryClass == PrimaryKey.class) {
+            for (Class keysClass : new Class[]{PrimaryKeys.class, Ancestors.class}) {
+                if (dmlMap.containsKey(keysClass)) {
+                    dmlMap.get(keysClass).setFetchSize(fetchSize > 0 ? fetchSize : defaultFetchSize);
+                    dmlMap.get(keysClass).setQueryTimeout(queryTimeout > 0 ? queryTimeout : defaultQueryTimeout);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the JDBC_MAX_ROWS default applies to a query class - not for the reads the framework needs in full: the cache load,
+     * primary key and hierarchy selects and the child queries of registered parents.
+     *
+     * @param queryClass
+     * @return
+     */
+    private boolean isMaxRowsDefaulted(Class queryClass) {
+        return defaultMaxRows > 0
+                && queryClass != CacheAll.class
+                && queryClass != PrimaryKey.class
+                && queryClass != PrimaryKeys.class
+                && queryClass != Ancestors.class
+                && !parentChildMap.containsValue(queryClass);
+    }
+
+    /**
+     * Declares the columns the database generates or defaults on insert or update (keys, defaults, trigger maintained values).
+     * Their values are returned by the write itself and applied to the DTO. When refreshAfterWriteRequired is false no other
+     * column can differ from the DTO after a write and BaseBO skips the re-read of the row (the references are still resolved) - it
+     * still re-reads when the driver did not return the values. SQL Server returns only the first column, so the re-read is only
+     * skipped there when a single column is declared.
+     *
+     * @param refreshAfterWriteRequired
+     * @param columns
+     */
+    protected void registerGeneratedColumns(boolean refreshAfterWriteRequired, String... columns) {
+        this.generatedColumns = columns != null ? columns : new String[0];
+        this.refreshAfterWriteRequired = refreshAfterWriteRequired;
+        for (QueryCallback queryCallback : dmlMap.values()) {
+            queryCallback.setGeneratedColumns(generatedColumns);
+        }
+    }
+
+    /**
+     * Opts the DAO in to reusing the total row count of its lazy queries for a number of seconds (0 or less for the
+     * LAZY_ROWCOUNT_CACHE_SECONDS default) - for tables whose count may lag writes made outside of this DAO, e.g. by other
+     * applications or by SQL, for that long. Writes through the DAO drop the counts after their transaction completes.
+     *
+     * @param seconds
+     */
+    protected void registerLazyRowCountCache(int seconds) {
+        lazyRowCountCached = true;
+        if (seconds > 0) {
+            lazyRowCountSeconds = seconds;
+        }
+        RowCountCache.register(databaseId, dtoTableName);
+        for (QueryCallback queryCallback : dmlMap.values()) {
+            queryCallback.setLazyRowCountSeconds(lazyRowCountSeconds);
+        }
+    }
+
+    /**
+     * Whether a row must be re-read after a write to pick up database side changes.
+     *
+     * @return
+     */
+    public boolean isRefreshAfterWriteRequired() {
+        return refreshAfterWriteRequired;
+    }
+
+    /**
+     * Declares that writing a row changes other rows of the table (triggers, cascades, procedures) - a parent then re-reads the
+     * whole child collection after saving it instead of keeping the saved children.
+     *
+     * @param collectionSideEffects
+     */
+    protected void setCollectionSideEffects(boolean collectionSideEffects) {
+        this.collectionSideEffects = collectionSideEffects;
+    }
+
+    public boolean isCollectionSideEffects() {
+        return collectionSideEffects;
+    }
+
+    /**
+     * Declares a case insensitive lookup for a column searched through lower(column) by the predicate helpers. lookupColumn is
+     * a lower cased shadow column which the predicates target instead and which the default entity row mapper binds on insert
+     * and update - the table DML must include it and the application's migrations must add, back fill and index it.
+     *
+     * @param column
+     * @param lookupColumn
+     */
+    protected void registerCaseInsensitiveLookup(String column, String lookupColumn) {
+        final String METHODNAME = "registerCaseInsensitiveLookup ";
+        if (column == null || column.trim().isEmpty()) {
+            throw new IllegalArgumentException(METHODNAME + "column was empty for " + dtoClass);
+        }
+        if (lookupColumn == null || lookupColumn.trim().isEmpty()) {
+            throw new IllegalArgumentException(METHODNAME + "lookupColumn was empty for " + dtoClass + "." + column);
+        }
+        String lookup = lookupColumn.trim().toLowerCase();
+        caseInsensitiveLookups.put(column.trim().toLowerCase(), lookup);
+        logger.debug(METHODNAME, dtoTableName, ".", column, " -> ", lookup);
+    }
+
+    /**
+     * Reads the case insensitive lookups of the DTO table from the CASE_INSENSITIVE_LOOKUPS_[TABLE] property - a comma separated
+     * list of column:shadow_column entries. CASE_INSENSITIVE_PREFIX_RANGE_SCAN enables the prefix range scan rewrite and
+     * should only be set where the lookup indexes order lower cased values bytewise (e.g. C collation or text_pattern_ops).
+     */
+    private void initializeCaseInsensitiveLookups() {
+        if (propertyMGRLocal == null || dtoTableName == null) {
+            return;
+        }
+        Boolean rangeScan = propertyMGRLocal.get("CASE_INSENSITIVE_PREFIX_RANGE_SCAN", Boolean.class);
+        prefixRangeScan = rangeScan != null && rangeScan;
+        String lookups = propertyMGRLocal.get("CASE_INSENSITIVE_LOOKUPS_" + dtoTableName.toUpperCase(), String.class);
+        if (lookups != null) {
+            for (String lookup : lookups.split(",")) {
+                if (!lookup.trim().isEmpty()) {
+                    String[] parts = lookup.split(":");
+                    if (parts.length == 2) {
+                        registerCaseInsensitiveLookup(parts[0], parts[1]);
+                    } else {
+                        logger.warn("initializeCaseInsensitiveLookups ", "ignoring ", lookup, " - expected column:shadow_column");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrites lower(column) references of the registered lookups to their shadow columns and, when a prefix is supplied, turns
+     * each lookup "like :parameter" into a range scan on the prefix bounds with the like kept as a residual filter. The bounds
+     * are bound by the query callback when the statement references them (see addPrefixRangeParameters).
+     *
+     * @param predicate
+     * @param likePrefix the constant prefix of a wildcard criteria or null
+     * @return
+     */
+    private String getCaseInsensitiveLookupPredicate(String predicate, String likePrefix) {
+        String result = predicate;
+        for (Map.Entry<String, String> entry : caseInsensitiveLookups.entrySet()) {
+            String column = Pattern.quote(entry.getKey());
+            String lookupColumn = entry.getValue();
+            result = Pattern.compile("lower\\(\\s*(\\w+\\.)?" + column + "\\s*\\)", Pattern.CASE_INSENSITIVE).matcher(result)
+                    .replaceAll("$1" + Matcher.quoteReplacement(lookupColumn));
+            String expression = "(?:\\w+\\.)?" + Pattern.quote(lookupColumn);
+            if (prefixRangeScan && likePrefix != null && !likePrefix.isEmpty()) {
+                Matcher matcher = Pattern.compile("(" + expression + ")\\s+like\\s+:(\\w+)", Pattern.CASE_INSENSITIVE).matcher(result);
+                StringBuffer buffer = new StringBuffer();
+                while (matcher.find()) {
+                    String lookup = matcher.group(1);
+                    String parameter = matcher.group(2);
+                    matcher.appendReplacement(buffer, Matcher.quoteReplacement("(" + lookup + " >= :" + parameter + "_prefix_start and "
+                            + lookup + " < :" + parameter + "_prefix_stop and " + lookup + " like :" + parameter + ")"));
+                }
+                matcher.appendTail(buffer);
+                result = buffer.toString();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Binds the lower cased shadow column values of the registered lookups from the bound column values.
+     *
+     * @param namedParameters
+     */
+    private void addCaseInsensitiveLookupParameters(MapSqlParameterSource namedParameters) {
+        for (Map.Entry<String, String> entry : caseInsensitiveLookups.entrySet()) {
+            if (namedParameters.hasValue(entry.getKey())) {
+                Object value = namedParameters.getValue(entry.getKey());
+                namedParameters.addValue(entry.getValue(), value instanceof String ? ((String) value).toLowerCase() : value);
+            }
+        }
+    }
+
+    /**
+     * Binds the prefix bounds of the lookup likes rewritten into prefix range scans by getCaseInsensitiveLookupPredicate - only
+     * the parameters whose bounds the statement references are bound.
+     *
+     * @param dml
+     * @param namedParameters
+     */
+    public static void addPrefixRangeParameters(String dml, MapSqlParameterSource namedParameters) {
+        if (dml == null || namedParameters == null || !dml.contains("_prefix_start")) {
+            return;
+        }
+        Matcher matcher = prefixRangePattern.matcher(dml);
+        while (matcher.find()) {
+            String parameter = matcher.group(1);
+            if (namedParameters.hasValue(parameter) && namedParameters.getValue(parameter) instanceof String) {
+                String prefix = getLikePrefix((String) namedParameters.getValue(parameter));
+                if (prefix != null) {
+                    namedParameters.addValue(parameter + "_prefix_start", prefix);
+                    namedParameters.addValue(parameter + "_prefix_stop", getPrefixUpperBound(prefix));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the constant prefix of a like criteria that starts with a constant and contains a wildcard, otherwise null.
+     *
+     * @param criteria
+     * @return
+     */
+    private static String getLikePrefix(String criteria) {
+        String result = null;
+        if (criteria != null) {
+            int index = 0;
+            while (index < criteria.length() && criteria.charAt(index) != '%' && criteria.charAt(index) != '_') {
+                index++;
+            }
+            if (index > 0 && index < criteria.length() && criteria.charAt(index - 1) != Character.MAX_VALUE) {
+                result = criteria.substring(0, index);
+            }
+        }
+        return result;
+    }
+
+    private static String getPrefixUpperBound(String prefix) {
+        return prefix.substring(0, prefix.length() - 1) + (char) (prefix.charAt(prefix.length() - 1) + 1);
+    }
+
+    /**
+     * Adds an index friendly, half-open date range predicate on a raw timestamp column:
+     * column >= :[parameter]_start and column < :[parameter]_stop. A start and stop date select every day from the start date
+     * through the stop date, a single start or stop date selects that whole day. Bind the values with setDateRangeQueryMapValues.
+     *
+     * @param baseDTO
+     * @param column the column - including any table alias
+     * @param parameter the named parameter prefix
+     * @param startKey the query map key of the start date
+     * @param stopKey the query map key of the stop date
+     */
+    protected void setDateRangePredicateValue(BaseDTO baseDTO, String column, String parameter, String startKey, String stopKey) {
+        if (getDateRange(baseDTO, startKey, stopKey) != null) {
+            setPredicateValue(" " + column + " >= :" + parameter + "_start ");
+            setPredicateValue(" " + column + " < :" + parameter + "_stop ");
+        }
+    }
+
+    /**
+     * Binds the timestamp boundaries of a setDateRangePredicateValue predicate.
+     *
+     * @param baseDTO
+     * @param parameter the named parameter prefix
+     * @param startKey the query map key of the start date
+     * @param stopKey the query map key of the stop date
+     * @param namedParameters
+     */
+    protected static void setDateRangeQueryMapValues(BaseDTO baseDTO, String parameter, String startKey, String stopKey, MapSqlParameterSource namedParameters) {
+        Timestamp[] range = getDateRange(baseDTO, startKey, stopKey);
+        if (range != null) {
+            namedParameters.addValue(parameter + "_start", range[0]);
+            namedParameters.addValue(parameter + "_stop", range[1]);
+        }
+    }
+
+    /**
+     * Returns the [start of start day, start of day after stop day) boundaries of the query map dates or null if neither is set.
+     *
+     * @param baseDTO
+     * @param startKey
+     * @param stopKey
+     * @return
+     */
+    private static Timestamp[] getDateRange(BaseDTO baseDTO, String startKey, String stopKey) {
+        Date start = getQueryMapDate(baseDTO, startKey);
+        Date stop = getQueryMapDate(baseDTO, stopKey);
+        if (start == null && stop == null) {
+            return null;
+        }
+        Calendar lower = getStartOfDay(start != null ? start : stop);
+        Calendar upper = getStartOfDay(stop != null ? stop : start);
+        upper.add(Calendar.DAY_OF_MONTH, 1);
+        return new Timestamp[]{new Timestamp(lower.getTimeInMillis()), new Timestamp(upper.getTimeInMillis())};
+    }
+
+    private static Date getQueryMapDate(BaseDTO baseDTO, String key) {
+        final String METHODNAME = "getQueryMapDate ";
+        Date result = null;
+        Object value = baseDTO.getQueryMap().get(key);
+        if (value instanceof Date) {
+            result = (Date) value;
+        } else if (value instanceof String && !((String) value).trim().isEmpty()) {
+            try {
+                result = new SimpleDateFormat(DateUtils.DATEINMASK).parse(((String) value).trim());
+            } catch (ParseException e) {
+                throw new IllegalArgumentException(METHODNAME + key + " is not a valid date: " + value, e);
+            }
+        }
+        return result;
+    }
+
+    private static Calendar getStartOfDay(Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar;
+    }
+
     protected void registerTableMapper(BaseRowMapper<? extends BaseDTO> mapper) {
         registerTableMapper(getDtoTableName(), mapper);
     }
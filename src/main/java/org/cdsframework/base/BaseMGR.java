@@ -27,6 +27,7 @@
 package org.cdsframework.base;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import javax.annotation.PostConstruct; 
@@ -49,6 +50,8 @@ import org.cdsframework.group.Delete;
 import org.cdsframework.group.Update;
 import org.cdsframework.util.ClassUtils;
 import org.cdsframework.util.EJBUtils;
+import org.cdsframework.util.IdentityMapUtils;
+import org.cdsframework.util.ReferenceSnapshotUtils;
 import org.cdsframework.util.LogUtils;
 
 @TransactionManagement(TransactionManagementType.CONTAINER)
@@ -368,6 +371,33 @@ public abstract class BaseMGR<T extends BaseDTO> {
         }
     }
 
+    public List<T> findByPrimaryKeys(BaseBO<T> baseBO, Collection primaryKeys, List<Class> childClassDTOs, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws MtsException, ValidationException, NotFoundException, AuthenticationException, AuthorizationException {
+        final String METHODNAME = "findByPrimaryKeys ";
+        logger.logBegin(METHODNAME);
+        try {
+            PropertyBagDTO newPropertyBagDTO = getPropertyBagDTO(propertyBagDTO);
+            return baseBO.findByPrimaryKeysMain(primaryKeys, childClassDTOs, sessionDTO, newPropertyBagDTO);
+        } finally {
+            logger.logEnd(METHODNAME);
+        }
+    }
+
+    public List<T> findByPrimaryKeys(Collection primaryKeys, List<Class> childClassDTOs, SessionDTO sessionDTO)
+            throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException {
+        return findByPrimaryKeys(primaryKeys, childClassDTOs, sessionDTO, new PropertyBagDTO());
+    }
+
+    public List<T> findByPrimaryKeys(Collection primaryKeys, List<Class> childClassDTOs, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException {
+        return findByPrimaryKeys(this.baseBO, primaryKeys, childClassDTOs, sessionDTO, propertyBagDTO);
+    }
+
+    public List<T> findByPrimaryKeys(Collection primaryKeys, SessionDTO sessionDTO)
+            throws ValidationException, NotFoundException, MtsException, AuthenticationException, AuthorizationException {
+        return findByPrimaryKeys(primaryKeys, new ArrayList(), sessionDTO, new PropertyBagDTO());
+    }
+
     protected <S> S findObjectByQuery(BaseBO<T> baseBO, T baseDTO, Class queryClass, SessionDTO sessionDTO, Class<S> requiredType, PropertyBagDTO propertyBagDTO)
             throws MtsException, ValidationException, NotFoundException, AuthenticationException, AuthorizationException {
         final String METHODNAME = "findStringByQuery ";
@@ -446,6 +476,9 @@ public abstract class BaseMGR<T extends BaseDTO> {
         }
         // Identify the calling MGR
         newPropertyBagDTO.setCaller(this.getClass());
+        // Primary key reads and reference snapshots are only shared within a single MGR call
+        IdentityMapUtils.clear(newPropertyBagDTO);
+        ReferenceSnapshotUtils.clear(newPropertyBagDTO);
         return newPropertyBagDTO;
     }
 }
\ No newline at end of file
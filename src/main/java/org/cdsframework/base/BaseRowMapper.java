@@ -33,6 +33,7 @@ import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
+import java.util.Set;
 import org.cdsframework.annotation.Column;
 import org.cdsframework.dto.PropertyBagDTO;
 import org.cdsframework.dto.SessionDTO;
@@ -237,7 +238,122 @@ public abstract class BaseRowMapper<T extends BaseDTO> implements RowMapper<T> {
         logger.debug(METHODNAME, "dto.getAuditId(): ", dto.getAuditId());
     }
 
+    /**
+     * Apply the column values returned by an insert or update (generated keys, defaults, trigger values) to the DTO. A single
+     * unnamed value (e.g. a MYSQL GENERATED_KEY) is applied to the single requested column.
+     *
+     * @param databaseType
+     * @param values the returned values keyed by column name
+     * @param columns the requested column names
+     * @param dto
+     * @return whether every requested column was applied
+     */
+    public boolean mapGeneratedValues(DatabaseType databaseType, Map<String, Object> values, String[] columns, T dto) {
+        final String METHODNAME = "mapGeneratedValues ";
+        int applied = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            String columnName = null;
+            for (String column : columns) {
+                if (column.equalsIgnoreCase(entry.getKey())) {
+                    columnName = column;
+                    break;
+                }
+            }
+            if (columnName == null && values.size() == 1 && columns.length == 1) {
+                columnName = columns[0];
+            }
+            if (columnName != null && mapGeneratedValue(databaseType, columnName, entry.getValue(), dto)) {
+                applied++;
+            } else {
+                logger.debug(METHODNAME, "unmapped returned column: ", entry.getKey());
+            }
+        }
+        return applied == columns.length;
+    }
+
+    private boolean mapGeneratedValue(DatabaseType databaseType, String columnName, Object value, T dto) {
+        String name = columnName.toLowerCase();
+        if ("create_id".equals(name) || "created_id".equals(name)) {
+            dto.setCreateId(value != null ? value.toString() : null);
+            return true;
+        } else if ("last_mod_id".equals(name)) {
+            dto.setLastModId(value != null ? value.toString() : null);
+            return true;
+        } else if ("audit_id".equals(name)) {
+            dto.setAuditId(value != null ? value.toString() : null);
+            return true;
+        } else if (("create_datetime".equals(name) || "created_datetime".equals(name)) && (value == null || value instanceof Date)) {
+            dto.setCreateDatetime((Date) value);
+            return true;
+        } else if ("last_mod_datetime".equals(name) && (value == null || value instanceof Date)) {
+            dto.setLastModDatetime((Date) value);
+            return true;
+        }
+        if (dtoTable != null) {
+            for (DTOProperty dtoProperty : dtoTable.getDtoPropertyMap().values()) {
+                for (Column column : dtoProperty.getColumns()) {
+                    if (column.selectable() && column.name().equalsIgnoreCase(columnName)) {
+                        try {
+                            dtoProperty.setDataValue(column, value, databaseType, dto);
+                        } catch (Exception e) {
+                            throw new IllegalStateException("An Exception occurred on generated column " + column.name() + "; Message: " + e.getMessage(), e);
+                        }
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the columns a projection query on the given properties maps, or null when this mapper does not support projection.
+     *
+     * @param properties
+     * @return
+     */
+    public Set<String> getProjectedColumns(Set<String> properties) {
+        return null;
+    }
+
+    /**
+     * Returns the DML narrowed to the projected columns, or null when the DML can not be projected.
+     *
+     * @param dml
+     * @param columns
+     * @return
+     */
+    public String getProjectedDML(String dml, Set<String> columns) {
+        return null;
+    }
+
+    /**
+     * Maps a row of a projection query that only selected the given columns.
+     *
+     * @param rs
+     * @param rowNum
+     * @param columns
+     * @return
+     * @throws SQLException
+     */
+    public T mapProjectedRow(ResultSet rs, int rowNum, Set<String> columns) throws SQLException {
+        return mapRow(rs, rowNum);
+    }
+
     protected void mapStdProperties(DatabaseType databaseType, ResultSet rs, T dto) throws SQLException {
+        mapStdProperties(databaseType, rs, dto, null);
+    }
+
+    /**
+     * Maps the selectable columns of the DTO table - limited to the projected columns when projectedColumns is not null.
+     *
+     * @param databaseType
+     * @param rs
+     * @param dto
+     * @param projectedColumns
+     * @throws SQLException
+     */
+    protected void mapStdProperties(DatabaseType databaseType, ResultSet rs, T dto, Set<String> projectedColumns) throws SQLException {
         final String METHODNAME = "mapStdProperties ";
 //        long startTime = System.nanoTime();
         if (dtoTable == null) {
@@ -251,7 +367,7 @@ public abstract class BaseRowMapper<T extends BaseDTO> implements RowMapper<T> {
             Column[] columns = dtoProperty.getColumns();
             for (Column column : columns) {
 //                if (column.insertable() || column.updateable()) {
-                if (column.selectable()) {
+                if (column.selectable() && (projectedColumns == null || projectedColumns.contains(column.name()))) {
                     try {
                         String columnName = column.name();
 //                        logger.debug(METHODNAME, "columnName=", columnName);
@@ -26,6 +26,7 @@
  */
 package org.cdsframework.callback;
 
+import java.util.List;
 import org.cdsframework.base.BaseDTO;
 import org.cdsframework.dto.PropertyBagDTO;
 import org.cdsframework.dto.SessionDTO;
@@ -48,4 +49,44 @@ public abstract class ParentSetterOperation {
 
     public abstract int setChildrenOnParent(BaseDTO baseDTO, Class queryClass, Class childBOQueryClass, boolean rollbackOnNotFound, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
             throws NotFoundException, MtsException;
+
+    /**
+     * Whether the operation can read the children apart from setting them on the parent (see findChildren and
+     * setChildrenOnParent(BaseDTO, List)). Operations registered by extenders only implement the combined call.
+     *
+     * @return
+     */
+    public boolean isPrefetchSupported() {
+        return false;
+    }
+
+    /**
+     * Query half of setChildrenOnParent - supported when isPrefetchSupported returns true.
+     *
+     * @param baseDTO
+     * @param queryClass
+     * @param childBOQueryClass
+     * @param rollbackOnNotFound
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @return
+     * @throws NotFoundException
+     * @throws MtsException
+     */
+    public List<? extends BaseDTO> findChildren(BaseDTO baseDTO, Class queryClass, Class childBOQueryClass, boolean rollbackOnNotFound, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws NotFoundException, MtsException {
+        throw new MtsException(logger.error("findChildren is not supported by ", getClass().getCanonicalName()));
+    }
+
+    /**
+     * Assembly half of setChildrenOnParent - supported when isPrefetchSupported returns true.
+     *
+     * @param baseDTO
+     * @param childDTOs
+     * @return
+     * @throws MtsException
+     */
+    public int setChildrenOnParent(BaseDTO baseDTO, List<? extends BaseDTO> childDTOs) throws MtsException {
+        throw new MtsException(logger.error("setChildrenOnParent is not supported by ", getClass().getCanonicalName()));
+    }
 }
@@ -26,6 +26,7 @@
  */
 package org.cdsframework.callback;
 
+import org.cdsframework.base.BaseDAO;
 import org.cdsframework.base.BaseDTO;
 import org.cdsframework.dto.PropertyBagDTO;
 import org.cdsframework.dto.SessionDTO;
@@ -41,30 +42,50 @@ import org.cdsframework.exceptions.JdbcConnectionException;
 import org.cdsframework.exceptions.UncaughtSQLException;
 import org.cdsframework.util.LogUtils;
 import org.cdsframework.util.StringUtils;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.cdsframework.annotation.Table;
 import org.cdsframework.enumeration.DatabaseType;
 import org.cdsframework.enumeration.LogLevel;
 import org.cdsframework.util.DTOUtils;
+import org.cdsframework.util.EJBUtils;
+import org.cdsframework.util.JdbcTemplateUtils;
 import org.cdsframework.util.ObjectUtils;
+import org.cdsframework.util.ProjectionUtils;
+import org.cdsframework.util.RowCountCache;
+import org.cdsframework.util.TraceUtils;
 import org.cdsframework.util.support.CoreConstants;
 import org.cdsframework.util.table.QueryOperation;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.jdbc.CannotGetJdbcConnectionException;
 import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 
 public abstract class QueryCallback<T extends BaseDTO> {
 
     private static final LogUtils logger = LogUtils.getLogger(QueryCallback.class);
+    // holds the DTO whose generated column values were applied by the last add or update
+    public static final String GENERATED_VALUES_DTO = "generatedValuesDTO";
+    private static final String LAZY_TOTAL_ROWS_COLUMN = "lazy_total_rows";
     protected Class queryClass;
     private String tableName;
     private String tableAlias = "";
@@ -72,12 +93,24 @@ public abstract class QueryCallback<T extends BaseDTO> {
     private int rowLimit = 0;
     private boolean debugDML = false;
     private DatabaseType databaseType;
+    private String databaseId;
     //necessary b/c this sometimes receives a QueryOperation on the callback
     QueryOperation queryOperation = null;
     private Map<String, String> sortFieldOrderByMap = new HashMap<String, String>();
     private boolean dontIncludeRowIdInOrderBy = false;
+    private boolean lazyRowCountInline = false;
+    private int lazyRowCountSeconds = 0;
+    private int fetchSize = 0;
+    private int queryTimeout = 0;
+    private int maxRows = 0;
+    // source template (the primary or a replica) -> its copy tuned for this query class
+    private final Map<NamedParameterJdbcTemplate, NamedParameterJdbcTemplate> tunedJdbcTemplates = new ConcurrentHashMap<NamedParameterJdbcTemplate, NamedParameterJdbcTemplate>();
+    private String[] generatedColumns = new String[0];
     private final static Pattern orderByPattern = Pattern.compile("(?:)?\\S*order by\\S*(?:\\s\\S+)?", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
     private final static Pattern rowIdPattern = Pattern.compile("\\browid\\b", Pattern.CASE_INSENSITIVE);
+    private final static Pattern selectPattern = Pattern.compile("^\\s*select\\s+", Pattern.CASE_INSENSITIVE);
+    private final static Pattern setOperationPattern = Pattern.compile("^\\s*select\\s+distinct\\b|\\b(?:union|intersect|except|minus)\\b", Pattern.CASE_INSENSITIVE);
+    private final static Pattern pagingPattern = Pattern.compile("\\b(?:limit|offset|fetch|rownum)\\b", Pattern.CASE_INSENSITIVE);
 
     boolean callbackNamedParametersOverridden = true;
 
@@ -133,12 +166,14 @@ public abstract class QueryCallback<T extends BaseDTO> {
         this.debugDML = debugDML;
     }
 
-    private String getQueryDMLMain(QueryType queryType, BaseDTO baseDTO, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO) {
+    private String getQueryDMLMain(QueryType queryType, String query, BaseDTO baseDTO, PropertyBagDTO propertyBagDTO) {
+        return getQueryDMLMain(queryType, query, baseDTO, propertyBagDTO, false);
+    }
+
+    private String getQueryDMLMain(QueryType queryType, String query, BaseDTO baseDTO, PropertyBagDTO propertyBagDTO, boolean inlineRowCount) {
         final String METHODNAME = "getQueryDMLMain ";
-        logger.logBegin(METHODNAME);
-        String query;
+        final long traceStart = TraceUtils.start(baseDTO);
         try {
-            query = getQueryDML(baseDTO, sessionDTO, propertyBagDTO);
             boolean lazy = DTOUtils.isQueryLazy(baseDTO);
             Boolean skipLimit = propertyBagDTO.get("skipLimit", false);
             Integer adHocQueryLimit = propertyBagDTO.get("adHocQueryLimit", 0);
@@ -148,10 +183,12 @@ public abstract class QueryCallback<T extends BaseDTO> {
 
             if (lazy) {
                 skipLimit = true;
-                Boolean rowCount = ObjectUtils.objectToBoolean(baseDTO.getQueryMap().get(CoreConstants.LAZY_ROWCOUNT));
-                if (rowCount != null && rowCount) {
+                if (isLazyRowCount(baseDTO)) {
                     query = getLazyLoadSQLCount(query);
                 } else {
+                    if (inlineRowCount && queryType == QueryType.QUERY_LIST && isInlineRowCountSupported(query)) {
+                        query = selectPattern.matcher(query).replaceFirst("select count(*) over() " + LAZY_TOTAL_ROWS_COLUMN + ", ");
+                    }
                     // Default page size is 10 or the rowLimit, whichever is greater
                     query = getSQL(query, baseDTO.getQueryMap(), Math.max(rowLimit, 10));
                 }
@@ -171,7 +208,7 @@ public abstract class QueryCallback<T extends BaseDTO> {
                 query = wrapLimitOnDML(query, adHocQueryLimit > 0 ? adHocQueryLimit : rowLimit);
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "QueryCallback", METHODNAME, baseDTO);
         }
         logger.debug(METHODNAME, "query=", query);
         return query;
@@ -231,7 +268,9 @@ public abstract class QueryCallback<T extends BaseDTO> {
             if (pageSize > 0) {
                 if (queryMap.get(CoreConstants.LAZY_PAGE_SIZE) != null) {
                     pageSize = ObjectUtils.objectToInteger(queryMap.get(CoreConstants.LAZY_PAGE_SIZE));
-                    logger.debug(METHODNAME, "queryDTO.getQueryMap().get('" + CoreConstants.LAZY_PAGE_SIZE + "'): ", pageSize);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug(METHODNAME, "queryDTO.getQueryMap().get('" + CoreConstants.LAZY_PAGE_SIZE + "'): ", pageSize);
+                    }
                 }
                 int rowOffset = 0;
                 if (queryMap.get(CoreConstants.LAZY_ROW_OFFSET) != null) {
@@ -262,13 +301,88 @@ public abstract class QueryCallback<T extends BaseDTO> {
         final String METHODNAME = "getLazyLoadSQLCount ";
         // must contain From at position 0
         if (!StringUtils.isEmpty(query)) {
-            query = "SELECT count(*) from ( " + query + " ) foo";
+            query = "SELECT count(*) from ( " + stripOrderBy(query) + " ) foo";
         } else {
             throw new IllegalArgumentException(METHODNAME + "query can not be null.");
         }
         return query;
     }
 
+    /**
+     * Removes a trailing top level order by from a query - it does not change a count and only costs a sort.
+     *
+     * @param query
+     * @return
+     */
+    protected static String stripOrderBy(String query) {
+        String result = query;
+        String lowerQuery = query.toLowerCase();
+        int depth = 0;
+        boolean quoted = false;
+        int orderByIndex = -1;
+        for (int i = 0; i < lowerQuery.length(); i++) {
+            char c = lowerQuery.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted) {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                    if (depth < 0) {
+                        return result;
+                    }
+                } else if (depth == 0 && lowerQuery.startsWith("order", i)
+                        && (i == 0 || !Character.isLetterOrDigit(lowerQuery.charAt(i - 1)))
+                        && lowerQuery.substring(i + 5).matches("(?s)\\s+by\\b.*")) {
+                    orderByIndex = i;
+                }
+            }
+        }
+        if (orderByIndex > 0 && depth == 0 && !pagingPattern.matcher(lowerQuery.substring(orderByIndex)).find()) {
+            result = query.substring(0, orderByIndex);
+        }
+        return result;
+    }
+
+    /**
+     * Whether the lazy page query can carry the total row count as a count(*) over() window column. The window keeps the database
+     * from stopping at the end of the page, so the caller only asks for it when the count is cached. Not attempted for databases
+     * without window aggregates (DERBY, MYSQL before 8) or for queries where the window would not count the final rows.
+     *
+     * @param query
+     * @return
+     */
+    private boolean isInlineRowCountSupported(String query) {
+        return lazyRowCountInline
+                && (databaseType == DatabaseType.ORACLE || databaseType == DatabaseType.POSTGRESQL || databaseType == DatabaseType.SQLSERVER)
+                && query != null
+                && selectPattern.matcher(query).find()
+                // oracle does not accept an unqualified * after another select list item
+                && !(databaseType == DatabaseType.ORACLE && query.trim().substring(6).trim().startsWith("*"))
+                && !setOperationPattern.matcher(query).find();
+    }
+
+    /**
+     * Returns the columns of the projection requested by the query DTO when the row mapper supports it, otherwise null.
+     *
+     * @param baseDTO
+     * @param rowMapper
+     * @return
+     */
+    private Set<String> getProjectedColumns(BaseDTO baseDTO, BaseRowMapper<T> rowMapper) {
+        Set<String> properties = ProjectionUtils.getProjectionProperties(baseDTO);
+        if (properties == null || rowMapper == null) {
+            return null;
+        }
+        return rowMapper.getProjectedColumns(properties);
+    }
+
+    private static boolean isLazyRowCount(BaseDTO baseDTO) {
+        Boolean rowCount = ObjectUtils.objectToBoolean(baseDTO.getQueryMap().get(CoreConstants.LAZY_ROWCOUNT));
+        return rowCount != null && rowCount;
+    }
+
     /**
      * Get the query named parameters. They can either be locally defined via an
      * override of getCallbackNamedParameters or an override of the row mapper
@@ -344,7 +458,7 @@ public abstract class QueryCallback<T extends BaseDTO> {
             Class queryClass,
             SessionDTO sessionDTO,
             Class requiredType,
-            BaseRowMapper<T> rowMapper,
+            final BaseRowMapper<T> rowMapper,
             PropertyBagDTO propertyBagDTO)
             throws NotFoundException, MtsException, ConstraintViolationException {
         final String METHODNAME = "execute ";
@@ -358,17 +472,62 @@ public abstract class QueryCallback<T extends BaseDTO> {
         String dml = null;
         MapSqlParameterSource namedParameters = null;
         try {
-            dml = getQueryDMLMain(queryType, baseDTO, sessionDTO, propertyBagDTO);
+            jdbcTemplate = getTunedJdbcTemplate(jdbcTemplate);
+            String query = getQueryDML(baseDTO, sessionDTO, propertyBagDTO);
+            RowMapper<T> resultMapper = rowMapper;
+            if (queryType == QueryType.QUERY || queryType == QueryType.QUERY_LIST) {
+                final Set<String> projectedColumns = getProjectedColumns(baseDTO, rowMapper);
+                String projectedQuery = projectedColumns != null ? rowMapper.getProjectedDML(query, projectedColumns) : null;
+                if (projectedQuery != null) {
+                    logger.debug(METHODNAME, "projected columns: ", projectedColumns);
+                    query = projectedQuery;
+                    resultMapper = new RowMapper<T>() {
+                        @Override
+                        public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+                            return rowMapper.mapProjectedRow(rs, rowNum, projectedColumns);
+                        }
+                    };
+                } else if (ProjectionUtils.getProjectionProperties(baseDTO) != null) {
+                    logger.debug(METHODNAME, "projection not supported for ", queryClass, " - selecting all columns");
+                }
+            }
+            final RowMapper<T> queryRowMapper = resultMapper;
+            // counts are only reused outside of a transaction so that a cached count never reflects uncommitted writes
+            boolean rowCountCached = lazyRowCountSeconds > 0 && DTOUtils.isQueryLazy(baseDTO) && !EJBUtils.isTransactionActive();
+            // the page query only carries the total row count when the count query can be answered from it
+            dml = getQueryDMLMain(queryType, query, baseDTO, propertyBagDTO, rowCountCached);
             namedParameters = getNamedParametersMain(baseDTO, queryClass, sessionDTO, rowMapper, propertyBagDTO);
+            BaseDAO.addPrefixRangeParameters(dml, namedParameters);
             if (logger.isDebugEnabled() || debugDML) {
                 logQuery(LogLevel.INFO, queryType, requiredType, rowMapper, baseDTO, queryClass, dml, namedParameters);
             }
+            String rowCountKey = null;
+            if (rowCountCached) {
+                rowCountKey = RowCountCache.getKey(databaseId, getTableName(), queryClass, getLazyLoadSQLCount(query), namedParameters);
+            }
             // primary key or generic query - single result returned
             if (queryType == QueryType.PRIMARY_KEY || queryType == QueryType.QUERY) {
-                result = jdbcTemplate.queryForObject(dml, namedParameters, rowMapper);
+                result = jdbcTemplate.queryForObject(dml, namedParameters, queryRowMapper);
                 // generic query - array returned
             } else if (queryType == QueryType.QUERY_LIST) {
-                result = jdbcTemplate.query(dml, namedParameters, rowMapper);
+                final long[] totalRows = {-1};
+                if (dml.contains(LAZY_TOTAL_ROWS_COLUMN)) {
+                    result = jdbcTemplate.query(dml, namedParameters, new RowMapper<T>() {
+                        @Override
+                        public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+                            if (rowNum == 0) {
+                                totalRows[0] = rs.getLong(LAZY_TOTAL_ROWS_COLUMN);
+                            }
+                            return queryRowMapper.mapRow(rs, rowNum);
+                        }
+                    });
+                } else {
+                    result = jdbcTemplate.query(dml, namedParameters, queryRowMapper);
+                }
+                if (totalRows[0] >= 0) {
+                    logger.debug(METHODNAME, "lazy total rows: ", totalRows[0]);
+                    RowCountCache.put(rowCountKey, totalRows[0], lazyRowCountSeconds);
+                }
                 logger.debug("isRollbackOnNotFound state: ", isRollbackOnNotFound());
                 if (isRollbackOnNotFound() && ((List) result).isEmpty()) {
                     throw new EmptyResultDataAccessException("result should be greater than zero", 0);
@@ -389,9 +548,36 @@ public abstract class QueryCallback<T extends BaseDTO> {
 //                logger.debug("Hash size: ", hash.size() + "");
                 // generic query - single result string returned
             } else if (queryType == QueryType.OBJECT) {
-                result = jdbcTemplate.queryForObject(dml, namedParameters, requiredType);
+                boolean countQuery = rowCountKey != null && isLazyRowCount(baseDTO) && (requiredType == Integer.class || requiredType == Long.class);
+                Long rowCount = countQuery ? RowCountCache.get(rowCountKey) : null;
+                if (rowCount != null) {
+                    result = requiredType == Long.class ? rowCount : (Object) rowCount.intValue();
+                } else {
+                    result = jdbcTemplate.queryForObject(dml, namedParameters, requiredType);
+                    if (countQuery && result instanceof Number) {
+                        RowCountCache.put(rowCountKey, ((Number) result).longValue(), lazyRowCountSeconds);
+                    }
+                }
             } else if (queryType == QueryType.OBJECT_LIST) {
                 result = jdbcTemplate.queryForList(dml, namedParameters, requiredType);
+            } else if ((queryType == QueryType.ADD || queryType == QueryType.UPDATE) && generatedColumns.length > 0) {
+                // capture the generated/defaulted column values on the write itself
+                // the SQL Server driver rejects more than one generated key column - only the first (the identity) is requested
+                // there, which leaves the other columns to the re-read
+                String[] requestedColumns = generatedColumns;
+                if (databaseType == DatabaseType.SQLSERVER && generatedColumns.length > 1) {
+                    requestedColumns = new String[]{generatedColumns[0]};
+                }
+                KeyHolder keyHolder = new GeneratedKeyHolder();
+                result = jdbcTemplate.update(dml, namedParameters, keyHolder, requestedColumns);
+                List<Map<String, Object>> keyList = keyHolder.getKeyList();
+                propertyBagDTO.remove(GENERATED_VALUES_DTO);
+                if (keyList.size() == 1 && rowMapper != null && rowMapper.mapGeneratedValues(databaseType, keyList.get(0), requestedColumns, (T) baseDTO)
+                        && requestedColumns.length == generatedColumns.length) {
+                    propertyBagDTO.put(GENERATED_VALUES_DTO, baseDTO);
+                } else {
+                    logger.debug(METHODNAME, "generated values not returned for ", queryClass, ": ", keyList);
+                }
             } else if (queryType == QueryType.ADD || queryType == QueryType.UPDATE || queryType == QueryType.DELETE) {
                 result = jdbcTemplate.update(dml, namedParameters);
             } else {
@@ -477,6 +663,85 @@ public abstract class QueryCallback<T extends BaseDTO> {
         return result;
     }
 
+    /**
+     * Executes an ADD, UPDATE or DELETE for a list of DTOs as JDBC batches - one batch per distinct statement. Generated column
+     * values are not returned, so callers use execute per DTO when generated columns are set.
+     *
+     * @param jdbcTemplate
+     * @param queryType
+     * @param baseDTOs
+     * @param queryClass
+     * @param sessionDTO
+     * @param rowMapper
+     * @param propertyBagDTO
+     * @return the update count of each DTO in list order
+     * @throws MtsException
+     * @throws ConstraintViolationException
+     */
+    final public int[] executeBatch(
+            NamedParameterJdbcTemplate jdbcTemplate,
+            QueryType queryType,
+            List<? extends BaseDTO> baseDTOs,
+            Class queryClass,
+            SessionDTO sessionDTO,
+            BaseRowMapper<T> rowMapper,
+            PropertyBagDTO propertyBagDTO)
+            throws MtsException, ConstraintViolationException {
+        final String METHODNAME = "executeBatch ";
+        if (queryType != QueryType.ADD && queryType != QueryType.UPDATE && queryType != QueryType.DELETE) {
+            throw new MtsException(logger.error("Query type not implemented for a batch: ", queryType));
+        }
+        int[] result = new int[baseDTOs.size()];
+        String dml = null;
+        try {
+            jdbcTemplate = getTunedJdbcTemplate(jdbcTemplate);
+            // statement -> positions of the DTOs bound to it
+            Map<String, List<Integer>> batches = new LinkedHashMap<String, List<Integer>>();
+            List<MapSqlParameterSource> parameterSources = new ArrayList<MapSqlParameterSource>();
+            for (int i = 0; i < baseDTOs.size(); i++) {
+                BaseDTO baseDTO = baseDTOs.get(i);
+                String statement = getQueryDMLMain(queryType, getQueryDML(baseDTO, sessionDTO, propertyBagDTO), baseDTO, propertyBagDTO);
+                List<Integer> positions = batches.get(statement);
+                if (positions == null) {
+                    positions = new ArrayList<Integer>();
+                    batches.put(statement, positions);
+                }
+                positions.add(i);
+                parameterSources.add(getNamedParametersMain(baseDTO, queryClass, sessionDTO, rowMapper, propertyBagDTO));
+            }
+            for (Map.Entry<String, List<Integer>> batch : batches.entrySet()) {
+                dml = batch.getKey();
+                List<Integer> positions = batch.getValue();
+                MapSqlParameterSource[] batchArgs = new MapSqlParameterSource[positions.size()];
+                for (int i = 0; i < positions.size(); i++) {
+                    batchArgs[i] = parameterSources.get(positions.get(i));
+                }
+                if (logger.isDebugEnabled() || debugDML) {
+                    logger.debug(METHODNAME, queryType, " ", queryClass, " batch of ", batchArgs.length, ": ", dml);
+                }
+                int[] counts = jdbcTemplate.batchUpdate(dml, batchArgs);
+                for (int i = 0; i < positions.size(); i++) {
+                    // A driver that does not report the count of a batched statement ran it successfully
+                    result[positions.get(i)] = i < counts.length ? (counts[i] == Statement.SUCCESS_NO_INFO ? 1 : counts[i]) : 0;
+                }
+            }
+        } catch (DataIntegrityViolationException e) {
+            IntegrityViolationException integrityViolationException = new IntegrityViolationException(e.getMessage());
+            logger.error(METHODNAME, e.getClass(), " - ", dml);
+            throw new ConstraintViolationException(DTOUtils.getDtoTable(baseDTOs.get(0).getClass()).databaseId(),
+                    getTableName(),
+                    logger.error("DataIntegrityViolationException caught(usually on an insert): ",
+                            integrityViolationException.getClass().getSimpleName(),
+                            " - ",
+                            integrityViolationException.getMessage()),
+                    integrityViolationException);
+        } catch (DataAccessException e) {
+            logger.error(METHODNAME, e.getClass(), " - ", dml);
+            throw new MtsException(logger.error(METHODNAME, e.getClass().getSimpleName(), " - ", e.getMessage()), e);
+        }
+        return result;
+    }
+
     /**
      * Get the value of rowLimit
      *
@@ -503,6 +768,14 @@ public abstract class QueryCallback<T extends BaseDTO> {
         this.databaseType = databaseType;
     }
 
+    public String getDatabaseId() {
+        return databaseId;
+    }
+
+    public void setDatabaseId(String databaseId) {
+        this.databaseId = databaseId;
+    }
+
     public Map<String, String> getSortFieldOrderByMap() {
         return sortFieldOrderByMap;
     }
@@ -610,6 +883,121 @@ public abstract class QueryCallback<T extends BaseDTO> {
         return result;
     }
 
+    public boolean isLazyRowCountInline() {
+        return lazyRowCountInline;
+    }
+
+    /**
+     * Return the total row count of lazy page queries as a count(*) over() column where the database supports it and the row count
+     * of the query is cached (see setLazyRowCountSeconds), so that the count query of the page is answered from the cache.
+     *
+     * @param lazyRowCountInline
+     */
+    public void setLazyRowCountInline(boolean lazyRowCountInline) {
+        this.lazyRowCountInline = lazyRowCountInline;
+    }
+
+    public int getLazyRowCountSeconds() {
+        return lazyRowCountSeconds;
+    }
+
+    /**
+     * Seconds a lazy query row count is reused for - 0 disables the reuse.
+     *
+     * @param lazyRowCountSeconds
+     */
+    public void setLazyRowCountSeconds(int lazyRowCountSeconds) {
+        this.lazyRowCountSeconds = lazyRowCountSeconds;
+    }
+
+    /**
+     * Returns a template applying the fetch size, query timeout and max rows of this query class to its statements - the
+     * supplied template when none are set. The tuned copy keeps all the other settings of the supplied template and is made once
+     * per supplied template.
+     *
+     * @param jdbcTemplate
+     * @return
+     */
+    private NamedParameterJdbcTemplate getTunedJdbcTemplate(NamedParameterJdbcTemplate jdbcTemplate) {
+        final String METHODNAME = "getTunedJdbcTemplate ";
+        if (fetchSize <= 0 && queryTimeout <= 0 && maxRows <= 0) {
+            return jdbcTemplate;
+        }
+        NamedParameterJdbcTemplate tunedJdbcTemplate = tunedJdbcTemplates.get(jdbcTemplate);
+        if (tunedJdbcTemplate == null) {
+            JdbcOperations jdbcOperations = jdbcTemplate.getJdbcOperations();
+            if (!(jdbcOperations instanceof JdbcTemplate)) {
+                logger.warn(METHODNAME, "unable to tune ", jdbcOperations.getClass(), " for ", queryClass);
+                return jdbcTemplate;
+            }
+            tunedJdbcTemplate = JdbcTemplateUtils.copyOf(jdbcTemplate, ((JdbcTemplate) jdbcOperations).getDataSource());
+            JdbcTemplate tuned = (JdbcTemplate) tunedJdbcTemplate.getJdbcOperations();
+            tuned.setFetchSize(fetchSize);
+            tuned.setQueryTimeout(queryTimeout);
+            tuned.setMaxRows(maxRows);
+            tunedJdbcTemplates.put(jdbcTemplate, tunedJdbcTemplate);
+            logger.debug(METHODNAME, queryClass, " fetchSize=", fetchSize, " queryTimeout=", queryTimeout, " maxRows=", maxRows);
+        }
+        return tunedJdbcTemplate;
+    }
+
+    public String[] getGeneratedColumns() {
+        return generatedColumns;
+    }
+
+    /**
+     * Set the columns whose database generated or defaulted values are returned by adds and updates of this query class
+     * (RETURNING or generated keys depending on the driver) and applied to the DTO. On SQL Server only the first column is
+     * requested since the driver returns a single generated key - list the identity column first.
+     *
+     * @param generatedColumns
+     */
+    public void setGeneratedColumns(String[] generatedColumns) {
+        this.generatedColumns = generatedColumns != null ? generatedColumns : new String[0];
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Set the JDBC fetch size of the statements of this query class - 0 uses the driver default.
+     *
+     * @param fetchSize
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+        this.tunedJdbcTemplates.clear();
+    }
+
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    /**
+     * Set the statement timeout in seconds of this query class - 0 uses the driver default.
+     *
+     * @param queryTimeout
+     */
+    public void setQueryTimeout(int queryTimeout) {
+        this.queryTimeout = queryTimeout;
+        this.tunedJdbcTemplates.clear();
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * Set the maximum number of rows the statements of this query class return - 0 for no limit.
+     *
+     * @param maxRows
+     */
+    public void setMaxRows(int maxRows) {
+        this.maxRows = maxRows;
+        this.tunedJdbcTemplates.clear();
+    }
+
     public boolean isDontIncludeRowIdInOrderBy() {
         return dontIncludeRowIdInOrderBy;
     }
@@ -26,7 +26,6 @@
  */ 
 package org.cdsframework.ejb.dao;
 
-import java.util.Date;
 import javax.ejb.Stateless;
 import org.cdsframework.base.BaseDAO;
 import org.cdsframework.base.BaseDTO;
@@ -37,7 +36,6 @@ import org.cdsframework.dto.SessionDTO;
 import org.cdsframework.enumeration.Operator;
 import org.cdsframework.exceptions.MtsException;
 import org.cdsframework.group.ByGeneralProperties;
-import org.cdsframework.util.DateUtils;
 import org.cdsframework.util.ObjectUtils;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 
@@ -100,26 +98,7 @@ public class AppLogDAO extends BaseDAO<AppLogDTO> {
                     setDetectWildcardPredicateValue(baseDTO, " lower(message) = :message ", "message");
                     setDetectWildcardPredicateValue(baseDTO, " lower(object_name) = :object_name ", "objectName");
                     setDetectWildcardPredicateValue(baseDTO, " lower(create_id) = :create_id ", "createId");
-                    Object oStartCreateDatetime = baseDTO.getQueryMap().get("startCreateDatetime");
-                    Object oStopCreateDatetime = baseDTO.getQueryMap().get("stopCreateDatetime");
-
-                    if (oStartCreateDatetime != null) {
-                        baseDTO.getQueryMap().put("startCreateDatetime", DateUtils.getFormattedDate((Date) oStartCreateDatetime, DateUtils.DATEINMASK));
-                        String operator = "=";
-                        if (oStopCreateDatetime != null) {
-                            operator = ">=";
-                        }
-                        setNonWildcardPredicateValue(baseDTO, " date(create_datetime) " + operator + " date(:start_create_datetime) ", "startCreateDatetime");
-
-                    }
-                    if (oStopCreateDatetime != null) {
-                        baseDTO.getQueryMap().put("stopCreateDatetime", DateUtils.getFormattedDate((Date) oStopCreateDatetime, DateUtils.DATEINMASK));
-                        String operator = "=";
-                        if (oStartCreateDatetime != null) {
-                            operator = "<=";
-                        }
-                        setNonWildcardPredicateValue(baseDTO, " date(create_datetime) " + operator + " date(:stop_create_datetime) ", "stopCreateDatetime");
-                    }
+                    setDateRangePredicateValue(baseDTO, "create_datetime", "create_datetime", "startCreateDatetime", "stopCreateDatetime");
 
                     queryDML = getSelectDML() + getAndClearPredicateMap("where", "", Operator.AND);
                 } finally {
@@ -140,8 +119,7 @@ public class AppLogDAO extends BaseDAO<AppLogDTO> {
                 setLowerQueryMapValue(baseDTO, "stack_trace", "stackTrace", namedParameters);
                 setLowerQueryMapValue(baseDTO, "object_name", "objectName", namedParameters);
                 setLowerQueryMapValue(baseDTO, "create_id", "createId", namedParameters);
-                setExactQueryMapValue(baseDTO, "start_create_datetime", "startCreateDatetime", namedParameters);
-                setExactQueryMapValue(baseDTO, "stop_create_datetime", "stopCreateDatetime", namedParameters);
+                setDateRangeQueryMapValues(baseDTO, "create_datetime", "startCreateDatetime", "stopCreateDatetime", namedParameters);
             }
 
         }, false);
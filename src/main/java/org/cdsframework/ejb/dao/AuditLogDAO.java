@@ -109,25 +109,7 @@ public class AuditLogDAO extends BaseDAO<AuditLogDTO> {
                 setDetectWildcardPredicateValue(baseDTO, " lower(" + getTableAlias() + "last_mod_id) = :last_mod_id ", "lastModId");
                 setDetectWildcardPredicateValue(baseDTO, " lower(a.create_id) = :create_id ", "createId");
 
-                Object oStartCreateDatetime = baseDTO.getQueryMap().get("startCreateDatetime");
-                Object oStopCreateDatetime = baseDTO.getQueryMap().get("stopCreateDatetime");
-
-                if (oStartCreateDatetime != null) {
-                    baseDTO.getQueryMap().put("startCreateDatetime", DateUtils.getFormattedDate((Date) oStartCreateDatetime, DateUtils.DATEINMASK));
-                    String operator = "=";
-                    if (oStopCreateDatetime != null) {
-                        operator = ">=";
-                    }
-                    setNonWildcardPredicateValue(baseDTO, " date(a.create_datetime) " + operator + " date(:start_create_datetime) ", "startCreateDatetime");
-                }
-                if (oStopCreateDatetime != null) {
-                    baseDTO.getQueryMap().put("stopCreateDatetime", DateUtils.getFormattedDate((Date) oStopCreateDatetime, DateUtils.DATEINMASK));
-                    String operator = "=";
-                    if (oStartCreateDatetime != null) {
-                        operator = "<=";
-                    }
-                    setNonWildcardPredicateValue(baseDTO, " date(a.create_datetime) " + operator + " date(:stop_create_datetime) ", "stopCreateDatetime");
-                }
+                setDateRangePredicateValue(baseDTO, "a.create_datetime", "create_datetime", "startCreateDatetime", "stopCreateDatetime");
 
                 queryDML = getSelectDML().trim() + ", audit_transaction a WHERE " + getTableAlias() + "transaction_id = a.transaction_id " + getAndClearPredicateMap("AND", "", Operator.AND);
                 logger.debug(METHODNAME, "queryDML=", queryDML);
@@ -148,8 +130,7 @@ public class AuditLogDAO extends BaseDAO<AuditLogDTO> {
                 setLowerQueryMapValue(baseDTO, "new_value", "newValue", namedParameters);
                 setLowerQueryMapValue(baseDTO, "last_mod_id", "lastModId", namedParameters);
                 setLowerQueryMapValue(baseDTO, "create_id", "createId", namedParameters);
-                setExactQueryMapValue(baseDTO, "start_create_datetime", "startCreateDatetime", namedParameters);
-                setExactQueryMapValue(baseDTO, "stop_create_datetime", "stopCreateDatetime", namedParameters);
+                setDateRangeQueryMapValues(baseDTO, "create_datetime", "startCreateDatetime", "stopCreateDatetime", namedParameters);
             }
 
         }, false);
@@ -234,121 +215,158 @@ public class AuditLogDAO extends BaseDAO<AuditLogDTO> {
         final String METHODNAME = "auditLog ";
         logger.debug(METHODNAME, "dtoClass=", getDtoClass(), " operation=", operation);
         long startTime = System.nanoTime();
+        try {
+            List<AuditLogDTO> auditLogDTOs = getAuditLogDTOs(baseDTO, operation, sessionDTO, propertyBagDTO);
+
+            // Add the Audit Logs
+            logger.debug(METHODNAME, "auditLogDTOs.size()=", auditLogDTOs.size());
+            for (AuditLogDTO auditLogDTO : auditLogDTOs) {
+                add(auditLogDTO, Add.class, AuthenticationUtils.getInternalSessionDTO(), propertyBagDTO);
+            }
+        } finally {
+            logger.logDuration(LogLevel.DEBUG, METHODNAME, startTime);
+        }
+
+    }
+
+    /**
+     * Audit a list of DTOs of one operation - the audit log rows of all the DTOs are added in batches.
+     *
+     * @param baseDTOs
+     * @param operation
+     * @param queryClass
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @throws ConstraintViolationException
+     * @throws MtsException
+     * @throws NotFoundException
+     */
+    public void auditLogAll(List<? extends BaseDTO> baseDTOs, Operation operation, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ConstraintViolationException, MtsException, NotFoundException {
+        final String METHODNAME = "auditLogAll ";
+        logger.debug(METHODNAME, "dtoClass=", getDtoClass(), " operation=", operation, " baseDTOs.size()=", baseDTOs.size());
+        long startTime = System.nanoTime();
         try {
             List<AuditLogDTO> auditLogDTOs = new ArrayList<AuditLogDTO>();
+            for (BaseDTO baseDTO : baseDTOs) {
+                auditLogDTOs.addAll(getAuditLogDTOs(baseDTO, operation, sessionDTO, propertyBagDTO));
+            }
+            logger.debug(METHODNAME, "auditLogDTOs.size()=", auditLogDTOs.size());
+            if (!auditLogDTOs.isEmpty()) {
+                addAll(auditLogDTOs, Add.class, AuthenticationUtils.getInternalSessionDTO(), propertyBagDTO);
+            }
+        } finally {
+            logger.logDuration(LogLevel.DEBUG, METHODNAME, startTime);
+        }
+    }
 
-            // Get an Audit Transaction Id to start the grouping, as many DTO's may be added or updated or deleted
-            logger.debug(METHODNAME, "propertyBagDTO.getAuditTransactionId()=", propertyBagDTO.getAuditTransactionId());
-            logger.debug(METHODNAME, "baseDTO.getClass().getCanonicalName()=", baseDTO.getClass().getCanonicalName());
-            Map<String, CorePropertyChangeEvent> propertyChangeEventMap = baseDTO.getPropertyChangeEventMap();
-
-            // NOT deleting
-            if (operation == Operation.UPDATE) {
-                // lastModDatetime and lastModId
-                for (Map.Entry<String, CorePropertyChangeEvent> propertyChangeEventEntry : propertyChangeEventMap.entrySet()) {
-                    logger.debug(METHODNAME, "propertyChangeEventEntry.getKey()=", propertyChangeEventEntry.getKey());
-                    String propertyName = propertyChangeEventEntry.getValue().getPropertyName();
-                    if (propertyName.equalsIgnoreCase("lastModDatetime") || propertyName.equalsIgnoreCase("lastModId") || propertyName.equalsIgnoreCase("auditId")) {
-                        // Skip it
-                        continue;
-                    }
-                    Object oOldValue = propertyChangeEventEntry.getValue().getOldValue();
-                    Object oNewValue = propertyChangeEventEntry.getValue().getNewValue();
-                    boolean valueChanged = false;
-                    logger.debug(METHODNAME, "valueChanged=", valueChanged);
-
-                    // Instance of BaseDTO
-                    if ((oOldValue != null && oOldValue instanceof BaseDTO)
-                            || (oNewValue != null && oNewValue instanceof BaseDTO)) {
-                        Object oOldValuePrimaryKey = null;
-                        Object oNewValuePrimaryKey = null;
-                        if (oOldValue != null) {
-                            oOldValuePrimaryKey = ((BaseDTO) oOldValue).getPrimaryKey();
-                        }
-                        if (oNewValue != null) {
-                            oNewValuePrimaryKey = ((BaseDTO) oNewValue).getPrimaryKey();
-                        }
-                        logger.debug(METHODNAME, "oOldValuePrimaryKey=", oOldValuePrimaryKey);
-                        logger.debug(METHODNAME, "oNewValuePrimaryKey=", oNewValuePrimaryKey);
+    private List<AuditLogDTO> getAuditLogDTOs(BaseDTO baseDTO, Operation operation, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO) throws MtsException {
+        final String METHODNAME = "getAuditLogDTOs ";
+        List<AuditLogDTO> auditLogDTOs = new ArrayList<AuditLogDTO>();
 
-                        if (oOldValuePrimaryKey != null || oNewValuePrimaryKey != null) {
-                            valueChanged = (oOldValuePrimaryKey != null && !oOldValuePrimaryKey.equals(oNewValuePrimaryKey))
-                                    || (oNewValuePrimaryKey != null && !oNewValuePrimaryKey.equals(oOldValuePrimaryKey));
-                        }
-                    } else {
-                        // Instance of java.lang
-                        valueChanged = (oOldValue != null && !oOldValue.equals(oNewValue))
-                                || (oNewValue != null && !oNewValue.equals(oOldValue));
+        // Get an Audit Transaction Id to start the grouping, as many DTO's may be added or updated or deleted
+        logger.debug(METHODNAME, "propertyBagDTO.getAuditTransactionId()=", propertyBagDTO.getAuditTransactionId());
+        logger.debug(METHODNAME, "baseDTO.getClass().getCanonicalName()=", baseDTO.getClass().getCanonicalName());
+        Map<String, CorePropertyChangeEvent> propertyChangeEventMap = baseDTO.getPropertyChangeEventMap();
+
+        // NOT deleting
+        if (operation == Operation.UPDATE) {
+            // lastModDatetime and lastModId
+            for (Map.Entry<String, CorePropertyChangeEvent> propertyChangeEventEntry : propertyChangeEventMap.entrySet()) {
+                logger.debug(METHODNAME, "propertyChangeEventEntry.getKey()=", propertyChangeEventEntry.getKey());
+                String propertyName = propertyChangeEventEntry.getValue().getPropertyName();
+                if (propertyName.equalsIgnoreCase("lastModDatetime") || propertyName.equalsIgnoreCase("lastModId") || propertyName.equalsIgnoreCase("auditId")) {
+                    // Skip it
+                    continue;
+                }
+                Object oOldValue = propertyChangeEventEntry.getValue().getOldValue();
+                Object oNewValue = propertyChangeEventEntry.getValue().getNewValue();
+                boolean valueChanged = false;
+                logger.debug(METHODNAME, "valueChanged=", valueChanged);
+
+                // Instance of BaseDTO
+                if ((oOldValue != null && oOldValue instanceof BaseDTO)
+                        || (oNewValue != null && oNewValue instanceof BaseDTO)) {
+                    Object oOldValuePrimaryKey = null;
+                    Object oNewValuePrimaryKey = null;
+                    if (oOldValue != null) {
+                        oOldValuePrimaryKey = ((BaseDTO) oOldValue).getPrimaryKey();
                     }
+                    if (oNewValue != null) {
+                        oNewValuePrimaryKey = ((BaseDTO) oNewValue).getPrimaryKey();
+                    }
+                    logger.debug(METHODNAME, "oOldValuePrimaryKey=", oOldValuePrimaryKey);
+                    logger.debug(METHODNAME, "oNewValuePrimaryKey=", oNewValuePrimaryKey);
 
-                    if (valueChanged) {
-                        logger.debug(METHODNAME, "valueChanged=", valueChanged, " oOldValue=", oOldValue, " oNewValue=", oNewValue);
-                        auditLogDTOs.addAll(getAuditLogDTOs(baseDTO, propertyName, oOldValue, oNewValue, sessionDTO, propertyBagDTO));
+                    if (oOldValuePrimaryKey != null || oNewValuePrimaryKey != null) {
+                        valueChanged = (oOldValuePrimaryKey != null && !oOldValuePrimaryKey.equals(oNewValuePrimaryKey))
+                                || (oNewValuePrimaryKey != null && !oNewValuePrimaryKey.equals(oOldValuePrimaryKey));
                     }
+                } else {
+                    // Instance of java.lang
+                    valueChanged = (oOldValue != null && !oOldValue.equals(oNewValue))
+                            || (oNewValue != null && !oNewValue.equals(oOldValue));
                 }
-            } // Handle Add/Deletes
-            else {
-                String canonicalName = baseDTO.getClass().getCanonicalName();
-                try {
-                    // Get the PropertyNames that are being tracked
-                    Object[] propertyNames = Class.forName(canonicalName + "$PropertyName").getEnumConstants();
-
-                    // Navigate the PropertyNames
-                    for (Object propertyName : propertyNames) {
-                        try {
-                            Object oOldValue = null;
-                            Object oNewValue = null;
-
-                            //
-                            // Check if the user changed a value before deleting the record
-                            // If the user changed a value before the delete, the property on the DTO will have the new value
-                            // But we want the old value
-                            //
-                            if (operation == Operation.DELETE) {
-                                CorePropertyChangeEvent propertyChangeEvent = propertyChangeEventMap.get(propertyName.toString());
-                                if (propertyChangeEvent != null) {
-                                    oOldValue = propertyChangeEvent.getOldValue();
-                                } else {
-                                    // Get it from the property
-                                    oOldValue = PropertyUtils.getProperty(baseDTO, propertyName.toString());
-                                }
-                            } else if (operation == Operation.ADD) {
-                                // Get it from the property
-                                oNewValue = PropertyUtils.getProperty(baseDTO, propertyName.toString());
-                            }
 
-                            logger.debug(METHODNAME, "propertyName=", propertyName, " oOldValue=", oOldValue, " oNewValue=", oNewValue);
-                            if (oOldValue != oNewValue) {
-                                auditLogDTOs.addAll(getAuditLogDTOs(baseDTO, propertyName.toString(), oOldValue, oNewValue, sessionDTO, propertyBagDTO));
+                if (valueChanged) {
+                    logger.debug(METHODNAME, "valueChanged=", valueChanged, " oOldValue=", oOldValue, " oNewValue=", oNewValue);
+                    auditLogDTOs.addAll(getAuditLogDTOs(baseDTO, propertyName, oOldValue, oNewValue, sessionDTO, propertyBagDTO));
+                }
+            }
+        } // Handle Add/Deletes
+        else {
+            String canonicalName = baseDTO.getClass().getCanonicalName();
+            try {
+                // Get the PropertyNames that are being tracked
+                Object[] propertyNames = Class.forName(canonicalName + "$PropertyName").getEnumConstants();
+
+                // Navigate the PropertyNames
+                for (Object propertyName : propertyNames) {
+                    try {
+                        Object oOldValue = null;
+                        Object oNewValue = null;
+
+                        //
+                        // Check if the user changed a value before deleting the record
+                        // If the user changed a value before the delete, the property on the DTO will have the new value
+                        // But we want the old value
+                        //
+                        if (operation == Operation.DELETE) {
+                            CorePropertyChangeEvent propertyChangeEvent = propertyChangeEventMap.get(propertyName.toString());
+                            if (propertyChangeEvent != null) {
+                                oOldValue = propertyChangeEvent.getOldValue();
+                            } else {
+                                // Get it from the property
+                                oOldValue = PropertyUtils.getProperty(baseDTO, propertyName.toString());
                             }
+                        } else if (operation == Operation.ADD) {
+                            // Get it from the property
+                            oNewValue = PropertyUtils.getProperty(baseDTO, propertyName.toString());
+                        }
 
-                        } catch (IllegalAccessException ex) {
-                            logger.error(METHODNAME, "An IllegalAccessException has occurred; Message: ", ex.getMessage(), ex);
-                            throw new MtsException(ex.getMessage(), ex);
-                        } catch (InvocationTargetException ex) {
-                            logger.error(METHODNAME, "An InvocationTargetException has occurred; Message: ", ex.getMessage(), ex);
-                            throw new MtsException(ex.getMessage(), ex);
-                        } catch (NoSuchMethodException ex) {
-                            logger.error(METHODNAME, "An NoSuchMethodException has occurred; Message: ", ex.getMessage(), ex);
-                            throw new MtsException(ex.getMessage(), ex);
+                        logger.debug(METHODNAME, "propertyName=", propertyName, " oOldValue=", oOldValue, " oNewValue=", oNewValue);
+                        if (oOldValue != oNewValue) {
+                            auditLogDTOs.addAll(getAuditLogDTOs(baseDTO, propertyName.toString(), oOldValue, oNewValue, sessionDTO, propertyBagDTO));
                         }
 
+                    } catch (IllegalAccessException ex) {
+                        logger.error(METHODNAME, "An IllegalAccessException has occurred; Message: ", ex.getMessage(), ex);
+                        throw new MtsException(ex.getMessage(), ex);
+                    } catch (InvocationTargetException ex) {
+                        logger.error(METHODNAME, "An InvocationTargetException has occurred; Message: ", ex.getMessage(), ex);
+                        throw new MtsException(ex.getMessage(), ex);
+                    } catch (NoSuchMethodException ex) {
+                        logger.error(METHODNAME, "An NoSuchMethodException has occurred; Message: ", ex.getMessage(), ex);
+                        throw new MtsException(ex.getMessage(), ex);
                     }
-                } catch (ClassNotFoundException ex) {
-                    logger.error(METHODNAME, "An ClassNotFoundException has occurred; Message: ", ex.getMessage(), ex);
-                    throw new MtsException(ex.getMessage(), ex);
-                }
-            }
 
-            // Add the Audit Logs
-            logger.debug(METHODNAME, "auditLogDTOs.size()=", auditLogDTOs.size());
-            for (AuditLogDTO auditLogDTO : auditLogDTOs) {
-                add(auditLogDTO, Add.class, AuthenticationUtils.getInternalSessionDTO(), propertyBagDTO);
+                }
+            } catch (ClassNotFoundException ex) {
+                logger.error(METHODNAME, "An ClassNotFoundException has occurred; Message: ", ex.getMessage(), ex);
+                throw new MtsException(ex.getMessage(), ex);
             }
-        } finally {
-            logger.logDuration(LogLevel.DEBUG, METHODNAME, startTime);
         }
-
+        return auditLogDTOs;
     }
 
     private List<AuditLogDTO> getAuditLogDTOs(BaseDTO baseDTO, String propertyName, Object oldValue, Object newValue, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO) throws MtsException {
@@ -27,6 +27,7 @@
 package org.cdsframework.ejb.dao;
 
 import java.util.Date;
+import java.util.List;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import org.cdsframework.base.BaseDAO;
@@ -45,7 +46,6 @@ import org.cdsframework.exceptions.MtsException;
 import org.cdsframework.exceptions.NotFoundException;
 import org.cdsframework.group.Add;
 import org.cdsframework.group.ByGeneralProperties;
-import org.cdsframework.util.DateUtils;
 import org.cdsframework.util.ObjectUtils;
 import org.cdsframework.util.support.CoreConstants;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
@@ -81,25 +81,7 @@ public class AuditTransactionDAO extends BaseDAO<AuditTransactionDTO> {
                 setDetectWildcardPredicateValue(baseDTO, " lower(class_name) = :class_name ", "className");
                 setDetectWildcardPredicateValue(baseDTO, " lower(app_name) = :app_name ", "appName");
                 setDetectWildcardPredicateValue(baseDTO, " lower(create_id) = :create_id ", "createId");
-                Object oStartCreateDatetime = baseDTO.getQueryMap().get("startCreateDatetime");
-                Object oStopCreateDatetime = baseDTO.getQueryMap().get("stopCreateDatetime");
-
-                if (oStartCreateDatetime != null) {
-                    baseDTO.getQueryMap().put("startCreateDatetime", DateUtils.getFormattedDate((Date) oStartCreateDatetime, DateUtils.DATEINMASK));
-                    String operator = "=";
-                    if (oStopCreateDatetime != null) {
-                        operator = ">=";
-                    }
-                    setNonWildcardPredicateValue(baseDTO, " cast(create_datetime as date) " + operator + " to_date(:start_create_datetime, '" + DateUtils.DATEINMASK + "') ", "startCreateDatetime");
-                }
-                if (oStopCreateDatetime != null) {
-                    baseDTO.getQueryMap().put("stopCreateDatetime", DateUtils.getFormattedDate((Date) oStopCreateDatetime, DateUtils.DATEINMASK));
-                    String operator = "=";
-                    if (oStartCreateDatetime != null) {
-                        operator = "<=";
-                    }
-                    setNonWildcardPredicateValue(baseDTO, " cast(create_datetime as date) " + operator + " to_date(:stop_create_datetime, '" + DateUtils.DATEINMASK + "') ", "stopCreateDatetime");
-                }
+                setDateRangePredicateValue(baseDTO, "create_datetime", "create_datetime", "startCreateDatetime", "stopCreateDatetime");
 
                 queryDML = getSelectDML() + getAndClearPredicateMap("where", "", Operator.AND);
 
@@ -115,8 +97,7 @@ public class AuditTransactionDAO extends BaseDAO<AuditTransactionDTO> {
                 setLowerQueryMapValue(baseDTO, "app_name", "appName", namedParameters);
                 setLowerQueryMapValue(baseDTO, "class_name", "className", namedParameters);
                 setLowerQueryMapValue(baseDTO, "create_id", "createId", namedParameters);
-                setExactQueryMapValue(baseDTO, "start_create_datetime", "startCreateDatetime", namedParameters);
-                setExactQueryMapValue(baseDTO, "stop_create_datetime", "stopCreateDatetime", namedParameters);
+                setDateRangeQueryMapValues(baseDTO, "create_datetime", "startCreateDatetime", "stopCreateDatetime", namedParameters);
             }
 
         }, false);
@@ -198,43 +179,7 @@ public class AuditTransactionDAO extends BaseDAO<AuditTransactionDTO> {
                 return;
             }
             
-            if (!propertyBagDTO.isAuditTransactionIdExist()) {
-
-                DTOState operationDTOState = baseDTO.getOperationDTOState();
-                String className = baseDTO.getClass().getCanonicalName();
-                String auditId = baseDTO.getAuditId();
-                BaseDTO parentDTO = propertyBagDTO.getParentDTO(PropertyBagDTO.Position.First);
-                logger.debug(METHODNAME, "baseDTO.className=", className, " baseDTO.auditId=", auditId, " baseDTO.operationDTOState=", operationDTOState);
-                if (parentDTO != null) {
-                    className = parentDTO.getClass().getCanonicalName();
-                    auditId = parentDTO.getAuditId();
-                    operationDTOState = parentDTO.getOperationDTOState();
-                    logger.debug(METHODNAME, "parentDTO.className=", className, " parentDTO.auditId=", auditId, " parentDTO.operationDTOState=", operationDTOState);
-                }
-
-                // Under cirtain race conditions the DTO maybe UNSET, in this case do not audit
-                if (operationDTOState != DTOState.UNSET) {
-                    String auditTransactionId = propertyBagDTO.getAuditTransactionId();
-                    AuditTransactionDTO auditTransactionDTO = new AuditTransactionDTO();
-                    auditTransactionDTO.setTransactionId(auditTransactionId);
-                    auditTransactionDTO.setClassName(className);
-                    auditTransactionDTO.setAuditId(auditId);
-                    auditTransactionDTO.setAppName(sessionDTO.getAppDTO().getAppName());
-                    auditTransactionDTO.setCreateId(sessionDTO.getUserDTO().getUsername());
-                    if (operationDTOState == DTOState.NEW || operationDTOState == DTOState.NEWMODIFIED) {
-                        auditTransactionDTO.setTransactionType(AuditTransaction.INSERT);
-                    } else if (operationDTOState == DTOState.UPDATED) {
-                        auditTransactionDTO.setTransactionType(AuditTransaction.UPDATE);
-                    } else if (operationDTOState == DTOState.DELETED) {
-                        auditTransactionDTO.setTransactionType(AuditTransaction.DELETE);
-                    } else if (operationDTOState == DTOState.UNSET) {
-                        logger.error(METHODNAME, "baseDTO.getDTOStates()", baseDTO.getDTOStates(), " className=", className, " auditId=", auditId, " operationDTOState=", operationDTOState);
-                        // Code that follows will get an error since TransactionType is NULL
-                    }
-                    auditTransactionDTO.setCreateDatetime(new Date());
-                    add(auditTransactionDTO, Add.class, sessionDTO, propertyBagDTO);
-                }
-            }
+            auditTransaction(baseDTO, sessionDTO, propertyBagDTO);
             logger.debug(METHODNAME, "propertyBagDTO.getAuditTransactionId()=", propertyBagDTO.getAuditTransactionId());
 
             // Call AuditLog
@@ -243,4 +188,81 @@ public class AuditTransactionDAO extends BaseDAO<AuditTransactionDTO> {
             logger.logDuration(LogLevel.DEBUG, METHODNAME, startTime);
         }
     }
+
+    /**
+     * Audit a list of DTOs of one operation - the audit transaction is written once and the audit log rows of all the DTOs are
+     * added in batches.
+     *
+     * @param baseDTOs
+     * @param operation
+     * @param queryClass
+     * @param sessionDTO
+     * @param propertyBagDTO
+     * @throws ConstraintViolationException
+     * @throws MtsException
+     * @throws NotFoundException
+     */
+    public void auditAll(List<? extends BaseDTO> baseDTOs, Operation operation, Class queryClass, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ConstraintViolationException, MtsException, NotFoundException {
+        final String METHODNAME = "auditAll ";
+        logger.debug(METHODNAME, "dtoClass=", getDtoClass(), " operation=", operation, " baseDTOs.size()=", baseDTOs.size());
+        long startTime = System.nanoTime();
+        try {
+            boolean auditBypass = ObjectUtils.objectToBoolean(propertyBagDTO.get(CoreConstants.AUDIT_BYPASS));
+            if (auditBypass || baseDTOs.isEmpty()) {
+                return;
+            }
+            for (BaseDTO baseDTO : baseDTOs) {
+                if (propertyBagDTO.isAuditTransactionIdExist()) {
+                    break;
+                }
+                auditTransaction(baseDTO, sessionDTO, propertyBagDTO);
+            }
+            auditLogDAO.auditLogAll(baseDTOs, operation, queryClass, sessionDTO, propertyBagDTO);
+        } finally {
+            logger.logDuration(LogLevel.DEBUG, METHODNAME, startTime);
+        }
+    }
+
+    private void auditTransaction(BaseDTO baseDTO, SessionDTO sessionDTO, PropertyBagDTO propertyBagDTO)
+            throws ConstraintViolationException, MtsException, NotFoundException {
+        final String METHODNAME = "auditTransaction ";
+        if (!propertyBagDTO.isAuditTransactionIdExist()) {
+
+            DTOState operationDTOState = baseDTO.getOperationDTOState();
+            String className = baseDTO.getClass().getCanonicalName();
+            String auditId = baseDTO.getAuditId();
+            BaseDTO parentDTO = propertyBagDTO.getParentDTO(PropertyBagDTO.Position.First);
+            logger.debug(METHODNAME, "baseDTO.className=", className, " baseDTO.auditId=", auditId, " baseDTO.operationDTOState=", operationDTOState);
+            if (parentDTO != null) {
+                className = parentDTO.getClass().getCanonicalName();
+                auditId = parentDTO.getAuditId();
+                operationDTOState = parentDTO.getOperationDTOState();
+                logger.debug(METHODNAME, "parentDTO.className=", className, " parentDTO.auditId=", auditId, " parentDTO.operationDTOState=", operationDTOState);
+            }
+
+            // Under cirtain race conditions the DTO maybe UNSET, in this case do not audit
+            if (operationDTOState != DTOState.UNSET) {
+                String auditTransactionId = propertyBagDTO.getAuditTransactionId();
+                AuditTransactionDTO auditTransactionDTO = new AuditTransactionDTO();
+                auditTransactionDTO.setTransactionId(auditTransactionId);
+                auditTransactionDTO.setClassName(className);
+                auditTransactionDTO.setAuditId(auditId);
+                auditTransactionDTO.setAppName(sessionDTO.getAppDTO().getAppName());
+                auditTransactionDTO.setCreateId(sessionDTO.getUserDTO().getUsername());
+                if (operationDTOState == DTOState.NEW || operationDTOState == DTOState.NEWMODIFIED) {
+                    auditTransactionDTO.setTransactionType(AuditTransaction.INSERT);
+                } else if (operationDTOState == DTOState.UPDATED) {
+                    auditTransactionDTO.setTransactionType(AuditTransaction.UPDATE);
+                } else if (operationDTOState == DTOState.DELETED) {
+                    auditTransactionDTO.setTransactionType(AuditTransaction.DELETE);
+                } else if (operationDTOState == DTOState.UNSET) {
+                    logger.error(METHODNAME, "baseDTO.getDTOStates()", baseDTO.getDTOStates(), " className=", className, " auditId=", auditId, " operationDTOState=", operationDTOState);
+                    // Code that follows will get an error since TransactionType is NULL
+                }
+                auditTransactionDTO.setCreateDatetime(new Date());
+                add(auditTransactionDTO, Add.class, sessionDTO, propertyBagDTO);
+            }
+        }
+    }
 }
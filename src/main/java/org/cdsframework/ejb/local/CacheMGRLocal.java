@@ -26,6 +26,16 @@
  */
 package org.cdsframework.ejb.local;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -35,34 +45,55 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
 import javax.ejb.ConcurrencyManagement;
 import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.EJB;
 import javax.ejb.LocalBean;
 import javax.ejb.Lock;
 import javax.ejb.LockType;
+import javax.ejb.SessionContext;
 import javax.ejb.Singleton;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.ejb.TransactionManagement;
 import javax.ejb.TransactionManagementType;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.CopyStrategyConfiguration;
+import net.sf.ehcache.config.InvalidConfigurationException;
+import net.sf.ehcache.config.MemoryUnit;
 import net.sf.ehcache.config.SizeOfPolicyConfiguration;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
 import org.cdsframework.annotation.Cached;
+import org.cdsframework.base.BaseDAO;
 import org.cdsframework.base.BaseDTO;
 import org.cdsframework.enumeration.CacheType;
 import org.cdsframework.enumeration.Operation;
 import org.cdsframework.exceptions.MtsException;
 import org.cdsframework.exceptions.CacheLoadException;
 import org.cdsframework.exceptions.NotFoundException;
+import org.cdsframework.util.CacheStatistics;
+import org.cdsframework.util.CacheStatisticsMXBean;
+import org.cdsframework.util.DTODescriptor;
 import org.cdsframework.util.DTOUtils;
+import org.cdsframework.util.EJBUtils;
 import org.cdsframework.util.LogUtils;
+import org.cdsframework.util.TraceUtils;
 
 /**
  *
@@ -85,6 +116,24 @@ public class CacheMGRLocal {
     private int maxTimeout = 15;
     private int sizeOfDepthLimit = 3500;
     private String copyStrategyClass = null;
+    private int negativeLookupMaxEntries = 1000;
+    private long negativeLookupTtlMillis = 60000L;
+    private final Map<Class<? extends BaseDTO>, Map<Object, Long>> negativeLookups = new HashMap<Class<? extends BaseDTO>, Map<Object, Long>>();
+    private final static String STATISTICS_MBEAN_NAME = "org.cdsframework:type=CacheStatistics";
+    private ObjectName statisticsObjectName = null;
+    // DTO class -> {sampled at millis, estimated bytes} of the statistics size estimate
+    private final Map<Class<? extends BaseDTO>, long[]> estimatedBytesSamples = new ConcurrentHashMap<Class<? extends BaseDTO>, long[]>();
+    private long estimatedBytesIntervalMillis = 300000L;
+    // DTO class -> millis until which its per class cache holds every primed entry - dropped on an eviction, expiry or purge
+    private final Map<Class<? extends BaseDTO>, Long> completeUntil = new ConcurrentHashMap<Class<? extends BaseDTO>, Long>();
+    private final Map<Class<? extends BaseDTO>, CompletenessListener> completenessListeners = new ConcurrentHashMap<Class<? extends BaseDTO>, CompletenessListener>();
+    private final Map<Class<? extends BaseDTO>, Long> cacheVersions = new HashMap<Class<? extends BaseDTO>, Long>();
+    private final static int SNAPSHOT_FORMAT_VERSION = 1;
+    private final List<Class<? extends BaseDTO>> initializedClasses = new ArrayList<Class<? extends BaseDTO>>();
+    private File snapshotDirectory = null;
+    private String buildVersion = null;
+    @Resource
+    private SessionContext sessionCtx;
 
     /*
      * Default no arg constructor initializes the superclass.
@@ -104,7 +153,42 @@ public class CacheMGRLocal {
         maxTimeout = propertyMGRLocal.get("EHCACHE_MAX_TIMEOUT", Integer.class);
         sizeOfDepthLimit = propertyMGRLocal.get("EHCACHE_SIZE_OF_DEPTH_LIMIT", Integer.class);
         copyStrategyClass = propertyMGRLocal.get("EHCACHE_COPY_STRATEGY_CLASS", String.class);
-        logger.info(METHODNAME, "maxTimeout=", maxTimeout, " copyStrategyClass=", copyStrategyClass);
+        Integer negativeLookupMax = propertyMGRLocal.get("EHCACHE_NEGATIVE_LOOKUP_MAX_ENTRIES", Integer.class);
+        if (negativeLookupMax != null) {
+            negativeLookupMaxEntries = negativeLookupMax;
+        }
+        Integer negativeLookupSeconds = propertyMGRLocal.get("EHCACHE_NEGATIVE_LOOKUP_SECONDS", Integer.class);
+        if (negativeLookupSeconds != null) {
+            negativeLookupTtlMillis = negativeLookupSeconds * 1000L;
+        }
+        Integer estimatedBytesSeconds = propertyMGRLocal.get("EHCACHE_STATISTICS_SIZE_SECONDS", Integer.class);
+        if (estimatedBytesSeconds != null) {
+            estimatedBytesIntervalMillis = estimatedBytesSeconds * 1000L;
+        }
+        logger.info(METHODNAME, "maxTimeout=", maxTimeout, " copyStrategyClass=", copyStrategyClass, " negativeLookupMaxEntries=", negativeLookupMaxEntries,
+                " negativeLookupTtlMillis=", negativeLookupTtlMillis, " estimatedBytesIntervalMillis=", estimatedBytesIntervalMillis);
+
+        // Optional cache snapshots
+        String snapshotPath = propertyMGRLocal.get("EHCACHE_SNAPSHOT_DIRECTORY", String.class);
+        if (snapshotPath != null && !snapshotPath.trim().isEmpty()) {
+            snapshotDirectory = new File(snapshotPath.trim());
+            if (!snapshotDirectory.isDirectory() && !snapshotDirectory.mkdirs()) {
+                logger.error(METHODNAME, "could not create snapshot directory: ", snapshotDirectory, " - snapshots disabled");
+                snapshotDirectory = null;
+            }
+        }
+        if (snapshotDirectory != null) {
+            buildVersion = propertyMGRLocal.get("BUILD_VERSION", String.class);
+            Integer snapshotInterval = propertyMGRLocal.get("EHCACHE_SNAPSHOT_INTERVAL_MINUTES", Integer.class);
+            if (snapshotInterval != null && snapshotInterval > 0) {
+                TimerConfig timerConfig = new TimerConfig();
+                timerConfig.setPersistent(false);
+                timerConfig.setInfo("Cache snapshot timer");
+                long interval = snapshotInterval * 60000L;
+                sessionCtx.getTimerService().createIntervalTimer(interval, interval, timerConfig);
+            }
+            logger.info(METHODNAME, "snapshotDirectory=", snapshotDirectory, " snapshotInterval=", snapshotInterval);
+        }
 
         // Set the max timeout
         cacheManager.getTransactionController().setDefaultTransactionTimeout(maxTimeout);
@@ -117,12 +201,16 @@ public class CacheMGRLocal {
         logger.info(METHODNAME, "add the cache=", defaultCache);
         // Add the standard defauft cache
         cacheManager.addCache(defaultCache);
+        registerStatisticsMBean();
     }
 
     @PreDestroy
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     private void preDestroy() {
         final String METHODNAME = "preDestroy ";
         logger.info(METHODNAME);
+        writeSnapshots(this);
+        unregisterStatisticsMBean();
         cacheManager.shutdown();
 
     }
@@ -136,9 +224,17 @@ public class CacheMGRLocal {
      * @throws NotFoundException
      */
     public <S extends BaseDTO> void purgeCache(Class<S> dtoClass) throws MtsException, NotFoundException {
+        purgeCache(dtoClass, null);
+    }
+
+    private <S extends BaseDTO> void purgeCache(Class<S> dtoClass, Class<? extends BaseDTO> causeClass) throws MtsException, NotFoundException {
         final String METHODNAME = "purgeCache ";
+        incrementCacheVersion(dtoClass);
+        clearNegativeLookups(dtoClass);
+        completeUntil.remove(dtoClass);
         // Cache Exist ?
         if (isCacheExist(dtoClass)) {
+            CacheStatistics.get(dtoClass).recordPurge(causeClass);
             Cache cache = getCache(dtoClass);
             logger.info("Purging cache of ", cache.getName(), " cacheKey ", dtoClass.getSimpleName(), " entry.");
 
@@ -174,7 +270,21 @@ public class CacheMGRLocal {
         final String METHODNAME = "save ";
 
         if (dto != null) {
-            Class<? extends BaseDTO> dtoClass = dto.getClass();
+            final Class<? extends BaseDTO> dtoClass = dto.getClass();
+            incrementCacheVersion(dtoClass);
+            // An added key may have been recorded as missing - dropped again after the commit since a lookup by another transaction
+            // can record it as missing until the row is visible
+            if (operation == Operation.ADD && dto.getPrimaryKey() != null) {
+                final Object primaryKey = dto.getPrimaryKey();
+                final CacheMGRLocal cacheMGRLocal = sessionCtx.getBusinessObject(CacheMGRLocal.class);
+                removeNegativeLookup(dtoClass, primaryKey);
+                EJBUtils.runAfterCompletion(CacheMGRLocal.class.getName() + ".negativeLookup." + dtoClass.getName() + "." + primaryKey, new Runnable() {
+                    @Override
+                    public void run() {
+                        cacheMGRLocal.removeNegativeLookup(dtoClass, primaryKey);
+                    }
+                });
+            }
             // Cache Exist ?
             if (isCacheExist(dtoClass)) {
                 Cache cache = getCache(dtoClass);
@@ -225,10 +335,14 @@ public class CacheMGRLocal {
 
                         // Update the cache with the Map changes, may not be necessary but just in case it is.
                         if (!cachedMap.isEmpty()) {
-                            logger.debug(METHODNAME, "updating cached MAP in cache=", cache.getName());
+                            if (logger.isDebugEnabled()) {
+                                logger.debug(METHODNAME, "updating cached MAP in cache=", cache.getName());
+                            }
                             cache.put(new Element(dtoClass.getSimpleName(), cachedMap));
                         } else {
-                            logger.debug(METHODNAME, "removing cached MAP from cache=", cache.getName());
+                            if (logger.isDebugEnabled()) {
+                                logger.debug(METHODNAME, "removing cached MAP from cache=", cache.getName());
+                            }
                             cache.remove(dtoClass.getSimpleName());
                         }
                     } else {
@@ -240,7 +354,7 @@ public class CacheMGRLocal {
                 List<Class<? extends BaseDTO>> dependencyList = classDependencies.get(dtoClass);
                 if (dependencyList != null) {
                     for (Class<? extends BaseDTO> type : dependencyList) {
-                        purgeCache(type);
+                        purgeCache(type, dtoClass);
                     }
                 }
             }
@@ -280,11 +394,157 @@ public class CacheMGRLocal {
                         logger.error(METHODNAME, " cachedObject is null for ", dto.getClass().getSimpleName());
                     }
                 }
+                if (result != null) {
+                    CacheStatistics.get(dtoClass).recordHit();
+                } else {
+                    CacheStatistics.get(dtoClass).recordMiss();
+                }
             }
         }
         return result;
     }
 
+    /**
+     * Returns whether a primary key was recorded as missing for the DTO class within the last EHCACHE_NEGATIVE_LOOKUP_SECONDS.
+     * Increments the negative hit counter for the DTO class when it was. Expired keys are dropped - a key added by another
+     * transaction while its miss was being recorded is only hidden until then.
+     *
+     * @param <S>
+     * @param dto
+     * @return
+     */
+    public <S extends BaseDTO> boolean isNegativeLookup(S dto) {
+        final String METHODNAME = "isNegativeLookup ";
+        boolean result = false;
+        if (dto != null && dto.getPrimaryKey() != null) {
+            Class<? extends BaseDTO> dtoClass = dto.getClass();
+            Map<Object, Long> keyMap = negativeLookups.get(dtoClass);
+            Long recordedAt = keyMap != null ? keyMap.get(dto.getPrimaryKey()) : null;
+            if (recordedAt != null && System.currentTimeMillis() - recordedAt >= negativeLookupTtlMillis) {
+                keyMap.remove(dto.getPrimaryKey());
+            } else if (recordedAt != null) {
+                result = true;
+                CacheStatistics.get(dtoClass).recordNegativeHit();
+                if (logger.isDebugEnabled()) {
+                    logger.debug(METHODNAME, "negative hit on primaryKey=", dto.getPrimaryKey(), " for ", dtoClass.getSimpleName());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Record a primary key that could not be located in the cache or the database. The number of keys retained per DTO class
+     * is bounded by EHCACHE_NEGATIVE_LOOKUP_MAX_ENTRIES - the least recently used key is dropped first - and a key expires after
+     * EHCACHE_NEGATIVE_LOOKUP_SECONDS (60 by default, 0 disables the negative lookups).
+     *
+     * @param <S>
+     * @param dto
+     */
+    public <S extends BaseDTO> void recordNegativeLookup(S dto) {
+        final String METHODNAME = "recordNegativeLookup ";
+        if (dto != null && dto.getPrimaryKey() != null && !"".equals(dto.getPrimaryKey()) && negativeLookupMaxEntries > 0
+                && negativeLookupTtlMillis > 0) {
+            Class<? extends BaseDTO> dtoClass = dto.getClass();
+            Map<Object, Long> keyMap = negativeLookups.get(dtoClass);
+            if (keyMap == null) {
+                final int maxEntries = negativeLookupMaxEntries;
+                keyMap = new LinkedHashMap<Object, Long>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Object, Long> eldest) {
+                        return size() > maxEntries;
+                    }
+                };
+                negativeLookups.put(dtoClass, keyMap);
+            }
+            keyMap.put(dto.getPrimaryKey(), System.currentTimeMillis());
+            if (logger.isDebugEnabled()) {
+                logger.debug(METHODNAME, "recorded primaryKey=", dto.getPrimaryKey(), " for ", dtoClass.getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of lookups answered from the negative lookup cache for a DTO class.
+     *
+     * @param <S>
+     * @param dtoClass
+     * @return
+     */
+    public <S extends BaseDTO> long getNegativeLookupHits(Class<S> dtoClass) {
+        return CacheStatistics.get(dtoClass).getNegativeHits();
+    }
+
+    /**
+     * Returns the version of the cache of a DTO class - it changes on every save, purge and initialization of the cache, so that
+     * values derived from cached DTOs (see ReferenceSnapshotUtils) can be keyed on it.
+     *
+     * @param <S>
+     * @param dtoClass
+     * @return
+     */
+    @Lock(LockType.READ)
+    public <S extends BaseDTO> long getCacheVersion(Class<S> dtoClass) {
+        Long version = cacheVersions.get(dtoClass);
+        return version == null ? 0 : version;
+    }
+
+    private void incrementCacheVersion(Class<? extends BaseDTO> dtoClass) {
+        Long version = cacheVersions.get(dtoClass);
+        cacheVersions.put(dtoClass, version == null ? 1 : version + 1);
+    }
+
+    /**
+     * Returns the number of primary keys currently recorded as missing for a DTO class.
+     *
+     * @param <S>
+     * @param dtoClass
+     * @return
+     */
+    public <S extends BaseDTO> int getNegativeLookupSize(Class<S> dtoClass) {
+        Map<Object, Long> keyMap = negativeLookups.get(dtoClass);
+        return keyMap == null ? 0 : keyMap.size();
+    }
+
+    /**
+     * Drop a primary key recorded as missing for a DTO class.
+     *
+     * @param dtoClass
+     * @param primaryKey
+     */
+    public void removeNegativeLookup(Class<? extends BaseDTO> dtoClass, Object primaryKey) {
+        Map<Object, Long> keyMap = negativeLookups.get(dtoClass);
+        if (keyMap != null && primaryKey != null) {
+            keyMap.remove(primaryKey);
+        }
+    }
+
+    private void clearNegativeLookups(Class<? extends BaseDTO> dtoClass) {
+        final String METHODNAME = "clearNegativeLookups ";
+        Map<Object, Long> keyMap = negativeLookups.remove(dtoClass);
+        if (keyMap != null && logger.isDebugEnabled()) {
+            logger.debug(METHODNAME, "cleared ", keyMap.size(), " keys for ", dtoClass.getSimpleName());
+        }
+    }
+
+    /**
+     * isCacheInitialized recording the time the caller waited for the singleton lock in the cache statistics. callStart is the
+     * System.nanoTime() of the caller just before the call - the method is only entered once the lock is held.
+     *
+     * @param <S>
+     * @param dtoClass
+     * @param callStart
+     * @return
+     * @throws MtsException
+     * @throws NotFoundException
+     */
+    @Lock(LockType.WRITE)
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public <S extends BaseDTO> boolean isCacheInitialized(Class<S> dtoClass, long callStart) throws MtsException, NotFoundException {
+        CacheStatistics.get(dtoClass).recordLockWait(System.nanoTime() - callStart);
+        return isCacheInitialized(dtoClass);
+    }
+
     @Lock(LockType.WRITE)
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
     public <S extends BaseDTO> boolean isCacheInitialized(Class<S> dtoClass) throws MtsException, NotFoundException {
@@ -359,7 +619,7 @@ public class CacheMGRLocal {
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
     public <S extends BaseDTO> void initializeCache(Class<S> dtoClass, List<S> list) throws MtsException, NotFoundException {
         final String METHODNAME = "initializeCache ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
 
         /*
         if (dtoClass.getSimpleName().equalsIgnoreCase("RecommendationStatusLkDTO")) {
@@ -368,8 +628,12 @@ public class CacheMGRLocal {
         */
         
         try {
+            incrementCacheVersion(dtoClass);
+            clearNegativeLookups(dtoClass);
             Cache cache = getCache(dtoClass);
             if (dtoClass.getSimpleName().equalsIgnoreCase(cache.getName())) {
+                // Flagged before the puts - an entry evicted while priming drops the flag again
+                markComplete(dtoClass, cache);
                 for (S baseDTO : list) {
                     cache.put(new Element(baseDTO.getPrimaryKey(), baseDTO));
                 }
@@ -381,14 +645,22 @@ public class CacheMGRLocal {
                 cache.put(new Element(dtoClass.getSimpleName(), baseDTOMap));
             }
             recordClassDependencies(new ArrayList<Class>(), dtoClass, dtoClass);
+            synchronized (initializedClasses) {
+                if (!initializedClasses.contains(dtoClass)) {
+                    initializedClasses.add(dtoClass);
+                }
+            }
 //            Cached cached = DTOUtils.getCached(dtoClass);
 //            for (Class<? extends BaseDTO> type : cached.customDependencyList()) {
 //                addClassDependency(type, dtoClass);
 //            }
         } finally {
             boolean remove = intializing.remove(dtoClass);
-            logger.debug(METHODNAME, "removing ", dtoClass.getSimpleName(), " from initializing cache tracker", 
-                    "remove=", remove, " initializing array=", intializing);
+            if (logger.isDebugEnabled()) {
+                logger.debug(METHODNAME, "removing ", dtoClass.getSimpleName(), " from initializing cache tracker",
+                        "remove=", remove, " initializing array=", intializing);
+            }
+            TraceUtils.end(traceStart, "CacheMGRLocal", METHODNAME, dtoClass);
             /*
             if (dtoClass.getSimpleName().equalsIgnoreCase("RecommendationStatusLkDTO")) {
                 logger.debug(METHODNAME, "dtoClass=", dtoClass.getSimpleName(), " remove=", remove, " initializing array=", intializing);
@@ -409,8 +681,10 @@ public class CacheMGRLocal {
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
     public <S extends BaseDTO> Map<Object, S> getCachedMap(Class<S> dtoClass) throws MtsException, NotFoundException {
         final String METHODNAME = "getCachedMap ";
-        logger.logBegin(METHODNAME);
-        logger.debug(METHODNAME, "for ", dtoClass.getSimpleName());
+        final long traceStart = TraceUtils.start(dtoClass);
+        if (logger.isDebugEnabled()) {
+            logger.debug(METHODNAME, "for ", dtoClass.getSimpleName());
+        }
         Map<Object, S> cachedMap = new HashMap<Object, S>();
         try {
             // CacheExists ?
@@ -427,7 +701,10 @@ public class CacheMGRLocal {
                         if (dtoComparator != null) {
                             List<S> values = new ArrayList<S>();
                             for (Map.Entry<Object, Element> mapEntry : elements.entrySet()) {
-                                values.add((S) mapEntry.getValue().getObjectValue());
+                                // evicted or expired since getKeys
+                                if (mapEntry.getValue() != null) {
+                                    values.add((S) mapEntry.getValue().getObjectValue());
+                                }
                             }
                             Collections.sort(values, dtoComparator);
                             for (S item : values) {
@@ -435,6 +712,9 @@ public class CacheMGRLocal {
                             }
                         } else {
                             for (Map.Entry<Object, Element> mapEntry : elements.entrySet()) {
+                                if (mapEntry.getValue() == null) {
+                                    continue;
+                                }
                                 dtoMap.put(mapEntry.getKey(), (S) mapEntry.getValue().getObjectValue());
                                 //dtoMap.put(((S) mapEntry.getValue().getObjectValue()).getPrimaryKey(), (S) mapEntry.getValue().getObjectValue());
                             }
@@ -452,16 +732,488 @@ public class CacheMGRLocal {
                 if (cachedObject != null) {
                     cachedMap = (Map<Object, S>) cachedObject;
                     logger.debug(METHODNAME, "cachedMap.size()=", cachedMap.size());
+                    CacheStatistics.get(dtoClass).recordHit();
+                } else {
+                    CacheStatistics.get(dtoClass).recordMiss();
                 }
             } else {
                 logger.error(METHODNAME, "Cache for ", dtoClass.getSimpleName(), " does not exist, ensure you are calling the BO.getCachedMap");
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "CacheMGRLocal", METHODNAME, dtoClass);
         }
         return cachedMap;
     }
 
+    /**
+     * Returns a point in time copy of the per DTO class cache statistics keyed by DTO simple name. In addition to the counters of
+     * CacheStatistics each entry carries the current entryCount and estimatedBytes (-1 when they can't be determined).
+     * estimatedBytes walks the whole cache, so it is sampled at most once per EHCACHE_STATISTICS_SIZE_SECONDS (default 300) and
+     * the last sample is returned in between.
+     *
+     * @return
+     */
+    @Lock(LockType.READ)
+    public Map<String, Map<String, Long>> getCacheStatistics() {
+        Map<String, Map<String, Long>> result = new LinkedHashMap<String, Map<String, Long>>();
+        for (CacheStatistics statistics : CacheStatistics.getAll()) {
+            result.put(statistics.getDtoClass().getSimpleName(), getCacheStatistics(statistics));
+        }
+        return result;
+    }
+
+    private Map<String, Long> getCacheStatistics(CacheStatistics statistics) {
+        final String METHODNAME = "getCacheStatistics ";
+        Map<String, Long> result = statistics.toMap();
+        Class<? extends BaseDTO> dtoClass = statistics.getDtoClass();
+        long entryCount = -1;
+        long estimatedBytes = -1;
+        try {
+            String cacheName = getCacheName(dtoClass);
+            if (cacheManager.cacheExists(cacheName)) {
+                Cache cache = cacheManager.getCache(cacheName);
+                if (dtoClass.getSimpleName().equalsIgnoreCase(cache.getName())) {
+                    entryCount = cache.getSize();
+                    estimatedBytes = getEstimatedBytes(dtoClass, cache);
+                } else {
+                    Element element = cache.get(dtoClass.getSimpleName());
+                    entryCount = element != null ? ((Map) element.getObjectValue()).size() : 0;
+                }
+            }
+        } catch (Exception e) {
+            // transactional caches can't be sized outside of a transaction
+            logger.debug(METHODNAME, "could not size ", dtoClass.getSimpleName(), ": ", e.getMessage());
+        }
+        result.put("entryCount", entryCount);
+        result.put("estimatedBytes", estimatedBytes);
+        return result;
+    }
+
+    private long getEstimatedBytes(Class<? extends BaseDTO> dtoClass, Cache cache) {
+        long now = System.currentTimeMillis();
+        long[] sample = estimatedBytesSamples.get(dtoClass);
+        if (sample == null || now - sample[0] >= estimatedBytesIntervalMillis) {
+            sample = new long[]{now, cache.calculateInMemorySize()};
+            estimatedBytesSamples.put(dtoClass, sample);
+        }
+        return sample[1];
+    }
+
+    private void registerStatisticsMBean() {
+        final String METHODNAME = "registerStatisticsMBean ";
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(STATISTICS_MBEAN_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(new CacheStatisticsMBean(), objectName);
+                statisticsObjectName = objectName;
+                logger.info(METHODNAME, "registered ", STATISTICS_MBEAN_NAME);
+            } else {
+                logger.warn(METHODNAME, STATISTICS_MBEAN_NAME, " is already registered");
+            }
+        } catch (JMException e) {
+            logger.error(METHODNAME, "could not register ", STATISTICS_MBEAN_NAME, ": ", e.getMessage());
+        }
+    }
+
+    private void unregisterStatisticsMBean() {
+        final String METHODNAME = "unregisterStatisticsMBean ";
+        if (statisticsObjectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(statisticsObjectName);
+            } catch (JMException e) {
+                logger.error(METHODNAME, "could not unregister ", statisticsObjectName, ": ", e.getMessage());
+            }
+            statisticsObjectName = null;
+        }
+    }
+
+    /**
+     * MBean bridge - calls the cache manager directly rather than through the container.
+     */
+    private class CacheStatisticsMBean implements CacheStatisticsMXBean {
+
+        @Override
+        public Map<String, Map<String, Long>> getStatistics() {
+            return getCacheStatistics();
+        }
+
+        @Override
+        public Map<String, Long> getClassStatistics(String dtoClassName) {
+            for (CacheStatistics statistics : CacheStatistics.getAll()) {
+                if (statistics.getDtoClass().getSimpleName().equals(dtoClassName)) {
+                    return getCacheStatistics(statistics);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void reset() {
+            CacheStatistics.resetAll();
+        }
+    }
+
+    /**
+     * Periodically write the cache snapshots - see EHCACHE_SNAPSHOT_INTERVAL_MINUTES. The snapshots are written on the container's
+     * managed executor so that the serialization doesn't hold the singleton lock; each cache is only locked while its entries are
+     * copied (see getSnapshotEntries).
+     */
+    @Timeout
+    @Lock(LockType.READ)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void snapshotTimeout() {
+        final String METHODNAME = "snapshotTimeout ";
+        final CacheMGRLocal cacheMGRLocal = sessionCtx.getBusinessObject(CacheMGRLocal.class);
+        ManagedExecutorService executor = null;
+        try {
+            executor = EJBUtils.getManagedExecutorService();
+        } catch (MtsException e) {
+            logger.warn(METHODNAME, "managed executor not available - ", e.getMessage());
+        }
+        if (executor != null) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    writeSnapshots(cacheMGRLocal);
+                }
+            });
+        } else {
+            writeSnapshots(this);
+        }
+    }
+
+    /**
+     * Returns a copy of the cached entries of a DTO class for a snapshot.
+     *
+     * @param <S>
+     * @param dtoClass
+     * @return
+     * @throws MtsException
+     * @throws NotFoundException
+     */
+    @Lock(LockType.READ)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public <S extends BaseDTO> List<S> getSnapshotEntries(Class<S> dtoClass) throws MtsException, NotFoundException {
+        return new ArrayList<S>(getCachedMap(dtoClass).values());
+    }
+
+    /**
+     * Write a snapshot file for every initialized cache. No-op unless EHCACHE_SNAPSHOT_DIRECTORY is set.
+     *
+     * @param cacheMGRLocal the instance the cache entries are copied from - the business object when called off the container
+     * thread
+     */
+    private void writeSnapshots(CacheMGRLocal cacheMGRLocal) {
+        final String METHODNAME = "writeSnapshots ";
+        if (snapshotDirectory == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<Class<? extends BaseDTO>> dtoClasses;
+        synchronized (initializedClasses) {
+            dtoClasses = new ArrayList<Class<? extends BaseDTO>>(initializedClasses);
+        }
+        for (Class<? extends BaseDTO> dtoClass : dtoClasses) {
+            try {
+                writeSnapshot(dtoClass, cacheMGRLocal);
+            } catch (Exception e) {
+                logger.error(METHODNAME, "could not write snapshot for ", dtoClass.getSimpleName(), ": ", e.getMessage());
+            }
+        }
+        logger.logDuration(METHODNAME + "for " + dtoClasses.size() + " caches", start);
+    }
+
+    /**
+     * Returns whether a DTO class can be snapshotted. The table change stamp only covers the table of the DTO class itself, so classes
+     * whose cached instances carry children or references (which may be stale on other tables) are not snapshotted.
+     *
+     * @param dtoClass
+     * @return
+     */
+    private boolean isSnapshotSupported(Class<? extends BaseDTO> dtoClass) {
+        DTODescriptor descriptor = DTODescriptor.getInstance(dtoClass);
+        return descriptor.getDtoChildClasses().isEmpty() && !descriptor.hasReferenceDTOs();
+    }
+
+    /**
+     * Write the cache contents of a DTO class to its snapshot file. The file holds a gzipped object stream consisting of a version
+     * stamp (format version, build version, class name and serialVersionUID), the table change stamp taken before the cache was
+     * read and the cached DTOs. The file is written to a temporary file and renamed into place.
+     *
+     * @param <S>
+     * @param dtoClass
+     * @param cacheMGRLocal
+     * @throws MtsException
+     * @throws NotFoundException
+     * @throws IOException
+     */
+    private <S extends BaseDTO> void writeSnapshot(Class<S> dtoClass, CacheMGRLocal cacheMGRLocal) throws MtsException, NotFoundException, IOException {
+        final String METHODNAME = "writeSnapshot ";
+        if (!isSnapshotSupported(dtoClass)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(METHODNAME, dtoClass.getSimpleName(), " has children or references - skipping");
+            }
+            return;
+        }
+        ObjectStreamClass objectStreamClass = ObjectStreamClass.lookup(dtoClass);
+        if (objectStreamClass == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(METHODNAME, dtoClass.getSimpleName(), " is not serializable - skipping");
+            }
+            return;
+        }
+        BaseDAO dao = EJBUtils.getDtoDao(dtoClass);
+        if (dao == null) {
+            return;
+        }
+        // stamp first so that changes made while the cache is read invalidate the snapshot
+        long[] changeStamp = dao.getTableChangeStamp();
+        if (changeStamp == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(METHODNAME, dtoClass.getSimpleName(), " has no table change stamp - skipping");
+            }
+            return;
+        }
+        List<S> entries = cacheMGRLocal.getSnapshotEntries(dtoClass);
+        if (entries.isEmpty()) {
+            return;
+        }
+        File target = getSnapshotFile(dtoClass);
+        File temp = new File(target.getPath() + ".tmp");
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp))));
+        try {
+            out.writeInt(SNAPSHOT_FORMAT_VERSION);
+            out.writeObject(buildVersion);
+            out.writeUTF(dtoClass.getName());
+            out.writeLong(objectStreamClass.getSerialVersionUID());
+            out.writeLong(changeStamp[0]);
+            out.writeLong(changeStamp[1]);
+            out.writeInt(entries.size());
+            for (S item : entries) {
+                out.writeObject(item);
+            }
+        } finally {
+            out.close();
+        }
+        if (target.exists() && !target.delete()) {
+            throw new IOException("could not replace " + target);
+        }
+        if (!temp.renameTo(target)) {
+            throw new IOException("could not rename " + temp + " to " + target);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(METHODNAME, "wrote ", entries.size(), " entries for ", dtoClass.getSimpleName(), " to ", target);
+        }
+    }
+
+    /**
+     * Load the snapshot of a DTO class if one exists, its version stamp matches this build and the table change stamp still matches
+     * the database - tables without a change stamp are never loaded from a snapshot. Returns null otherwise, in which case the cache
+     * must be loaded from the database.
+     *
+     * @param <S>
+     * @param dtoClass
+     * @return
+     */
+    public <S extends BaseDTO> List<S> loadSnapshot(Class<S> dtoClass) {
+        final String METHODNAME = "loadSnapshot ";
+        List<S> result = null;
+        if (snapshotDirectory == null || !isSnapshotSupported(dtoClass)) {
+            return result;
+        }
+        File source = getSnapshotFile(dtoClass);
+        if (!source.isFile()) {
+            return result;
+        }
+        long start = System.nanoTime();
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(source))));
+            ObjectStreamClass objectStreamClass = ObjectStreamClass.lookup(dtoClass);
+            int formatVersion = in.readInt();
+            Object snapshotBuildVersion = in.readObject();
+            String className = in.readUTF();
+            long serialVersionUID = in.readLong();
+            if (formatVersion != SNAPSHOT_FORMAT_VERSION
+                    || (buildVersion == null ? snapshotBuildVersion != null : !buildVersion.equals(snapshotBuildVersion))
+                    || !dtoClass.getName().equals(className)
+                    || objectStreamClass == null
+                    || objectStreamClass.getSerialVersionUID() != serialVersionUID) {
+                logger.info(METHODNAME, "stale snapshot version for ", dtoClass.getSimpleName());
+                return result;
+            }
+            long rowCount = in.readLong();
+            long lastModDatetime = in.readLong();
+            BaseDAO dao = EJBUtils.getDtoDao(dtoClass);
+            long[] changeStamp = dao != null ? dao.getTableChangeStamp() : null;
+            if (changeStamp == null || changeStamp[0] != rowCount || changeStamp[1] != lastModDatetime) {
+                logger.info(METHODNAME, "snapshot for ", dtoClass.getSimpleName(), " no longer matches the database");
+                return result;
+            }
+            int size = in.readInt();
+            List<S> items = new ArrayList<S>(size);
+            for (int i = 0; i < size; i++) {
+                items.add((S) in.readObject());
+            }
+            result = items;
+            logger.logDuration(METHODNAME + "loaded " + size + " entries for " + dtoClass.getSimpleName(), start);
+        } catch (IOException | ClassNotFoundException | ClassCastException | MtsException e) {
+            logger.warn(METHODNAME, "could not load snapshot for ", dtoClass.getSimpleName(), ": ", e.getMessage());
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        return result;
+    }
+
+    private File getSnapshotFile(Class<? extends BaseDTO> dtoClass) {
+        return new File(snapshotDirectory, dtoClass.getName() + ".snapshot");
+    }
+
+    /**
+     * Returns whether every entry loaded into the cache of a DTO class is still resident. A per class cache may be bounded or
+     * expire entries (see applyCachePolicy) and is always subject to the CacheManager heap pool - callers that need the complete
+     * list (FindAll) must fall back to the database when this returns false. Priming flags a per class cache complete until its
+     * first entry can expire; an eviction, expiry or purge drops the flag, so the check does not walk the cache.
+     *
+     * @param <S>
+     * @param dtoClass
+     * @return
+     * @throws MtsException
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public <S extends BaseDTO> boolean isCacheComplete(Class<S> dtoClass) throws MtsException {
+        final String METHODNAME = "isCacheComplete ";
+        boolean result = false;
+        if (isCacheExist(dtoClass)) {
+            Cache cache = getCache(dtoClass);
+            if (dtoClass.getSimpleName().equalsIgnoreCase(cache.getName())) {
+                Long until = completeUntil.get(dtoClass);
+                result = until != null && until > System.currentTimeMillis();
+                if (!result && logger.isDebugEnabled()) {
+                    logger.debug(METHODNAME, dtoClass.getSimpleName(), " is not completely resident");
+                }
+            } else {
+                result = cache.get(dtoClass.getSimpleName()) != null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Flag the per class cache of a DTO class complete until its first entry can expire, listening for the evictions and expiries
+     * that drop the flag.
+     *
+     * @param dtoClass
+     * @param cache
+     */
+    private void markComplete(Class<? extends BaseDTO> dtoClass, Cache cache) {
+        CacheConfiguration cacheConfiguration = cache.getCacheConfiguration();
+        long until = Long.MAX_VALUE;
+        if (!cacheConfiguration.isEternal()) {
+            long seconds = 0;
+            for (long lifetime : new long[]{cacheConfiguration.getTimeToLiveSeconds(), cacheConfiguration.getTimeToIdleSeconds()}) {
+                if (lifetime > 0 && (seconds == 0 || lifetime < seconds)) {
+                    seconds = lifetime;
+                }
+            }
+            if (seconds > 0) {
+                until = System.currentTimeMillis() + seconds * 1000L;
+            }
+        }
+        CompletenessListener listener = completenessListeners.get(dtoClass);
+        if (listener == null || listener.cache != cache) {
+            listener = new CompletenessListener(dtoClass, cache);
+            cache.getCacheEventNotificationService().registerListener(listener);
+            completenessListeners.put(dtoClass, listener);
+        }
+        completeUntil.put(dtoClass, until);
+    }
+
+    /**
+     * Drops the completeness flag of a per class cache when Ehcache evicts or expires one of its entries or empties it.
+     */
+    private class CompletenessListener extends CacheEventListenerAdapter {
+
+        private final Class<? extends BaseDTO> dtoClass;
+        private final Cache cache;
+
+        private CompletenessListener(Class<? extends BaseDTO> dtoClass, Cache cache) {
+            this.dtoClass = dtoClass;
+            this.cache = cache;
+        }
+
+        @Override
+        public void notifyElementEvicted(Ehcache ehcache, Element element) {
+            completeUntil.remove(dtoClass);
+        }
+
+        @Override
+        public void notifyElementExpired(Ehcache ehcache, Element element) {
+            completeUntil.remove(dtoClass);
+        }
+
+        @Override
+        public void notifyRemoveAll(Ehcache ehcache) {
+            completeUntil.remove(dtoClass);
+        }
+    }
+
+    /**
+     * Apply the optional per DTO class cache policy properties to a per class cache configuration:
+     * EHCACHE_[DTO]_MAX_ENTRIES, EHCACHE_[DTO]_MAX_BYTES (e.g. 20M), EHCACHE_[DTO]_ENTRY_BYTES, EHCACHE_[DTO]_EVICTION_POLICY
+     * (LRU, LFU or FIFO) and EHCACHE_[DTO]_TIME_TO_LIVE_SECONDS where [DTO] is the upper case simple name of the DTO class.
+     * A byte bound is sized by Ehcache walking every entry put in the cache. When EHCACHE_[DTO]_ENTRY_BYTES gives a fixed cost
+     * per entry and the CacheManager has no byte pool, MAX_BYTES is turned into an entry cap of MAX_BYTES / ENTRY_BYTES instead,
+     * so no entry is walked. Within a CacheManager byte pool Ehcache sizes every entry regardless.
+     *
+     * @param dtoClass
+     * @param cacheConfiguration
+     */
+    private void applyCachePolicy(Class<? extends BaseDTO> dtoClass, CacheConfiguration cacheConfiguration) {
+        final String METHODNAME = "applyCachePolicy ";
+        String prefix = "EHCACHE_" + dtoClass.getSimpleName().toUpperCase() + "_";
+        Integer maxEntries = propertyMGRLocal.get(prefix + "MAX_ENTRIES", Integer.class);
+        String maxBytes = propertyMGRLocal.get(prefix + "MAX_BYTES", String.class);
+        Integer entryBytes = propertyMGRLocal.get(prefix + "ENTRY_BYTES", Integer.class);
+        String evictionPolicy = propertyMGRLocal.get(prefix + "EVICTION_POLICY", String.class);
+        Integer timeToLive = propertyMGRLocal.get(prefix + "TIME_TO_LIVE_SECONDS", Integer.class);
+        try {
+            if (maxBytes != null && !maxBytes.trim().isEmpty() && entryBytes != null && entryBytes > 0
+                    && !cacheManager.getConfiguration().isMaxBytesLocalHeapSet()) {
+                // fixed cost estimate - bounds the entry count instead of sizing each entry
+                long entries = Math.max(1, MemoryUnit.parseSizeInBytes(maxBytes.trim()) / entryBytes);
+                cacheConfiguration.setMaxEntriesLocalHeap(Math.min(entries, Integer.MAX_VALUE));
+            } else if (maxBytes != null && !maxBytes.trim().isEmpty()) {
+                cacheConfiguration.setMaxBytesLocalHeap(maxBytes.trim());
+            } else if (maxEntries != null && maxEntries > 0) {
+                // entry counts can't be mixed with the CacheManager byte pool
+                if (cacheManager.getConfiguration().isMaxBytesLocalHeapSet()) {
+                    logger.warn(METHODNAME, prefix, "MAX_ENTRIES ignored - the CacheManager sets maxBytesLocalHeap; use ", prefix, "MAX_BYTES");
+                } else {
+                    cacheConfiguration.setMaxEntriesLocalHeap(maxEntries);
+                }
+            }
+            if (evictionPolicy != null && !evictionPolicy.trim().isEmpty()) {
+                cacheConfiguration.setMemoryStoreEvictionPolicy(evictionPolicy.trim());
+            }
+            if (timeToLive != null && timeToLive > 0) {
+                cacheConfiguration.setEternal(false);
+                cacheConfiguration.setTimeToLiveSeconds(timeToLive);
+            }
+        } catch (InvalidConfigurationException | IllegalArgumentException e) {
+            logger.error(METHODNAME, "invalid cache policy for ", dtoClass.getSimpleName(), ": ", e.getMessage());
+        }
+        logger.info(METHODNAME, dtoClass.getSimpleName(), " maxEntries=", maxEntries, " maxBytes=", maxBytes, " entryBytes=", entryBytes,
+                " evictionPolicy=", evictionPolicy, " timeToLive=", timeToLive);
+    }
+
     private <S extends BaseDTO> boolean isCacheExist(Class<S> dtoClass) throws MtsException {
         final String METHODNAME = "isCacheExist ";
         boolean cacheExists = cacheManager.cacheExists(getCacheName(dtoClass));
@@ -473,7 +1225,7 @@ public class CacheMGRLocal {
 
     private <S extends BaseDTO> String getCacheName(Class<S> dtoClass) throws MtsException {
         final String METHODNAME = "getCacheName ";
-        logger.logBegin(METHODNAME);
+        final long traceStart = TraceUtils.start(dtoClass);
         String cacheName = defaultCache;
         try {
             String cacheKey = dtoClass.getSimpleName();
@@ -489,7 +1241,7 @@ public class CacheMGRLocal {
                 throw new MtsException("DtoClass " + dtoClass.getSimpleName() + " is not cached");
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "CacheMGRLocal", METHODNAME, dtoClass);
         }
 
         return cacheName;
@@ -497,7 +1249,7 @@ public class CacheMGRLocal {
 
     private <S extends BaseDTO> Cache getCache(Class<S> dtoClass) throws MtsException {
         final String METHODNAME = "getCache ";
-        logger.logBegin(METHODNAME); 
+        final long traceStart = TraceUtils.start(dtoClass);
 
         Cache cache = null;
         try {
@@ -505,7 +1257,9 @@ public class CacheMGRLocal {
             boolean cacheNameFound = cacheManager.cacheExists(cacheName);
             /*
             if (dtoClass.getSimpleName().equalsIgnoreCase("RecommendationStatusLkDTO")) {
-                logger.debug(METHODNAME, "dtoClass=", dtoClass.getSimpleName(), " cacheNameFound=", cacheNameFound);
+                if (logger.isDebugEnabled()) {
+                    logger.debug(METHODNAME, "dtoClass=", dtoClass.getSimpleName(), " cacheNameFound=", cacheNameFound);
+                }
             }
             */
             
@@ -526,12 +1280,16 @@ public class CacheMGRLocal {
                 sizeOfPolicyConfiguration.setMaxDepth(sizeOfDepthLimit);
                 sizeOfPolicyConfiguration.setMaxDepthExceededBehavior("abort");
                 cacheConfiguration.addSizeOfPolicy(sizeOfPolicyConfiguration);
+                // Per class caches may be bounded
+                if (cacheName.equals(dtoClass.getSimpleName())) {
+                    applyCachePolicy(dtoClass, cacheConfiguration);
+                }
                 cache = new Cache(cacheConfiguration);
                 cacheManager.addCache(cache);
             }
             cache = cacheManager.getCache(cacheName);
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "CacheMGRLocal", METHODNAME, dtoClass);
         }
 
         return cache;
@@ -29,6 +29,8 @@ package org.cdsframework.ejb.local;
 import java.lang.reflect.Field;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import javax.ejb.EJB;
 import javax.ejb.LocalBean;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
@@ -49,11 +51,14 @@ import org.cdsframework.exceptions.NotFoundException;
 import org.cdsframework.exceptions.ValidationException;
 import org.cdsframework.group.Add;
 import org.cdsframework.group.Update;
+import org.cdsframework.util.DTODescriptor;
 import org.cdsframework.util.DTOUtils;
 import org.cdsframework.util.EJBUtils;
+import org.cdsframework.util.IdentityMapUtils;
 import org.cdsframework.util.LogUtils;
+import org.cdsframework.util.ReferenceSnapshotUtils;
+import org.cdsframework.util.TraceUtils;
 import org.cdsframework.util.support.CoreConstants;
-import org.cdsframework.util.support.DeepCopy;
 
 /**
  * Provides a Reference manager to query common not cached data for reference purposes.
@@ -67,6 +72,8 @@ import org.cdsframework.util.support.DeepCopy;
 public class ReferenceMGRLocal {
 
     private static final LogUtils logger = LogUtils.getLogger(ReferenceMGRLocal.class);
+    @EJB
+    private CacheMGRLocal cacheMGRLocal;
 
     /**
      * Sets a reference DTO on a parent DTO.
@@ -91,8 +98,11 @@ public class ReferenceMGRLocal {
             throws MtsException, ValidationException, NotFoundException, AuthenticationException, AuthorizationException {
 
         final String METHODNAME = "findReferenceDTO ";
-        logger.logBegin(METHODNAME);
-        logger.debug(METHODNAME, "parentDTOClass=", parentDTO);
+        final long traceStart = TraceUtils.start(parentDTO);
+        final boolean debugEnabled = logger.isDebugEnabled();
+        if (debugEnabled) {
+            logger.debug(METHODNAME, "parentDTOClass=", parentDTO);
+        }
         List<Field> fields = null;
         long start = System.nanoTime();
 
@@ -101,7 +111,9 @@ public class ReferenceMGRLocal {
 
                 // Get the ReferenceDTO fields
                 fields = parentDTO.getReferenceDTOs();
-                logger.debug(METHODNAME, "fields: ", fields);
+                if (debugEnabled) {
+                    logger.debug(METHODNAME, "fields: ", fields);
+                }
 
                 // Navigate the field list
                 for (Field field : fields) {
@@ -110,37 +122,53 @@ public class ReferenceMGRLocal {
 
                     // Get the ReferenceDTO class
                     Class referenceDTOClass = field.getType();
-                    logger.debug(METHODNAME, parentDTO, " - has referenceDTOClass: ", referenceDTOClass);
+                    if (debugEnabled) {
+                        logger.debug(METHODNAME, parentDTO, " - has referenceDTOClass: ", referenceDTOClass);
+                    }
 
                     ReferenceDTO referenceDTOAnnotation = field.getAnnotation(ReferenceDTO.class);
-                    logger.debug(METHODNAME, "referenceDTOAnnotation: ", referenceDTOAnnotation);
+                    if (debugEnabled) {
+                        logger.debug(METHODNAME, "referenceDTOAnnotation: ", referenceDTOAnnotation);
+                    }
 
                     boolean isNotFoundAllowed = referenceDTOAnnotation.isNotFoundAllowed();
-                    logger.debug(METHODNAME, "isNotFoundAllowed: ", isNotFoundAllowed, " referenceDTOClass=", referenceDTOClass);
+                    if (debugEnabled) {
+                        logger.debug(METHODNAME, "isNotFoundAllowed: ", isNotFoundAllowed, " referenceDTOClass=", referenceDTOClass);
+                    }
 
                     boolean isDiscardChildren = referenceDTOAnnotation.discardChildren();
-                    logger.debug(METHODNAME, "isDiscardChildren: ", isDiscardChildren, " referenceDTOClass=", referenceDTOClass);
+                    if (debugEnabled) {
+                        logger.debug(METHODNAME, "isDiscardChildren: ", isDiscardChildren, " referenceDTOClass=", referenceDTOClass);
+                    }
 
                     // Map is created for selfReferencing Cached DTO's
                     HashMap<Object, BaseDTO> baseDTOMap = (HashMap<Object, BaseDTO>) propertyBagDTO.get(referenceDTOClass.getName());
-                    logger.debug(METHODNAME, "referenceDTOClass=", referenceDTOClass, " baseDTOMap=", baseDTOMap);
+                    if (debugEnabled) {
+                        logger.debug(METHODNAME, "referenceDTOClass=", referenceDTOClass, " baseDTOMap=", baseDTOMap);
+                    }
 
                     if (baseDTOMap != null) {
 
                         try {
                             BaseDTO referenceKeyDTO = (BaseDTO) field.get(parentDTO);
-                            logger.debug(METHODNAME, "referenceKeyDTO: ", referenceKeyDTO);
+                            if (debugEnabled) {
+                                logger.debug(METHODNAME, "referenceKeyDTO: ", referenceKeyDTO);
+                            }
 
                             if (referenceKeyDTO != null) {
                                 referenceDTO = baseDTOMap.get(referenceKeyDTO.getPrimaryKey());
-                                logger.debug(METHODNAME, "found referenceDTO: ", referenceDTO);
+                                if (debugEnabled) {
+                                    logger.debug(METHODNAME, "found referenceDTO: ", referenceDTO);
+                                }
 
                                 if (referenceDTO != null) {
-                                    logger.debug(METHODNAME,
-                                            "found a match for referenceDTOClass.getName()=",
-                                            referenceDTOClass,
-                                            " referenceKeyDTO=",
-                                            referenceKeyDTO);
+                                    if (debugEnabled) {
+                                        logger.debug(METHODNAME,
+                                                "found a match for referenceDTOClass.getName()=",
+                                                referenceDTOClass,
+                                                " referenceKeyDTO=",
+                                                referenceKeyDTO);
+                                    }
                                     // Set the referenceDTO on the parentDTO
                                     field.set(parentDTO, referenceDTO);
                                 } else {
@@ -162,16 +190,22 @@ public class ReferenceMGRLocal {
                     } else {
 
                         BaseBO referenceBO = EJBUtils.getDtoBo(referenceDTOClass);
-                        logger.debug(METHODNAME, "referenceBO=", referenceBO);
+                        if (debugEnabled) {
+                            logger.debug(METHODNAME, "referenceBO=", referenceBO);
+                        }
 
                         try {
                             // Get the referenceDTO
                             BaseDTO referenceKeyDTO = (BaseDTO) field.get(parentDTO);
-                            logger.debug(METHODNAME, "referenceKeyDTO: ", referenceKeyDTO);
+                            if (debugEnabled) {
+                                logger.debug(METHODNAME, "referenceKeyDTO: ", referenceKeyDTO);
+                            }
 
                             if (referenceKeyDTO != null) {
                                 referenceDTO = referenceKeyDTO;
-                                logger.debug(referenceBO, ": looking up - ", referenceKeyDTO);
+                                if (debugEnabled) {
+                                    logger.debug(referenceBO, ": looking up - ", referenceKeyDTO);
+                                }
 
                                 try {
                                     boolean executeFindByPrimaryKey = true;
@@ -188,8 +222,43 @@ public class ReferenceMGRLocal {
 //                                            DTOUtils.copyDtoDeclaredFields(ancestorDTO, referenceDTO);
                                             executeFindByPrimaryKey = false;
 //                                            propertyBagDTO.getPropertyMap().put("recursiveNodeEncountered", true);
-                                            logger.debug(METHODNAME, "Hit a recursive DTO: ", referenceKeyDTO);
-                                            logger.debug(METHODNAME, "    ancestorList: ", ancestorList);
+                                            if (debugEnabled) {
+                                                logger.debug(METHODNAME, "Hit a recursive DTO: ", referenceKeyDTO);
+                                                logger.debug(METHODNAME, "    ancestorList: ", ancestorList);
+                                            }
+                                        }
+                                    }
+
+                                    // Non-cached reference already read during this call?
+                                    boolean useIdentityMap = !DTODescriptor.getInstance(referenceDTOClass).isCached();
+                                    if (executeFindByPrimaryKey && useIdentityMap) {
+                                        BaseDTO identityDTO = IdentityMapUtils.get(referenceDTOClass, referenceKeyDTO.getPrimaryKey(), childClassDTOs, propertyBagDTO);
+                                        if (identityDTO != null) {
+                                            referenceDTO = identityDTO;
+                                            executeFindByPrimaryKey = false;
+                                        }
+                                    }
+
+                                    // Self reference - read the whole ancestor chain with one hierarchy query when the BO supports it
+                                    if (executeFindByPrimaryKey && useIdentityMap && referenceDTOClass == parentDTO.getClass()) {
+                                        String callingMGR = CoreConstants.CALLINGMGR + getClass().getSimpleName();
+                                        propertyBagDTO.put(callingMGR, true);
+                                        Map<Object, BaseDTO> ancestorMap;
+                                        try {
+                                            ancestorMap = referenceBO.findAncestorsMain(referenceKeyDTO, field, childClassDTOs, sessionDTO, propertyBagDTO);
+                                        } finally {
+                                            propertyBagDTO.remove(callingMGR);
+                                        }
+                                        if (ancestorMap != null) {
+                                            referenceDTO = ancestorMap.get(referenceKeyDTO.getPrimaryKey());
+                                            if (referenceDTO == null) {
+                                                throw new NotFoundException("The ReferenceDTOClass " + referenceDTOClass.getName()
+                                                        + " primaryKey=" + referenceKeyDTO.getPrimaryKey() + " was not found in the hierarchy.");
+                                            }
+                                            for (BaseDTO ancestorDTO : ancestorMap.values()) {
+                                                IdentityMapUtils.put(referenceDTOClass, childClassDTOs, ancestorDTO, propertyBagDTO);
+                                            }
+                                            executeFindByPrimaryKey = false;
                                         }
                                     }
 
@@ -198,12 +267,19 @@ public class ReferenceMGRLocal {
                                         String callingMGR = CoreConstants.CALLINGMGR + getClass().getSimpleName();
                                         propertyBagDTO.put(callingMGR, true);
                                         referenceDTO = referenceBO.findByPrimaryKeyMain(referenceKeyDTO, childClassDTOs, sessionDTO, propertyBagDTO);
-                                        logger.debug(METHODNAME, "found referenceDTO: ", referenceDTO);
+                                        if (debugEnabled) {
+                                            logger.debug(METHODNAME, "found referenceDTO: ", referenceDTO);
+                                        }
                                         propertyBagDTO.remove(callingMGR);
+                                        if (useIdentityMap) {
+                                            IdentityMapUtils.put(referenceDTOClass, childClassDTOs, referenceDTO, propertyBagDTO);
+                                        }
                                     }
 
                                 } catch (NotFoundException e) {
-                                    logger.debug("NotFoundException encountered: ", isNotFoundAllowed);
+                                    if (debugEnabled) {
+                                        logger.debug("NotFoundException encountered: ", isNotFoundAllowed);
+                                    }
                                     if (!isNotFoundAllowed) {
                                         logger.error(METHODNAME,
                                                 "A NotFoundException has occurred on referenceKeyDTO.getPrimaryKey()=",
@@ -223,17 +299,22 @@ public class ReferenceMGRLocal {
                         }
                     }
 
-                    // don't want children of referenceDTO present on field.
+                    // don't want children of referenceDTO present on field - set a children free snapshot shared within the call
                     if (referenceDTO != null && isDiscardChildren) {
-                        referenceDTO = DeepCopy.copy(referenceDTO);
-                        referenceDTO.setChildDTOMap(new HashMap<Class, List<BaseDTO>>());
+                        long version = DTODescriptor.getInstance(referenceDTOClass).isCached() ? cacheMGRLocal.getCacheVersion(referenceDTOClass) : 0;
+                        referenceDTO = ReferenceSnapshotUtils.getSnapshot(referenceDTO, version, propertyBagDTO);
+                        try {
+                            field.set(parentDTO, referenceDTO);
+                        } catch (IllegalArgumentException | IllegalAccessException e) {
+                            logger.error(METHODNAME, "An ", e.getClass().getSimpleName(), " has occurred, Message: ", e.getMessage(), e);
+                        }
                     }
                 }
             } else {
                 logger.warn(METHODNAME, "Parent DTO was null: ", parentDTO);
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "ReferenceMGRLocal", METHODNAME, parentDTO);
             if (logger.isDebugEnabled()) {
                 logger.logDuration(
                         METHODNAME + "for " + (fields != null ? fields.size() : 0) + " fields on "
@@ -267,8 +348,10 @@ public class ReferenceMGRLocal {
             AuthenticationException, AuthorizationException, ConstraintViolationException {
 
         final String METHODNAME = "deleteReferenceDTO ";
-        logger.logBegin(METHODNAME);
-        logger.debug(METHODNAME, "parentDTO=", parentDTO);
+        final long traceStart = TraceUtils.start(parentDTO);
+        if (logger.isDebugEnabled()) {
+            logger.debug(METHODNAME, "parentDTO=", parentDTO);
+        }
         List<Field> referenceDTOs = null;
         long start = System.nanoTime();
 
@@ -335,7 +418,7 @@ public class ReferenceMGRLocal {
                 logger.warn(METHODNAME, "Parent DTO was null: ", parentDTO);
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "ReferenceMGRLocal", METHODNAME, parentDTO);
             if (logger.isDebugEnabled()) {
                 logger.logDuration(
                         METHODNAME + "for " + (referenceDTOs != null ? referenceDTOs.size() : 0) + " referenceDTOs on "
@@ -369,8 +452,10 @@ public class ReferenceMGRLocal {
             AuthenticationException, AuthorizationException, ConstraintViolationException {
 
         final String METHODNAME = "addOrUpdateReferenceDTO ";
-        logger.logBegin(METHODNAME);
-        logger.debug(METHODNAME, "queryClass=", queryClass);
+        final long traceStart = TraceUtils.start(parentDTO);
+        if (logger.isDebugEnabled()) {
+            logger.debug(METHODNAME, "queryClass=", queryClass);
+        }
         List<Field> referenceDTOs = null;
         long start = System.nanoTime();
 
@@ -431,7 +516,7 @@ public class ReferenceMGRLocal {
                 logger.warn("Parent DTO was null: ", parentDTO);
             }
         } finally {
-            logger.logEnd(METHODNAME);
+            TraceUtils.end(traceStart, "ReferenceMGRLocal", METHODNAME, parentDTO);
 //            logger.logDuration(
 //                    METHODNAME + "for " + (referenceDTOs != null ? referenceDTOs.size() : 0) + " referenceDTOs on "
 //                    + (parentDTO != null ? parentDTO.getClass().getSimpleName() : null), start);
@@ -0,0 +1,315 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.cdsframework.base.BaseDTO;
+import org.cdsframework.dto.PropertyBagDTO;
+import org.cdsframework.dto.SessionDTO;
+import org.cdsframework.enumeration.PermissionType;
+import org.cdsframework.exceptions.MtsException;
+
+/**
+ * Holds the granted authorization decisions of BaseSecurityMGR.checkAuthority keyed by session id, DTO class, permission type and
+ * the property bag inputs of the check (AUTHORIZATION_CACHE_KEY_PROPERTIES, default checkAuthSrc) so that repeated BO calls of a
+ * session do not resolve the same permission again. Only grants are held - a denial always goes back to the security manager. A
+ * hit also needs a valid session - the result of the session validity check is held per session id for the same time, so a session
+ * is checked once per period rather than on every hit. Entries expire after AUTHORIZATION_CACHE_SECONDS (default 0 - disabled) and
+ * the cache holds at most AUTHORIZATION_CACHE_MAX_ENTRIES decisions and as many session results. Every decision is dropped after the completion
+ * of a transaction that wrote a DTO class listed in AUTHORIZATION_CACHE_INVALIDATING_CLASSES (comma separated simple names, default
+ * the session, user, app, security scheme and permission DTOs) through its BO. Security implementations should call
+ * invalidateSession when they remove a session and invalidateAll when permissions change outside of the BO layer.
+ *
+ * @author HLN Consulting, LLC
+ */
+public class AuthorizationCache {
+
+    private final static LogUtils logger = LogUtils.getLogger(AuthorizationCache.class);
+    private final static char KEY_SEPARATOR = '\u0000';
+    private final static String INVALIDATE_KEY = AuthorizationCache.class.getName() + ".invalidate";
+    private final static AtomicLong HITS = new AtomicLong();
+    private final static AtomicLong MISSES = new AtomicLong();
+    private static volatile boolean configured = false;
+    private static volatile int seconds = 0;
+    private static volatile int maxEntries = 10000;
+    private static volatile Set<String> invalidatingClasses = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "SessionDTO", "UserDTO", "AppDTO", "AppUserDTO", "SecuritySchemeDTO", "SecuritySchemeRelMapDTO", "SecurityPermissionDTO",
+            "UserSecuritySchemeMapDTO")));
+    private static volatile List<String> keyProperties = Collections.singletonList("checkAuthSrc");
+    private final static Map<String, Long> DECISIONS = new ConcurrentHashMap<String, Long>();
+    private final static Map<String, Long> VALID_SESSIONS = new ConcurrentHashMap<String, Long>();
+    private final static Runnable INVALIDATE_ALL = new Runnable() {
+        @Override
+        public void run() {
+            invalidateAll();
+        }
+    };
+
+    /**
+     * Applies the cache settings - done once, when the first BO is constructed. A null argument leaves the current setting in
+     * place.
+     *
+     * @param cacheSeconds
+     * @param cacheMaxEntries
+     * @param invalidatingClassNames
+     * @param keyPropertyNames
+     */
+    public static void configure(Integer cacheSeconds, Integer cacheMaxEntries, Collection<String> invalidatingClassNames,
+            Collection<String> keyPropertyNames) {
+        final String METHODNAME = "configure ";
+        if (cacheSeconds != null) {
+            seconds = cacheSeconds;
+        }
+        if (cacheMaxEntries != null && cacheMaxEntries > 0) {
+            maxEntries = cacheMaxEntries;
+        }
+        if (invalidatingClassNames != null) {
+            invalidatingClasses = Collections.unmodifiableSet(new HashSet<String>(trim(invalidatingClassNames)));
+        }
+        if (keyPropertyNames != null) {
+            keyProperties = Collections.unmodifiableList(trim(keyPropertyNames));
+        }
+        if (seconds <= 0) {
+            invalidateAll();
+        }
+        configured = true;
+        logger.info(METHODNAME, "seconds=", seconds, " maxEntries=", maxEntries, " invalidatingClasses=", invalidatingClasses,
+                " keyProperties=", keyProperties);
+    }
+
+    private static List<String> trim(Collection<String> names) {
+        List<String> result = new ArrayList<String>();
+        for (String name : names) {
+            if (name != null && !name.trim().isEmpty()) {
+                result.add(name.trim());
+            }
+        }
+        return result;
+    }
+
+    public static boolean isConfigured() {
+        return configured;
+    }
+
+    public static boolean isEnabled() {
+        return seconds > 0;
+    }
+
+    /**
+     * Returns the cache key of an authorization decision or null when the cache is disabled or the session has no id.
+     *
+     * @param sessionDTO
+     * @param dtoClass
+     * @param permissionType
+     * @param propertyBagDTO
+     * @return
+     */
+    public static String getKey(SessionDTO sessionDTO, Class<? extends BaseDTO> dtoClass, PermissionType permissionType,
+            PropertyBagDTO propertyBagDTO) {
+        if (!isEnabled() || sessionDTO == null || sessionDTO.getSessionId() == null || dtoClass == null || permissionType == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder();
+        key.append(sessionDTO.getSessionId()).append(KEY_SEPARATOR);
+        key.append(dtoClass.getName()).append(KEY_SEPARATOR);
+        key.append(permissionType.name());
+        for (String keyProperty : keyProperties) {
+            key.append(KEY_SEPARATOR).append(propertyBagDTO != null ? propertyBagDTO.get(keyProperty) : null);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns whether an unexpired grant is held for the key.
+     *
+     * @param key
+     * @return
+     */
+    public static boolean isGranted(String key) {
+        if (key == null || !isEnabled()) {
+            return false;
+        }
+        boolean result = false;
+        Long expires = DECISIONS.get(key);
+        if (expires != null) {
+            if (expires > System.currentTimeMillis()) {
+                result = true;
+            } else {
+                DECISIONS.remove(key, expires);
+            }
+        }
+        if (result) {
+            HITS.incrementAndGet();
+        } else {
+            MISSES.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Records a grant for the key. When the cache is full the expired decisions are dropped first, then arbitrary ones.
+     *
+     * @param key
+     */
+    public static void grant(String key) {
+        int cacheSeconds = seconds;
+        if (key != null && cacheSeconds > 0) {
+            if (DECISIONS.size() >= maxEntries) {
+                trimEntries(DECISIONS);
+            }
+            DECISIONS.put(key, System.currentTimeMillis() + cacheSeconds * 1000L);
+        }
+    }
+
+    /**
+     * Returns whether the session was found valid within the cache period.
+     *
+     * @param sessionDTO
+     * @return
+     */
+    public static boolean isSessionValid(SessionDTO sessionDTO) {
+        if (sessionDTO == null || sessionDTO.getSessionId() == null || !isEnabled()) {
+            return false;
+        }
+        Long expires = VALID_SESSIONS.get(sessionDTO.getSessionId());
+        if (expires != null) {
+            if (expires > System.currentTimeMillis()) {
+                return true;
+            }
+            VALID_SESSIONS.remove(sessionDTO.getSessionId(), expires);
+        }
+        return false;
+    }
+
+    /**
+     * Records that the security manager found the session valid.
+     *
+     * @param sessionDTO
+     */
+    public static void sessionValid(SessionDTO sessionDTO) {
+        int cacheSeconds = seconds;
+        if (sessionDTO != null && sessionDTO.getSessionId() != null && cacheSeconds > 0) {
+            if (VALID_SESSIONS.size() >= maxEntries) {
+                trimEntries(VALID_SESSIONS);
+            }
+            VALID_SESSIONS.put(sessionDTO.getSessionId(), System.currentTimeMillis() + cacheSeconds * 1000L);
+        }
+    }
+
+    private static void trimEntries(Map<String, Long> entries) {
+        long now = System.currentTimeMillis();
+        Iterator<Long> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() <= now) {
+                iterator.remove();
+            }
+        }
+        iterator = entries.values().iterator();
+        while (entries.size() >= maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Drops the decisions and the validity result of a session.
+     *
+     * @param sessionId
+     */
+    public static void invalidateSession(String sessionId) {
+        if (sessionId != null) {
+            VALID_SESSIONS.remove(sessionId);
+            String prefix = sessionId + KEY_SEPARATOR;
+            Iterator<String> iterator = DECISIONS.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().startsWith(prefix)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every decision after the completion of the current transaction when the written DTO class is one of the
+     * AUTHORIZATION_CACHE_INVALIDATING_CLASSES - dropping them before the commit would let a concurrent check cache a decision
+     * made on the data being replaced.
+     *
+     * @param dtoClass
+     */
+    public static void invalidate(Class<? extends BaseDTO> dtoClass) {
+        final String METHODNAME = "invalidate ";
+        if (dtoClass != null && isEnabled() && invalidatingClasses.contains(dtoClass.getSimpleName())) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(METHODNAME, "write of ", dtoClass.getSimpleName(), " - dropping all authorization decisions");
+            }
+            try {
+                EJBUtils.runAfterCompletion(INVALIDATE_KEY, INVALIDATE_ALL);
+            } catch (MtsException | IllegalStateException e) {
+                logger.warn(METHODNAME, "dropping the decisions now - ", e.getMessage());
+                invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * Drops every decision.
+     */
+    public static void invalidateAll() {
+        DECISIONS.clear();
+        VALID_SESSIONS.clear();
+    }
+
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    public static int getSize() {
+        return DECISIONS.size();
+    }
+
+    /**
+     * Discard the recorded hit and miss counts.
+     */
+    public static void resetStatistics() {
+        HITS.set(0);
+        MISSES.set(0);
+    }
+}
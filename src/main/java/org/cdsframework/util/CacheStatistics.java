@@ -0,0 +1,213 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.cdsframework.base.BaseDTO;
+
+/**
+ * Per DTO class cache counters and timers. Kept outside of CacheMGRLocal so that they can be updated without acquiring the
+ * singleton's container lock.
+ *
+ * @author HLN Consulting, LLC
+ */
+public class CacheStatistics {
+
+    private final static ConcurrentMap<Class<? extends BaseDTO>, CacheStatistics> REGISTRY = new ConcurrentHashMap<Class<? extends BaseDTO>, CacheStatistics>();
+    private final Class<? extends BaseDTO> dtoClass;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong snapshotLoads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private final AtomicLong lastLoadNanos = new AtomicLong();
+    private final AtomicLong lockWaitNanos = new AtomicLong();
+    private final AtomicLong purges = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> purgesByCause = new ConcurrentHashMap<String, AtomicLong>();
+
+    private CacheStatistics(Class<? extends BaseDTO> dtoClass) {
+        this.dtoClass = dtoClass;
+    }
+
+    /**
+     * Returns the statistics of a DTO class, creating them on first use.
+     *
+     * @param dtoClass
+     * @return
+     */
+    public static CacheStatistics get(Class<? extends BaseDTO> dtoClass) {
+        CacheStatistics result = REGISTRY.get(dtoClass);
+        if (result == null) {
+            CacheStatistics created = new CacheStatistics(dtoClass);
+            result = REGISTRY.putIfAbsent(dtoClass, created);
+            if (result == null) {
+                result = created;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the statistics of every DTO class recorded so far.
+     *
+     * @return
+     */
+    public static List<CacheStatistics> getAll() {
+        return new ArrayList<CacheStatistics>(REGISTRY.values());
+    }
+
+    /**
+     * Discard all recorded statistics.
+     */
+    public static void resetAll() {
+        REGISTRY.clear();
+    }
+
+    public Class<? extends BaseDTO> getDtoClass() {
+        return dtoClass;
+    }
+
+    public void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    public void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    public void recordNegativeHit() {
+        negativeHits.incrementAndGet();
+    }
+
+    /**
+     * Record a cache load.
+     *
+     * @param nanos the load duration
+     * @param fromSnapshot whether the load was served by a snapshot file rather than the database
+     */
+    public void recordLoad(long nanos, boolean fromSnapshot) {
+        loads.incrementAndGet();
+        if (fromSnapshot) {
+            snapshotLoads.incrementAndGet();
+        }
+        loadNanos.addAndGet(nanos);
+        lastLoadNanos.set(nanos);
+    }
+
+    /**
+     * Record a purge.
+     *
+     * @param causeClass the DTO class whose change caused the purge - null for an explicit purge
+     */
+    public void recordPurge(Class<? extends BaseDTO> causeClass) {
+        purges.incrementAndGet();
+        String cause = causeClass != null ? causeClass.getSimpleName() : "explicit";
+        AtomicLong counter = purgesByCause.get(cause);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = purgesByCause.putIfAbsent(cause, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Record the time spent waiting for the lock of a write-locked cache manager call.
+     *
+     * @param nanos
+     */
+    public void recordLockWait(long nanos) {
+        lockWaitNanos.addAndGet(nanos);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.get();
+    }
+
+    public long getLoads() {
+        return loads.get();
+    }
+
+    public long getSnapshotLoads() {
+        return snapshotLoads.get();
+    }
+
+    public long getLoadNanos() {
+        return loadNanos.get();
+    }
+
+    public long getLastLoadNanos() {
+        return lastLoadNanos.get();
+    }
+
+    public long getLockWaitNanos() {
+        return lockWaitNanos.get();
+    }
+
+    public long getPurges() {
+        return purges.get();
+    }
+
+    /**
+     * Returns a point in time copy of the counters. Purges by cause are keyed as purges.[cause class].
+     *
+     * @return
+     */
+    public Map<String, Long> toMap() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        result.put("hits", getHits());
+        result.put("misses", getMisses());
+        result.put("negativeHits", getNegativeHits());
+        result.put("loads", getLoads());
+        result.put("snapshotLoads", getSnapshotLoads());
+        result.put("loadMillis", getLoadNanos() / 1000000L);
+        result.put("lastLoadMillis", getLastLoadNanos() / 1000000L);
+        result.put("lockWaitMillis", getLockWaitNanos() / 1000000L);
+        result.put("purges", getPurges());
+        for (Map.Entry<String, AtomicLong> entry : purgesByCause.entrySet()) {
+            result.put("purges." + entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+}
@@ -60,6 +60,7 @@ public class Constants {
     public static final String MTS_EXTERNAL_DB_RESOURCE_ID = "MTS";
 
     public static String APP_SERVER = null;
+    private static final long DEFAULT_REPLICA_MAX_LAG_MILLIS = 5000;
 
     static {
         PLSQL_ERROR_CODES.put(-20010, "Fatal database error.");
@@ -84,7 +85,7 @@ public class Constants {
                 if (resource.contains("|")) {
                     String[] resourceItems = resource.split("\\|");
                     logger.info("resourceItems.length=", resourceItems.length);
-                    if (resourceItems.length == 4) {
+                    if (resourceItems.length >= 4 && resourceItems.length <= 6) {
                         String resourceId = resourceItems[0].trim().toUpperCase();
                         //String jndiName = resourceItems[1].trim().toLowerCase();
                         String jndiName = resourceItems[1].trim();
@@ -94,6 +95,29 @@ public class Constants {
                         DatabaseResource databaseResource = DB_RESOURCES.get(resourceId);
                         if (databaseResource == null) {
                             databaseResource = new DatabaseResource(resourceId, jndiName, resourceType, schemaOwner);
+                            // optional read only replicas: id|jndi|type|schema|replicaJndi;replicaJndi[|routingPolicy[:maxLagMillis]]
+                            if (resourceItems.length >= 5) {
+                                for (String replicaJndiName : resourceItems[4].split(";")) {
+                                    if (!replicaJndiName.trim().isEmpty()) {
+                                        databaseResource.getReplicas().add(new ReplicaDataSource(replicaJndiName.trim(), resourceType));
+                                    }
+                                }
+                                String routingPolicy = resourceItems.length == 6 ? resourceItems[5].trim() : null;
+                                long maxLagMillis = DEFAULT_REPLICA_MAX_LAG_MILLIS;
+                                if (routingPolicy != null && routingPolicy.contains(":")) {
+                                    try {
+                                        maxLagMillis = Long.parseLong(routingPolicy.substring(routingPolicy.indexOf(':') + 1).trim());
+                                    } catch (NumberFormatException e) {
+                                        throw new MtsException("Malformed replica max lag: " + resource, e);
+                                    }
+                                    routingPolicy = routingPolicy.substring(0, routingPolicy.indexOf(':'));
+                                }
+                                if (ReplicaRoutingPolicy.LAG_AWARE.equalsIgnoreCase(routingPolicy)
+                                        && !ReplicaDataSource.isLagProbeSupported(resourceType)) {
+                                    throw new MtsException("Replica lag is not probed on " + resourceType + ": " + resource);
+                                }
+                                databaseResource.setReplicaRoutingPolicy(ReplicaRoutingPolicy.getInstance(routingPolicy, maxLagMillis));
+                            }
                             DB_RESOURCES.put(resourceId, databaseResource);
                             logger.info("initialized db resource: ", resourceId, " - ", databaseResource);
                         } else {
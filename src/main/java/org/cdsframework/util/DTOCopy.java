@@ -27,11 +27,21 @@
 package org.cdsframework.util;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.xml.bind.annotation.XmlTransient;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.cdsframework.annotation.ReferenceDTO;
@@ -40,28 +50,29 @@ import org.cdsframework.enumeration.DTOState;
 import org.cdsframework.exceptions.MtsException;
 
 /**
+ * Copies the properties of a DTO onto another DTO of the same class. The copy plan of a class - the copied fields, their
+ * accessors and reference DTO annotations - is computed once and the values are moved through cached method handles.
  *
  * @author HLN Consulting LLC
  */
 public class DTOCopy {
 
     private final static LogUtils logger = LogUtils.getLogger(DTOCopy.class);
+    private final static Map<Class, List<CopyProperty>> COPY_PLANS = new ConcurrentHashMap<Class, List<CopyProperty>>();
+    private final static MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private final static MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
 
     public static BaseDTO copyProperty(BaseDTO sourceDTO, BaseDTO targetDTO) throws MtsException {
         final String METHODNAME = "copyProperty ";
 
         Class objClass = targetDTO.getClass();
-        List<Field> fields = ClassUtils.getNonBaseDTODeclaredFields(objClass);
-        for (Field field : fields) {
+        boolean sameClass = objClass == sourceDTO.getClass();
+        for (CopyProperty copyProperty : getCopyPlan(objClass)) {
             try {
-                XmlTransient xmlTransient = field.getAnnotation(XmlTransient.class);
-                JsonProperty jsonProperty = field.getAnnotation(JsonProperty.class);
-                if (xmlTransient == null || jsonProperty != null ) {
-                    DTOCopy.copyProperty(sourceDTO, targetDTO, field);
-                }
+                DTOCopy.copyProperty(sourceDTO, targetDTO, copyProperty, sameClass);
             } catch (java.lang.ArrayStoreException e) {
-                logger.error(METHODNAME + "field.getName(): " + field.getName() + " caused an exception " + e.getMessage());
-                DTOCopy.copyProperty(sourceDTO, targetDTO, field);
+                logger.error(METHODNAME + "field.getName(): " + copyProperty.name + " caused an exception " + e.getMessage());
+                DTOCopy.copyProperty(sourceDTO, targetDTO, copyProperty, sameClass);
             }
         }
         
@@ -69,6 +80,54 @@ public class DTOCopy {
         return targetDTO;
     }
 
+    /**
+     * Returns the copy plan of a DTO class - its non BaseDTO declared fields that are not XmlTransient (unless they carry a
+     * JsonProperty) with their accessors and ReferenceDTO annotation.
+     *
+     * @param dtoClass
+     * @return
+     * @throws MtsException
+     */
+    private static List<CopyProperty> getCopyPlan(Class dtoClass) throws MtsException {
+        List<CopyProperty> copyPlan = COPY_PLANS.get(dtoClass);
+        if (copyPlan == null) {
+            Map<String, PropertyDescriptor> propertyDescriptors = new HashMap<String, PropertyDescriptor>();
+            try {
+                for (PropertyDescriptor propertyDescriptor : Introspector.getBeanInfo(dtoClass).getPropertyDescriptors()) {
+                    propertyDescriptors.put(propertyDescriptor.getName(), propertyDescriptor);
+                }
+            } catch (IntrospectionException e) {
+                throw new MtsException(e.getMessage(), e);
+            }
+            copyPlan = new ArrayList<CopyProperty>();
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            List<Field> fields = ClassUtils.getNonBaseDTODeclaredFields(dtoClass);
+            for (Field field : fields) {
+                XmlTransient xmlTransient = field.getAnnotation(XmlTransient.class);
+                JsonProperty jsonProperty = field.getAnnotation(JsonProperty.class);
+                if (xmlTransient == null || jsonProperty != null) {
+                    PropertyDescriptor propertyDescriptor = propertyDescriptors.get(field.getName());
+                    MethodHandle getter = null;
+                    MethodHandle setter = null;
+                    try {
+                        if (propertyDescriptor != null && propertyDescriptor.getReadMethod() != null) {
+                            getter = lookup.unreflect(propertyDescriptor.getReadMethod()).asType(GETTER_TYPE);
+                        }
+                        if (propertyDescriptor != null && propertyDescriptor.getWriteMethod() != null) {
+                            setter = lookup.unreflect(propertyDescriptor.getWriteMethod()).asType(SETTER_TYPE);
+                        }
+                    } catch (IllegalAccessException e) {
+                        // left to PropertyUtils at copy time
+                        logger.debug("getCopyPlan ", dtoClass.getSimpleName(), ".", field.getName(), ": ", e.getMessage());
+                    }
+                    copyPlan.add(new CopyProperty(field.getName(), getter, setter, field.getAnnotation(ReferenceDTO.class)));
+                }
+            }
+            COPY_PLANS.put(dtoClass, copyPlan);
+        }
+        return copyPlan;
+    }
+
     private static void copyChildDTOMap(BaseDTO sourceDTO, BaseDTO targetDTO) {
         if (!sourceDTO.getChildDTOMap().isEmpty()) {
             Set<Entry<Class, List<BaseDTO>>> childDTOMapEntrySet = sourceDTO.getChildDTOMap().entrySet();
@@ -131,20 +190,20 @@ public class DTOCopy {
         
     }
     
-    private static void copyProperty(BaseDTO sourceDTO, BaseDTO targetDTO, Field field) throws MtsException {
+    private static void copyProperty(BaseDTO sourceDTO, BaseDTO targetDTO, CopyProperty copyProperty, boolean sameClass) throws MtsException {
         final String METHODNAME = "copyProperty ";
         try {
-            Object sourceValue = PropertyUtils.getProperty(sourceDTO, field.getName());
+            Object sourceValue = sameClass ? copyProperty.getValue(sourceDTO) : PropertyUtils.getProperty(sourceDTO, copyProperty.name);
             if (logger.isDebugEnabled()) {
                 logger.debug(METHODNAME + "sourceValue=" + sourceValue);
             }
 
             if (sourceValue instanceof BaseDTO) {
-                Object targetValue = PropertyUtils.getProperty(targetDTO, field.getName());
-                ReferenceDTO referenceDTOAnnotation = field.getAnnotation(ReferenceDTO.class);
+                Object targetValue = copyProperty.getValue(targetDTO);
+                ReferenceDTO referenceDTOAnnotation = copyProperty.referenceDTO;
 
                 if (logger.isDebugEnabled()) {
-                    logger.debug(METHODNAME + "sourceValue is a BaseDTO, field.getName()=" + field.getName() + " sourceValue.getClass().getSimpleName()=" + sourceValue.getClass().getSimpleName());
+                    logger.debug(METHODNAME + "sourceValue is a BaseDTO, field.getName()=" + copyProperty.name + " sourceValue.getClass().getSimpleName()=" + sourceValue.getClass().getSimpleName());
                     logger.debug(METHODNAME + "targetValue=" + targetValue);
                     logger.debug(METHODNAME + "referenceDTOAnnotation=" + referenceDTOAnnotation);
                 }
@@ -169,14 +228,14 @@ public class DTOCopy {
                                 sourceValue = null;
                             }
 //                        }
-                        PropertyUtils.setProperty(targetDTO, field.getName(), sourceValue);
-                        targetDTO.propertyChanged(field.getName(), sourceValue, true);
+                        copyProperty.setValue(targetDTO, sourceValue);
+                        targetDTO.propertyChanged(copyProperty.name, sourceValue, true);
                     }
                 }
 
             } else {
                 if (logger.isDebugEnabled()) {
-                    logger.debug(METHODNAME + "sourceValue=" + sourceValue + " field.getName()=" + field.getName());
+                    logger.debug(METHODNAME + "sourceValue=" + sourceValue + " field.getName()=" + copyProperty.name);
                 }
 
                 // Handle empty String vs NULL case
@@ -186,8 +245,8 @@ public class DTOCopy {
                         sourceValue = null;
                     }
                 }
-                PropertyUtils.setProperty(targetDTO, field.getName(), sourceValue);
-                targetDTO.propertyChanged(field.getName(), sourceValue, true);
+                copyProperty.setValue(targetDTO, sourceValue);
+                targetDTO.propertyChanged(copyProperty.name, sourceValue, true);
             }
 
         } catch (IllegalAccessException ex) {
@@ -203,4 +262,49 @@ public class DTOCopy {
 
     }
 
+    /**
+     * A copied property of a DTO class. Accessors that could not be resolved to a method handle go through PropertyUtils, which
+     * reports the missing accessor as before. Exceptions thrown by the accessors are wrapped in an InvocationTargetException
+     * either way, so that copyProperty reports them as an MtsException.
+     */
+    private static class CopyProperty {
+
+        private final String name;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final ReferenceDTO referenceDTO;
+
+        CopyProperty(String name, MethodHandle getter, MethodHandle setter, ReferenceDTO referenceDTO) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+            this.referenceDTO = referenceDTO;
+        }
+
+        Object getValue(BaseDTO baseDTO) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+            if (getter == null) {
+                return PropertyUtils.getProperty(baseDTO, name);
+            }
+            try {
+                return (Object) getter.invokeExact((Object) baseDTO);
+            } catch (Throwable e) {
+                // as reflective access through PropertyUtils - whatever the accessor throws is wrapped
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        void setValue(BaseDTO baseDTO, Object value) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+            if (setter == null) {
+                PropertyUtils.setProperty(baseDTO, name, value);
+                return;
+            }
+            try {
+                setter.invokeExact((Object) baseDTO, value);
+            } catch (Throwable e) {
+                // as reflective access through PropertyUtils - whatever the accessor throws is wrapped
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,325 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.util;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.validation.Validator;
+import javax.validation.metadata.BeanDescriptor;
+import javax.validation.metadata.ConstraintDescriptor;
+import javax.validation.metadata.PropertyDescriptor;
+import org.cdsframework.annotation.Cached;
+import org.cdsframework.annotation.ParentChildRelationship;
+import org.cdsframework.annotation.ReferenceDTO;
+import org.cdsframework.annotation.RowsReturnCountBehavior;
+import org.cdsframework.base.BaseDTO;
+import org.cdsframework.exceptions.MtsException;
+import org.cdsframework.util.comparator.ParentChildRelationshipAddUpdateOrderComparator;
+import org.cdsframework.util.comparator.ParentChildRelationshipDeleteOrderComparator;
+
+/**
+ * The DTOUtils metadata of a DTO class, read once and answered with field reads afterwards. The annotations of a DTO class do not
+ * change after deployment, so the descriptor of a class is built on first use and shared. Answers that depend on a foreign key
+ * class are memoized per foreign key class.
+ *
+ * @author HLN Consulting, LLC
+ */
+public final class DTODescriptor {
+
+    private final static Map<Class, DTODescriptor> DESCRIPTORS = new ConcurrentHashMap<Class, DTODescriptor>();
+    private final static Class NO_QUERY_CLASS = Void.class;
+
+    private final Class<? extends BaseDTO> dtoClass;
+    private final boolean cached;
+    private final Cached cachedAnnotation;
+    private final boolean refreshOnAddOrUpdate;
+    private final boolean noDAO;
+    private final boolean readOnly;
+    private final boolean addAllowed;
+    private final boolean deleteAllowed;
+    private final boolean updateAllowed;
+    private final boolean deletesChild;
+    private final boolean addsChild;
+    private final boolean updatesChild;
+    private final RowsReturnCountBehavior rowsReturnCountBehavior;
+    private final List<Field> pkGeneratedSourceSequenceFields;
+    private final List<Class> dtoChildClasses;
+    private final boolean referenceDTOs;
+    private final Map<Class<? extends BaseDTO>, Class> dtoQueryMap;
+    private final Map<?, ParentChildRelationship> parentChildRelationshipMapByQueryClass;
+    private final List<Class> childQueryClassDeleteOrder;
+    private final List<Class> childQueryClassAddUpdateOrder;
+    private final Map<Class, Boolean> autoRetrieveMap = new ConcurrentHashMap<Class, Boolean>();
+    private final Map<Class, Boolean> childNotFoundAllowedMap = new ConcurrentHashMap<Class, Boolean>();
+    private final Map<Class, Boolean> vanityMap = new ConcurrentHashMap<Class, Boolean>();
+    private final Map<Class, Class> childQueryClassMap = new ConcurrentHashMap<Class, Class>();
+    private volatile Map<String, Set<ConstraintDescriptor<?>>> propertyConstraints;
+    private volatile boolean changedPropertyValidationSupported;
+
+    private DTODescriptor(Class<? extends BaseDTO> dtoClass) {
+        this.dtoClass = dtoClass;
+        cached = DTOUtils.isCached(dtoClass);
+        cachedAnnotation = DTOUtils.getCached(dtoClass);
+        refreshOnAddOrUpdate = DTOUtils.isRefreshOnAddOrUpdate(dtoClass);
+        Boolean isNoDAO = DTOUtils.isNoDAO(dtoClass);
+        noDAO = isNoDAO != null && isNoDAO;
+        readOnly = DTOUtils.isReadOnly(dtoClass);
+        addAllowed = DTOUtils.isAddAllowed(dtoClass);
+        deleteAllowed = DTOUtils.isDeleteAllowed(dtoClass);
+        updateAllowed = DTOUtils.isUpdateAllowed(dtoClass);
+        deletesChild = DTOUtils.deletesChild(dtoClass);
+        addsChild = DTOUtils.addsChild(dtoClass);
+        updatesChild = DTOUtils.updatesChild(dtoClass);
+        rowsReturnCountBehavior = DTOUtils.getRowsReturnCountBehaviorValue(dtoClass);
+        pkGeneratedSourceSequenceFields = Collections.unmodifiableList(new ArrayList<Field>(DTOUtils.getPKGeneratedSourceSequenceFields(dtoClass)));
+        dtoChildClasses = Collections.unmodifiableList(new ArrayList<Class>(DTOUtils.getDtoChildClasses(dtoClass)));
+        boolean hasReferenceDTOs = false;
+        for (Field field : ClassUtils.getNonBaseDTODeclaredFields(dtoClass)) {
+            if (field.isAnnotationPresent(ReferenceDTO.class)) {
+                hasReferenceDTOs = true;
+                break;
+            }
+        }
+        referenceDTOs = hasReferenceDTOs;
+        dtoQueryMap = Collections.unmodifiableMap(DTOUtils.getDtoQueryMap(dtoClass));
+        parentChildRelationshipMapByQueryClass = Collections.unmodifiableMap(DTOUtils.getParentChildRelationshipMapByQueryClass(dtoClass));
+
+        List<ParentChildRelationship> parentChildRelationships = new ArrayList<ParentChildRelationship>(DTOUtils.getParentChildRelationshipMapByDTO(dtoClass).values());
+        List<Class> deleteOrder = new LinkedList<Class>();
+        Collections.sort(parentChildRelationships, new ParentChildRelationshipDeleteOrderComparator());
+        for (ParentChildRelationship parentChildRelationship : parentChildRelationships) {
+            deleteOrder.add(parentChildRelationship.childQueryClass());
+        }
+        childQueryClassDeleteOrder = Collections.unmodifiableList(deleteOrder);
+        List<Class> addUpdateOrder = new LinkedList<Class>();
+        Collections.sort(parentChildRelationships, new ParentChildRelationshipAddUpdateOrderComparator());
+        for (ParentChildRelationship parentChildRelationship : parentChildRelationships) {
+            addUpdateOrder.add(parentChildRelationship.childQueryClass());
+        }
+        childQueryClassAddUpdateOrder = Collections.unmodifiableList(addUpdateOrder);
+    }
+
+    /**
+     * Returns the descriptor of a DTO class.
+     *
+     * @param dtoClass
+     * @return
+     */
+    public static DTODescriptor getInstance(Class<? extends BaseDTO> dtoClass) {
+        DTODescriptor descriptor = DESCRIPTORS.get(dtoClass);
+        if (descriptor == null) {
+            descriptor = new DTODescriptor(dtoClass);
+            DESCRIPTORS.put(dtoClass, descriptor);
+        }
+        return descriptor;
+    }
+
+    public Class<? extends BaseDTO> getDtoClass() {
+        return dtoClass;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    public Cached getCached() {
+        return cachedAnnotation;
+    }
+
+    public boolean isRefreshOnAddOrUpdate() {
+        return refreshOnAddOrUpdate;
+    }
+
+    public boolean isNoDAO() {
+        return noDAO;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public boolean isAddAllowed() {
+        return addAllowed;
+    }
+
+    public boolean isDeleteAllowed() {
+        return deleteAllowed;
+    }
+
+    public boolean isUpdateAllowed() {
+        return updateAllowed;
+    }
+
+    public boolean isDeletesChild() {
+        return deletesChild;
+    }
+
+    public boolean isAddsChild() {
+        return addsChild;
+    }
+
+    public boolean isUpdatesChild() {
+        return updatesChild;
+    }
+
+    public RowsReturnCountBehavior getRowsReturnCountBehavior() {
+        return rowsReturnCountBehavior;
+    }
+
+    public List<Field> getPKGeneratedSourceSequenceFields() {
+        return pkGeneratedSourceSequenceFields;
+    }
+
+    public List<Class> getDtoChildClasses() {
+        return dtoChildClasses;
+    }
+
+    /**
+     * Returns whether the DTO class declares ReferenceDTO fields.
+     *
+     * @return
+     */
+    public boolean hasReferenceDTOs() {
+        return referenceDTOs;
+    }
+
+    public Map<Class<? extends BaseDTO>, Class> getDtoQueryMap() {
+        return dtoQueryMap;
+    }
+
+    public ParentChildRelationship getParentChildRelationship(Class childQueryClass) {
+        return parentChildRelationshipMapByQueryClass.get(childQueryClass);
+    }
+
+    public List<Class> getChildQueryClassDeleteOrder() {
+        return childQueryClassDeleteOrder;
+    }
+
+    public List<Class> getChildQueryClassAddUpdateOrder() {
+        return childQueryClassAddUpdateOrder;
+    }
+
+    /**
+     * Returns the query class the child DTO class is registered under on this DTO class.
+     *
+     * @param childDtoClass
+     * @return
+     */
+    public Class getChildQueryClass(Class<? extends BaseDTO> childDtoClass) {
+        Class queryClass = childQueryClassMap.get(childDtoClass);
+        if (queryClass == null) {
+            queryClass = DTOUtils.getQueryClassFromDtoQueryMap(dtoClass, childDtoClass);
+            childQueryClassMap.put(childDtoClass, queryClass != null ? queryClass : NO_QUERY_CLASS);
+        }
+        return queryClass == NO_QUERY_CLASS ? null : queryClass;
+    }
+
+    public boolean isAutoRetrieve(Class<? extends BaseDTO> foreignKeyClass) throws MtsException {
+        Boolean result = autoRetrieveMap.get(foreignKeyClass);
+        if (result == null) {
+            result = DTOUtils.isAutoRetrieve(dtoClass, foreignKeyClass);
+            autoRetrieveMap.put(foreignKeyClass, result);
+        }
+        return result;
+    }
+
+    public boolean isChildNotFoundAllowed(Class<? extends BaseDTO> foreignKeyClass) throws MtsException {
+        Boolean result = childNotFoundAllowedMap.get(foreignKeyClass);
+        if (result == null) {
+            result = DTOUtils.isChildNotFoundAllowed(dtoClass, foreignKeyClass);
+            childNotFoundAllowedMap.put(foreignKeyClass, result);
+        }
+        return result;
+    }
+
+    public boolean isVanity(Class<? extends BaseDTO> foreignKeyClass) throws MtsException {
+        Boolean result = vanityMap.get(foreignKeyClass);
+        if (result == null) {
+            result = DTOUtils.isVanity(dtoClass, foreignKeyClass);
+            vanityMap.put(foreignKeyClass, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the Bean Validation constraints of each constrained property of the DTO class. The map is built on first use from the
+     * metadata of the supplied validator.
+     *
+     * @param validator
+     * @return
+     */
+    public Map<String, Set<ConstraintDescriptor<?>>> getPropertyConstraints(Validator validator) {
+        if (propertyConstraints == null) {
+            initializeConstraints(validator);
+        }
+        return propertyConstraints;
+    }
+
+    /**
+     * Returns whether the DTO class can be validated property by property - false when the class carries class level constraints
+     * or cascades validation (@Valid) into a property, as neither is covered by Validator.validateProperty.
+     *
+     * @param validator
+     * @return
+     */
+    public boolean isChangedPropertyValidationSupported(Validator validator) {
+        if (propertyConstraints == null) {
+            initializeConstraints(validator);
+        }
+        return changedPropertyValidationSupported;
+    }
+
+    private synchronized void initializeConstraints(Validator validator) {
+        if (propertyConstraints != null) {
+            return;
+        }
+        BeanDescriptor beanDescriptor = validator.getConstraintsForClass(dtoClass);
+        boolean supported = beanDescriptor.getConstraintDescriptors().isEmpty();
+        Map<String, Set<ConstraintDescriptor<?>>> constraints = new HashMap<String, Set<ConstraintDescriptor<?>>>();
+        for (PropertyDescriptor propertyDescriptor : beanDescriptor.getConstrainedProperties()) {
+            if (propertyDescriptor.isCascaded()) {
+                supported = false;
+            }
+            constraints.put(propertyDescriptor.getPropertyName(), Collections.unmodifiableSet(propertyDescriptor.getConstraintDescriptors()));
+        }
+        changedPropertyValidationSupported = supported;
+        propertyConstraints = Collections.unmodifiableMap(constraints);
+    }
+
+    @Override
+    public String toString() {
+        return "DTODescriptor{" + "dtoClass=" + dtoClass + ", cached=" + cached + ", readOnly=" + readOnly + ", addsChild=" + addsChild
+                + ", updatesChild=" + updatesChild + ", deletesChild=" + deletesChild + ", dtoQueryMap=" + dtoQueryMap + '}';
+    }
+}
@@ -26,6 +26,8 @@
  */
 package org.cdsframework.util;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.cdsframework.enumeration.DatabaseType;
 
 /**
@@ -38,6 +40,8 @@ public class DatabaseResource {
     private String jndiName;
     private DatabaseType resourceType;
     private String schemaOwner;
+    private List<ReplicaDataSource> replicas = new ArrayList<ReplicaDataSource>();
+    private ReplicaRoutingPolicy replicaRoutingPolicy;
 
     public DatabaseResource(String resourceId, String jndiName, DatabaseType resourceType, String schemaOwner) {
         this.resourceId = resourceId;
@@ -118,9 +122,57 @@ public class DatabaseResource {
         this.resourceId = resourceId;
     }
 
+    /**
+     * Get the read only replicas of the resource
+     *
+     * @return the read only replicas of the resource
+     */
+    public List<ReplicaDataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Set the read only replicas of the resource
+     *
+     * @param replicas new read only replicas of the resource
+     */
+    public void setReplicas(List<ReplicaDataSource> replicas) {
+        this.replicas = replicas;
+    }
+
+    /**
+     * Get the value of replicaRoutingPolicy
+     *
+     * @return the value of replicaRoutingPolicy
+     */
+    public ReplicaRoutingPolicy getReplicaRoutingPolicy() {
+        return replicaRoutingPolicy;
+    }
+
+    /**
+     * Set the value of replicaRoutingPolicy
+     *
+     * @param replicaRoutingPolicy new value of replicaRoutingPolicy
+     */
+    public void setReplicaRoutingPolicy(ReplicaRoutingPolicy replicaRoutingPolicy) {
+        this.replicaRoutingPolicy = replicaRoutingPolicy;
+    }
+
+    /**
+     * Returns the replica a query should be routed to or null for the primary.
+     *
+     * @return
+     */
+    public ReplicaDataSource getReplica() {
+        if (replicas.isEmpty() || replicaRoutingPolicy == null) {
+            return null;
+        }
+        return replicaRoutingPolicy.select(replicas);
+    }
+
     @Override
     public String toString() {
-        return "DatabaseResource{" + "resourceId=" + resourceId + ", jndiName=" + jndiName + ", resourceType=" + resourceType + ", schemaOwner=" + schemaOwner + '}';
+        return "DatabaseResource{" + "resourceId=" + resourceId + ", jndiName=" + jndiName + ", resourceType=" + resourceType + ", schemaOwner=" + schemaOwner + ", replicas=" + replicas + '}';
     }
 
 }
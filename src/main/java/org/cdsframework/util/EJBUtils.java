@@ -28,9 +28,11 @@ package org.cdsframework.util;
 
 import java.util.HashMap;
 import java.util.Map;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.transaction.Status;
+import javax.transaction.Synchronization;
 import javax.transaction.TransactionSynchronizationRegistry;
 import javax.validation.ValidatorFactory;
 import org.cdsframework.base.BaseBO;
@@ -53,6 +55,7 @@ public class EJBUtils {
     private static final String SECURITYMGRLOOKUP = "java:module/SecurityMGRInternal";
     private static final String VALIDATORFACTORYLOOKUP = "ValidatorFactory";
     private static final String TRANSACTIONSYNCHRONIZATIONREGISTRY = "TransactionSynchronizationRegistry";
+    private static final String MANAGEDEXECUTORSERVICELOOKUP = "DefaultManagedExecutorService";
     private static final String PROPERTYMGRLOOKUP = "java:app/mts-ejb-core-support/PropertyMGRLocal";
 
     private static final Map<String, Object> cacheMap = new HashMap<String, Object>();
@@ -67,6 +70,53 @@ public class EJBUtils {
         return (TransactionSynchronizationRegistry) performCompLookup(TRANSACTIONSYNCHRONIZATIONREGISTRY);
     }
 
+    /**
+     * Returns true when the calling thread runs in a transaction.
+     *
+     * @return
+     * @throws MtsException
+     */
+    public static boolean isTransactionActive() throws MtsException {
+        return getTransactionSynchronizationRegistry().getTransactionKey() != null;
+    }
+
+    /**
+     * Runs the action after the current transaction completes, or right away outside of a transaction. An action is registered
+     * once per transaction and key.
+     *
+     * @param key
+     * @param action
+     * @throws MtsException
+     */
+    public static void runAfterCompletion(String key, final Runnable action) throws MtsException {
+        TransactionSynchronizationRegistry registry = getTransactionSynchronizationRegistry();
+        if (registry.getTransactionKey() == null) {
+            action.run();
+        } else if (registry.getResource(key) == null) {
+            registry.putResource(key, action);
+            registry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the container's default managed executor service, null when the container doesn't provide one.
+     *
+     * @return
+     * @throws MtsException
+     */
+    public static ManagedExecutorService getManagedExecutorService() throws MtsException {
+        return (ManagedExecutorService) getBaseLookupObject(COMP_LOOKUP_BASE + MANAGEDEXECUTORSERVICELOOKUP, false);
+    }
+
     /**
      * Log transaction status.
      *
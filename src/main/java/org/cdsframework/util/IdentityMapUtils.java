@@ -0,0 +1,219 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.cdsframework.base.BaseDTO;
+import org.cdsframework.dto.PropertyBagDTO;
+import org.cdsframework.exceptions.MtsException;
+
+/**
+ * Provides a primary key identity map that is carried on the PropertyBagDTO of a single top level MGR call. Entries are keyed by
+ * DTO class, primary key and requested child classes so that repeated reads of the same row within the call are only executed once.
+ * The map is discarded on entry to each BaseMGR call and a DTO class is evicted whenever that class is written.
+ *
+ * Each entry is stamped with the write version of its DTO class, which the DAO writes of any call bump when they are issued and
+ * again when their transaction completes (see written), so that an entry read before a write of another call is not served after
+ * it. The versions are kept per JVM. The stored DTOs are private copies and every hit returns a new copy, so a caller changing
+ * the DTO it got never changes what other rows of the call get. The copies are made through the copy plans of
+ * ReferenceSnapshotUtils.
+ *
+ * @author HLN Consulting, LLC
+ */
+public class IdentityMapUtils {
+
+    private final static LogUtils logger = LogUtils.getLogger(IdentityMapUtils.class);
+    public final static String IDENTITY_MAP = "IDENTITY_MAP";
+    private final static ConcurrentHashMap<Class, AtomicLong> WRITE_VERSIONS = new ConcurrentHashMap<Class, AtomicLong>();
+
+    /**
+     * Returns the DTO previously stored for the class/primary key/child class combination or null.
+     *
+     * @param <S>
+     * @param dtoClass
+     * @param primaryKey
+     * @param childClassDTOs
+     * @param propertyBagDTO
+     * @return
+     */
+    public static <S extends BaseDTO> S get(Class<S> dtoClass, Object primaryKey, List<Class> childClassDTOs, PropertyBagDTO propertyBagDTO) {
+        final String METHODNAME = "get ";
+        S result = null;
+        if (primaryKey != null && propertyBagDTO != null) {
+            Map<Class, Map<List<Object>, Entry>> identityMap = (Map<Class, Map<List<Object>, Entry>>) propertyBagDTO.get(IDENTITY_MAP);
+            if (identityMap != null) {
+                Map<List<Object>, Entry> classMap = identityMap.get(dtoClass);
+                if (classMap != null) {
+                    List<Object> key = getKey(primaryKey, childClassDTOs);
+                    Entry entry = classMap.get(key);
+                    if (entry != null && entry.version != getWriteVersion(dtoClass)) {
+                        if (logger.isDebugEnabled()) {
+                            logger.debug(METHODNAME, "stale identity map entry on primaryKey=", primaryKey, " for ", dtoClass.getSimpleName());
+                        }
+                        classMap.remove(key);
+                    } else if (entry != null) {
+                        result = (S) copyOf(entry.baseDTO);
+                        if (result != null && logger.isDebugEnabled()) {
+                            logger.debug(METHODNAME, "identity map hit on primaryKey=", primaryKey, " for ", dtoClass.getSimpleName());
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Store a copy of a DTO read by primary key for the remainder of the call or until its class is written.
+     *
+     * @param <S>
+     * @param dtoClass
+     * @param childClassDTOs
+     * @param baseDTO
+     * @param propertyBagDTO
+     */
+    public static <S extends BaseDTO> void put(Class<S> dtoClass, List<Class> childClassDTOs, S baseDTO, PropertyBagDTO propertyBagDTO) {
+        if (baseDTO != null && baseDTO.getPrimaryKey() != null && propertyBagDTO != null) {
+            long version = getWriteVersion(dtoClass);
+            BaseDTO copy = copyOf(baseDTO);
+            if (copy == null) {
+                return;
+            }
+            Map<Class, Map<List<Object>, Entry>> identityMap = (Map<Class, Map<List<Object>, Entry>>) propertyBagDTO.get(IDENTITY_MAP);
+            if (identityMap == null) {
+                identityMap = new HashMap<Class, Map<List<Object>, Entry>>();
+                propertyBagDTO.put(IDENTITY_MAP, identityMap);
+            }
+            Map<List<Object>, Entry> classMap = identityMap.get(dtoClass);
+            if (classMap == null) {
+                classMap = new HashMap<List<Object>, Entry>();
+                identityMap.put(dtoClass, classMap);
+            }
+            classMap.put(getKey(baseDTO.getPrimaryKey(), childClassDTOs), new Entry(version, copy));
+        }
+    }
+
+    /**
+     * Bump the write version of a DTO class now and when the current transaction completes - called by the DAO writes. Entries
+     * of the class stored by any call before the bump are no longer served.
+     *
+     * @param dtoClass
+     * @throws MtsException
+     */
+    public static void written(final Class<? extends BaseDTO> dtoClass) throws MtsException {
+        if (dtoClass != null) {
+            bumpWriteVersion(dtoClass);
+            EJBUtils.runAfterCompletion(IdentityMapUtils.class.getName() + "." + dtoClass.getName(), new Runnable() {
+                @Override
+                public void run() {
+                    bumpWriteVersion(dtoClass);
+                }
+            });
+        }
+    }
+
+    /**
+     * Evict all entries of a DTO class - called when the class is written.
+     *
+     * @param dtoClass
+     * @param propertyBagDTO
+     */
+    public static void evict(Class<? extends BaseDTO> dtoClass, PropertyBagDTO propertyBagDTO) {
+        if (propertyBagDTO != null) {
+            Map<Class, Map<List<Object>, Entry>> identityMap = (Map<Class, Map<List<Object>, Entry>>) propertyBagDTO.get(IDENTITY_MAP);
+            if (identityMap != null) {
+                identityMap.remove(dtoClass);
+            }
+        }
+    }
+
+    /**
+     * Discard the identity map.
+     *
+     * @param propertyBagDTO
+     */
+    public static void clear(PropertyBagDTO propertyBagDTO) {
+        if (propertyBagDTO != null && propertyBagDTO.get(IDENTITY_MAP) != null) {
+            propertyBagDTO.remove(IDENTITY_MAP);
+        }
+    }
+
+    /**
+     * Returns a copy of the DTO or null when it can't be copied, in which case it is neither stored nor served.
+     *
+     * @param baseDTO
+     * @return
+     */
+    private static BaseDTO copyOf(BaseDTO baseDTO) {
+        final String METHODNAME = "copyOf ";
+        try {
+            return ReferenceSnapshotUtils.copyOf(baseDTO);
+        } catch (MtsException e) {
+            logger.warn(METHODNAME, "could not copy ", baseDTO.getClass().getSimpleName(), ": ", e.getMessage());
+            return null;
+        }
+    }
+
+    private static List<Object> getKey(Object primaryKey, List<Class> childClassDTOs) {
+        List<Class> childClasses = childClassDTOs != null ? new ArrayList<Class>(childClassDTOs) : new ArrayList<Class>();
+        return Arrays.asList(primaryKey, (Object) childClasses);
+    }
+
+    private static long getWriteVersion(Class dtoClass) {
+        AtomicLong version = WRITE_VERSIONS.get(dtoClass);
+        return version != null ? version.get() : 0;
+    }
+
+    private static void bumpWriteVersion(Class dtoClass) {
+        AtomicLong version = WRITE_VERSIONS.get(dtoClass);
+        if (version == null) {
+            AtomicLong newVersion = new AtomicLong();
+            version = WRITE_VERSIONS.putIfAbsent(dtoClass, newVersion);
+            if (version == null) {
+                version = newVersion;
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    private static class Entry {
+
+        private final long version;
+        private final BaseDTO baseDTO;
+
+        private Entry(long version, BaseDTO baseDTO) {
+            this.version = version;
+            this.baseDTO = baseDTO;
+        }
+    }
+}
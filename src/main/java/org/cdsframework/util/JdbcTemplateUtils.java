@@ -0,0 +1,83 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.util;
+
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/**
+ * Copies of JdbcTemplates that keep the settings of the template they are made from.
+ *
+ * @author HLN Consulting, LLC
+ */
+public class JdbcTemplateUtils {
+
+    /**
+     * Returns a JdbcTemplate on the data source with all the settings of the source template - warnings handling, fetch size, max
+     * rows, query timeout, results processing, result map case sensitivity, lazy init, native JDBC extractor and the exception
+     * translator.
+     *
+     * @param source
+     * @param dataSource
+     * @return
+     */
+    public static JdbcTemplate copyOf(JdbcTemplate source, DataSource dataSource) {
+        JdbcTemplate result = new JdbcTemplate();
+        result.setDataSource(dataSource);
+        result.setLazyInit(source.isLazyInit());
+        result.setIgnoreWarnings(source.isIgnoreWarnings());
+        result.setFetchSize(source.getFetchSize());
+        result.setMaxRows(source.getMaxRows());
+        result.setQueryTimeout(source.getQueryTimeout());
+        result.setSkipResultsProcessing(source.isSkipResultsProcessing());
+        result.setSkipUndeclaredResults(source.isSkipUndeclaredResults());
+        result.setResultsMapCaseInsensitive(source.isResultsMapCaseInsensitive());
+        result.setNativeJdbcExtractor(source.getNativeJdbcExtractor());
+        result.setExceptionTranslator(source.getExceptionTranslator());
+        return result;
+    }
+
+    /**
+     * Returns a NamedParameterJdbcTemplate on the data source with all the settings of the source template, or null when the
+     * source does not wrap a JdbcTemplate.
+     *
+     * @param source
+     * @param dataSource
+     * @return
+     */
+    public static NamedParameterJdbcTemplate copyOf(NamedParameterJdbcTemplate source, DataSource dataSource) {
+        JdbcOperations jdbcOperations = source.getJdbcOperations();
+        if (!(jdbcOperations instanceof JdbcTemplate)) {
+            return null;
+        }
+        NamedParameterJdbcTemplate result = new NamedParameterJdbcTemplate(copyOf((JdbcTemplate) jdbcOperations, dataSource));
+        result.setCacheLimit(source.getCacheLimit());
+        return result;
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.util;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.cdsframework.annotation.Column;
+import org.cdsframework.base.BaseDTO;
+
+/**
+ * Column projection support for list views. A caller names the DTO properties it needs in the query DTO's query map under
+ * PROJECTION_PROPERTIES (a collection or a comma separated string of property names). Row mappers that support projection narrow
+ * the generated SELECT list to the columns of those properties plus the key columns, and flag every DTO they return as partial.
+ * Partial DTOs are returned without children or reference DTOs and cannot be saved.
+ *
+ * @author HLN Consulting, LLC
+ */
+public class ProjectionUtils {
+
+    private final static LogUtils logger = LogUtils.getLogger(ProjectionUtils.class);
+    public final static String PROJECTION_PROPERTIES = "projectionProperties";
+    public final static String PARTIAL_DTO = "partialDTO";
+    private final static Pattern SELECT_PATTERN = Pattern.compile("^\\s*select\\s+(distinct\\s+)?", Pattern.CASE_INSENSITIVE);
+    private final static Pattern FROM_PATTERN = Pattern.compile("\\s+from\\s+", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Returns the property names requested by the query DTO or null when no projection was requested.
+     *
+     * @param baseDTO
+     * @return
+     */
+    public static Set<String> getProjectionProperties(BaseDTO baseDTO) {
+        if (baseDTO == null) {
+            return null;
+        }
+        Object value = baseDTO.getQueryMap().get(PROJECTION_PROPERTIES);
+        Set<String> properties = new LinkedHashSet<String>();
+        if (value instanceof Collection) {
+            for (Object item : (Collection) value) {
+                if (item != null && !item.toString().trim().isEmpty()) {
+                    properties.add(item.toString().trim());
+                }
+            }
+        } else if (value instanceof String) {
+            for (String item : ((String) value).split(",")) {
+                if (!item.trim().isEmpty()) {
+                    properties.add(item.trim());
+                }
+            }
+        }
+        return properties.isEmpty() ? null : properties;
+    }
+
+    /**
+     * Whether the DTO was mapped from a projection query and only holds part of its properties.
+     *
+     * @param baseDTO
+     * @return
+     */
+    public static boolean isPartial(BaseDTO baseDTO) {
+        return baseDTO != null && baseDTO.getQueryMap().containsKey(PARTIAL_DTO);
+    }
+
+    /**
+     * Flags a DTO as partial - the flag is kept in the DTO's query map so that it survives serialization to and from clients.
+     *
+     * @param baseDTO
+     * @param columns the columns that were mapped
+     */
+    public static void setPartial(BaseDTO baseDTO, Set<String> columns) {
+        StringBuilder value = new StringBuilder();
+        for (String column : columns) {
+            value.append(value.length() > 0 ? "," : "").append(column);
+        }
+        baseDTO.getQueryMap().put(PARTIAL_DTO, value.toString());
+    }
+
+    /**
+     * Returns the selectable columns of the requested properties plus the key columns, or null when a requested property is not
+     * a column mapped property of the DTO table.
+     *
+     * @param dtoTable
+     * @param properties
+     * @return
+     */
+    public static Set<String> getProjectedColumns(DTOTable dtoTable, Set<String> properties) {
+        final String METHODNAME = "getProjectedColumns ";
+        Set<String> columns = new LinkedHashSet<String>();
+        Set<String> mappedProperties = new LinkedHashSet<String>();
+        for (Map.Entry<Field, DTOProperty> entry : dtoTable.getDtoPropertyMap().entrySet()) {
+            boolean requested = properties.contains(entry.getKey().getName());
+            for (Column column : entry.getValue().getColumns()) {
+                if (column.selectable() && (requested || column.addToWhereUpdate() || column.addToWhereDelete())) {
+                    columns.add(column.name());
+                    if (requested) {
+                        mappedProperties.add(entry.getKey().getName());
+                    }
+                }
+            }
+        }
+        if (!mappedProperties.containsAll(properties)) {
+            logger.debug(METHODNAME, "unmapped properties requested: ", properties, " mapped: ", mappedProperties);
+            return null;
+        }
+        return columns;
+    }
+
+    /**
+     * Replaces the select list of a query built on the standard select DML with the projected columns. Returns null when the
+     * query does not start with the select DML.
+     *
+     * @param dml
+     * @param selectDML
+     * @param tableAlias
+     * @param columns
+     * @return
+     */
+    public static String getProjectedDML(String dml, String selectDML, String tableAlias, Set<String> columns) {
+        if (dml == null || selectDML == null || columns == null || columns.isEmpty()) {
+            return null;
+        }
+        String select = selectDML.trim();
+        String query = dml.trim();
+        if (!query.toLowerCase().startsWith(select.toLowerCase())) {
+            return null;
+        }
+        Matcher selectMatcher = SELECT_PATTERN.matcher(select);
+        Matcher fromMatcher = FROM_PATTERN.matcher(select);
+        // a select list with a sub query is not rewritten
+        if (!selectMatcher.find() || !fromMatcher.find(selectMatcher.end())
+                || select.substring(selectMatcher.end(), fromMatcher.start()).indexOf('(') >= 0) {
+            return null;
+        }
+        StringBuilder projected = new StringBuilder(select.substring(0, selectMatcher.end()));
+        String prefix = tableAlias == null ? "" : tableAlias.trim();
+        boolean first = true;
+        for (String column : columns) {
+            if (!first) {
+                projected.append(", ");
+            }
+            projected.append(prefix).append(column);
+            first = false;
+        }
+        projected.append(select.substring(fromMatcher.start()));
+        projected.append(query.substring(select.length()));
+        return projected.toString();
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.util;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.cdsframework.base.BaseDTO;
+import org.cdsframework.dto.PropertyBagDTO;
+import org.cdsframework.exceptions.MtsException;
+
+/**
+ * Provides children free snapshots of reference DTOs for ReferenceDTO fields flagged with discardChildren. A snapshot is a copy
+ * of the DTO made through a per class copy plan of its instance fields, with an empty child DTO map. Immutable values are
+ * shared with the source DTO, mutable ones (dates, arrays, collections, maps and nested DTOs) are copied, so that a snapshot
+ * never shares state with a cached instance. Snapshots are carried on the PropertyBagDTO of a single top level MGR call keyed
+ * by DTO class, primary key and cache version, so that a reference shared by many rows of a result shares one snapshot until
+ * its cache changes. Writes of a class within the call evict its snapshots (see evict). Shared snapshots are read only.
+ *
+ * @author HLN Consulting, LLC
+ */
+public class ReferenceSnapshotUtils {
+
+    private final static LogUtils logger = LogUtils.getLogger(ReferenceSnapshotUtils.class);
+    public final static String REFERENCE_SNAPSHOTS = "REFERENCE_SNAPSHOTS";
+    private final static Map<Class, List<Field>> COPY_PLANS = new ConcurrentHashMap<Class, List<Field>>();
+
+    /**
+     * Returns the children free snapshot of a reference DTO, reusing the snapshot made earlier in the call for the same DTO class,
+     * primary key and version.
+     *
+     * @param <S>
+     * @param referenceDTO
+     * @param version the cache version of the DTO class - 0 for DTO classes that are not cached
+     * @param propertyBagDTO
+     * @return
+     * @throws MtsException
+     */
+    public static <S extends BaseDTO> S getSnapshot(S referenceDTO, long version, PropertyBagDTO propertyBagDTO) throws MtsException {
+        final String METHODNAME = "getSnapshot ";
+        if (referenceDTO == null) {
+            return null;
+        }
+        Map<List<Object>, BaseDTO> snapshots = null;
+        List<Object> key = null;
+        if (referenceDTO.getPrimaryKey() != null && propertyBagDTO != null) {
+            snapshots = (Map<List<Object>, BaseDTO>) propertyBagDTO.get(REFERENCE_SNAPSHOTS);
+            if (snapshots == null) {
+                snapshots = new HashMap<List<Object>, BaseDTO>();
+                propertyBagDTO.put(REFERENCE_SNAPSHOTS, snapshots);
+            }
+            key = Arrays.asList((Object) referenceDTO.getClass(), referenceDTO.getPrimaryKey(), version);
+            BaseDTO snapshot = snapshots.get(key);
+            if (snapshot != null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug(METHODNAME, "snapshot hit on primaryKey=", referenceDTO.getPrimaryKey(), " for ", referenceDTO.getClass().getSimpleName());
+                }
+                return (S) snapshot;
+            }
+        }
+        S snapshotDTO = copy(referenceDTO);
+        if (snapshots != null) {
+            snapshots.put(key, snapshotDTO);
+        }
+        return snapshotDTO;
+    }
+
+    /**
+     * Evict the snapshots of a DTO class - called when the class is written.
+     *
+     * @param dtoClass
+     * @param propertyBagDTO
+     */
+    public static void evict(Class<? extends BaseDTO> dtoClass, PropertyBagDTO propertyBagDTO) {
+        if (propertyBagDTO != null) {
+            Map<List<Object>, BaseDTO> snapshots = (Map<List<Object>, BaseDTO>) propertyBagDTO.get(REFERENCE_SNAPSHOTS);
+            if (snapshots != null) {
+                Iterator<List<Object>> iterator = snapshots.keySet().iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().get(0) == dtoClass) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Discard the snapshots of the call.
+     *
+     * @param propertyBagDTO
+     */
+    public static void clear(PropertyBagDTO propertyBagDTO) {
+        if (propertyBagDTO != null && propertyBagDTO.get(REFERENCE_SNAPSHOTS) != null) {
+            propertyBagDTO.remove(REFERENCE_SNAPSHOTS);
+        }
+    }
+
+    /**
+     * Returns a copy of a DTO and its children made through the copy plans, sharing no mutable state with the source DTO.
+     *
+     * @param <S>
+     * @param baseDTO
+     * @return
+     * @throws MtsException
+     */
+    public static <S extends BaseDTO> S copyOf(S baseDTO) throws MtsException {
+        final String METHODNAME = "copyOf ";
+        try {
+            return (S) copyValue(baseDTO, new IdentityHashMap<Object, Object>());
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new MtsException(logger.error(METHODNAME, e.getClass().getSimpleName(), " - ", e.getMessage(), " on ", baseDTO.getClass().getSimpleName()), e);
+        }
+    }
+
+    private static <S extends BaseDTO> S copy(S referenceDTO) throws MtsException {
+        final String METHODNAME = "copy ";
+        Class<S> dtoClass = (Class<S>) referenceDTO.getClass();
+        try {
+            Map<Object, Object> copies = new IdentityHashMap<Object, Object>();
+            S snapshotDTO = dtoClass.newInstance();
+            copies.put(referenceDTO, snapshotDTO);
+            for (Field field : getCopyPlan(dtoClass)) {
+                if (!"childDTOMap".equals(field.getName())) {
+                    field.set(snapshotDTO, copyValue(field.get(referenceDTO), copies));
+                }
+            }
+            snapshotDTO.setChildDTOMap(new HashMap<Class, List<BaseDTO>>());
+            return snapshotDTO;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new MtsException(logger.error(METHODNAME, e.getClass().getSimpleName(), " - ", e.getMessage(), " on ", dtoClass.getSimpleName()), e);
+        }
+    }
+
+    /**
+     * Returns the value itself when it is immutable or of an unknown type, otherwise a copy. Nested DTOs keep their children;
+     * copies maps the values already copied so that shared and cyclic references are copied once.
+     *
+     * @param value
+     * @param copies
+     * @return
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     */
+    private static Object copyValue(Object value, Map<Object, Object> copies) throws InstantiationException, IllegalAccessException {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof Enum || value instanceof Class) {
+            return value;
+        }
+        Object result = copies.get(value);
+        if (result != null) {
+            return result;
+        }
+        if (value instanceof Date) {
+            result = ((Date) value).clone();
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            result = Array.newInstance(value.getClass().getComponentType(), length);
+            copies.put(value, result);
+            for (int i = 0; i < length; i++) {
+                Array.set(result, i, copyValue(Array.get(value, i), copies));
+            }
+        } else if (value instanceof BaseDTO) {
+            result = value.getClass().newInstance();
+            copies.put(value, result);
+            for (Field field : getCopyPlan(value.getClass())) {
+                field.set(result, copyValue(field.get(value), copies));
+            }
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<Object>();
+            copies.put(value, list);
+            for (Object item : (List) value) {
+                list.add(copyValue(item, copies));
+            }
+            result = list;
+        } else if (value instanceof Set) {
+            Set<Object> set = new LinkedHashSet<Object>();
+            copies.put(value, set);
+            for (Object item : (Set) value) {
+                set.add(copyValue(item, copies));
+            }
+            result = set;
+        } else if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+            copies.put(value, map);
+            for (Map.Entry entry : ((Map<Object, Object>) value).entrySet()) {
+                map.put(entry.getKey(), copyValue(entry.getValue(), copies));
+            }
+            result = map;
+        } else {
+            return value;
+        }
+        copies.put(value, result);
+        return result;
+    }
+
+    /**
+     * Returns the copy plan of a DTO class - the non static, non final instance fields of the class and its super classes.
+     *
+     * @param dtoClass
+     * @return
+     */
+    private static List<Field> getCopyPlan(Class dtoClass) {
+        List<Field> copyPlan = COPY_PLANS.get(dtoClass);
+        if (copyPlan == null) {
+            copyPlan = new ArrayList<Field>();
+            for (Class clazz = dtoClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers) && !field.isSynthetic()) {
+                        field.setAccessible(true);
+                        copyPlan.add(field);
+                    }
+                }
+            }
+            COPY_PLANS.put(dtoClass, copyPlan);
+        }
+        return copyPlan;
+    }
+}
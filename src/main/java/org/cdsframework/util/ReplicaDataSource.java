@@ -0,0 +1,189 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.cdsframework.enumeration.DatabaseType;
+import org.cdsframework.exceptions.MtsException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/**
+ * A read only replica of a DatabaseResource. Tracks the number of queries in flight on the replica and its replication lag, which
+ * the ReplicaRoutingPolicy uses to pick a replica. The lag is probed on the replica (PostgreSQL and MySQL) at most once every
+ * LAG_SAMPLE_MILLIS.
+ *
+ * @author HLN Consulting, LLC
+ */
+public class ReplicaDataSource {
+
+    private final static LogUtils logger = LogUtils.getLogger(ReplicaDataSource.class);
+    private final static long LAG_SAMPLE_MILLIS = 1000;
+    private final String jndiName;
+    private final DatabaseType databaseType;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile long lagMillis = -1;
+    private volatile long lagSampledAt = 0;
+    private volatile DataSource dataSource;
+    private volatile JdbcTemplate lagJdbcTemplate;
+    private volatile NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public ReplicaDataSource(String jndiName, DatabaseType databaseType) {
+        this.jndiName = jndiName;
+        this.databaseType = databaseType;
+    }
+
+    /**
+     * A replica whose data source is supplied rather than looked up under the JNDI name.
+     *
+     * @param jndiName
+     * @param databaseType
+     * @param dataSource
+     */
+    public ReplicaDataSource(String jndiName, DatabaseType databaseType, DataSource dataSource) {
+        this(jndiName, databaseType);
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Get the value of jndiName
+     *
+     * @return the value of jndiName
+     */
+    public String getJndiName() {
+        return jndiName;
+    }
+
+    /**
+     * Returns whether the replication lag of a database type can be probed.
+     *
+     * @param databaseType
+     * @return
+     */
+    public static boolean isLagProbeSupported(DatabaseType databaseType) {
+        return databaseType == DatabaseType.POSTGRESQL || databaseType == DatabaseType.MYSQL;
+    }
+
+    private DataSource getDataSource() throws MtsException {
+        if (dataSource == null) {
+            dataSource = (DataSource) EJBUtils.getBaseLookupObject(jndiName);
+        }
+        return dataSource;
+    }
+
+    /**
+     * Returns the template of the replica data source - looked up on first use and configured like the primary template. The
+     * primary templates of a database resource share their settings, so the first one seen is copied.
+     *
+     * @param primary the primary template
+     * @return
+     * @throws MtsException
+     */
+    public NamedParameterJdbcTemplate getNamedParameterJdbcTemplate(NamedParameterJdbcTemplate primary) throws MtsException {
+        if (namedParameterJdbcTemplate == null) {
+            NamedParameterJdbcTemplate replica = JdbcTemplateUtils.copyOf(primary, getDataSource());
+            if (replica == null) {
+                throw new MtsException("Unable to copy the primary template of " + jndiName + ": " + primary.getJdbcOperations().getClass());
+            }
+            namedParameterJdbcTemplate = replica;
+        }
+        return namedParameterJdbcTemplate;
+    }
+
+    /**
+     * Get the number of queries currently executing on the replica.
+     *
+     * @return
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public void begin() {
+        inFlight.incrementAndGet();
+    }
+
+    public void end() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Get the replication lag of the replica in milliseconds, -1 when unknown. Probes the replica when the last sample is older
+     * than LAG_SAMPLE_MILLIS.
+     *
+     * @return
+     */
+    public long getLagMillis() {
+        long now = System.currentTimeMillis();
+        if (isLagProbeSupported(databaseType) && now - lagSampledAt >= LAG_SAMPLE_MILLIS) {
+            lagSampledAt = now;
+            lagMillis = probeLagMillis();
+        }
+        return lagMillis;
+    }
+
+    /**
+     * Query the replication lag of the replica - -1 when the replica doesn't replicate or the probe fails.
+     *
+     * @return
+     */
+    private long probeLagMillis() {
+        final String METHODNAME = "probeLagMillis ";
+        long result = -1;
+        try {
+            if (lagJdbcTemplate == null) {
+                lagJdbcTemplate = new JdbcTemplate(getDataSource());
+            }
+            if (databaseType == DatabaseType.POSTGRESQL) {
+                // an idle primary doesn't advance the replay timestamp - no lag when everything received is replayed
+                Number lag = lagJdbcTemplate.queryForObject("select case when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0"
+                        + " else extract(epoch from clock_timestamp() - pg_last_xact_replay_timestamp()) * 1000 end", Number.class);
+                result = lag != null ? lag.longValue() : -1;
+            } else if (databaseType == DatabaseType.MYSQL) {
+                List<Map<String, Object>> rows = lagJdbcTemplate.queryForList("show slave status");
+                Object seconds = rows.isEmpty() ? null : rows.get(0).get("Seconds_Behind_Master");
+                result = seconds instanceof Number ? ((Number) seconds).longValue() * 1000 : -1;
+            }
+        } catch (DataAccessException | MtsException e) {
+            logger.warn(METHODNAME, "could not probe the lag of ", jndiName, ": ", e.getMessage());
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(METHODNAME, jndiName, " lagMillis=", result);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicaDataSource{" + "jndiName=" + jndiName + ", inFlight=" + inFlight + ", lagMillis=" + lagMillis + '}';
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.cdsframework.exceptions.MtsException;
+
+/**
+ * Picks the read only replica a query is routed to. The built in policies are ROUND_ROBIN, LEAST_IN_FLIGHT and LAG_AWARE; any
+ * other name is taken as the class name of a ReplicaRoutingPolicy implementation with a public no argument constructor.
+ *
+ * @author HLN Consulting, LLC
+ */
+public abstract class ReplicaRoutingPolicy {
+
+    public final static String ROUND_ROBIN = "ROUND_ROBIN";
+    public final static String LEAST_IN_FLIGHT = "LEAST_IN_FLIGHT";
+    public final static String LAG_AWARE = "LAG_AWARE";
+
+    /**
+     * Returns the replica to route a query to or null to use the primary.
+     *
+     * @param replicas
+     * @return
+     */
+    public abstract ReplicaDataSource select(List<ReplicaDataSource> replicas);
+
+    /**
+     * Returns the policy registered under the name.
+     *
+     * @param name
+     * @param maxLagMillis the replication lag in milliseconds above which the LAG_AWARE policy stops routing to a replica
+     * @return
+     * @throws MtsException
+     */
+    public static ReplicaRoutingPolicy getInstance(String name, long maxLagMillis) throws MtsException {
+        if (name == null || name.trim().isEmpty() || ROUND_ROBIN.equalsIgnoreCase(name.trim())) {
+            return new RoundRobin();
+        } else if (LEAST_IN_FLIGHT.equalsIgnoreCase(name.trim())) {
+            return new LeastInFlight();
+        } else if (LAG_AWARE.equalsIgnoreCase(name.trim())) {
+            return new LagAware(maxLagMillis);
+        }
+        try {
+            return (ReplicaRoutingPolicy) Class.forName(name.trim()).newInstance();
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ClassCastException e) {
+            throw new MtsException("Invalid replica routing policy: " + name, e);
+        }
+    }
+
+    private static class RoundRobin extends ReplicaRoutingPolicy {
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        @Override
+        public ReplicaDataSource select(List<ReplicaDataSource> replicas) {
+            if (replicas.isEmpty()) {
+                return null;
+            }
+            return replicas.get((next.getAndIncrement() & Integer.MAX_VALUE) % replicas.size());
+        }
+    }
+
+    private static class LeastInFlight extends ReplicaRoutingPolicy {
+
+        @Override
+        public ReplicaDataSource select(List<ReplicaDataSource> replicas) {
+            ReplicaDataSource result = null;
+            for (ReplicaDataSource replica : replicas) {
+                if (result == null || replica.getInFlight() < result.getInFlight()) {
+                    result = replica;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Least in flight among the replicas whose probed lag is known and within maxLagMillis - the primary when none is.
+     */
+    private static class LagAware extends ReplicaRoutingPolicy {
+
+        private final long maxLagMillis;
+
+        private LagAware(long maxLagMillis) {
+            this.maxLagMillis = maxLagMillis;
+        }
+
+        @Override
+        public ReplicaDataSource select(List<ReplicaDataSource> replicas) {
+            ReplicaDataSource result = null;
+            for (ReplicaDataSource replica : replicas) {
+                long lagMillis = replica.getLagMillis();
+                if (lagMillis >= 0 && lagMillis <= maxLagMillis
+                        && (result == null || replica.getInFlight() < result.getInFlight())) {
+                    result = replica;
+                }
+            }
+            return result;
+        }
+    }
+}
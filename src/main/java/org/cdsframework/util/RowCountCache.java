@@ -0,0 +1,179 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.util;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.cdsframework.exceptions.MtsException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+/**
+ * Holds the total row counts of lazy queries for a short, configurable interval so that paged grids do not re-count the same
+ * result set for every page. Only tables registered by a DAO that opted in (see BaseDAO.registerLazyRowCountCache) are cached,
+ * and only outside of a transaction, so that a count never reflects uncommitted writes. Entries are keyed by database id, table,
+ * query class, count DML and named parameter values - never by the page offset, size or sort - and all entries of a table are
+ * dropped after the transaction that wrote the table through its DAO completes.
+ *
+ * @author HLN Consulting, LLC
+ */
+public class RowCountCache {
+
+    private final static LogUtils logger = LogUtils.getLogger(RowCountCache.class);
+    private final static int MAX_ENTRIES = 1000;
+    private final static char KEY_SEPARATOR = '\u0000';
+    private final static Set<String> REGISTERED_TABLES = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final static Map<String, long[]> ROW_COUNTS = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Registers a table whose row counts may be cached.
+     *
+     * @param databaseId
+     * @param tableName
+     */
+    public static void register(String databaseId, String tableName) {
+        if (tableName != null) {
+            REGISTERED_TABLES.add(getTableKey(databaseId, tableName));
+        }
+    }
+
+    /**
+     * Returns the cache key of a lazy query or null when the row counts of the table are not cached.
+     *
+     * @param databaseId
+     * @param tableName
+     * @param queryClass
+     * @param countDML
+     * @param namedParameters
+     * @return
+     */
+    public static String getKey(String databaseId, String tableName, Class queryClass, String countDML, MapSqlParameterSource namedParameters) {
+        String tableKey = tableName != null ? getTableKey(databaseId, tableName) : null;
+        if (tableKey == null || !REGISTERED_TABLES.contains(tableKey)) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(tableKey);
+        key.append(queryClass != null ? queryClass.getName() : null).append(KEY_SEPARATOR);
+        key.append(countDML).append(KEY_SEPARATOR);
+        if (namedParameters != null && namedParameters.getValues() != null) {
+            key.append(new TreeMap<String, Object>(namedParameters.getValues()));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the unexpired row count of a key or null.
+     *
+     * @param key
+     * @return
+     */
+    public static Long get(String key) {
+        final String METHODNAME = "get ";
+        Long result = null;
+        synchronized (ROW_COUNTS) {
+            long[] entry = ROW_COUNTS.get(key);
+            if (entry != null) {
+                if (entry[1] > System.currentTimeMillis()) {
+                    result = entry[0];
+                } else {
+                    ROW_COUNTS.remove(key);
+                }
+            }
+        }
+        if (result != null && logger.isDebugEnabled()) {
+            logger.debug(METHODNAME, "row count hit: ", result);
+        }
+        return result;
+    }
+
+    /**
+     * Stores the row count of a key for the supplied number of seconds.
+     *
+     * @param key
+     * @param rowCount
+     * @param seconds
+     */
+    public static void put(String key, long rowCount, int seconds) {
+        if (key != null && seconds > 0) {
+            synchronized (ROW_COUNTS) {
+                ROW_COUNTS.put(key, new long[]{rowCount, System.currentTimeMillis() + seconds * 1000L});
+            }
+        }
+    }
+
+    /**
+     * Drops all row counts of a table once the current transaction completes - right away when there is none. Counts taken while
+     * the transaction was open are dropped with them.
+     *
+     * @param databaseId
+     * @param tableName
+     * @throws MtsException
+     */
+    public static void invalidateAfterCompletion(final String databaseId, final String tableName) throws MtsException {
+        if (tableName != null && REGISTERED_TABLES.contains(getTableKey(databaseId, tableName))) {
+            EJBUtils.runAfterCompletion(RowCountCache.class.getName() + "." + databaseId + "." + tableName.toUpperCase(), new Runnable() {
+                @Override
+                public void run() {
+                    invalidate(databaseId, tableName);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops all row counts of a table.
+     *
+     * @param databaseId
+     * @param tableName
+     */
+    public static void invalidate(String databaseId, String tableName) {
+        if (tableName != null) {
+            String prefix = getTableKey(databaseId, tableName);
+            synchronized (ROW_COUNTS) {
+                Iterator<String> iterator = ROW_COUNTS.keySet().iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().startsWith(prefix)) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    private static String getTableKey(String databaseId, String tableName) {
+        return databaseId + KEY_SEPARATOR + tableName.toUpperCase() + KEY_SEPARATOR;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing records for the core BO, DAO, query, cache and reference pipeline. Disabled, a call site costs a volatile read - no
+ * varargs array, no string building and no clock read. Enabled (TRACE_ENABLED), one in TRACE_SAMPLE_RATE calls (default 1 - every
+ * call) of the DTO classes listed in TRACE_DTO_CLASSES (comma separated simple names, default all) is timed and written as a
+ * single structured INFO line:
+ * <pre>
+ * trace component=BaseBO method=findByQueryListMain dto=UserDTO micros=1234 thread=http-thread-pool-8080(3)
+ * </pre>
+ * Call sites take the start value from start and hand it back to end in a finally block; a start value of 0 means the call is
+ * not traced.
+ *
+ * @author HLN Consulting, LLC
+ */
+public class TraceUtils {
+
+    private final static LogUtils logger = LogUtils.getLogger(TraceUtils.class);
+    private final static AtomicLong SAMPLE_COUNTER = new AtomicLong();
+    private static volatile boolean enabled = false;
+    private static volatile int sampleRate = 1;
+    private static volatile Set<String> dtoClassNames = Collections.emptySet();
+
+    /**
+     * Applies the trace settings. A null argument leaves the current setting in place.
+     *
+     * @param traceEnabled
+     * @param traceSampleRate
+     * @param traceDtoClassNames
+     */
+    public static void configure(Boolean traceEnabled, Integer traceSampleRate, Collection<String> traceDtoClassNames) {
+        if (traceSampleRate != null && traceSampleRate > 0) {
+            sampleRate = traceSampleRate;
+        }
+        if (traceDtoClassNames != null) {
+            Set<String> classNames = new HashSet<String>();
+            for (String className : traceDtoClassNames) {
+                if (className != null && !className.trim().isEmpty()) {
+                    classNames.add(className.trim());
+                }
+            }
+            dtoClassNames = Collections.unmodifiableSet(classNames);
+        }
+        if (traceEnabled != null) {
+            enabled = traceEnabled;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the start of a traced call or 0 when the call is not traced.
+     *
+     * @param subject the DTO class or DTO the call works on - may be null
+     * @return
+     */
+    public static long start(Object subject) {
+        if (!enabled) {
+            return 0L;
+        }
+        Set<String> classNames = dtoClassNames;
+        if (!classNames.isEmpty()) {
+            Class dtoClass = getDtoClass(subject);
+            if (dtoClass == null || !classNames.contains(dtoClass.getSimpleName())) {
+                return 0L;
+            }
+        }
+        int rate = sampleRate;
+        if (rate > 1 && SAMPLE_COUNTER.incrementAndGet() % rate != 0) {
+            return 0L;
+        }
+        long start = System.nanoTime();
+        return start != 0L ? start : 1L;
+    }
+
+    /**
+     * Writes the timing record of a traced call.
+     *
+     * @param traceStart the value returned by start
+     * @param component
+     * @param methodName
+     * @param subject the DTO class or DTO the call works on - may be null
+     */
+    public static void end(long traceStart, String component, String methodName, Object subject) {
+        if (traceStart == 0L) {
+            return;
+        }
+        long micros = (System.nanoTime() - traceStart) / 1000;
+        Class dtoClass = getDtoClass(subject);
+        StringBuilder record = new StringBuilder(128);
+        record.append("trace component=").append(component);
+        record.append(" method=").append(methodName != null ? methodName.trim() : null);
+        record.append(" dto=").append(dtoClass != null ? dtoClass.getSimpleName() : null);
+        record.append(" micros=").append(micros);
+        record.append(" thread=").append(Thread.currentThread().getName());
+        logger.info(record.toString());
+    }
+
+    private static Class getDtoClass(Object subject) {
+        if (subject == null) {
+            return null;
+        } else if (subject instanceof Class) {
+            return (Class) subject;
+        } else {
+            return subject.getClass();
+        }
+    }
+}
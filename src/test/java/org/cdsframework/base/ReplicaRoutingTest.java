@@ -0,0 +1,129 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.base;
+
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import org.cdsframework.dto.PropertyBagDTO;
+import org.cdsframework.enumeration.DatabaseType;
+import org.cdsframework.enumeration.QueryType;
+import org.cdsframework.exceptions.MtsException;
+import org.cdsframework.group.CacheAll;
+import org.cdsframework.group.FindAll;
+import org.cdsframework.util.DatabaseResource;
+import org.cdsframework.util.ReplicaDataSource;
+import org.cdsframework.util.ReplicaRoutingPolicy;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Routes queries between two embedded Derby databases - a primary and a read only replica that each answer with their own name.
+ *
+ * @author HLN Consulting, LLC
+ */
+public class ReplicaRoutingTest {
+
+    private static NamedParameterJdbcTemplate primary;
+    private static DatabaseResource databaseResource;
+
+    @BeforeClass
+    public static void setUpClass() throws MtsException {
+        primary = new NamedParameterJdbcTemplate(createDatabase("primary"));
+        databaseResource = new DatabaseResource("ROUTING", "jdbc/primary", DatabaseType.DERBY, null);
+        databaseResource.getReplicas().add(new ReplicaDataSource("jdbc/replica", DatabaseType.DERBY, createDatabase("replica")));
+        databaseResource.setReplicaRoutingPolicy(ReplicaRoutingPolicy.getInstance(ReplicaRoutingPolicy.ROUND_ROBIN, 0));
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        for (String name : new String[]{"primary", "replica"}) {
+            try {
+                new DriverManagerDataSource("jdbc:derby:memory:" + name + ";drop=true").getConnection();
+            } catch (SQLException e) {
+                // derby reports a dropped database with an exception
+            }
+        }
+    }
+
+    private static DataSource createDatabase(String name) {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:derby:memory:" + name + ";create=true");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table routing (name varchar(20))");
+        jdbcTemplate.update("insert into routing (name) values (?)", name);
+        return dataSource;
+    }
+
+    /**
+     * Runs a query on the database the DAO routing picks and returns the name of that database.
+     */
+    private static String route(QueryType queryType, Class queryClass, PropertyBagDTO propertyBagDTO, boolean transactionActive)
+            throws MtsException {
+        NamedParameterJdbcTemplate jdbcTemplate = primary;
+        if (BaseDAO.isReplicaQuery(databaseResource, queryType, queryClass, propertyBagDTO)) {
+            ReplicaDataSource replica = BaseDAO.getReplica(databaseResource, primary, transactionActive);
+            if (replica != null) {
+                jdbcTemplate = replica.getNamedParameterJdbcTemplate(primary);
+            }
+        }
+        return jdbcTemplate.queryForObject("select name from routing", new MapSqlParameterSource(), String.class);
+    }
+
+    @Test
+    public void testQueryListRoutedToReplica() throws MtsException {
+        assertEquals("replica", route(QueryType.QUERY_LIST, FindAll.class, new PropertyBagDTO(), false));
+        assertEquals("replica", route(QueryType.QUERY, FindAll.class, new PropertyBagDTO(), false));
+    }
+
+    @Test
+    public void testTransactionUsesPrimary() throws MtsException {
+        assertEquals("primary", route(QueryType.QUERY_LIST, FindAll.class, new PropertyBagDTO(), true));
+    }
+
+    @Test
+    public void testCacheAllUsesPrimary() throws MtsException {
+        assertEquals("primary", route(QueryType.QUERY_LIST, CacheAll.class, new PropertyBagDTO(), false));
+    }
+
+    @Test
+    public void testPrimaryOnlyPropertyBagUsesPrimary() throws MtsException {
+        PropertyBagDTO propertyBagDTO = new PropertyBagDTO();
+        propertyBagDTO.put(BaseDAO.PRIMARY_ONLY, true);
+        assertEquals("primary", route(QueryType.QUERY_LIST, FindAll.class, propertyBagDTO, false));
+    }
+
+    @Test
+    public void testObjectQueryUsesPrimary() throws MtsException {
+        assertEquals("primary", route(QueryType.OBJECT, FindAll.class, new PropertyBagDTO(), false));
+    }
+}
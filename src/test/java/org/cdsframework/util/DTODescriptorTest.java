@@ -0,0 +1,149 @@
+/**
+ * The MTS core support EJB project is the base framework for the CDS Framework Middle Tier Service.
+ *
+ * Copyright (C) 2016 New York City Department of Health and Mental Hygiene, Bureau of Immunization
+ * Contributions by HLN Consulting, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version. You should have received a copy of the GNU Lesser
+ * General Public License along with this program. If not, see <http://www.gnu.org/licenses/> for more
+ * details.
+ *
+ * The above-named contributors (HLN Consulting, LLC) are also licensed by the New York City
+ * Department of Health and Mental Hygiene, Bureau of Immunization to have (without restriction,
+ * limitation, and warranty) complete irrevocable access and rights to this project.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; THE
+ * SOFTWARE IS PROVIDED "AS IS" WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING,
+ * BUT NOT LIMITED TO, WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE COPYRIGHT HOLDERS, IF ANY, OR DEVELOPERS BE LIABLE FOR
+ * ANY CLAIM, DAMAGES, OR OTHER LIABILITY OF ANY KIND, ARISING FROM, OUT OF, OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information about this software, see https://www.hln.com/services/open-source/ or send
+ * correspondence to ice@hln.com.
+ */
+package org.cdsframework.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.cdsframework.base.BaseDTO;
+import org.cdsframework.exceptions.MtsException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks that the DTODescriptor of every DTO class on the classpath answers as DTOUtils does.
+ *
+ * @author HLN Consulting, LLC
+ */
+public class DTODescriptorTest {
+
+    private final static String DTO_PACKAGE = "org/cdsframework/dto";
+    private static List<Class<? extends BaseDTO>> dtoClasses;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException, ClassNotFoundException {
+        Set<String> classNames = new TreeSet<String>();
+        ClassLoader classLoader = BaseDTO.class.getClassLoader();
+        Enumeration<URL> urls = classLoader.getResources(DTO_PACKAGE);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            String path = URLDecoder.decode(url.getPath(), "UTF-8");
+            if ("jar".equals(url.getProtocol())) {
+                JarFile jarFile = new JarFile(path.substring("file:".length(), path.indexOf('!')));
+                try {
+                    Enumeration<JarEntry> entries = jarFile.entries();
+                    while (entries.hasMoreElements()) {
+                        addClassName(classNames, entries.nextElement().getName());
+                    }
+                } finally {
+                    jarFile.close();
+                }
+            } else if ("file".equals(url.getProtocol())) {
+                File[] files = new File(path).listFiles();
+                for (File file : files != null ? files : new File[0]) {
+                    addClassName(classNames, DTO_PACKAGE + "/" + file.getName());
+                }
+            }
+        }
+        dtoClasses = new ArrayList<Class<? extends BaseDTO>>();
+        for (String className : classNames) {
+            Class clazz = Class.forName(className, false, classLoader);
+            if (BaseDTO.class.isAssignableFrom(clazz) && !clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers())) {
+                dtoClasses.add(clazz);
+            }
+        }
+    }
+
+    private static void addClassName(Set<String> classNames, String name) {
+        if (name.startsWith(DTO_PACKAGE + "/") && name.endsWith(".class") && name.indexOf('/', DTO_PACKAGE.length() + 1) < 0
+                && !name.contains("$")) {
+            classNames.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+        }
+    }
+
+    @Test
+    public void testDtoClassesFound() {
+        assertFalse(dtoClasses.isEmpty());
+    }
+
+    @Test
+    public void testClassAnswers() {
+        for (Class<? extends BaseDTO> dtoClass : dtoClasses) {
+            DTODescriptor descriptor = DTODescriptor.getInstance(dtoClass);
+            String name = dtoClass.getName();
+            Boolean noDAO = DTOUtils.isNoDAO(dtoClass);
+            assertEquals(name, dtoClass, descriptor.getDtoClass());
+            assertEquals(name, DTOUtils.isCached(dtoClass), descriptor.isCached());
+            assertEquals(name, DTOUtils.getCached(dtoClass), descriptor.getCached());
+            assertEquals(name, DTOUtils.isRefreshOnAddOrUpdate(dtoClass), descriptor.isRefreshOnAddOrUpdate());
+            assertEquals(name, noDAO != null && noDAO, descriptor.isNoDAO());
+            assertEquals(name, DTOUtils.isReadOnly(dtoClass), descriptor.isReadOnly());
+            assertEquals(name, DTOUtils.isAddAllowed(dtoClass), descriptor.isAddAllowed());
+            assertEquals(name, DTOUtils.isDeleteAllowed(dtoClass), descriptor.isDeleteAllowed());
+            assertEquals(name, DTOUtils.isUpdateAllowed(dtoClass), descriptor.isUpdateAllowed());
+            assertEquals(name, DTOUtils.deletesChild(dtoClass), descriptor.isDeletesChild());
+            assertEquals(name, DTOUtils.addsChild(dtoClass), descriptor.isAddsChild());
+            assertEquals(name, DTOUtils.updatesChild(dtoClass), descriptor.isUpdatesChild());
+            assertEquals(name, DTOUtils.getRowsReturnCountBehaviorValue(dtoClass), descriptor.getRowsReturnCountBehavior());
+            assertEquals(name, new ArrayList<Field>(DTOUtils.getPKGeneratedSourceSequenceFields(dtoClass)), descriptor.getPKGeneratedSourceSequenceFields());
+            assertEquals(name, new ArrayList<Class>(DTOUtils.getDtoChildClasses(dtoClass)), descriptor.getDtoChildClasses());
+            assertEquals(name, DTOUtils.getDtoQueryMap(dtoClass), descriptor.getDtoQueryMap());
+            for (Map.Entry<?, ?> entry : DTOUtils.getParentChildRelationshipMapByQueryClass(dtoClass).entrySet()) {
+                assertEquals(name, entry.getValue(), descriptor.getParentChildRelationship((Class) entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testChildAnswers() throws MtsException {
+        for (Class<? extends BaseDTO> dtoClass : dtoClasses) {
+            DTODescriptor descriptor = DTODescriptor.getInstance(dtoClass);
+            for (Class<? extends BaseDTO> childDtoClass : descriptor.getDtoQueryMap().keySet()) {
+                String name = dtoClass.getName() + " - " + childDtoClass.getName();
+                DTODescriptor childDescriptor = DTODescriptor.getInstance(childDtoClass);
+                assertEquals(name, DTOUtils.getQueryClassFromDtoQueryMap(dtoClass, childDtoClass), descriptor.getChildQueryClass(childDtoClass));
+                assertEquals(name, DTOUtils.isAutoRetrieve(childDtoClass, dtoClass), childDescriptor.isAutoRetrieve(dtoClass));
+                assertEquals(name, DTOUtils.isChildNotFoundAllowed(childDtoClass, dtoClass), childDescriptor.isChildNotFoundAllowed(dtoClass));
+                assertEquals(name, DTOUtils.isVanity(childDtoClass, dtoClass), childDescriptor.isVanity(dtoClass));
+            }
+        }
+    }
+}